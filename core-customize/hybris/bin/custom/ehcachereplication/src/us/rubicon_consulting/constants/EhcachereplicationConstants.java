@@ -20,8 +20,74 @@ public final class EhcachereplicationConstants extends GeneratedEhcachereplicati
 	public static final String PLATFORM_LOGO_CODE = "ehcachereplicationPlatformLogo";
 
 	public final class EhcacheConfigConstants {
+		public static final String JGROUPS_PROFILE = "ehcachereplication.jgroups.profile";
+		public static final String JGROUPS_BIND_ADDR = "ehcachereplication.jgroups.bind_addr";
+		public static final String JGROUPS_SHARED = "ehcachereplication.jgroups.shared";
+		public static final String JGROUPS_SHARED_CLUSTER = "ehcachereplication.jgroups.shared.cluster";
 		public static final String JGROUPS_UDP_MCAST_ADDR = "ehcachereplication.jgroups.udp.mcast_addr";
 		public static final String JGROUPS_UDP_MCAST_PORT = "ehcachereplication.jgroups.udp.mcast_port";
 		public static final String JGROUPS_UDP_IP_TTL = "ehcachereplication.jgroups.udp.ip_ttl";
+		public static final String JGROUPS_TCP_BIND_PORT = "ehcachereplication.jgroups.tcp.bind_port";
+		public static final String JGROUPS_TCP_INITIAL_HOSTS = "ehcachereplication.jgroups.tcp.initial_hosts";
+		public static final String JGROUPS_TCP_PORT_RANGE = "ehcachereplication.jgroups.tcp.port_range";
+
+		public static final String TRANSPORT = "ehcachereplication.transport";
+		public static final String TRANSPORT_HYBRIS_KIND = "ehcachereplication.transport.hybris.kind";
+		public static final String TRANSPORT_HYBRIS_HEARTBEAT = "ehcachereplication.transport.hybris.heartbeat";
+
+		public static final String BRIDGE_ENABLED = "ehcachereplication.bridge.enabled";
+		public static final String BRIDGE_SITE = "ehcachereplication.bridge.site";
+		public static final String BRIDGE_CLUSTER = "ehcachereplication.bridge.cluster";
+		public static final String BRIDGE_CACHES = "ehcachereplication.bridge.caches";
+		public static final String BRIDGE_LINGER = "ehcachereplication.bridge.linger";
+		public static final String BRIDGE_MAX_EVENTS = "ehcachereplication.bridge.maxevents";
+		public static final String BRIDGE_COMPRESS = "ehcachereplication.bridge.compress";
+
+		public static final String ASYNC_ADAPTIVE = "ehcachereplication.async.adaptive";
+		public static final String ASYNC_MAX_EVENTS = "ehcachereplication.async.maxevents";
+		public static final String ASYNC_MAX_BYTES = "ehcachereplication.async.maxbytes";
+		public static final String ASYNC_MIN_LINGER = "ehcachereplication.async.minlinger";
+
+		public static final String OUTBOX_ENABLED = "ehcachereplication.outbox.enabled";
+		public static final String OUTBOX_DIR = "ehcachereplication.outbox.dir";
+		public static final String OUTBOX_SIZE = "ehcachereplication.outbox.size";
+		public static final String OUTBOX_MAX_AGE = "ehcachereplication.outbox.maxage";
+
+		public static final String TRACE_ENABLED = "ehcachereplication.trace.enabled";
+		public static final String TRACE_DIR = "ehcachereplication.trace.dir";
+		public static final String TRACE_PAYLOADS = "ehcachereplication.trace.payloads";
+		public static final String TRACE_MAX_SIZE = "ehcachereplication.trace.maxsize";
+
+		public static final String BOOTSTRAP_PARALLELISM = "ehcachereplication.bootstrap.parallelism";
+		public static final String BOOTSTRAP_SEGMENTS_AHEAD = "ehcachereplication.bootstrap.segmentsahead";
+		public static final String BOOTSTRAP_HOT_FIRST = "ehcachereplication.bootstrap.hotfirst";
+		public static final String BOOTSTRAP_MIN_REMAINING_TTL = "ehcachereplication.bootstrap.minremainingttl";
+		public static final String BOOTSTRAP_MAX_ENTRIES = "ehcachereplication.bootstrap.maxentries";
+		public static final String BOOTSTRAP_MAX_BYTES = "ehcachereplication.bootstrap.maxbytes";
+		public static final String BOOTSTRAP_STATE_TIMEOUT = "ehcachereplication.bootstrap.statetimeout";
+
+		public static final String READINESS_MIN_PROGRESS = "ehcachereplication.readiness.minprogress";
+		public static final String READINESS_MAX_WAIT = "ehcachereplication.readiness.maxwait";
+		public static final String READINESS_CACHES = "ehcachereplication.readiness.caches";
+
+		public static final String ANTI_ENTROPY_ENABLED = "ehcachereplication.antientropy.enabled";
+		public static final String ANTI_ENTROPY_INTERVAL = "ehcachereplication.antientropy.interval";
+		public static final String ANTI_ENTROPY_BUCKETS = "ehcachereplication.antientropy.buckets";
+		public static final String ANTI_ENTROPY_MAX_KEYS = "ehcachereplication.antientropy.maxkeys";
+		public static final String ANTI_ENTROPY_GRACE_PERIOD = "ehcachereplication.antientropy.grace";
+		public static final String ANTI_ENTROPY_CPU_BUDGET = "ehcachereplication.antientropy.budget.cpu";
+		public static final String ANTI_ENTROPY_BANDWIDTH_BUDGET = "ehcachereplication.antientropy.budget.bandwidth";
+
+		public static final String INTEREST_ENABLED = "ehcachereplication.interest.enabled";
+		public static final String INTEREST_INTERVAL = "ehcachereplication.interest.interval";
+		public static final String INTEREST_BITS = "ehcachereplication.interest.bits";
+		public static final String INTEREST_HASHES = "ehcachereplication.interest.hashes";
+
+		public static final String PEER_LOOKUP_TIMEOUT = "ehcachereplication.peerlookup.timeout";
+		public static final String PEER_LOOKUP_PEERS = "ehcachereplication.peerlookup.peers";
+		public static final String PEER_LOOKUP_MAX_KEYS = "ehcachereplication.peerlookup.maxkeys";
+
+		public static final String VERSIONS_MAX_ENTRIES = "ehcachereplication.versions.maxentries";
+		public static final String VERSIONS_RETENTION = "ehcachereplication.versions.retention";
 	}
 }
@@ -0,0 +1,25 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+import org.jgroups.Address;
+
+final class AddressedEventMessage extends JGroupEventMessage {
+    private static final long serialVersionUID = 1L;
+    // only held by the asynchronous queue, the flush sends the plain event to the member
+    private final transient Address dest;
+
+    AddressedEventMessage(Address dest, int event, Serializable key, Element element, String cacheName, long asyncTime) {
+        super(event, key, element, cacheName, asyncTime);
+        this.dest = dest;
+    }
+
+    Address getDest() {
+        return this.dest;
+    }
+
+    JGroupEventMessage toMessage() {
+        return new JGroupEventMessage(this.getEvent(), this.getSerializableKey(), this.getElement(), this.getCacheName());
+    }
+}
@@ -0,0 +1,67 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import de.hybris.platform.util.Config;
+import us.rubicon_consulting.constants.EhcachereplicationConstants;
+
+public class AntiEntropySettings {
+    private final boolean enabled;
+    private final long interval;
+    private final int buckets;
+    private final int maxKeys;
+    private final long gracePeriod;
+    private final int cpuBudget;
+    private final long bandwidthBudget;
+
+    public AntiEntropySettings(boolean enabled, long interval, int buckets, int maxKeys, long gracePeriod, int cpuBudget, long bandwidthBudget) {
+        this.enabled = enabled;
+        this.interval = Math.max(1000L, interval);
+        this.buckets = Math.max(1, buckets);
+        this.maxKeys = Math.max(1, maxKeys);
+        this.gracePeriod = Math.max(0L, gracePeriod);
+        this.cpuBudget = Math.min(100, Math.max(1, cpuBudget));
+        this.bandwidthBudget = bandwidthBudget;
+    }
+
+    public static AntiEntropySettings fromConfig() {
+        return new AntiEntropySettings(
+                Config.getBoolean(EhcachereplicationConstants.EhcacheConfigConstants.ANTI_ENTROPY_ENABLED, false),
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.ANTI_ENTROPY_INTERVAL, 60000L),
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.ANTI_ENTROPY_BUCKETS, 256),
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.ANTI_ENTROPY_MAX_KEYS, 1000),
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.ANTI_ENTROPY_GRACE_PERIOD, 10000L),
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.ANTI_ENTROPY_CPU_BUDGET, 10),
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.ANTI_ENTROPY_BANDWIDTH_BUDGET, 262144L));
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public long getInterval() {
+        return this.interval;
+    }
+
+    public int getBuckets() {
+        return this.buckets;
+    }
+
+    public int getMaxKeys() {
+        return this.maxKeys;
+    }
+
+    public long getGracePeriod() {
+        return this.gracePeriod;
+    }
+
+    public int getCpuBudget() {
+        return this.cpuBudget;
+    }
+
+    public long getBandwidthBudget() {
+        return this.bandwidthBudget;
+    }
+
+    public String toString() {
+        return "AntiEntropySettings [enabled=" + this.enabled + ", interval=" + this.interval + ", buckets=" + this.buckets + ", maxKeys=" + this.maxKeys + ", gracePeriod=" + this.gracePeriod + ", cpuBudget=" + this.cpuBudget + "%, bandwidthBudget=" + this.bandwidthBudget + "B/s]";
+    }
+}
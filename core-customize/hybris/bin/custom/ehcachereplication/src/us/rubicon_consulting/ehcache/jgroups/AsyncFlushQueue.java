@@ -0,0 +1,315 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+
+public class AsyncFlushQueue {
+    static final int TARGET_BATCH_SIZE = 100;
+    static final int MIN_BATCH_SIZE = 8;
+    private static final double SMOOTHING = 0.2D;
+    private final Object lock = new Object();
+    private final ArrayDeque<AsyncFlushQueue.Queued> invalidations = new ArrayDeque();
+    private final ArrayDeque<AsyncFlushQueue.Queued> data = new ArrayDeque();
+    private final Map<AsyncFlushQueue.LaneKey, Long> removals = new HashMap();
+    private final Map<String, Long> removeAlls = new HashMap();
+    private final long maxLinger;
+    private volatile AsyncFlushSettings settings;
+    private long sequence;
+    private long superseded;
+    private volatile int invalidationCount;
+    private volatile int dataCount;
+    private volatile long oldestInvalidation;
+    private volatile long oldest;
+    private volatile long linger;
+    private volatile double eventRate;
+    private volatile double bytesPerEvent;
+    private long lastFlush;
+    private long flushes;
+    private long sizeFlushes;
+    private long flushedEvents;
+
+    public AsyncFlushQueue(long maxLinger, AsyncFlushSettings settings) {
+        this.maxLinger = maxLinger;
+        this.settings = settings;
+        this.linger = maxLinger;
+        this.lastFlush = System.currentTimeMillis();
+    }
+
+    public synchronized void setSettings(AsyncFlushSettings settings) {
+        this.settings = settings;
+        this.linger = settings.isAdaptive() ? this.adaptLinger() : this.maxLinger;
+    }
+
+    public static boolean isInvalidation(JGroupEventMessage event) {
+        return event.getEvent() == 1 || isRemoveAll(event);
+    }
+
+    public static boolean isRemoveAll(JGroupEventMessage event) {
+        return event.getEvent() == 3 || event.getEvent() == JGroupsCacheReplicator.REMOVE_ALL_EPOCH;
+    }
+
+    public boolean offer(JGroupEventMessage event) {
+        long now = System.currentTimeMillis();
+        synchronized(this.lock) {
+            AsyncFlushQueue.Queued queued = new AsyncFlushQueue.Queued(++this.sequence, event);
+            if (isInvalidation(event)) {
+                this.invalidations.addLast(queued);
+                if (this.invalidationCount++ == 0) {
+                    this.oldestInvalidation = now;
+                    return true;
+                }
+            } else {
+                this.data.addLast(queued);
+                if (this.dataCount++ == 0) {
+                    this.oldest = now;
+                    return this.invalidationCount == 0;
+                }
+            }
+        }
+
+        return this.isFull();
+    }
+
+    public int drainInvalidations(List<JGroupEventMessage> events, int max) {
+        synchronized(this.lock) {
+            int drained;
+            for(drained = 0; drained < max; ++drained) {
+                AsyncFlushQueue.Queued queued = (AsyncFlushQueue.Queued)this.invalidations.pollFirst();
+                if (queued == null) {
+                    break;
+                }
+
+                --this.invalidationCount;
+                if (this.dataCount != 0) {
+                    this.recordRemoval(queued);
+                }
+
+                events.add(queued.event);
+            }
+
+            if (this.invalidationCount != 0) {
+                this.oldestInvalidation = System.currentTimeMillis();
+            }
+
+            return drained;
+        }
+    }
+
+    public int drainData(List<JGroupEventMessage> events, int max) {
+        synchronized(this.lock) {
+            int drained;
+            for(drained = 0; drained < max; ++drained) {
+                AsyncFlushQueue.Queued queued = (AsyncFlushQueue.Queued)this.data.pollFirst();
+                if (queued == null) {
+                    break;
+                }
+
+                --this.dataCount;
+                if (this.isSuperseded(queued)) {
+                    ++this.superseded;
+                } else {
+                    events.add(queued.event);
+                }
+            }
+
+            if (this.dataCount == 0) {
+                this.removals.clear();
+                this.removeAlls.clear();
+            } else {
+                this.oldest = System.currentTimeMillis();
+                this.pruneRemovals(((AsyncFlushQueue.Queued)this.data.peekFirst()).sequence);
+            }
+
+            return drained;
+        }
+    }
+
+    private void recordRemoval(AsyncFlushQueue.Queued queued) {
+        String cacheName = queued.event.getCacheName();
+        if (isRemoveAll(queued.event)) {
+            this.removeAlls.put(cacheName, queued.sequence);
+        } else if (queued.event.getSerializableKey() != null) {
+            this.removals.put(new AsyncFlushQueue.LaneKey(cacheName, queued.event.getSerializableKey()), queued.sequence);
+        }
+
+    }
+
+    private boolean isSuperseded(AsyncFlushQueue.Queued queued) {
+        if (this.removeAlls.isEmpty() && this.removals.isEmpty()) {
+            return false;
+        }
+
+        String cacheName = queued.event.getCacheName();
+        Long removeAll = (Long)this.removeAlls.get(cacheName);
+        if (removeAll != null && removeAll > queued.sequence) {
+            return true;
+        } else if (!this.removals.isEmpty() && queued.event.getSerializableKey() != null) {
+            Long removal = (Long)this.removals.get(new AsyncFlushQueue.LaneKey(cacheName, queued.event.getSerializableKey()));
+            return removal != null && removal > queued.sequence;
+        } else {
+            return false;
+        }
+    }
+
+    private void pruneRemovals(long oldestQueued) {
+        this.prune(this.removals.values().iterator(), oldestQueued);
+        this.prune(this.removeAlls.values().iterator(), oldestQueued);
+    }
+
+    private void prune(Iterator<Long> sequences, long oldestQueued) {
+        while(sequences.hasNext()) {
+            if ((Long)sequences.next() < oldestQueued) {
+                sequences.remove();
+            }
+        }
+
+    }
+
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    public int size() {
+        return this.invalidationCount + this.dataCount;
+    }
+
+    public long getDeadline() {
+        long deadline = this.dataCount > 0 ? this.oldest + this.linger : Long.MAX_VALUE;
+        if (this.invalidationCount > 0) {
+            deadline = Math.min(deadline, this.oldestInvalidation + this.getInvalidationLinger());
+        }
+
+        return deadline;
+    }
+
+    public long getInvalidationLinger() {
+        return this.settings.isAdaptive() ? Math.min(this.settings.getMinLinger(), this.maxLinger) : this.maxLinger;
+    }
+
+    public boolean isDue(long now) {
+        return this.size() > 0 && (now >= this.getDeadline() || this.isFull());
+    }
+
+    public boolean isFull() {
+        if (!this.settings.isAdaptive()) {
+            return false;
+        } else {
+            int events = this.size();
+            return events >= this.settings.getMaxEvents() || (double)events * this.bytesPerEvent >= (double)this.settings.getMaxBytes();
+        }
+    }
+
+    public synchronized void flushed(int events, long bytes, long now, boolean full) {
+        if (events <= 0) {
+            return;
+        }
+
+        ++this.flushes;
+        if (full) {
+            ++this.sizeFlushes;
+        }
+
+        this.flushedEvents += (long)events;
+        if (bytes > 0L) {
+            double observed = (double)bytes / (double)events;
+            this.bytesPerEvent = this.bytesPerEvent == 0.0D ? observed : this.bytesPerEvent + SMOOTHING * (observed - this.bytesPerEvent);
+        }
+
+        double observedRate = (double)events / (double)Math.max(1L, now - this.lastFlush);
+        this.eventRate = this.eventRate == 0.0D ? observedRate : this.eventRate + SMOOTHING * (observedRate - this.eventRate);
+        this.lastFlush = now;
+        if (this.settings.isAdaptive()) {
+            this.linger = this.adaptLinger();
+        }
+
+    }
+
+    private long adaptLinger() {
+        long minLinger = Math.min(this.settings.getMinLinger(), this.maxLinger);
+        double expected = this.eventRate * (double)this.maxLinger;
+        if (expected < (double)MIN_BATCH_SIZE) {
+            return minLinger;
+        } else {
+            long fill = (long)((double)TARGET_BATCH_SIZE / this.eventRate);
+            return Math.max(minLinger, Math.min(this.maxLinger, fill));
+        }
+    }
+
+    public long getMaxLinger() {
+        return this.maxLinger;
+    }
+
+    public long getLinger() {
+        return this.linger;
+    }
+
+    public double getEventRate() {
+        return this.eventRate * 1000.0D;
+    }
+
+    public double getBytesPerEvent() {
+        return this.bytesPerEvent;
+    }
+
+    public long getSuperseded() {
+        synchronized(this.lock) {
+            return this.superseded;
+        }
+    }
+
+    public synchronized long getFlushes() {
+        return this.flushes;
+    }
+
+    public synchronized long getSizeFlushes() {
+        return this.sizeFlushes;
+    }
+
+    public synchronized long getFlushedEvents() {
+        return this.flushedEvents;
+    }
+
+    public String toString() {
+        return "AsyncFlushQueue [maxLinger=" + this.maxLinger + "ms, linger=" + this.linger + "ms, invalidations=" + this.invalidationCount + ", data=" + this.dataCount + ", superseded=" + this.getSuperseded() + ", eventRate=" + Math.round(this.getEventRate()) + "/s, bytesPerEvent=" + Math.round(this.bytesPerEvent) + "]";
+    }
+
+    private static final class Queued {
+        private final long sequence;
+        private final JGroupEventMessage event;
+
+        private Queued(long sequence, JGroupEventMessage event) {
+            this.sequence = sequence;
+            this.event = event;
+        }
+    }
+
+    private static final class LaneKey {
+        private final String cacheName;
+        private final Serializable key;
+
+        private LaneKey(String cacheName, Serializable key) {
+            this.cacheName = cacheName;
+            this.key = key;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            } else if (!(o instanceof AsyncFlushQueue.LaneKey)) {
+                return false;
+            } else {
+                AsyncFlushQueue.LaneKey other = (AsyncFlushQueue.LaneKey)o;
+                return this.key.equals(other.key) && (this.cacheName == null ? other.cacheName == null : this.cacheName.equals(other.cacheName));
+            }
+        }
+
+        public int hashCode() {
+            return 31 * (this.cacheName == null ? 0 : this.cacheName.hashCode()) + this.key.hashCode();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import de.hybris.platform.util.Config;
+import us.rubicon_consulting.constants.EhcachereplicationConstants;
+
+public class AsyncFlushSettings {
+    public static final AsyncFlushSettings FIXED = new AsyncFlushSettings(false, Integer.MAX_VALUE, Long.MAX_VALUE, 0L);
+    private final boolean adaptive;
+    private final int maxEvents;
+    private final long maxBytes;
+    private final long minLinger;
+
+    public AsyncFlushSettings(boolean adaptive, int maxEvents, long maxBytes, long minLinger) {
+        this.adaptive = adaptive;
+        this.maxEvents = Math.max(1, maxEvents);
+        this.maxBytes = Math.max(1L, maxBytes);
+        this.minLinger = Math.max(0L, minLinger);
+    }
+
+    public static AsyncFlushSettings fromConfig() {
+        return new AsyncFlushSettings(
+                Config.getBoolean(EhcachereplicationConstants.EhcacheConfigConstants.ASYNC_ADAPTIVE, true),
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.ASYNC_MAX_EVENTS, 500),
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.ASYNC_MAX_BYTES, 262144L),
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.ASYNC_MIN_LINGER, 5L));
+    }
+
+    public AsyncFlushSettings withAdaptive(boolean adaptive) {
+        return new AsyncFlushSettings(adaptive, this.maxEvents, this.maxBytes, this.minLinger);
+    }
+
+    public AsyncFlushSettings withMaxEvents(int maxEvents) {
+        return new AsyncFlushSettings(this.adaptive, maxEvents, this.maxBytes, this.minLinger);
+    }
+
+    public AsyncFlushSettings withMaxBytes(long maxBytes) {
+        return new AsyncFlushSettings(this.adaptive, this.maxEvents, maxBytes, this.minLinger);
+    }
+
+    public AsyncFlushSettings withMinLinger(long minLinger) {
+        return new AsyncFlushSettings(this.adaptive, this.maxEvents, this.maxBytes, minLinger);
+    }
+
+    public boolean isAdaptive() {
+        return this.adaptive;
+    }
+
+    public int getMaxEvents() {
+        return this.maxEvents;
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    public long getMinLinger() {
+        return this.minLinger;
+    }
+
+    public String toString() {
+        return "AsyncFlushSettings [adaptive=" + this.adaptive + ", maxEvents=" + this.maxEvents + ", maxBytes=" + this.maxBytes + ", minLinger=" + this.minLinger + "ms]";
+    }
+}
@@ -0,0 +1,53 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class BandwidthLimiter {
+    private static final Logger LOG = LoggerFactory.getLogger(BandwidthLimiter.class.getName());
+    private final long bytesPerSecond;
+    private long availableBytes;
+    private long lastRefill;
+
+    BandwidthLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.availableBytes = bytesPerSecond;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public boolean isUnlimited() {
+        return this.bytesPerSecond <= 0L;
+    }
+
+    public void consume(long bytes) {
+        if (this.isUnlimited() || bytes <= 0L) {
+            return;
+        }
+
+        long waitNanos;
+        synchronized(this) {
+            this.refill();
+            this.availableBytes -= bytes;
+            waitNanos = this.availableBytes >= 0L ? 0L : -this.availableBytes * TimeUnit.SECONDS.toNanos(1L) / this.bytesPerSecond;
+        }
+
+        if (waitNanos > 0L) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException var6) {
+                LOG.debug("Interrupted while waiting for bandwidth budget", var6);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long refill = (now - this.lastRefill) * this.bytesPerSecond / TimeUnit.SECONDS.toNanos(1L);
+        if (refill > 0L) {
+            this.availableBytes = Math.min(this.bytesPerSecond, this.availableBytes + refill);
+            this.lastRefill = now;
+        }
+    }
+}
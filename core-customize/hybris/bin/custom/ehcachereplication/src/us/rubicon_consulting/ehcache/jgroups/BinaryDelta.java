@@ -0,0 +1,178 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+final class BinaryDelta {
+    // a block of the base has to match completely before it is copied instead of sent
+    static final int BLOCK_SIZE = 16;
+    private static final int HASH_MULTIPLIER = 31;
+    private static final int COPY = 0;
+    private static final int INSERT = 1;
+    private static final int POWER = power();
+
+    private BinaryDelta() {
+    }
+
+    public static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, target.length / 8));
+        writeVarInt(out, target.length);
+        Map<Integer, Integer> blocks = index(base);
+        int literal = 0;
+        int position = 0;
+        int hash = target.length >= BLOCK_SIZE ? hash(target, 0) : 0;
+
+        while(position + BLOCK_SIZE <= target.length) {
+            Integer offset = (Integer)blocks.get(hash);
+            if (offset != null && matches(base, offset, target, position, BLOCK_SIZE)) {
+                int start = offset;
+                int length = BLOCK_SIZE;
+                // grown backwards into the pending literal bytes and forwards as far as both arrays agree
+                while(position > literal && start > 0 && base[start - 1] == target[position - 1]) {
+                    --start;
+                    --position;
+                    ++length;
+                }
+
+                while(position + length < target.length && start + length < base.length && base[start + length] == target[position + length]) {
+                    ++length;
+                }
+
+                writeInsert(out, target, literal, position - literal);
+                out.write(COPY);
+                writeVarInt(out, start);
+                writeVarInt(out, length);
+                position += length;
+                literal = position;
+                if (position + BLOCK_SIZE <= target.length) {
+                    hash = hash(target, position);
+                }
+            } else {
+                if (position + BLOCK_SIZE < target.length) {
+                    hash = (hash - target[position] * POWER) * HASH_MULTIPLIER + target[position + BLOCK_SIZE];
+                }
+
+                ++position;
+            }
+        }
+
+        writeInsert(out, target, literal, target.length - literal);
+        return out.toByteArray();
+    }
+
+    public static byte[] apply(byte[] base, byte[] delta) {
+        int[] position = new int[1];
+        int length = readVarInt(delta, position);
+        check(length >= 0, "negative length");
+        byte[] target = new byte[length];
+        int written = 0;
+
+        while(position[0] < delta.length) {
+            int op = delta[position[0]++];
+            if (op == COPY) {
+                int offset = readVarInt(delta, position);
+                int count = readVarInt(delta, position);
+                check(offset >= 0 && count >= 0 && offset + count <= base.length && written + count <= length, "copy beyond the base or the value");
+                System.arraycopy(base, offset, target, written, count);
+                written += count;
+            } else {
+                check(op == INSERT, "unknown operation " + op);
+                int count = readVarInt(delta, position);
+                check(count >= 0 && position[0] + count <= delta.length && written + count <= length, "insert beyond the delta or the value");
+                System.arraycopy(delta, position[0], target, written, count);
+                position[0] += count;
+                written += count;
+            }
+        }
+
+        check(written == length, "value of " + written + " instead of " + length + " bytes");
+        return target;
+    }
+
+    private static Map<Integer, Integer> index(byte[] base) {
+        Map<Integer, Integer> blocks = new HashMap(Math.max(16, base.length / BLOCK_SIZE * 2));
+
+        for(int offset = 0; offset + BLOCK_SIZE <= base.length; offset += BLOCK_SIZE) {
+            Integer hash = hash(base, offset);
+            if (!blocks.containsKey(hash)) {
+                blocks.put(hash, offset);
+            }
+        }
+
+        return blocks;
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int hash = 0;
+
+        for(int i = 0; i < BLOCK_SIZE; ++i) {
+            hash = hash * HASH_MULTIPLIER + data[offset + i];
+        }
+
+        return hash;
+    }
+
+    private static int power() {
+        int power = 1;
+
+        for(int i = 1; i < BLOCK_SIZE; ++i) {
+            power *= HASH_MULTIPLIER;
+        }
+
+        return power;
+    }
+
+    private static boolean matches(byte[] base, int baseOffset, byte[] target, int targetOffset, int length) {
+        if (baseOffset + length > base.length) {
+            return false;
+        }
+
+        for(int i = 0; i < length; ++i) {
+            if (base[baseOffset + i] != target[targetOffset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int offset, int length) {
+        if (length > 0) {
+            out.write(INSERT);
+            writeVarInt(out, length);
+            out.write(target, offset, length);
+        }
+
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while((value & -128) != 0) {
+            out.write(value & 127 | 128);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] position) {
+        int value = 0;
+
+        for(int shift = 0; shift < 35; shift += 7) {
+            check(position[0] < data.length, "truncated delta");
+            byte b = data[position[0]++];
+            value |= (b & 127) << shift;
+            if ((b & 128) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed binary delta, varint too long");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalArgumentException("Malformed binary delta, " + message);
+        }
+    }
+}
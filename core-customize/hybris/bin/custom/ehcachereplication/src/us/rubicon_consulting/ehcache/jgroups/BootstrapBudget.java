@@ -0,0 +1,70 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import de.hybris.platform.util.Config;
+import java.io.Serializable;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import us.rubicon_consulting.constants.EhcachereplicationConstants;
+
+public final class BootstrapBudget implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOG = LoggerFactory.getLogger(BootstrapBudget.class);
+    public static final BootstrapBudget UNLIMITED = new BootstrapBudget(0L, 0L);
+    private final long maxEntries;
+    private final long maxBytes;
+
+    public BootstrapBudget(long maxEntries, long maxBytes) {
+        this.maxEntries = Math.max(0L, maxEntries);
+        this.maxBytes = Math.max(0L, maxBytes);
+    }
+
+    public static BootstrapBudget fromConfig(String cacheName) {
+        return new BootstrapBudget(getLong(cacheName, EhcachereplicationConstants.EhcacheConfigConstants.BOOTSTRAP_MAX_ENTRIES), getLong(cacheName, EhcachereplicationConstants.EhcacheConfigConstants.BOOTSTRAP_MAX_BYTES));
+    }
+
+    private static long getLong(String cacheName, String key) {
+        String value = getString(cacheName, key, "0");
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException var4) {
+            LOG.warn("Number format exception trying to set {} of cache {}. Using unlimited instead. String value was: '{}'", new Object[]{key, cacheName, value});
+            return 0L;
+        }
+    }
+
+    private static String getString(String cacheName, String key, String defaultValue) {
+        String cacheKey = key.replace("ehcachereplication.bootstrap.", "ehcachereplication.bootstrap." + cacheName + ".");
+        String value = StringUtils.trimToNull(Config.getString(cacheKey, (String)null));
+        if (value == null) {
+            value = StringUtils.trimToNull(Config.getString(key, (String)null));
+        }
+
+        return value != null ? value : defaultValue;
+    }
+
+    public boolean isUnlimited() {
+        return this.maxEntries == 0L && this.maxBytes == 0L;
+    }
+
+    public long getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    public boolean allowsEntries(long entries) {
+        return this.maxEntries == 0L || entries <= this.maxEntries;
+    }
+
+    public boolean allowsBytes(long bytes) {
+        return this.maxBytes == 0L || bytes <= this.maxBytes;
+    }
+
+    public String toString() {
+        return "BootstrapBudget [maxEntries=" + (this.maxEntries == 0L ? "unlimited" : String.valueOf(this.maxEntries)) + ", maxBytes=" + (this.maxBytes == 0L ? "unlimited" : String.valueOf(this.maxBytes)) + "]";
+    }
+}
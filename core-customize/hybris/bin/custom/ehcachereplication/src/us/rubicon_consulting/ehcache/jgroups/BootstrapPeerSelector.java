@@ -0,0 +1,71 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public final class BootstrapPeerSelector {
+    private static final double WARM_SIZE_RATIO = 0.9D;
+
+    private BootstrapPeerSelector() {
+    }
+
+    public static <A> List<A> select(String cacheName, List<A> members, Map<A, MemberState> states, Random random) {
+        List<A> known = new ArrayList();
+        List<A> unknown = new ArrayList();
+        int maxSize = 0;
+        Iterator i$ = members.iterator();
+
+        while(i$.hasNext()) {
+            A member = (A)i$.next();
+            MemberState state = (MemberState)states.get(member);
+            if (state == null) {
+                unknown.add(member);
+            } else if (state.isWarm(cacheName)) {
+                known.add(member);
+                maxSize = Math.max(maxSize, state.getCacheSize(cacheName));
+            }
+        }
+
+        // members still bootstrapping the cache are never asked, members without a state (older versions or lost
+        // replies) are only asked after all members known to be warm
+        Collections.sort(known, new BootstrapPeerSelector.WarmestLeastLoaded(cacheName, states, (int)Math.ceil((double)maxSize * WARM_SIZE_RATIO)));
+        Collections.shuffle(unknown, random);
+        known.addAll(unknown);
+        return known;
+    }
+
+    private static final class WarmestLeastLoaded<A> implements Comparator<A> {
+        private final String cacheName;
+        private final Map<A, MemberState> states;
+        private final int warmSize;
+
+        private WarmestLeastLoaded(String cacheName, Map<A, MemberState> states, int warmSize) {
+            this.cacheName = cacheName;
+            this.states = states;
+            this.warmSize = warmSize;
+        }
+
+        public int compare(A left, A right) {
+            MemberState leftState = (MemberState)this.states.get(left);
+            MemberState rightState = (MemberState)this.states.get(right);
+            int leftSize = leftState.getCacheSize(this.cacheName);
+            int rightSize = rightState.getCacheSize(this.cacheName);
+            boolean leftWarm = leftSize >= this.warmSize;
+            boolean rightWarm = rightSize >= this.warmSize;
+            if (leftWarm != rightWarm) {
+                return leftWarm ? -1 : 1;
+            } else if (leftWarm && leftState.getActiveResponses() != rightState.getActiveResponses()) {
+                return leftState.getActiveResponses() < rightState.getActiveResponses() ? -1 : 1;
+            } else if (leftSize != rightSize) {
+                return leftSize > rightSize ? -1 : 1;
+            } else {
+                return Double.compare(leftState.getLoadAverage(), rightState.getLoadAverage());
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BootstrapProgress {
+    private final String cacheName;
+    private final long startTime;
+    private final AtomicLong received = new AtomicLong();
+    private volatile long estimatedTotal = -1L;
+    private volatile long endTime = -1L;
+    private volatile BootstrapProgress.State state;
+
+    public BootstrapProgress(String cacheName, long startTime) {
+        this.cacheName = cacheName;
+        this.startTime = startTime;
+        this.state = BootstrapProgress.State.LOADING;
+    }
+
+    public void estimate(long remaining) {
+        // a retry against another peer continues counting, so the estimate covers what was received before
+        this.estimatedTotal = this.received.get() + Math.max(0L, remaining);
+    }
+
+    public void countReceived() {
+        this.received.incrementAndGet();
+    }
+
+    public void finished(boolean complete, long now) {
+        this.endTime = now;
+        this.state = complete ? BootstrapProgress.State.COMPLETE : BootstrapProgress.State.INCOMPLETE;
+    }
+
+    public String getCacheName() {
+        return this.cacheName;
+    }
+
+    public BootstrapProgress.State getState() {
+        return this.state;
+    }
+
+    public boolean isDone() {
+        return this.state != BootstrapProgress.State.LOADING;
+    }
+
+    public long getStartTime() {
+        return this.startTime;
+    }
+
+    public long getEndTime() {
+        return this.endTime;
+    }
+
+    public long getReceived() {
+        return this.received.get();
+    }
+
+    public long getEstimatedTotal() {
+        return this.estimatedTotal;
+    }
+
+    public double getProgress() {
+        long total = this.estimatedTotal;
+        if (this.state == BootstrapProgress.State.COMPLETE || total == 0L) {
+            return 1.0D;
+        } else if (total < 0L) {
+            return -1.0D;
+        } else {
+            return Math.min(1.0D, (double)this.received.get() / (double)total);
+        }
+    }
+
+    public double getRate(long now) {
+        long end = this.endTime < 0L ? now : this.endTime;
+        return (double)this.received.get() * 1000.0D / (double)Math.max(1L, end - this.startTime);
+    }
+
+    public String toString() {
+        return "BootstrapProgress [cache=" + this.cacheName + ", state=" + this.state + ", received=" + this.received.get() + ", estimatedTotal=" + this.estimatedTotal + ", rate=" + Math.round(this.getRate(System.currentTimeMillis())) + "/s]";
+    }
+
+    public static enum State {
+        LOADING,
+        COMPLETE,
+        INCOMPLETE;
+
+        private State() {
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+public final class BootstrapRanking {
+    private static final double IDLE_HALF_SCORE_SECONDS = 60.0D;
+    private static final double FULL_SCORE_REMAINING_SECONDS = 300.0D;
+
+    private BootstrapRanking() {
+    }
+
+    public static double score(Element element, long now) {
+        // recently and frequently read entries first, entries close to their expiry last
+        // an entry that was never read counts as idle since its creation, a write does not make it hot
+        long lastAccess = element.getLastAccessTime() > 0L ? element.getLastAccessTime() : element.getCreationTime();
+        double idleSeconds = (double)Math.max(0L, now - lastAccess) / 1000.0D;
+        double recency = 1.0D / (1.0D + idleSeconds / IDLE_HALF_SCORE_SECONDS);
+        long expirationTime = element.getExpirationTime();
+        double longevity = 1.0D;
+        if (expirationTime != Long.MAX_VALUE) {
+            longevity = Math.min(1.0D, (double)Math.max(0L, expirationTime - now) / 1000.0D / FULL_SCORE_REMAINING_SECONDS);
+        }
+
+        return (double)(1L + Math.max(0L, element.getHitCount())) * recency * longevity;
+    }
+
+    public static List<Object> rank(Ehcache cache, List<?> keys, long now, long minRemainingTtl, long maxEntries) {
+        BootstrapRanking.RankedKey[] ranked = new BootstrapRanking.RankedKey[keys.size()];
+        int count = 0;
+        Iterator i$ = keys.iterator();
+
+        while(i$.hasNext()) {
+            Object key = i$.next();
+            Element element = cache.getQuiet(key);
+            if (element != null && !element.isExpired() && element.getExpirationTime() - now >= minRemainingTtl) {
+                ranked[count++] = new BootstrapRanking.RankedKey(key, score(element, now));
+            }
+        }
+
+        Arrays.sort(ranked, 0, count);
+        int limit = maxEntries > 0L ? (int)Math.min((long)count, maxEntries) : count;
+        List<Object> result = new ArrayList(limit);
+
+        for(int i = 0; i < limit; ++i) {
+            result.add(ranked[i].key);
+        }
+
+        return result;
+    }
+
+    private static final class RankedKey implements Comparable<BootstrapRanking.RankedKey> {
+        private final Object key;
+        private final double score;
+
+        private RankedKey(Object key, double score) {
+            this.key = key;
+            this.score = score;
+        }
+
+        public int compareTo(BootstrapRanking.RankedKey other) {
+            return Double.compare(other.score, this.score);
+        }
+    }
+}
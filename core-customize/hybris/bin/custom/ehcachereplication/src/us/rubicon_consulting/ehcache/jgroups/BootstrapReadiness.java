@@ -0,0 +1,111 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+
+public class BootstrapReadiness {
+    private final ReadinessSettings settings;
+    private final List<BootstrapProgress> progress;
+    private final long startTime;
+
+    public BootstrapReadiness(ReadinessSettings settings, Collection<BootstrapProgress> progress) {
+        this(settings, progress, Long.MAX_VALUE);
+    }
+
+    public BootstrapReadiness(ReadinessSettings settings, Collection<BootstrapProgress> progress, long startTime) {
+        this.settings = settings;
+        this.progress = Collections.unmodifiableList(new ArrayList(progress));
+        this.startTime = startTime;
+    }
+
+    public static BootstrapReadiness forCacheManager(CacheManager cacheManager, ReadinessSettings settings) {
+        List<BootstrapProgress> progress = new ArrayList();
+        return new BootstrapReadiness(settings, progress, collectProgress(cacheManager, progress, Long.MAX_VALUE));
+    }
+
+    public static BootstrapReadiness forAllCacheManagers(ReadinessSettings settings) {
+        List<BootstrapProgress> progress = new ArrayList();
+        long startTime = Long.MAX_VALUE;
+        Iterator i$ = (new ArrayList(CacheManager.ALL_CACHE_MANAGERS)).iterator();
+
+        while(i$.hasNext()) {
+            CacheManager cacheManager = (CacheManager)i$.next();
+            startTime = collectProgress(cacheManager, progress, startTime);
+        }
+
+        return new BootstrapReadiness(settings, progress, startTime);
+    }
+
+    private static long collectProgress(CacheManager cacheManager, List<BootstrapProgress> progress, long startTime) {
+        JGroupsCacheManagerPeerProvider peerProvider = JGroupsCacheManagerPeerProvider.getCachePeerProvider(cacheManager);
+        JGroupsBootstrapManager bootstrapManager = peerProvider == null ? null : peerProvider.getBootstrapManager();
+        if (bootstrapManager == null) {
+            return startTime;
+        }
+
+        Set<String> started = new HashSet();
+        Iterator i$ = (new ArrayList(bootstrapManager.getBootstrapProgress())).iterator();
+
+        while(i$.hasNext()) {
+            BootstrapProgress cacheProgress = (BootstrapProgress)i$.next();
+            started.add(cacheProgress.getCacheName());
+            progress.add(cacheProgress);
+        }
+
+        // a cache with a bootstrap loader that did not start yet is loading since the member started
+        String[] cacheNames = cacheManager.getCacheNames();
+        for (int i = 0; i < cacheNames.length; ++i) {
+            Ehcache cache = cacheManager.getEhcache(cacheNames[i]);
+            if (cache != null && cache.getBootstrapCacheLoader() != null && !started.contains(cacheNames[i])) {
+                progress.add(new BootstrapProgress(cacheNames[i], bootstrapManager.getStartTime()));
+            }
+        }
+
+        return Math.min(startTime, bootstrapManager.getStartTime());
+    }
+
+    public ReadinessSettings getSettings() {
+        return this.settings;
+    }
+
+    public List<BootstrapProgress> getProgress() {
+        return this.progress;
+    }
+
+    public long getStartTime() {
+        return this.startTime;
+    }
+
+    public boolean isReady(long now) {
+        // a member without caches to bootstrap is ready, a required cache that does not bootstrap is never waited for
+        Iterator i$ = this.progress.iterator();
+
+        while(i$.hasNext()) {
+            BootstrapProgress cacheProgress = (BootstrapProgress)i$.next();
+            if (this.settings.isRequired(cacheProgress.getCacheName()) && !this.isReady(cacheProgress, now)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean isReady(BootstrapProgress cacheProgress, long now) {
+        // an incomplete bootstrap does not get any better by waiting, the cache warms up from regular replication
+        if (cacheProgress.isDone()) {
+            return true;
+        } else if (now - Math.min(cacheProgress.getStartTime(), this.startTime) >= this.settings.getMaxWait()) {
+            // the wait is counted from the start of the member, not from a bootstrap requested later
+            return true;
+        } else {
+            return cacheProgress.getProgress() * 100.0D >= (double)this.settings.getMinProgress();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import de.hybris.platform.util.Config;
+import us.rubicon_consulting.constants.EhcachereplicationConstants;
+
+public class BootstrapSettings {
+    public static final BootstrapSettings DEFAULT = new BootstrapSettings(defaultParallelism(), 4);
+    private final int parallelism;
+    private final int segmentsAhead;
+    private final boolean hotFirst;
+    private final long minRemainingTtl;
+    private final long stateTimeout;
+
+    public BootstrapSettings(int parallelism, int segmentsAhead) {
+        this(parallelism, segmentsAhead, true, 5000L, 1000L);
+    }
+
+    public BootstrapSettings(int parallelism, int segmentsAhead, boolean hotFirst, long minRemainingTtl, long stateTimeout) {
+        // one core is always left to the application, even if more are configured
+        this.parallelism = Math.max(1, Math.min(parallelism, Runtime.getRuntime().availableProcessors() - 1));
+        this.segmentsAhead = Math.max(1, segmentsAhead);
+        this.hotFirst = hotFirst;
+        this.minRemainingTtl = Math.max(0L, minRemainingTtl);
+        this.stateTimeout = Math.max(0L, stateTimeout);
+    }
+
+    public static BootstrapSettings fromConfig() {
+        return new BootstrapSettings(
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.BOOTSTRAP_PARALLELISM, defaultParallelism()),
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.BOOTSTRAP_SEGMENTS_AHEAD, 4),
+                Config.getBoolean(EhcachereplicationConstants.EhcacheConfigConstants.BOOTSTRAP_HOT_FIRST, true),
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.BOOTSTRAP_MIN_REMAINING_TTL, 5000L),
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.BOOTSTRAP_STATE_TIMEOUT, 1000L));
+    }
+
+    private static int defaultParallelism() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    public int getSegmentsAhead() {
+        return this.segmentsAhead;
+    }
+
+    public boolean isHotFirst() {
+        return this.hotFirst;
+    }
+
+    public long getMinRemainingTtl() {
+        return this.minRemainingTtl;
+    }
+
+    public long getStateTimeout() {
+        return this.stateTimeout;
+    }
+
+    public String toString() {
+        return "BootstrapSettings [parallelism=" + this.parallelism + ", segmentsAhead=" + this.segmentsAhead + ", hotFirst=" + this.hotFirst + ", minRemainingTtl=" + this.minRemainingTtl + "ms, stateTimeout=" + this.stateTimeout + "ms]";
+    }
+}
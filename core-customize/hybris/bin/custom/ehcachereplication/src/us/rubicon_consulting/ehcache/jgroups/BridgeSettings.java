@@ -0,0 +1,78 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import de.hybris.platform.util.Config;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+import us.rubicon_consulting.constants.EhcachereplicationConstants;
+
+public class BridgeSettings {
+    public static final BridgeSettings DISABLED = new BridgeSettings(false, "site", "ehcachereplication-bridge", Collections.<String>emptySet(), 2000L, 10000, true);
+    private final boolean enabled;
+    private final String site;
+    private final String cluster;
+    private final Set<String> caches;
+    private final long linger;
+    private final int maxEvents;
+    private final boolean compress;
+
+    public BridgeSettings(boolean enabled, String site, String cluster, Set<String> caches, long linger, int maxEvents, boolean compress) {
+        this.enabled = enabled;
+        this.site = site;
+        this.cluster = cluster;
+        this.caches = caches == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(new HashSet(caches));
+        this.linger = Math.max(10L, linger);
+        this.maxEvents = Math.max(1, maxEvents);
+        this.compress = compress;
+    }
+
+    public static BridgeSettings fromConfig() {
+        Set<String> caches = new HashSet();
+        String[] names = StringUtils.split(Config.getString(EhcachereplicationConstants.EhcacheConfigConstants.BRIDGE_CACHES, ""), ", ");
+        if (names != null) {
+            Collections.addAll(caches, names);
+        }
+
+        return new BridgeSettings(
+                Config.getBoolean(EhcachereplicationConstants.EhcacheConfigConstants.BRIDGE_ENABLED, false),
+                Config.getString(EhcachereplicationConstants.EhcacheConfigConstants.BRIDGE_SITE, "site"),
+                Config.getString(EhcachereplicationConstants.EhcacheConfigConstants.BRIDGE_CLUSTER, "ehcachereplication-bridge"),
+                caches,
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.BRIDGE_LINGER, 2000L),
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.BRIDGE_MAX_EVENTS, 10000),
+                Config.getBoolean(EhcachereplicationConstants.EhcacheConfigConstants.BRIDGE_COMPRESS, true));
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public String getSite() {
+        return this.site;
+    }
+
+    public String getCluster() {
+        return this.cluster;
+    }
+
+    public boolean isBridged(String cacheName) {
+        return cacheName != null && (this.caches.contains("*") || this.caches.contains(cacheName));
+    }
+
+    public long getLinger() {
+        return this.linger;
+    }
+
+    public int getMaxEvents() {
+        return this.maxEvents;
+    }
+
+    public boolean isCompress() {
+        return this.compress;
+    }
+
+    public String toString() {
+        return "BridgeSettings [enabled=" + this.enabled + ", site=" + this.site + ", cluster=" + this.cluster + ", caches=" + this.caches + ", linger=" + this.linger + "ms, maxEvents=" + this.maxEvents + ", compress=" + this.compress + "]";
+    }
+}
@@ -0,0 +1,53 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.IOException;
+import net.sf.ehcache.Element;
+
+final class ElementVersions {
+
+    private ElementVersions() {
+    }
+
+    public static long timestampOf(Element element) {
+        return element.getLatestOfCreationAndUpdateTime();
+    }
+
+    public static int compare(Element element, Element other) {
+        return compare(timestampOf(element), element.getVersion(), timestampOf(other), other.getVersion());
+    }
+
+    public static int compare(long timestamp, long version, long otherTimestamp, long otherVersion) {
+        if (timestamp != otherTimestamp) {
+            return timestamp < otherTimestamp ? -1 : 1;
+        } else if (version != otherVersion) {
+            return version < otherVersion ? -1 : 1;
+        } else {
+            return 0;
+        }
+    }
+
+    public static boolean isNewer(Element candidate, Element current) {
+        return current == null || compare(candidate, current) > 0;
+    }
+
+    public static long digestOf(long keyHash, long valueHash) {
+        long hash = keyHash * 0x9E3779B97F4A7C15L;
+        hash ^= valueHash * 0xC2B2AE3D27D4EB4FL;
+        return hash ^ (hash >>> 31);
+    }
+
+    public static long valueHashOf(Element element) {
+        // the times of an element are reset by every cache it is put into, its serialized value is the same on all members
+        Object value = element.getObjectValue();
+        if (value == null) {
+            return 0L;
+        }
+
+        try {
+            SerializedValue serialized = value instanceof SerializedValue ? (SerializedValue)value : SerializedValue.of(value);
+            return ValueFingerprints.fingerprint(serialized.bytes());
+        } catch (IOException var3) {
+            return (long)value.hashCode();
+        }
+    }
+}
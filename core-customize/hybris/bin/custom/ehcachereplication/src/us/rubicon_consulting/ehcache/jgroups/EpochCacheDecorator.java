@@ -0,0 +1,129 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.loader.CacheLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class EpochCacheDecorator extends LazyValueCacheDecorator {
+    private static final Logger LOG = LoggerFactory.getLogger(EpochCacheDecorator.class);
+    private final AtomicLong staleEvictions = new AtomicLong();
+    private long generation;
+    private volatile long epoch;
+
+    public EpochCacheDecorator(Ehcache underlyingCache) {
+        this(underlyingCache, false);
+    }
+
+    public EpochCacheDecorator(Ehcache underlyingCache, boolean peerReadThrough) {
+        super(underlyingCache, peerReadThrough);
+    }
+
+    public synchronized long nextGeneration() {
+        return ++this.generation;
+    }
+
+    public synchronized void advanceEpoch(long generation) {
+        this.generation = Math.max(this.generation, generation);
+        // elements written before the epoch are stale, it starts at the next millisecond and the advance only returns
+        // once it started, so an element written in the millisecond of the advance is stale and one written after it is not
+        this.epoch = System.currentTimeMillis() + 1L;
+
+        while(System.currentTimeMillis() < this.epoch) {
+            Thread.yield();
+        }
+
+        LOG.debug("Advanced epoch of cache {} to generation {} at {}", new Object[]{this.getName(), this.generation, this.epoch});
+    }
+
+    public synchronized long getGeneration() {
+        return this.generation;
+    }
+
+    public long getEpoch() {
+        return this.epoch;
+    }
+
+    public long getStaleEvictions() {
+        return this.staleEvictions.get();
+    }
+
+    public boolean isStale(Element element) {
+        // the element is stamped when it is created or updated, one created before the advance is stale even if put after it
+        long current = this.epoch;
+        return element != null && current != 0L && ElementVersions.timestampOf(element) < current;
+    }
+
+    public Element getQuiet(Object key) {
+        return this.evictStale(this.underlyingCache.getQuiet(key));
+    }
+
+    public Element getQuiet(Serializable key) {
+        return this.evictStale(this.underlyingCache.getQuiet(key));
+    }
+
+    public Element getWithLoader(Object key, CacheLoader loader, Object loaderArgument) {
+        this.recordInterest(key);
+        Element element = this.isPeerReadThrough() ? this.readThrough(key, this.underlyingCache.get(key)) : null;
+        if (element == null || this.isStale(element)) {
+            element = this.underlyingCache.getWithLoader(key, loader, loaderArgument);
+        }
+
+        if (this.isStale(element)) {
+            this.evictStale(element);
+            element = this.underlyingCache.getWithLoader(key, loader, loaderArgument);
+        }
+
+        return this.read(element);
+    }
+
+    public Element putIfAbsent(Element element) {
+        Element previous = this.underlyingCache.putIfAbsent(element);
+        if (this.isStale(previous)) {
+            this.evictStale(previous);
+            previous = this.underlyingCache.putIfAbsent(element);
+        }
+
+        return this.read(previous);
+    }
+
+    public Element putIfAbsent(Element element, boolean doNotNotifyCacheReplicators) {
+        Element previous = this.underlyingCache.putIfAbsent(element, doNotNotifyCacheReplicators);
+        if (this.isStale(previous)) {
+            this.evictStale(previous);
+            previous = this.underlyingCache.putIfAbsent(element, doNotNotifyCacheReplicators);
+        }
+
+        return this.read(previous);
+    }
+
+    protected Element read(Element element) {
+        return super.read(this.evictStale(element));
+    }
+
+    protected Element readThrough(Object key, Element element) {
+        // a stale local element is a miss, the peers may have a current one
+        return super.readThrough(key, this.evictStale(element));
+    }
+
+    private Element evictStale(Element element) {
+        if (!this.isStale(element)) {
+            return element;
+        } else {
+            // only this element is removed, not a current one written meanwhile, the replicators skip stale removals as
+            // the other members advanced their epoch themselves
+            if (this.underlyingCache.removeElement(element)) {
+                this.staleEvictions.incrementAndGet();
+            }
+
+            return null;
+        }
+    }
+
+    public String toString() {
+        return "EpochCacheDecorator [cache=" + this.getName() + ", generation=" + this.getGeneration() + ", epoch=" + this.epoch + ", staleEvictions=" + this.staleEvictions.get() + "]";
+    }
+}
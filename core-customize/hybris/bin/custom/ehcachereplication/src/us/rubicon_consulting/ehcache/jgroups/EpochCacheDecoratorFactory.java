@@ -0,0 +1,19 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.Properties;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.constructs.CacheDecoratorFactory;
+
+public class EpochCacheDecoratorFactory extends CacheDecoratorFactory {
+
+    public EpochCacheDecoratorFactory() {
+    }
+
+    public Ehcache createDecoratedEhcache(Ehcache cache, Properties properties) {
+        return new EpochCacheDecorator(cache, LazyValueCacheDecoratorFactory.isPeerReadThrough(properties));
+    }
+
+    public Ehcache createDefaultDecoratedEhcache(Ehcache cache, Properties properties) {
+        return new EpochCacheDecorator(cache, LazyValueCacheDecoratorFactory.isPeerReadThrough(properties));
+    }
+}
@@ -0,0 +1,25 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+
+final class FingerprintedEventMessage extends JGroupEventMessage {
+    private static final long serialVersionUID = 1L;
+    // only held by the sender, the fingerprint of the value is recorded once the transport took the message
+    private final transient ValueFingerprints.Pending fingerprint;
+
+    FingerprintedEventMessage(int event, Serializable key, Element element, String cacheName, long asyncTime, ValueFingerprints.Pending fingerprint) {
+        super(event, key, element, cacheName, asyncTime);
+        this.fingerprint = fingerprint;
+    }
+
+    void sent() {
+        this.fingerprint.sent();
+    }
+
+    private Object writeReplace() {
+        // the other members get the plain event
+        return new JGroupEventMessage(this.getEvent(), this.getSerializableKey(), this.getElement(), this.getCacheName(), this.getAsyncTime());
+    }
+}
@@ -0,0 +1,241 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import de.hybris.platform.cluster.BroadcastMessageListener;
+import de.hybris.platform.cluster.BroadcastService;
+import de.hybris.platform.cluster.DefaultBroadcastService;
+import de.hybris.platform.cluster.RawMessage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.jgroups.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HybrisClusterTransport implements ReplicationTransport, BroadcastMessageListener {
+    public static final int DEFAULT_MESSAGE_KIND = 4711;
+    // the platform sends every message as a single datagram
+    static final int MAX_DATA_SIZE = 60000;
+    private static final Logger LOG = LoggerFactory.getLogger(HybrisClusterTransport.class);
+    private static final byte DATA = 0;
+    private static final byte HELLO = 1;
+    private static final byte BYE = 2;
+    private final int messageKind;
+    private final long heartbeatInterval;
+    private final UUID localAddress = UUID.randomUUID();
+    private final Map<Address, Long> lastSeen = new ConcurrentHashMap();
+    private BroadcastService broadcastService;
+    private Timer heartbeatTimer;
+    private String clusterName;
+    private volatile ReplicationTransport.Listener listener;
+    private volatile List<Address> members = Collections.emptyList();
+    private volatile boolean connected;
+
+    public HybrisClusterTransport(int messageKind, long heartbeatInterval) {
+        this(messageKind, heartbeatInterval, (BroadcastService)null);
+    }
+
+    HybrisClusterTransport(int messageKind, long heartbeatInterval, BroadcastService broadcastService) {
+        this.messageKind = messageKind;
+        this.heartbeatInterval = Math.max(500L, heartbeatInterval);
+        this.broadcastService = broadcastService;
+    }
+
+    public void connect(String clusterName, ReplicationTransport.Listener listener) throws Exception {
+        this.clusterName = clusterName;
+        this.listener = listener;
+        if (this.broadcastService == null) {
+            this.broadcastService = DefaultBroadcastService.getInstance();
+        }
+
+        this.updateMembers();
+        this.broadcastService.registerMessageListener(this, false);
+        this.connected = true;
+        this.heartbeatTimer = new Timer(clusterName + " Cluster Heartbeat Thread", true);
+        this.heartbeatTimer.schedule(new HybrisClusterTransport.HeartbeatTimerTask(), 0L, this.heartbeatInterval);
+        LOG.info("Joined '{}' over the platform cluster messaging as {} (message kind {})", new Object[]{clusterName, this.localAddress, this.messageKind});
+    }
+
+    public void send(Address dest, byte[] data, Message.Flag... flags) throws Exception {
+        // the platform only broadcasts datagrams without retransmission or ordering and the flags have no effect, unicasts
+        // carry their destination and are dropped by all other members; bootstrap and peer lookups are disabled over it,
+        // the cache peer splits batches larger than a message
+        if (data.length > MAX_DATA_SIZE) {
+            throw new IOException("Message of " + data.length + " bytes exceeds the " + MAX_DATA_SIZE + " bytes of a platform cluster message");
+        }
+
+        this.broadcast(DATA, dest, data);
+    }
+
+    public List<Address> getMembers() {
+        return this.members;
+    }
+
+    public Address getLocalAddress() {
+        return this.localAddress;
+    }
+
+    public boolean isConnected() {
+        return this.connected;
+    }
+
+    public int getMaxMessageSize() {
+        return MAX_DATA_SIZE;
+    }
+
+    public void close() {
+        if (this.connected) {
+            this.connected = false;
+            this.heartbeatTimer.cancel();
+
+            try {
+                this.broadcast(BYE, (Address)null, new byte[0]);
+            } catch (Exception var2) {
+                LOG.debug("Failed to announce leaving '{}'", this.clusterName, var2);
+            }
+
+            this.broadcastService.unregisterMessageListener(this);
+            this.lastSeen.clear();
+        }
+
+    }
+
+    public boolean processMessage(RawMessage message) {
+        if (message.getKind() != this.messageKind) {
+            return false;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(message.getData()));
+            byte type = in.readByte();
+            if (!this.clusterName.equals(in.readUTF())) {
+                return false;
+            }
+
+            UUID src = new UUID(in.readLong(), in.readLong());
+            UUID dest = in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+            if (src.equals(this.localAddress) || dest != null && !dest.equals(this.localAddress)) {
+                return true;
+            }
+
+            switch(type) {
+                case HELLO:
+                    if (this.lastSeen.put(src, System.currentTimeMillis()) == null) {
+                        // answer right away, the new member does not have to wait a heartbeat to see this one
+                        this.broadcast(HELLO, src, new byte[0]);
+                        this.updateMembers();
+                    }
+                    break;
+                case BYE:
+                    if (this.lastSeen.remove(src) != null) {
+                        this.updateMembers();
+                    }
+                    break;
+                default:
+                    if (this.lastSeen.put(src, System.currentTimeMillis()) == null) {
+                        this.updateMembers();
+                    }
+
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    ReplicationTransport.Listener current = this.listener;
+                    if (current != null) {
+                        current.receive(src, data, 0, data.length);
+                    }
+            }
+        } catch (Exception var8) {
+            LOG.warn("Failed to process cluster message of kind " + this.messageKind, var8);
+        }
+
+        return true;
+    }
+
+    private void broadcast(byte type, Address dest, byte[] data) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length + 64);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(type);
+        out.writeUTF(this.clusterName);
+        out.writeLong(this.localAddress.getMostSignificantBits());
+        out.writeLong(this.localAddress.getLeastSignificantBits());
+        out.writeBoolean(dest != null);
+        if (dest != null) {
+            out.writeLong(((UUID)dest).getMostSignificantBits());
+            out.writeLong(((UUID)dest).getLeastSignificantBits());
+        }
+
+        if (type == DATA) {
+            out.writeInt(data.length);
+            out.write(data);
+        }
+
+        out.close();
+        this.broadcastService.send(new RawMessage(this.messageKind, buffer.toByteArray()));
+    }
+
+    private synchronized void updateMembers() {
+        List<Address> view = new ArrayList(this.lastSeen.size() + 1);
+        view.add(this.localAddress);
+        view.addAll(this.lastSeen.keySet());
+        Collections.sort(view);
+        if (!view.equals(this.members)) {
+            this.members = Collections.unmodifiableList(view);
+            LOG.info("Members of '{}' over the platform cluster messaging: {}", this.clusterName, view);
+            ReplicationTransport.Listener current = this.listener;
+            if (current != null) {
+                current.viewAccepted(this.members);
+            }
+        }
+
+    }
+
+    private void expireMembers() {
+        long expiry = System.currentTimeMillis() - 3L * this.heartbeatInterval;
+        boolean expired = false;
+        Iterator i$ = this.lastSeen.entrySet().iterator();
+
+        while(i$.hasNext()) {
+            Entry<Address, Long> entry = (Entry)i$.next();
+            if ((Long)entry.getValue() < expiry) {
+                LOG.info("Member {} of '{}' missed three heartbeats and is removed", entry.getKey(), this.clusterName);
+                i$.remove();
+                expired = true;
+            }
+        }
+
+        if (expired) {
+            this.updateMembers();
+        }
+
+    }
+
+    public String toString() {
+        return "HybrisClusterTransport [address=" + this.localAddress + ", cluster=" + this.clusterName + ", messageKind=" + this.messageKind + ", members=" + this.members.size() + "]";
+    }
+
+    private final class HeartbeatTimerTask extends TimerTask {
+        private HeartbeatTimerTask() {
+        }
+
+        public void run() {
+            try {
+                HybrisClusterTransport.this.expireMembers();
+                HybrisClusterTransport.this.broadcast(HELLO, (Address)null, new byte[0]);
+            } catch (Exception var2) {
+                LOG.warn("Failed to send the heartbeat of '" + HybrisClusterTransport.this.clusterName + "'", var2);
+            }
+
+        }
+    }
+}
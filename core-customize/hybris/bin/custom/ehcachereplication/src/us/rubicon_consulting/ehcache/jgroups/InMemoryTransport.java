@@ -0,0 +1,231 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.jgroups.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class InMemoryTransport implements ReplicationTransport {
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryTransport.class);
+    private static final Map<String, InMemoryTransport.Network> NETWORKS = new HashMap();
+    private static final ExecutorService OOB_DELIVERY = Executors.newCachedThreadPool(new InMemoryTransport.DeliveryThreadFactory("OOB"));
+    private final String network;
+    private final Address localAddress = UUID.randomUUID();
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private volatile InMemoryTransport.Network joined;
+    private volatile ReplicationTransport.Listener listener;
+    private volatile List<Address> members = Collections.emptyList();
+    private volatile ExecutorService delivery;
+
+    public InMemoryTransport() {
+        this("default");
+    }
+
+    public InMemoryTransport(String network) {
+        this.network = network;
+    }
+
+    public void connect(String clusterName, ReplicationTransport.Listener listener) {
+        this.listener = listener;
+        this.delivery = Executors.newSingleThreadExecutor(new InMemoryTransport.DeliveryThreadFactory(clusterName + " " + this.localAddress));
+        String name = this.network + "/" + clusterName;
+        synchronized(NETWORKS) {
+            InMemoryTransport.Network network = (InMemoryTransport.Network)NETWORKS.get(name);
+            if (network == null) {
+                network = new InMemoryTransport.Network(name);
+                NETWORKS.put(name, network);
+            }
+
+            network.join(this);
+            this.joined = network;
+        }
+
+        LOG.debug("{} joined in-memory network {}", this.localAddress, name);
+    }
+
+    public void send(Address dest, byte[] data, Message.Flag... flags) {
+        InMemoryTransport.Network current = this.joined;
+        if (current == null) {
+            throw new IllegalStateException("In-memory transport " + this.localAddress + " is not connected");
+        }
+
+        boolean oob = false;
+
+        for(int i = 0; i < flags.length; ++i) {
+            oob |= flags[i] == Message.Flag.OOB;
+        }
+
+        this.sentMessages.incrementAndGet();
+        this.sentBytes.addAndGet((long)data.length);
+        current.deliver(this.localAddress, dest, data, oob);
+    }
+
+    public List<Address> getMembers() {
+        return this.members;
+    }
+
+    public Address getLocalAddress() {
+        return this.localAddress;
+    }
+
+    public boolean isConnected() {
+        return this.joined != null;
+    }
+
+    public int getMaxMessageSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    public long getSentMessages() {
+        return this.sentMessages.get();
+    }
+
+    public long getSentBytes() {
+        return this.sentBytes.get();
+    }
+
+    public void close() {
+        InMemoryTransport.Network current = this.joined;
+        this.joined = null;
+        if (current != null) {
+            synchronized(NETWORKS) {
+                current.leave(this);
+            }
+        }
+
+        ExecutorService executor = this.delivery;
+        if (executor != null) {
+            executor.shutdown();
+
+            try {
+                executor.awaitTermination(5L, TimeUnit.SECONDS);
+            } catch (InterruptedException var4) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+    private void enqueue(final Address src, final byte[] data, boolean oob) {
+        Runnable task = new Runnable() {
+            public void run() {
+                ReplicationTransport.Listener current = InMemoryTransport.this.listener;
+                if (current != null) {
+                    current.receive(src, data, 0, data.length);
+                }
+
+            }
+        };
+        this.execute(oob ? OOB_DELIVERY : this.delivery, task);
+    }
+
+    private void acceptView(final List<Address> view) {
+        this.members = view;
+        this.execute(this.delivery, new Runnable() {
+            public void run() {
+                ReplicationTransport.Listener current = InMemoryTransport.this.listener;
+                if (current != null) {
+                    current.viewAccepted(view);
+                }
+
+            }
+        });
+    }
+
+    private void execute(ExecutorService executor, Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RuntimeException var4) {
+            LOG.trace("Dropping delivery to closed in-memory transport {}", this.localAddress);
+        }
+
+    }
+
+    public String toString() {
+        return "InMemoryTransport [address=" + this.localAddress + ", network=" + this.network + ", members=" + this.members.size() + "]";
+    }
+
+    private static final class Network {
+        private final String name;
+        private final List<InMemoryTransport> transports = new CopyOnWriteArrayList();
+
+        private Network(String name) {
+            this.name = name;
+        }
+
+        private void join(InMemoryTransport transport) {
+            this.transports.add(transport);
+            this.publishView();
+        }
+
+        private void leave(InMemoryTransport transport) {
+            this.transports.remove(transport);
+            if (this.transports.isEmpty()) {
+                InMemoryTransport.NETWORKS.remove(this.name);
+            } else {
+                this.publishView();
+            }
+
+        }
+
+        private void publishView() {
+            List<Address> view = new ArrayList(this.transports.size());
+            Iterator i$ = this.transports.iterator();
+
+            while(i$.hasNext()) {
+                view.add(((InMemoryTransport)i$.next()).localAddress);
+            }
+
+            view = Collections.unmodifiableList(view);
+            Iterator t$ = this.transports.iterator();
+
+            while(t$.hasNext()) {
+                ((InMemoryTransport)t$.next()).acceptView(view);
+            }
+
+        }
+
+        private void deliver(Address src, Address dest, byte[] data, boolean oob) {
+            Iterator i$ = this.transports.iterator();
+
+            while(i$.hasNext()) {
+                InMemoryTransport transport = (InMemoryTransport)i$.next();
+                // like a JGroups channel discarding its own messages, broadcasts are not delivered to the sender
+                if (dest == null ? !transport.localAddress.equals(src) : transport.localAddress.equals(dest)) {
+                    transport.enqueue(src, data, oob);
+                }
+            }
+
+        }
+    }
+
+    private static final class DeliveryThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger threads = new AtomicInteger();
+
+        private DeliveryThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "In-Memory Delivery " + this.name + "-" + this.threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import org.jgroups.Address;
+
+public final class InterestInvalidation implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final Serializable key;
+    private final Address[] copies;
+
+    public InterestInvalidation(Serializable key, List<Address> copies) {
+        this.key = key;
+        this.copies = (Address[])copies.toArray(new Address[copies.size()]);
+    }
+
+    public Serializable getKey() {
+        return this.key;
+    }
+
+    public boolean isCopiedTo(Address address) {
+        for(int i = 0; i < this.copies.length; ++i) {
+            if (this.copies[i].equals(address)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public String toString() {
+        return "InterestInvalidation [key=" + this.key + ", copies=" + Arrays.toString(this.copies) + "]";
+    }
+}
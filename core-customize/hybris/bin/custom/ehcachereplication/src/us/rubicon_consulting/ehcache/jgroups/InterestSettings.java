@@ -0,0 +1,46 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import de.hybris.platform.util.Config;
+import us.rubicon_consulting.constants.EhcachereplicationConstants;
+
+public class InterestSettings {
+    private final boolean enabled;
+    private final long interval;
+    private final int bits;
+    private final int hashes;
+
+    public InterestSettings(boolean enabled, long interval, int bits, int hashes) {
+        this.enabled = enabled;
+        this.interval = Math.max(1000L, interval);
+        this.bits = Integer.highestOneBit(Math.max(64, Math.min(bits, 1 << 24)));
+        this.hashes = Math.min(8, Math.max(1, hashes));
+    }
+
+    public static InterestSettings fromConfig() {
+        return new InterestSettings(
+                Config.getBoolean(EhcachereplicationConstants.EhcacheConfigConstants.INTEREST_ENABLED, false),
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.INTEREST_INTERVAL, 30000L),
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.INTEREST_BITS, 65536),
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.INTEREST_HASHES, 3));
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public long getInterval() {
+        return this.interval;
+    }
+
+    public int getBits() {
+        return this.bits;
+    }
+
+    public int getHashes() {
+        return this.hashes;
+    }
+
+    public String toString() {
+        return "InterestSettings [enabled=" + this.enabled + ", interval=" + this.interval + "ms, bits=" + this.bits + ", hashes=" + this.hashes + "]";
+    }
+}
@@ -0,0 +1,54 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class InterestSketch {
+    private final int bits;
+    private final int hashes;
+    private volatile AtomicLongArray current;
+    private volatile AtomicLongArray previous;
+
+    public InterestSketch(int bits, int hashes) {
+        this.bits = bits;
+        this.hashes = hashes;
+        this.current = new AtomicLongArray(bits >>> 6);
+        this.previous = new AtomicLongArray(bits >>> 6);
+    }
+
+    public void record(Object key) {
+        AtomicLongArray words = this.current;
+        long hash = InterestSummary.hash(key);
+        int mask = this.bits - 1;
+
+        for(int i = 0; i < this.hashes; ++i) {
+            int index = InterestSummary.index(hash, i) & mask;
+            long bit = 1L << index;
+            long word = words.get(index >>> 6);
+            // reads of known keys only read the words, the first read of a key pays for the CAS
+            while((word & bit) == 0L && !words.compareAndSet(index >>> 6, word, word | bit)) {
+                word = words.get(index >>> 6);
+            }
+        }
+
+    }
+
+    public synchronized InterestSummary rotate() {
+        // the summary covers the keys read during the last two intervals, older reads decay with the rotation
+        InterestSummary summary = this.snapshot();
+        this.previous = this.current;
+        this.current = new AtomicLongArray(this.bits >>> 6);
+        return summary;
+    }
+
+    public synchronized InterestSummary snapshot() {
+        AtomicLongArray older = this.previous;
+        AtomicLongArray recent = this.current;
+        long[] summary = new long[recent.length()];
+
+        for(int i = 0; i < summary.length; ++i) {
+            summary[i] = recent.get(i) | older.get(i);
+        }
+
+        return new InterestSummary(summary, this.hashes);
+    }
+}
@@ -0,0 +1,55 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+
+public final class InterestSummary implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final long[] bits;
+    private final int hashes;
+
+    InterestSummary(long[] bits, int hashes) {
+        this.bits = bits;
+        this.hashes = hashes;
+    }
+
+    public boolean mightContain(Object key) {
+        long hash = hash(key);
+        int mask = (this.bits.length << 6) - 1;
+
+        for(int i = 0; i < this.hashes; ++i) {
+            int index = index(hash, i) & mask;
+            if ((this.bits[index >>> 6] & 1L << index) == 0L) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public int getBitCount() {
+        int count = 0;
+
+        for(int i = 0; i < this.bits.length; ++i) {
+            count += Long.bitCount(this.bits[i]);
+        }
+
+        return count;
+    }
+
+    public double getFillRatio() {
+        return (double)this.getBitCount() / (double)(this.bits.length << 6);
+    }
+
+    static long hash(Object key) {
+        // hashCode must be equal on all members, keys without such a hashCode only ever get invalidations
+        return (long)(key == null ? 0 : key.hashCode()) * -7046029254386353131L;
+    }
+
+    static int index(long hash, int i) {
+        return (int)(hash >>> 32) + i * ((int)hash | 1);
+    }
+
+    public String toString() {
+        return "InterestSummary [bits=" + (this.bits.length << 6) + ", hashes=" + this.hashes + ", fill=" + Math.round(this.getFillRatio() * 100.0D) + "%]";
+    }
+}
@@ -0,0 +1,225 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import de.hybris.platform.util.Config;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import us.rubicon_consulting.constants.EhcachereplicationConstants;
+
+public class InvalidationFence {
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    public static final long DEFAULT_RETENTION = 60000L;
+    private final int maxEntries;
+    private final long retention;
+    private final ConcurrentMap<String, InvalidationFence.Fence> fences = new ConcurrentHashMap();
+    private final AtomicLong skipped = new AtomicLong();
+    private volatile boolean stamping;
+
+    public InvalidationFence() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_RETENTION);
+    }
+
+    public InvalidationFence(int maxEntries, long retention) {
+        this.maxEntries = maxEntries;
+        this.retention = retention;
+    }
+
+    public static InvalidationFence fromConfig() {
+        return new InvalidationFence(
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.VERSIONS_MAX_ENTRIES, DEFAULT_MAX_ENTRIES),
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.VERSIONS_RETENTION, DEFAULT_RETENTION));
+    }
+
+    public void record(String cacheName, Object key, long removalTime) {
+        // removals are always applied, the tombstone only keeps older writes of the key out
+        InvalidationFence.Fence fence = this.getFence(cacheName);
+        synchronized(fence) {
+            long[] previous = (long[])fence.tombstones.remove(key);
+            long time = previous != null && this.isRetained(previous) ? Math.max(previous[0], removalTime) : removalTime;
+            fence.tombstones.put(key, new long[]{time, System.currentTimeMillis()});
+            fence.writes.remove(key);
+            fence.stamps.remove(key);
+        }
+    }
+
+    public boolean admit(String cacheName, Object key, long timestamp, long version) {
+        InvalidationFence.Fence fence = this.getFence(cacheName);
+        synchronized(fence) {
+            if (!this.isAdmissible(fence, key, timestamp, version)) {
+                this.skipped.incrementAndGet();
+                return false;
+            }
+
+            this.write(fence, key, timestamp, version);
+            return true;
+        }
+    }
+
+    public void stamp(String cacheName, Object key, long timestamp, long version) {
+        // a local write or repair is in the cache whether or not it is newer than the last write the fence saw
+        InvalidationFence.Fence fence = this.getFence(cacheName);
+        synchronized(fence) {
+            if (this.isAdmissible(fence, key, timestamp, version)) {
+                this.write(fence, key, timestamp, version);
+            } else if (this.stamping) {
+                fence.stamps.put(key, new long[]{timestamp, version});
+            }
+        }
+    }
+
+    private void write(InvalidationFence.Fence fence, Object key, long timestamp, long version) {
+        // re-inserted so the most recently written keys are the last to be evicted
+        fence.writes.remove(key);
+        fence.writes.put(key, new long[]{timestamp, version, System.currentTimeMillis()});
+        if (this.stamping) {
+            fence.stamps.put(key, new long[]{timestamp, version});
+        }
+    }
+
+    public long[] getStamp(String cacheName, Object key) {
+        // the time and version the writing member gave the value of the key, the cache resets them when it stores the value
+        InvalidationFence.Fence fence = (InvalidationFence.Fence)this.fences.get(cacheName);
+        if (fence == null) {
+            return null;
+        } else {
+            synchronized(fence) {
+                return (long[])fence.stamps.get(key);
+            }
+        }
+    }
+
+    public void retainStamps(String cacheName, Collection<?> keys) {
+        // stamps of evicted and expired keys are dropped once per anti-entropy round
+        InvalidationFence.Fence fence = (InvalidationFence.Fence)this.fences.get(cacheName);
+        if (fence != null) {
+            HashSet<Object> retained = new HashSet(keys);
+            synchronized(fence) {
+                fence.stamps.keySet().retainAll(retained);
+            }
+        }
+    }
+
+    public boolean isStamping() {
+        return this.stamping;
+    }
+
+    public void setStamping(boolean stamping) {
+        // only anti-entropy compares the stamps, without it they are not kept
+        this.stamping = stamping;
+    }
+
+    public boolean isAdmissible(String cacheName, Object key, long timestamp, long version) {
+        // read-only, a bootstrap of many entries must not evict the tombstones it has to respect
+        InvalidationFence.Fence fence = (InvalidationFence.Fence)this.fences.get(cacheName);
+        if (fence == null) {
+            return true;
+        } else {
+            synchronized(fence) {
+                if (this.isAdmissible(fence, key, timestamp, version)) {
+                    return true;
+                }
+            }
+
+            this.skipped.incrementAndGet();
+            return false;
+        }
+    }
+
+    private boolean isAdmissible(InvalidationFence.Fence fence, Object key, long timestamp, long version) {
+        long[] removal = (long[])fence.tombstones.get(key);
+        if (removal != null && this.isRetained(removal) && timestamp <= removal[0]) {
+            return false;
+        } else {
+            long[] previous = (long[])fence.writes.get(key);
+            return previous == null || !this.isRetained(previous) || ElementVersions.compare(timestamp, version, previous[0], previous[1]) > 0;
+        }
+    }
+
+    public boolean isFenced(String cacheName, Object key, long updateTime) {
+        InvalidationFence.Fence fence = (InvalidationFence.Fence)this.fences.get(cacheName);
+        if (fence == null) {
+            return false;
+        } else {
+            synchronized(fence) {
+                long[] removal = (long[])fence.tombstones.get(key);
+                if (removal == null) {
+                    return false;
+                } else if (!this.isRetained(removal)) {
+                    fence.tombstones.remove(key);
+                    return false;
+                } else {
+                    return updateTime <= removal[0];
+                }
+            }
+        }
+    }
+
+    public long getRemovalTime(String cacheName, Object key) {
+        InvalidationFence.Fence fence = (InvalidationFence.Fence)this.fences.get(cacheName);
+        if (fence == null) {
+            return Long.MIN_VALUE;
+        } else {
+            synchronized(fence) {
+                long[] removal = (long[])fence.tombstones.get(key);
+                return removal != null && this.isRetained(removal) ? removal[0] : Long.MIN_VALUE;
+            }
+        }
+    }
+
+    private boolean isRetained(long[] entry) {
+        // the time an entry was recorded is its last field
+        return System.currentTimeMillis() - entry[entry.length - 1] <= this.retention;
+    }
+
+    public void clear(String cacheName) {
+        this.fences.remove(cacheName);
+    }
+
+    public long getSkipped() {
+        return this.skipped.get();
+    }
+
+    private InvalidationFence.Fence getFence(String cacheName) {
+        InvalidationFence.Fence fence = (InvalidationFence.Fence)this.fences.get(cacheName);
+        if (fence == null) {
+            InvalidationFence.Fence newFence = new InvalidationFence.Fence(this.maxEntries);
+            fence = (InvalidationFence.Fence)this.fences.putIfAbsent(cacheName, newFence);
+            if (fence == null) {
+                fence = newFence;
+            }
+        }
+
+        return fence;
+    }
+
+    public String toString() {
+        return "InvalidationFence [maxEntries=" + this.maxEntries + ", retention=" + this.retention + "ms, caches=" + this.fences.size() + ", skipped=" + this.skipped.get() + ", stamping=" + this.stamping + "]";
+    }
+
+    private static final class Fence {
+        // kept apart so that a burst of writes does not evict the removals
+        private final Map<Object, long[]> writes;
+        private final Map<Object, long[]> tombstones;
+        // one per cached key, not bounded by the retention
+        private final Map<Object, long[]> stamps = new HashMap();
+
+        private Fence(int maxEntries) {
+            this.writes = boundedMap(maxEntries);
+            this.tombstones = boundedMap(maxEntries);
+        }
+
+        private static Map<Object, long[]> boundedMap(final int max) {
+            return new LinkedHashMap<Object, long[]>(16, 0.75F, false) {
+                protected boolean removeEldestEntry(Entry<Object, long[]> eldest) {
+                    return this.size() > max;
+                }
+            };
+        }
+    }
+}
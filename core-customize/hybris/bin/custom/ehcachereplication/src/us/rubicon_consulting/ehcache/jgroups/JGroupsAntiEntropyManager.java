@@ -0,0 +1,488 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.DiscardPolicy;
+import java.util.concurrent.TimeUnit;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.CacheReplicator;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+import net.sf.ehcache.event.CacheEventListener;
+import net.sf.ehcache.util.NamedThreadFactory;
+import org.jgroups.Address;
+import org.jgroups.util.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class JGroupsAntiEntropyManager {
+    public static final int ANTI_ENTROPY_DIGEST = 20;
+    public static final int ANTI_ENTROPY_KEYS = 21;
+    public static final int ANTI_ENTROPY_FETCH = 22;
+    public static final int ANTI_ENTROPY_REPAIR = 23;
+    private static final Logger LOG = LoggerFactory.getLogger(JGroupsAntiEntropyManager.class);
+    private static final int ANTI_ENTROPY_CHUNK_SIZE = 100;
+    private static final int ANTI_ENTROPY_KEYS_CHUNK_SIZE = 500;
+    private static final int ANTI_ENTROPY_SLICE_SIZE = 200;
+    private static final int ANTI_ENTROPY_MAX_PENDING_TASKS = 64;
+    private volatile boolean alive = true;
+    private final String clusterName;
+    private final JGroupsCachePeer cachePeer;
+    private final CacheManager cacheManager;
+    private final AntiEntropySettings settings;
+    private final InvalidationFence invalidationFence;
+    private final BandwidthLimiter bandwidthLimiter;
+    private final ThreadPoolExecutor antiEntropyExecutor;
+    private final Timer antiEntropyTimer;
+    private int peerRotation;
+    private int bucketRotation;
+
+    public JGroupsAntiEntropyManager(String clusterName, JGroupsCachePeer cachePeer, CacheManager cacheManager, AntiEntropySettings settings) {
+        this(clusterName, cachePeer, cacheManager, settings, new InvalidationFence());
+    }
+
+    public JGroupsAntiEntropyManager(String clusterName, JGroupsCachePeer cachePeer, CacheManager cacheManager, AntiEntropySettings settings, InvalidationFence invalidationFence) {
+        this.invalidationFence = invalidationFence;
+        this.invalidationFence.setStamping(true);
+        this.clusterName = clusterName;
+        this.cachePeer = cachePeer;
+        this.cacheManager = cacheManager;
+        this.settings = settings;
+        this.bandwidthLimiter = new BandwidthLimiter(settings.getBandwidthBudget());
+        this.antiEntropyExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue(ANTI_ENTROPY_MAX_PENDING_TASKS), new NamedThreadFactory(clusterName + " Anti-Entropy"), new DiscardPolicy());
+        this.antiEntropyTimer = new Timer(clusterName + " Anti-Entropy Timer Thread", true);
+        this.antiEntropyTimer.schedule(new JGroupsAntiEntropyManager.AntiEntropyTimerTask(), settings.getInterval(), settings.getInterval());
+        LOG.info("Scheduled anti-entropy for '{}' with {}", clusterName, settings);
+    }
+
+    public void dispose() {
+        this.alive = false;
+        this.antiEntropyTimer.cancel();
+        this.antiEntropyTimer.purge();
+        this.antiEntropyExecutor.shutdownNow();
+    }
+
+    public void handleDigest(Address src, JGroupEventMessage message) {
+        this.submit(new JGroupsAntiEntropyManager.DigestRunnable(src, message.getCacheName(), (long[])message.getSerializableKey()));
+    }
+
+    public void handleKeys(Address src, JGroupEventMessage message) {
+        this.submit(new JGroupsAntiEntropyManager.KeysRunnable(src, message.getCacheName(), (Map)message.getSerializableKey()));
+    }
+
+    public void handleFetch(Address src, JGroupEventMessage message) {
+        this.submit(new JGroupsAntiEntropyManager.FetchRunnable(src, message.getCacheName(), (List)message.getSerializableKey()));
+    }
+
+    public void handleRepair(JGroupEventMessage message) {
+        String cacheName = message.getCacheName();
+        Ehcache cache = this.cacheManager.getEhcache(cacheName);
+        Element element = message.getElement();
+        if (cache != null && element != null && message.getSerializableKey() instanceof long[]) {
+            // a key removed or written since it was compared is not overwritten
+            long[] remote = (long[])message.getSerializableKey();
+            Object key = element.getObjectKey();
+            if (reconcile(this.stateOf(cacheName, key, cache.getQuiet(key)), remote, this.invalidationFence.getRemovalTime(cacheName, key)) == JGroupsAntiEntropyManager.Reconciliation.FETCH) {
+                LOG.debug("received anti-entropy repair: cache={}, key={}", cacheName, key);
+                cache.put(element, true);
+                this.invalidationFence.stamp(cacheName, key, remote[0], remote[1]);
+            }
+        }
+    }
+
+    static JGroupsAntiEntropyManager.Reconciliation reconcile(long[] local, long[] remote, long removalTime) {
+        // a state is the stamp of the writing member and the hash of the value, no state means the key is not cached
+        if (local == null) {
+            // the peer missed the removal of the key, it is removed there instead of copied back here
+            return removalTime != Long.MIN_VALUE && removalTime >= remote[0] ? JGroupsAntiEntropyManager.Reconciliation.REMOVE : JGroupsAntiEntropyManager.Reconciliation.FETCH;
+        } else if (local[2] == remote[2]) {
+            return JGroupsAntiEntropyManager.Reconciliation.IN_SYNC;
+        }
+
+        int order = ElementVersions.compare(remote[0], remote[1], local[0], local[1]);
+        if (order == 0) {
+            // unstamped or written in the same millisecond, the hashes decide the same way on both members
+            order = remote[2] < local[2] ? -1 : 1;
+        }
+
+        if (order < 0) {
+            return JGroupsAntiEntropyManager.Reconciliation.PUSH;
+        } else {
+            return removalTime != Long.MIN_VALUE && remote[0] <= removalTime ? JGroupsAntiEntropyManager.Reconciliation.IN_SYNC : JGroupsAntiEntropyManager.Reconciliation.FETCH;
+        }
+    }
+
+    long[] stateOf(String cacheName, Object key, Element element) {
+        if (element == null || element.isExpired()) {
+            return null;
+        }
+
+        long[] stamp = this.invalidationFence.getStamp(cacheName, key);
+        return stamp == null ? new long[]{Long.MIN_VALUE, Long.MIN_VALUE, ElementVersions.valueHashOf(element)} : new long[]{stamp[0], stamp[1], ElementVersions.valueHashOf(element)};
+    }
+
+    public void runAntiEntropyRound() {
+        List<Address> members = new ArrayList(this.cachePeer.getOtherGroupMembers());
+        if (members.isEmpty()) {
+            LOG.trace("There are no other nodes in the cluster '{}' to compare caches with", this.clusterName);
+            return;
+        }
+
+        Collections.sort(members);
+        Address peer = members.get(this.peerRotation++ % members.size());
+        String[] cacheNames = this.cacheManager.getCacheNames();
+        for (int i = 0; i < cacheNames.length && this.alive; ++i) {
+            Ehcache cache = this.cacheManager.getEhcache(cacheNames[i]);
+            if (cache != null && isReplicated(cache)) {
+                long[] digests = this.calculateDigests(cache);
+                LOG.debug("Sending anti-entropy digest of cache {} to {}", cache.getName(), peer);
+                this.send(peer, new JGroupEventMessage(ANTI_ENTROPY_DIGEST, digests, (Element)null, cache.getName()));
+            }
+        }
+    }
+
+    long[] calculateDigests(Ehcache cache) {
+        long[] digests = new long[this.settings.getBuckets()];
+        long notBefore = System.currentTimeMillis() - this.settings.getGracePeriod();
+        JGroupsAntiEntropyManager.CpuThrottle throttle = new JGroupsAntiEntropyManager.CpuThrottle();
+        List keys = cache.getKeys();
+        this.invalidationFence.retainStamps(cache.getName(), keys);
+        Iterator i$ = keys.iterator();
+
+        while(i$.hasNext() && this.alive) {
+            Object key = i$.next();
+            Element element = key instanceof Serializable ? cache.getQuiet(key) : null;
+            if (this.isComparable(element, notBefore)) {
+                long keyHash = keyHashOf(key);
+                digests[this.bucketOf(keyHash)] += ElementVersions.digestOf(keyHash, ElementVersions.valueHashOf(element));
+            }
+
+            throttle.tick();
+        }
+
+        return digests;
+    }
+
+    private boolean isComparable(Element element, long notBefore) {
+        return element != null && !element.isExpired() && ElementVersions.timestampOf(element) < notBefore;
+    }
+
+    private int bucketOf(long keyHash) {
+        return (int)((keyHash & Long.MAX_VALUE) % (long)this.settings.getBuckets());
+    }
+
+    static long keyHashOf(Object key) {
+        // hashCode of enums and of keys without their own hashCode differs between the JVMs of the members
+        try {
+            return ValueFingerprints.fingerprint(Util.objectToByteBuffer(key));
+        } catch (Exception var2) {
+            return (long)key.hashCode();
+        }
+    }
+
+    private void send(Address dest, JGroupEventMessage message) {
+        this.sendAll(dest, Collections.singletonList(message));
+    }
+
+    private void sendAll(Address dest, List<JGroupEventMessage> messages) {
+        int bytes = this.cachePeer.sendSynchronously(dest, messages);
+        this.bandwidthLimiter.consume(bytes);
+    }
+
+    private void submit(Runnable runnable) {
+        if (this.alive) {
+            this.antiEntropyExecutor.execute(runnable);
+        }
+    }
+
+    static boolean isReplicated(Ehcache cache) {
+        Iterator i$ = cache.getCacheEventNotificationService().getCacheEventListeners().iterator();
+
+        while(i$.hasNext()) {
+            CacheEventListener listener = (CacheEventListener)i$.next();
+            if (listener instanceof CacheReplicator) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    static enum Reconciliation {
+        IN_SYNC,
+        FETCH,
+        PUSH,
+        REMOVE;
+
+        private Reconciliation() {
+        }
+    }
+
+    private final class CpuThrottle {
+        private final long started = System.nanoTime();
+        private long busyNanos;
+        private long sliceStart;
+        private int sliceCount;
+
+        private CpuThrottle() {
+            this.sliceStart = this.started;
+        }
+
+        public void tick() {
+            if (++this.sliceCount < ANTI_ENTROPY_SLICE_SIZE) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            this.busyNanos += now - this.sliceStart;
+            int budget = settings.getCpuBudget();
+            long idleNanos = this.busyNanos * (100L - budget) / budget - (now - this.started - this.busyNanos);
+            if (idleNanos > 0L) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(idleNanos);
+                } catch (InterruptedException var7) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            this.sliceCount = 0;
+            this.sliceStart = System.nanoTime();
+        }
+    }
+
+    private abstract class AntiEntropyRunnable implements Runnable {
+        protected final Address src;
+        protected final String cacheName;
+
+        protected AntiEntropyRunnable(Address src, String cacheName) {
+            this.src = src;
+            this.cacheName = cacheName;
+        }
+
+        public void run() {
+            Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+            Ehcache cache = cacheManager.getEhcache(this.cacheName);
+            if (cache == null) {
+                LOG.debug("ignoring anti-entropy message from {} for cache {} which does not exist on this member", this.src, this.cacheName);
+            } else {
+                try {
+                    this.runInternal(cache);
+                } catch (Exception var3) {
+                    LOG.warn("Anti-entropy for cache " + this.cacheName + " with " + this.src + " failed", var3);
+                }
+            }
+        }
+
+        protected abstract void runInternal(Ehcache cache);
+    }
+
+    private final class DigestRunnable extends JGroupsAntiEntropyManager.AntiEntropyRunnable {
+        private final long[] remoteDigests;
+
+        private DigestRunnable(Address src, String cacheName, long[] remoteDigests) {
+            super(src, cacheName);
+            this.remoteDigests = remoteDigests;
+        }
+
+        protected void runInternal(Ehcache cache) {
+            if (this.remoteDigests.length != settings.getBuckets()) {
+                LOG.warn("Ignoring anti-entropy digest of cache {} from {}, it uses {} buckets instead of {}", new Object[]{this.cacheName, this.src, this.remoteDigests.length, settings.getBuckets()});
+                return;
+            }
+
+            long[] localDigests = calculateDigests(cache);
+            boolean[] mismatches = new boolean[localDigests.length];
+            int mismatchCount = 0;
+            for (int i = 0; i < localDigests.length; ++i) {
+                if (localDigests[i] != this.remoteDigests[i]) {
+                    mismatches[i] = true;
+                    ++mismatchCount;
+                }
+            }
+
+            if (mismatchCount == 0) {
+                LOG.debug("anti-entropy: cache {} is in sync with {}", this.cacheName, this.src);
+                return;
+            }
+
+            LOG.debug("anti-entropy: cache {} differs from {} in {} buckets", new Object[]{this.cacheName, this.src, mismatchCount});
+            long notBefore = System.currentTimeMillis() - settings.getGracePeriod();
+            List<Serializable>[] bucketKeys = new List[localDigests.length];
+            CpuThrottle throttle = new CpuThrottle();
+            Iterator i$ = cache.getKeys().iterator();
+
+            while(i$.hasNext() && alive) {
+                Object key = i$.next();
+                if (key instanceof Serializable) {
+                    int bucket = bucketOf(keyHashOf(key));
+                    if (mismatches[bucket] && isComparable(cache.getQuiet(key), notBefore)) {
+                        if (bucketKeys[bucket] == null) {
+                            bucketKeys[bucket] = new ArrayList();
+                        }
+
+                        bucketKeys[bucket].add((Serializable)key);
+                    }
+                }
+
+                throttle.tick();
+            }
+
+            // more keys may differ than a round compares, the next round starts after the last bucket sent in this one
+            HashMap<Serializable, long[]> versions = new HashMap();
+            int sentKeys = 0;
+            int start = bucketRotation;
+            for (int b = 0; b < bucketKeys.length && alive && sentKeys < settings.getMaxKeys(); ++b) {
+                int bucket = (start + b) % bucketKeys.length;
+                bucketRotation = bucket + 1;
+                if (bucketKeys[bucket] != null) {
+                    Iterator k$ = bucketKeys[bucket].iterator();
+
+                    while(k$.hasNext() && sentKeys < settings.getMaxKeys()) {
+                        Serializable key = (Serializable)k$.next();
+                        long[] state = stateOf(this.cacheName, key, cache.getQuiet(key));
+                        if (state != null) {
+                            versions.put(key, state);
+                            ++sentKeys;
+                            if (versions.size() == ANTI_ENTROPY_KEYS_CHUNK_SIZE) {
+                                send(this.src, new JGroupEventMessage(ANTI_ENTROPY_KEYS, versions, (Element)null, this.cacheName));
+                                versions = new HashMap();
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (!versions.isEmpty()) {
+                send(this.src, new JGroupEventMessage(ANTI_ENTROPY_KEYS, versions, (Element)null, this.cacheName));
+            }
+        }
+    }
+
+    private final class KeysRunnable extends JGroupsAntiEntropyManager.AntiEntropyRunnable {
+        private final Map<Serializable, long[]> remoteVersions;
+
+        private KeysRunnable(Address src, String cacheName, Map<Serializable, long[]> remoteVersions) {
+            super(src, cacheName);
+            this.remoteVersions = remoteVersions;
+        }
+
+        protected void runInternal(Ehcache cache) {
+            ArrayList<Serializable> outdatedKeys = new ArrayList();
+            ArrayList<Serializable> newerKeys = new ArrayList();
+            List<JGroupEventMessage> removals = new ArrayList();
+            long notBefore = System.currentTimeMillis() - settings.getGracePeriod();
+            Iterator i$ = this.remoteVersions.entrySet().iterator();
+
+            while(i$.hasNext()) {
+                Entry<Serializable, long[]> entry = (Entry)i$.next();
+                Serializable key = entry.getKey();
+                Element local = cache.getQuiet(key);
+                if (local != null && !local.isExpired() && !isComparable(local, notBefore)) {
+                    // written here just now, the write is still on its way to the peer
+                    continue;
+                }
+
+                long removalTime = invalidationFence.getRemovalTime(this.cacheName, key);
+                switch(reconcile(stateOf(this.cacheName, key, local), entry.getValue(), removalTime)) {
+                    case REMOVE:
+                        removals.add(JGroupsCacheReplicator.createRemoval(key, removalTime, this.cacheName));
+                        break;
+                    case FETCH:
+                        outdatedKeys.add(key);
+                        break;
+                    case PUSH:
+                        newerKeys.add(key);
+                        break;
+                    default:
+                }
+            }
+
+            if (!removals.isEmpty()) {
+                LOG.debug("anti-entropy: repairing {} lost removals of cache {} on {}", new Object[]{removals.size(), this.cacheName, this.src});
+                sendAll(this.src, removals);
+            }
+
+            if (!outdatedKeys.isEmpty()) {
+                LOG.debug("anti-entropy: fetching {} outdated elements of cache {} from {}", new Object[]{outdatedKeys.size(), this.cacheName, this.src});
+                send(this.src, new JGroupEventMessage(ANTI_ENTROPY_FETCH, outdatedKeys, (Element)null, this.cacheName));
+            }
+
+            if (!newerKeys.isEmpty()) {
+                // repaired the same way as if the peer had fetched them
+                LOG.debug("anti-entropy: repairing {} outdated elements of cache {} on {}", new Object[]{newerKeys.size(), this.cacheName, this.src});
+                new JGroupsAntiEntropyManager.FetchRunnable(this.src, this.cacheName, newerKeys).runInternal(cache);
+            }
+        }
+    }
+
+    private final class FetchRunnable extends JGroupsAntiEntropyManager.AntiEntropyRunnable {
+        private final List<Serializable> keys;
+
+        private FetchRunnable(Address src, String cacheName, List<Serializable> keys) {
+            super(src, cacheName);
+            this.keys = keys;
+        }
+
+        protected void runInternal(Ehcache cache) {
+            List<JGroupEventMessage> messageList = new ArrayList(Math.min(this.keys.size(), ANTI_ENTROPY_CHUNK_SIZE));
+            Iterator i$ = this.keys.iterator();
+
+            while(i$.hasNext() && alive) {
+                Serializable key = (Serializable)i$.next();
+                Element element = cache.getQuiet(key);
+                long[] state = stateOf(this.cacheName, key, element);
+                if (state != null) {
+                    // the repair carries the stamp of the element, the peer compares it with its own
+                    messageList.add(new JGroupEventMessage(ANTI_ENTROPY_REPAIR, state, element, this.cacheName));
+                    if (messageList.size() == ANTI_ENTROPY_CHUNK_SIZE) {
+                        sendAll(this.src, messageList);
+                        messageList.clear();
+                    }
+                }
+            }
+
+            if (!messageList.isEmpty()) {
+                sendAll(this.src, messageList);
+            }
+        }
+    }
+
+    private final class AntiEntropyRoundRunnable implements Runnable {
+        private AntiEntropyRoundRunnable() {
+        }
+
+        public void run() {
+            Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+
+            try {
+                runAntiEntropyRound();
+            } catch (Exception var2) {
+                LOG.warn("Anti-entropy round for cluster " + clusterName + " failed", var2);
+            }
+        }
+    }
+
+    private final class AntiEntropyTimerTask extends TimerTask {
+        private AntiEntropyTimerTask() {
+        }
+
+        public void run() {
+            if (!alive) {
+                this.cancel();
+            } else {
+                submit(new JGroupsAntiEntropyManager.AntiEntropyRoundRunnable());
+            }
+        }
+    }
+}
@@ -1,15 +1,26 @@
 package us.rubicon_consulting.ehcache.jgroups;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
+import java.util.concurrent.ThreadPoolExecutor.AbortPolicy;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import net.sf.ehcache.distribution.jgroups.BootstrapRequest;
 import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
 import net.sf.ehcache.distribution.jgroups.ThreadNamingRunnable;
@@ -22,6 +33,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class JGroupsBootstrapManager {
+    public static final int BOOTSTRAP_ESTIMATE = 14;
+    public static final int MEMBER_STATE_REQUEST = 15;
+    public static final int MEMBER_STATE = 16;
     private static final Logger LOG = LoggerFactory.getLogger(JGroupsBootstrapManager.class);
     private static final int BOOTSTRAP_CORE_THREADS = 0;
     private static final int BOOTSTRAP_MAX_THREADS = 50;
@@ -32,20 +46,46 @@ public class JGroupsBootstrapManager {
     private static final long BOOTSTRAP_RESPONSE_TRIES = 10L;
     private static final long BOOTSTRAP_RESPONSE_MAX_TIMEOUT = 300000L;
     private static final int BOOTSTRAP_CHUNK_SIZE = 100;
+    private static final int BOOTSTRAP_SEGMENT_CHUNKS = 8;
     private volatile boolean alive = true;
+    // why the transport cannot carry bootstrap streams, null while it can
+    private volatile String unavailable;
     private final AtomicBoolean referenceTimerScheduled = new AtomicBoolean(false);
     private final BootstrapRequestMap bootstrapRequests = new BootstrapRequestMap();
+    private final ConcurrentMap<String, BootstrapProgress> bootstrapProgress = new ConcurrentHashMap();
+    private final ConcurrentMap<String, BootstrapBudget> bootstrapBudgets = new ConcurrentHashMap();
+    private final ConcurrentMap<Address, MemberState> memberStates = new ConcurrentHashMap();
+    private final ConcurrentMap<Address, Long> memberStateReceived = new ConcurrentHashMap();
+    private final Object memberStateNotifier = new Object();
+    private final AtomicInteger activeResponses = new AtomicInteger();
     private Timer bootstrapRequestCleanupTimer;
     private final ThreadPoolExecutor bootstrapThreadPool;
+    private final ForkJoinPool encoderPool;
+    private final BootstrapSettings bootstrapSettings;
     private final String clusterName;
     private final JGroupsCachePeer cachePeer;
     private final CacheManager cacheManager;
+    private final InvalidationFence invalidationFence;
+    private final long startTime = System.currentTimeMillis();
 
     public JGroupsBootstrapManager(String clusterName, JGroupsCachePeer cachePeer, CacheManager cacheManager) {
+        this(clusterName, cachePeer, cacheManager, BootstrapSettings.DEFAULT);
+    }
+
+    public JGroupsBootstrapManager(String clusterName, JGroupsCachePeer cachePeer, CacheManager cacheManager, BootstrapSettings bootstrapSettings) {
+        this(clusterName, cachePeer, cacheManager, bootstrapSettings, new InvalidationFence());
+    }
+
+    public JGroupsBootstrapManager(String clusterName, JGroupsCachePeer cachePeer, CacheManager cacheManager, BootstrapSettings bootstrapSettings, InvalidationFence invalidationFence) {
         this.clusterName = clusterName;
         this.cachePeer = cachePeer;
         this.cacheManager = cacheManager;
-        this.bootstrapThreadPool = new ThreadPoolExecutor(0, 50, 60L, TimeUnit.SECONDS, new SynchronousQueue(true), new NamedThreadFactory(clusterName + " Bootstrap"), new CallerRunsPolicy());
+        this.bootstrapSettings = bootstrapSettings;
+        this.invalidationFence = invalidationFence;
+        // requests beyond the pool are rejected, a bootstrap stream must not run on the receive thread of the channel
+        this.bootstrapThreadPool = new ThreadPoolExecutor(0, 50, 60L, TimeUnit.SECONDS, new SynchronousQueue(true), new NamedThreadFactory(clusterName + " Bootstrap"), new AbortPolicy());
+        this.encoderPool = new ForkJoinPool(bootstrapSettings.getParallelism(), new JGroupsBootstrapManager.EncoderThreadFactory(clusterName + " Bootstrap Encoder"), (UncaughtExceptionHandler)null, false);
+        LOG.debug("Created bootstrap manager for {} with {}", clusterName, bootstrapSettings);
     }
 
     public boolean waitForCompleteBootstrap(long duration) {
@@ -72,6 +112,8 @@ public class JGroupsBootstrapManager {
             LOG.warn("Interrupted while waiting for bootstrap threads to complete", var2);
         }
 
+        this.encoderPool.shutdownNow();
+
         if (this.bootstrapRequestCleanupTimer != null) {
             this.bootstrapRequestCleanupTimer.cancel();
             this.bootstrapRequestCleanupTimer.purge();
@@ -80,16 +122,55 @@ public class JGroupsBootstrapManager {
     }
 
     public void setBootstrapThreads(int bootstrapThreads) {
+        if (bootstrapThreads < 1) {
+            throw new IllegalArgumentException("At least one bootstrap thread is required, not " + bootstrapThreads);
+        }
+
+        // running bootstraps keep their threads, a smaller pool takes effect as they finish
         this.bootstrapThreadPool.setMaximumPoolSize(bootstrapThreads);
     }
 
+    public int getBootstrapThreads() {
+        return this.bootstrapThreadPool.getMaximumPoolSize();
+    }
+
+    public BootstrapSettings getBootstrapSettings() {
+        return this.bootstrapSettings;
+    }
+
+    public Collection<BootstrapProgress> getBootstrapProgress() {
+        return Collections.unmodifiableCollection(this.bootstrapProgress.values());
+    }
+
+    public BootstrapProgress getBootstrapProgress(String cacheName) {
+        return (BootstrapProgress)this.bootstrapProgress.get(cacheName);
+    }
+
+    public long getStartTime() {
+        return this.startTime;
+    }
+
     public boolean isPendingBootstrapRequests() {
         return !this.bootstrapRequests.isEmpty();
     }
 
+    public void setUnavailable(String unavailable) {
+        this.unavailable = unavailable;
+    }
+
+    public boolean isAvailable() {
+        return this.unavailable == null;
+    }
+
     public void handleBootstrapRequest(BootstrapRequest bootstrapRequest) {
         if (!this.alive) {
             LOG.warn("dispose has been called, no new BootstrapRequests will be handled, ignoring: {}", bootstrapRequest);
+        } else if (this.unavailable != null) {
+            String cacheName = bootstrapRequest.getCache().getName();
+            LOG.warn("Not bootstrapping {}, {}", cacheName, this.unavailable);
+            BootstrapProgress progress = new BootstrapProgress(cacheName, System.currentTimeMillis());
+            progress.finished(false, progress.getStartTime());
+            this.bootstrapProgress.put(cacheName, progress);
         } else {
             if (!this.referenceTimerScheduled.getAndSet(true)) {
                 this.bootstrapRequestCleanupTimer = new Timer(this.clusterName + " Bootstrap Request Cleanup Thread", true);
@@ -104,9 +185,20 @@ public class JGroupsBootstrapManager {
                 LOG.warn("There is already a BootstrapRequest registered for {} with value {}, it has been replaced with the current request.", cacheName, oldRequest);
             }
 
+            this.bootstrapProgress.put(cacheName, new BootstrapProgress(cacheName, System.currentTimeMillis()));
+            this.bootstrapBudgets.put(cacheName, BootstrapBudget.fromConfig(cacheName));
             LOG.debug("Registered {}", bootstrapRequest);
             JGroupsBootstrapManager.BootstrapRequestRunnable bootstrapRequestRunnable = new JGroupsBootstrapManager.BootstrapRequestRunnable(bootstrapRequest);
-            Future<?> future = this.bootstrapThreadPool.submit(bootstrapRequestRunnable);
+            Future<?> future;
+            try {
+                future = this.bootstrapThreadPool.submit(bootstrapRequestRunnable);
+            } catch (RejectedExecutionException var11) {
+                LOG.warn("All {} bootstrap threads are busy, skipping the bootstrap of {}", this.getBootstrapThreads(), cacheName);
+                this.bootstrapRequests.remove(cacheName);
+                ((BootstrapProgress)this.bootstrapProgress.get(cacheName)).finished(false, System.currentTimeMillis());
+                return;
+            }
+
             if (!bootstrapRequest.isAsynchronous()) {
                 LOG.debug("Waiting up to {}ms for BootstrapRequest of {} to complete", 300000L, cacheName);
 
@@ -124,13 +216,127 @@ public class JGroupsBootstrapManager {
         }
     }
 
-    public void sendBootstrapResponse(JGroupEventMessage message) {
+    public void sendBootstrapResponse(Address requestAddress, JGroupEventMessage message) {
         if (!this.alive) {
             LOG.warn("dispose has been called, no new BootstrapResponses will be handled");
+        } else if (this.unavailable != null) {
+            LOG.warn("Rejecting the bootstrap request of {} for cache {}, {}", new Object[]{requestAddress, message.getCacheName(), this.unavailable});
+            cachePeer.send(requestAddress, Arrays.asList(new JGroupEventMessage(13, (Serializable)null, (Element)null, message.getCacheName())));
+        } else {
+            JGroupsBootstrapManager.BootstrapResponseRunnable bootstrapResponseRunnable = new JGroupsBootstrapManager.BootstrapResponseRunnable(requestAddress, message);
+
+            try {
+                this.bootstrapThreadPool.submit(bootstrapResponseRunnable);
+            } catch (RejectedExecutionException var5) {
+                LOG.warn("All {} bootstrap threads are busy, rejecting the bootstrap request of {} for cache {}", new Object[]{this.getBootstrapThreads(), requestAddress, message.getCacheName()});
+                cachePeer.send(requestAddress, Arrays.asList(new JGroupEventMessage(13, (Serializable)null, (Element)null, message.getCacheName())));
+            }
+        }
+    }
+
+    public void handleBootstrapEstimate(JGroupEventMessage message) {
+        String cacheName = message.getCacheName();
+        BootstrapProgress progress = (BootstrapProgress)this.bootstrapProgress.get(cacheName);
+        if (progress != null && !progress.isDone() && message.getSerializableKey() instanceof Number) {
+            progress.estimate(((Number)message.getSerializableKey()).longValue());
+        } else {
+            LOG.debug("No bootstrap in progress for cache {}, the estimate will have no effect: {}", cacheName, message);
+        }
+
+    }
+
+    public void handleMemberStateRequest(Address src, JGroupEventMessage message) {
+        MemberState state = this.createMemberState();
+        LOG.debug("Sending {} to {}", state, src);
+        cachePeer.send(src, Arrays.asList(new JGroupEventMessage(MEMBER_STATE, state, (Element)null, message.getCacheName())));
+    }
+
+    public void handleMemberState(Address src, JGroupEventMessage message) {
+        if (src != null && message.getSerializableKey() instanceof MemberState) {
+            this.memberStates.put(src, (MemberState)message.getSerializableKey());
+            this.memberStateReceived.put(src, System.currentTimeMillis());
+            synchronized(this.memberStateNotifier) {
+                this.memberStateNotifier.notifyAll();
+            }
         } else {
-            JGroupsBootstrapManager.BootstrapResponseRunnable bootstrapResponseRunnable = new JGroupsBootstrapManager.BootstrapResponseRunnable(message);
-            this.bootstrapThreadPool.submit(bootstrapResponseRunnable);
+            LOG.warn("Ignoring invalid member state from {}: {}", src, message);
         }
+
+    }
+
+    public MemberState createMemberState() {
+        Map<String, Integer> cacheSizes = new HashMap();
+        String[] cacheNames = this.cacheManager.getCacheNames();
+
+        for(int i = 0; i < cacheNames.length; ++i) {
+            Ehcache cache = this.cacheManager.getEhcache(cacheNames[i]);
+            if (cache != null) {
+                cacheSizes.put(cacheNames[i], cache.getSize());
+            }
+        }
+
+        double loadAverage = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        return new MemberState(cacheSizes, this.bootstrapRequests.keySet(), this.activeResponses.get(), loadAverage, System.currentTimeMillis());
+    }
+
+    public Map<Address, MemberState> getMemberStates() {
+        return Collections.unmodifiableMap(this.memberStates);
+    }
+
+    Map<Address, MemberState> requestMemberStates(String cacheName, List<Address> members) {
+        long requestTime = System.currentTimeMillis();
+        long deadline = requestTime + this.bootstrapSettings.getStateTimeout();
+        this.memberStates.keySet().retainAll(members);
+        this.memberStateReceived.keySet().retainAll(members);
+        if (this.hasMemberStates(members, requestTime - this.bootstrapSettings.getStateTimeout())) {
+            // caches bootstrapping at the same time share the answers to one request
+            return new HashMap(this.memberStates);
+        }
+
+        cachePeer.send((Address)null, Arrays.asList(new JGroupEventMessage(MEMBER_STATE_REQUEST, (Serializable)null, (Element)null, cacheName)));
+
+        synchronized(this.memberStateNotifier) {
+            for(long now = requestTime; !this.hasMemberStates(this.answeringMembers(members), requestTime) && now < deadline; now = System.currentTimeMillis()) {
+                try {
+                    this.memberStateNotifier.wait(deadline - now);
+                } catch (InterruptedException var11) {
+                    LOG.warn("Interrupted while waiting for member states", var11);
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        return new HashMap(this.memberStates);
+    }
+
+    private List<Address> answeringMembers(List<Address> members) {
+        // members that left the view or do not run the replication never answer, the view only lists those that can
+        List<Address> answering = new ArrayList(members);
+        answering.retainAll(cachePeer.getOtherGroupMembers());
+        return answering;
+    }
+
+    public void viewAccepted(List<Address> members) {
+        synchronized(this.memberStateNotifier) {
+            this.memberStateNotifier.notifyAll();
+        }
+
+    }
+
+    private boolean hasMemberStates(List<Address> members, long since) {
+        Iterator i$ = members.iterator();
+
+        Long received;
+        do {
+            if (!i$.hasNext()) {
+                return true;
+            }
+
+            received = (Long)this.memberStateReceived.get(i$.next());
+        } while(received != null && received.longValue() >= since);
+
+        return false;
     }
 
     public void handleBootstrapComplete(JGroupEventMessage message) {
@@ -160,8 +366,24 @@ public class JGroupsBootstrapManager {
         BootstrapRequest bootstrapRequestStatus = this.bootstrapRequests.get(cacheName);
         if (bootstrapRequestStatus != null) {
             Ehcache cache = bootstrapRequestStatus.getCache();
-            cache.put(message.getElement(), true);
-            bootstrapRequestStatus.countReplication();
+            Element element = message.getElement();
+            BootstrapBudget budget = (BootstrapBudget)this.bootstrapBudgets.get(cacheName);
+            if (budget != null && !budget.allowsEntries(bootstrapRequestStatus.getReplicationCount() + 1L)) {
+                LOG.trace("received bootstrap reply:      cache={} - Ignoring, the bootstrap budget {} is used up.", cacheName, budget);
+            } else if (element != null && !element.isExpired()) {
+                // replication keeps running during the bootstrap, the chunk must not undo a later write or removal
+                if (this.invalidationFence.isAdmissible(cacheName, element.getObjectKey(), ElementVersions.timestampOf(element), element.getVersion())) {
+                    cache.put(element, true);
+                    bootstrapRequestStatus.countReplication();
+                } else {
+                    LOG.trace("received bootstrap reply:      cache={}, key={} - Ignoring, not newer than the last write or removal of the key.", cacheName, element.getObjectKey());
+                }
+
+                BootstrapProgress progress = (BootstrapProgress)this.bootstrapProgress.get(cacheName);
+                if (progress != null) {
+                    progress.countReceived();
+                }
+            }
         } else {
             LOG.warn("No BootstrapRequest registered for cache {}, the event will have no effect: {}", cacheName, message);
         }
@@ -169,15 +391,17 @@ public class JGroupsBootstrapManager {
     }
 
     private final class BootstrapResponseRunnable extends ThreadNamingRunnable {
+        private final Address requestAddress;
         private final JGroupEventMessage message;
 
-        public BootstrapResponseRunnable(JGroupEventMessage message) {
+        public BootstrapResponseRunnable(Address requestAddress, JGroupEventMessage message) {
             super(" - Response for " + message.getCacheName());
+            this.requestAddress = requestAddress;
             this.message = message;
         }
 
         public void runInternal() {
-            Address requestAddress = (Address)this.message.getSerializableKey();
+            Address requestAddress = this.requestAddress;
             String cacheName = this.message.getCacheName();
             Ehcache cache = cacheManager.getEhcache(cacheName);
             JGroupEventMessage bootstrapCompleteMessagex;
@@ -185,47 +409,104 @@ public class JGroupsBootstrapManager {
                 LOG.warn("ignoring bootstrap request:   from {} for cache {} which does not exist on this memeber", requestAddress, cacheName);
                 bootstrapCompleteMessagex = new JGroupEventMessage(13, (Serializable)null, (Element)null, cacheName);
                 cachePeer.send(requestAddress, Arrays.asList(bootstrapCompleteMessagex));
+            } else if (bootstrapRequests.get(cacheName) != null) {
+                LOG.debug("This group member is currently bootstrapping {} from another node and cannot respond to a bootstrap request for this cache. Notifying requester of incomplete bootstrap", cacheName);
+                bootstrapCompleteMessagex = new JGroupEventMessage(13, (Serializable)null, (Element)null, cacheName);
+                cachePeer.send(requestAddress, Arrays.asList(bootstrapCompleteMessagex));
             } else {
                 LOG.debug("servicing bootstrap request: from {} for cache={}", requestAddress, cacheName);
-                if (bootstrapRequests.get(cacheName) != null) {
-                    LOG.debug("This group member is currently bootstrapping {} from another node and cannot respond to a bootstrap request for this cache. Notifying requester of incomplete bootstrap", cacheName);
-                    bootstrapCompleteMessagex = new JGroupEventMessage(13, (Serializable)null, (Element)null, cacheName);
-                    cachePeer.send(requestAddress, Arrays.asList(bootstrapCompleteMessagex));
+                activeResponses.incrementAndGet();
+
+                try {
+                    this.respond(cache, requestAddress);
+                } finally {
+                    activeResponses.decrementAndGet();
                 }
+            }
+        }
 
-                List<?> keys = cache.getKeys();
-                if (keys != null && keys.size() != 0) {
-                    List<JGroupEventMessage> messageList = new ArrayList(Math.min(keys.size(), 100));
-                    Iterator i$ = keys.iterator();
+        private void respond(Ehcache cache, Address requestAddress) {
+            String cacheName = cache.getName();
+            boolean complete = true;
+            BootstrapBudget budget = this.message.getSerializableKey() instanceof BootstrapBudget ? (BootstrapBudget)this.message.getSerializableKey() : BootstrapBudget.UNLIMITED;
+            List<?> keys = this.selectKeys(cache, budget);
+            if (keys != null && keys.size() != 0) {
+                JGroupEventMessage estimateMessage = new JGroupEventMessage(BOOTSTRAP_ESTIMATE, Integer.valueOf(keys.size()), (Element)null, cacheName);
+                cachePeer.send(requestAddress, Arrays.asList(estimateMessage));
+                complete = this.sendSegments(cache, requestAddress, keys, budget);
+            } else {
+                LOG.debug("no keys to reply to {} to bootstrap cache {}", requestAddress, cacheName);
+            }
+
+            JGroupEventMessage bootstrapCompleteMessage = new JGroupEventMessage(complete ? 12 : 13, (Serializable)null, (Element)null, cacheName);
+            cachePeer.send(requestAddress, Arrays.asList(bootstrapCompleteMessage));
+        }
+
+        private List<?> selectKeys(Ehcache cache, BootstrapBudget budget) {
+            List<?> keys = cache.getKeys();
+            if (keys == null || keys.isEmpty()) {
+                return keys;
+            } else if (bootstrapSettings.isHotFirst()) {
+                long start = System.currentTimeMillis();
+                List<?> ranked = BootstrapRanking.rank(cache, keys, start, bootstrapSettings.getMinRemainingTtl(), budget.getMaxEntries());
+                LOG.debug("ranked {} of {} keys of cache {} in {}ms with {}", new Object[]{ranked.size(), keys.size(), cache.getName(), System.currentTimeMillis() - start, budget});
+                return ranked;
+            } else {
+                return budget.allowsEntries((long)keys.size()) ? keys : keys.subList(0, (int)budget.getMaxEntries());
+            }
+        }
+
+        private boolean sendSegments(Ehcache cache, Address requestAddress, List<?> keys, BootstrapBudget budget) {
+            // segments are encoded by the shared encoder pool, at most segmentsAhead of them are held in memory while
+            // this thread sends the oldest one, so the chunks leave in key order at the pace of the channel's flow control
+            int segmentSize = BOOTSTRAP_SEGMENT_CHUNKS * BOOTSTRAP_CHUNK_SIZE;
+            ArrayDeque<ForkJoinTask<List<JGroupsBootstrapManager.EncodedChunk>>> segments = new ArrayDeque();
+            int next = 0;
+            long sentBytes = 0L;
+
+            try {
+                while(next < keys.size() || !segments.isEmpty()) {
+                    while(segments.size() <= bootstrapSettings.getSegmentsAhead() && next < keys.size()) {
+                        int end = Math.min(next + segmentSize, keys.size());
+                        segments.add(encoderPool.submit(new JGroupsBootstrapManager.ChunkEncoder(cache, keys, next, end)));
+                        next = end;
+                    }
+
+                    List<JGroupsBootstrapManager.EncodedChunk> chunks = (List)((ForkJoinTask)segments.poll()).join();
+                    Iterator i$ = chunks.iterator();
 
                     while(i$.hasNext()) {
-                        Object key = i$.next();
-                        Element element = cache.getQuiet(key);
-                        if (element != null && !element.isExpired()) {
-                            JGroupEventMessage groupEventMessage = new JGroupEventMessage(11, (Serializable)key, element, cacheName);
-                            messageList.add(groupEventMessage);
-                            if (messageList.size() == 100) {
-                                this.sendResponseChunk(cache, requestAddress, messageList);
-                                messageList.clear();
-                            }
+                        JGroupsBootstrapManager.EncodedChunk chunk = (JGroupsBootstrapManager.EncodedChunk)i$.next();
+                        sentBytes += (long)chunk.data.length;
+                        if (!budget.allowsBytes(sentBytes)) {
+                            // the most useful entries went first, the requester is done when its budget is used up
+                            LOG.debug("bootstrap budget {} of {} used up after {} bytes", new Object[]{budget, requestAddress, sentBytes - (long)chunk.data.length});
+                            return true;
                         }
+
+                        this.sendResponseChunk(cache, requestAddress, chunk);
                     }
 
-                    if (messageList.size() > 0) {
-                        this.sendResponseChunk(cache, requestAddress, messageList);
+                    if (!alive) {
+                        LOG.warn("dispose has been called, aborting bootstrap response for {} to {}", cache.getName(), requestAddress);
+                        return false;
                     }
-                } else {
-                    LOG.debug("no keys to reply to {} to bootstrap cache {}", requestAddress, cacheName);
                 }
 
-                JGroupEventMessage bootstrapCompleteMessage = new JGroupEventMessage(12, (Serializable)null, (Element)null, cacheName);
-                cachePeer.send(requestAddress, Arrays.asList(bootstrapCompleteMessage));
+                return true;
+            } catch (RuntimeException var10) {
+                LOG.error("Failed to encode bootstrap response for " + cache.getName() + " to " + requestAddress + ", notifying requester of incomplete bootstrap", var10);
+                return false;
+            } finally {
+                while(!segments.isEmpty()) {
+                    ((ForkJoinTask)segments.poll()).cancel(false);
+                }
             }
         }
 
-        private void sendResponseChunk(Ehcache cache, Address requestAddress, List<JGroupEventMessage> events) {
-            LOG.debug("reply {} elements to {} to bootstrap cache {}", new Object[]{events.size(), requestAddress, cache.getName()});
-            cachePeer.send(requestAddress, events);
+        private void sendResponseChunk(Ehcache cache, Address requestAddress, JGroupsBootstrapManager.EncodedChunk chunk) {
+            LOG.debug("reply {} elements to {} to bootstrap cache {}", new Object[]{chunk.elements, requestAddress, cache.getName()});
+            cachePeer.sendEncoded(requestAddress, chunk.data);
         }
 
         public String toString() {
@@ -233,6 +514,86 @@ public class JGroupsBootstrapManager {
         }
     }
 
+    private static final class ChunkEncoder extends RecursiveTask<List<JGroupsBootstrapManager.EncodedChunk>> {
+        private static final long serialVersionUID = 1L;
+        private final transient Ehcache cache;
+        private final transient List<?> keys;
+        private final int from;
+        private final int to;
+
+        private ChunkEncoder(Ehcache cache, List<?> keys, int from, int to) {
+            this.cache = cache;
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected List<JGroupsBootstrapManager.EncodedChunk> compute() {
+            int chunks = (this.to - this.from + BOOTSTRAP_CHUNK_SIZE - 1) / BOOTSTRAP_CHUNK_SIZE;
+            if (chunks <= 1) {
+                JGroupsBootstrapManager.EncodedChunk chunk = this.encodeChunk();
+                return chunk == null ? Collections.<JGroupsBootstrapManager.EncodedChunk>emptyList() : Collections.singletonList(chunk);
+            } else {
+                int middle = this.from + chunks / 2 * BOOTSTRAP_CHUNK_SIZE;
+                JGroupsBootstrapManager.ChunkEncoder head = new JGroupsBootstrapManager.ChunkEncoder(this.cache, this.keys, this.from, middle);
+                JGroupsBootstrapManager.ChunkEncoder tail = new JGroupsBootstrapManager.ChunkEncoder(this.cache, this.keys, middle, this.to);
+                tail.fork();
+                List<JGroupsBootstrapManager.EncodedChunk> result = new ArrayList(head.compute());
+                result.addAll((Collection)tail.join());
+                return result;
+            }
+        }
+
+        private JGroupsBootstrapManager.EncodedChunk encodeChunk() {
+            String cacheName = this.cache.getName();
+            List<JGroupEventMessage> messageList = new ArrayList(this.to - this.from);
+
+            for(int i = this.from; i < this.to; ++i) {
+                Object key = this.keys.get(i);
+                Element element = this.cache.getQuiet(key);
+                if (element != null && !element.isExpired()) {
+                    messageList.add(new JGroupEventMessage(11, (Serializable)key, element, cacheName));
+                }
+            }
+
+            if (messageList.isEmpty()) {
+                return null;
+            } else {
+                try {
+                    return new JGroupsBootstrapManager.EncodedChunk(JGroupsCachePeer.encode(messageList), messageList.size());
+                } catch (IOException var5) {
+                    LOG.error("Error serializing bootstrap chunk of " + cacheName + ", " + messageList.size() + " elements will not be sent", var5);
+                    return null;
+                }
+            }
+        }
+    }
+
+    private static final class EncodedChunk {
+        private final byte[] data;
+        private final int elements;
+
+        private EncodedChunk(byte[] data, int elements) {
+            this.data = data;
+            this.elements = elements;
+        }
+    }
+
+    private static final class EncoderThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        private EncoderThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(this.namePrefix + " thread-" + this.threadNumber.getAndIncrement());
+            return thread;
+        }
+    }
+
     private final class BootstrapRequestRunnable extends ThreadNamingRunnable {
         private final BootstrapRequest bootstrapRequest;
 
@@ -249,7 +610,13 @@ public class JGroupsBootstrapManager {
             label113: {
                 try {
                     var12 = true;
-                    List addresses = cachePeer.getOtherGroupMembers();
+                    List addresses = new ArrayList(cachePeer.getOtherGroupMembers());
+                    if (!addresses.isEmpty()) {
+                        Map<Address, MemberState> states = requestMemberStates(cacheName, addresses);
+                        addresses = BootstrapPeerSelector.select(cacheName, addresses, states, BOOTSTRAP_PEER_CHOOSER);
+                        LOG.debug("Selected bootstrap peers for {} in order {} from member states {}", new Object[]{cacheName, addresses, states});
+                    }
+
                     if (addresses != null && addresses.size() != 0) {
                         Address localAddress = cachePeer.getLocalAddress();
                         LOG.debug("Loading cache {} with local address {} from peers: {}", new Object[]{cacheName, localAddress, addresses});
@@ -257,10 +624,9 @@ public class JGroupsBootstrapManager {
 
                         do {
                             this.bootstrapRequest.reset();
-                            int randomPeerNumber = BOOTSTRAP_PEER_CHOOSER.nextInt(addresses.size());
-                            Address address = (Address)addresses.remove(randomPeerNumber);
+                            Address address = (Address)addresses.remove(0);
                             //JGroupEventMessage event = new JGroupEventMessage(10, localAddress, (Element)null, cacheName);
-                            JGroupEventMessage event = new JGroupEventMessage(10, UUID.randomUUID().toString(), (Element)null, cacheName);
+                            JGroupEventMessage event = new JGroupEventMessage(10, (Serializable)bootstrapBudgets.get(cacheName), (Element)null, cacheName);
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("Requesting bootstrap of {} from {}", cacheName, address);
                             }
@@ -280,11 +646,11 @@ public class JGroupsBootstrapManager {
                         break label113;
                     }
 
-                    LOG.info("There are no other nodes in the cluster to bootstrap {} from", cacheName);
+                    LOG.info("There are no other warm nodes in the cluster to bootstrap {} from", cacheName);
                     var12 = false;
                 } finally {
                     if (var12) {
-                        BootstrapRequest removedRequestxx = bootstrapRequests.remove(cacheName);
+                        BootstrapRequest removedRequestxx = this.removeBootstrapRequest(cacheName);
                         if (removedRequestxx == null) {
                             LOG.warn("No BootstrapRequest for {} to remove", cacheName);
                             return;
@@ -294,7 +660,7 @@ public class JGroupsBootstrapManager {
                     }
                 }
 
-                BootstrapRequest removedRequestx = bootstrapRequests.remove(cacheName);
+                BootstrapRequest removedRequestx = this.removeBootstrapRequest(cacheName);
                 if (removedRequestx == null) {
                     LOG.warn("No BootstrapRequest for {} to remove", cacheName);
                     return;
@@ -304,7 +670,7 @@ public class JGroupsBootstrapManager {
                 return;
             }
 
-            BootstrapRequest removedRequest = bootstrapRequests.remove(cacheName);
+            BootstrapRequest removedRequest = this.removeBootstrapRequest(cacheName);
             if (removedRequest == null) {
                 LOG.warn("No BootstrapRequest for {} to remove", cacheName);
             } else {
@@ -312,6 +678,19 @@ public class JGroupsBootstrapManager {
             }
         }
 
+        private BootstrapRequest removeBootstrapRequest(String cacheName) {
+            BootstrapProgress progress = (BootstrapProgress)bootstrapProgress.get(cacheName);
+            if (progress != null) {
+                // UNSENT means there was no peer to ask, the cache is as warm as it can get
+                BootstrapRequest.BootstrapStatus status = this.bootstrapRequest.getBootstrapStatus();
+                progress.finished(status == BootstrapRequest.BootstrapStatus.COMPLETE || status == BootstrapRequest.BootstrapStatus.UNSENT, System.currentTimeMillis());
+                LOG.debug("Finished {}", progress);
+            }
+
+            bootstrapBudgets.remove(cacheName);
+            return bootstrapRequests.remove(cacheName);
+        }
+
         protected void waitForBootstrap(String cacheName, Address address) {
             for(int waitTry = 1; (long)waitTry <= 10L; ++waitTry) {
                 try {
@@ -1,9 +1,11 @@
 package us.rubicon_consulting.ehcache.jgroups;
 
+import java.io.IOException;
 import java.net.URL;
 import java.util.Collections;
 import java.util.List;
 import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Ehcache;
@@ -24,11 +26,26 @@ public class JGroupsCacheManagerPeerProvider implements ManagedCacheManagerPeerP
     private final String groupProperties;
     private final URL groupUrl;
     private String channelName;
-    private JChannel channel;
+    private String sharedChannelName;
+    private ReplicationTransport transport;
     private JGroupsCachePeer cachePeer;
     private JGroupsCacheReceiver cacheReceiver;
     private List<CachePeer> cachePeersListCache;
     private JGroupsBootstrapManager bootstrapManager;
+    private JGroupsAntiEntropyManager antiEntropyManager;
+    private AntiEntropySettings antiEntropySettings;
+    private JGroupsInterestManager interestManager;
+    private InterestSettings interestSettings;
+    private JGroupsPeerLookupManager peerLookupManager;
+    private JGroupsTuningManager tuningManager;
+    private PeerLookupSettings peerLookupSettings = PeerLookupSettings.DEFAULT;
+    private AsyncFlushSettings asyncFlushSettings = AsyncFlushSettings.FIXED;
+    private BootstrapSettings bootstrapSettings = BootstrapSettings.DEFAULT;
+    private InvalidationFence invalidationFence = new InvalidationFence();
+    private OutboxSettings outboxSettings = OutboxSettings.DISABLED;
+    private BridgeSettings bridgeSettings = BridgeSettings.DISABLED;
+    private ReplicationTransport bridgeLink;
+    private TraceSettings traceSettings = TraceSettings.DISABLED;
     private MBeanServer mBeanServer;
 
     public JGroupsCacheManagerPeerProvider(CacheManager cacheManager, String properties) {
@@ -43,10 +60,58 @@ public class JGroupsCacheManagerPeerProvider implements ManagedCacheManagerPeerP
         this.groupUrl = configUrl;
     }
 
+    public JGroupsCacheManagerPeerProvider(CacheManager cacheManager, ReplicationTransport transport) {
+        this.cacheManager = cacheManager;
+        this.groupProperties = null;
+        this.groupUrl = null;
+        this.transport = transport;
+    }
+
     public void setChannelName(String channelName) {
         this.channelName = channelName;
     }
 
+    public void setSharedChannelName(String sharedChannelName) {
+        this.sharedChannelName = sharedChannelName;
+    }
+
+    public void setAntiEntropySettings(AntiEntropySettings antiEntropySettings) {
+        this.antiEntropySettings = antiEntropySettings;
+    }
+
+    public void setAsyncFlushSettings(AsyncFlushSettings asyncFlushSettings) {
+        this.asyncFlushSettings = asyncFlushSettings;
+    }
+
+    public void setBootstrapSettings(BootstrapSettings bootstrapSettings) {
+        this.bootstrapSettings = bootstrapSettings;
+    }
+
+    public void setInterestSettings(InterestSettings interestSettings) {
+        this.interestSettings = interestSettings;
+    }
+
+    public void setPeerLookupSettings(PeerLookupSettings peerLookupSettings) {
+        this.peerLookupSettings = peerLookupSettings;
+    }
+
+    public void setOutboxSettings(OutboxSettings outboxSettings) {
+        this.outboxSettings = outboxSettings;
+    }
+
+    public void setSiteBridge(BridgeSettings bridgeSettings, ReplicationTransport bridgeLink) {
+        this.bridgeSettings = bridgeSettings;
+        this.bridgeLink = bridgeLink;
+    }
+
+    public void setTraceSettings(TraceSettings traceSettings) {
+        this.traceSettings = traceSettings;
+    }
+
+    public void setInvalidationFence(InvalidationFence invalidationFence) {
+        this.invalidationFence = invalidationFence;
+    }
+
     public static JGroupsCacheManagerPeerProvider getCachePeerProvider(Ehcache cache) {
         CacheManager cacheManager = cache.getCacheManager();
         return getCachePeerProvider(cacheManager);
@@ -57,7 +122,7 @@ public class JGroupsCacheManagerPeerProvider implements ManagedCacheManagerPeerP
         if (provider == null) {
             LOG.warn("No CacheManagerPeerProvider registered for {} scheme.", "JGroups");
             return null;
-        } else if (!(provider instanceof net.sf.ehcache.distribution.jgroups.JGroupsCacheManagerPeerProvider)) {
+        } else if (!(provider instanceof JGroupsCacheManagerPeerProvider)) {
             LOG.warn("{} for scheme {} cannot be cast to {}.", new Object[]{provider.getClass(), "JGroups", JGroupsCacheManagerPeerProvider.class});
             return null;
         } else {
@@ -66,37 +131,107 @@ public class JGroupsCacheManagerPeerProvider implements ManagedCacheManagerPeerP
     }
 
     public void init() {
-        try {
-            if (this.groupProperties != null) {
-                this.channel = new JChannel(this.groupProperties);
-            } else if (this.groupUrl != null) {
-                this.channel = new JChannel(this.groupUrl);
-            } else {
-                this.channel = new JChannel();
-            }
-        } catch (Exception var4) {
-            LOG.error("Failed to create JGroups Channel, replication will not function. JGroups properties:\n" + this.groupProperties, var4);
-            this.dispose();
-            return;
+        if (this.transport == null) {
+            this.transport = new JGroupsTransport(this.groupProperties, this.groupUrl, this.sharedChannelName);
+        }
+
+        if (this.bridgeSettings.isEnabled() && this.bridgeLink != null && !(this.transport instanceof SiteBridgeTransport)) {
+            this.transport = new SiteBridgeTransport(this.transport, this.bridgeLink, this.bridgeSettings);
         }
 
         String clusterName = this.getClusterName();
-        this.cachePeer = new JGroupsCachePeer(this.channel, clusterName);
-        this.bootstrapManager = new JGroupsBootstrapManager(clusterName, this.cachePeer, this.cacheManager);
-        this.cacheReceiver = new JGroupsCacheReceiver(this.cacheManager, this.bootstrapManager);
-        this.channel.setReceiver(this.cacheReceiver);
-        this.channel.setDiscardOwnMessages(true);
+        this.createCachePeer(clusterName);
 
         try {
-            this.channel.connect(clusterName);
+            this.transport.connect(clusterName, this.cacheReceiver);
         } catch (Exception var3) {
-            LOG.error("Failed to connect to JGroups cluster '" + clusterName + "', replication will not function. JGroups properties:\n" + this.groupProperties, var3);
+            LOG.error("Failed to connect to cluster '" + clusterName + "' with " + this.transport + ", replication will not function. JGroups properties:\n" + this.groupProperties, var3);
             this.dispose();
             return;
         }
 
         this.cachePeersListCache = Collections.singletonList(this.cachePeer);
-        LOG.info("JGroups Replication started for '" + clusterName + "'. JChannel: {}", this.channel.toString(true));
+        LOG.info("Replication started for '" + clusterName + "' on {}", this.transport);
+        if (this.traceSettings.isEnabled()) {
+            this.startTrace();
+        }
+
+    }
+
+    public synchronized String startTrace() {
+        if (this.cacheReceiver == null) {
+            LOG.warn("Replication of '{}' is not running, there is no traffic to trace", this.getClusterName());
+            return null;
+        }
+
+        ReplicationTrace trace = this.cacheReceiver.getTrace();
+        if (trace != null && !trace.isClosed()) {
+            return trace.getFile().getPath();
+        }
+
+        try {
+            trace = ReplicationTrace.open(this.getClusterName(), this.traceSettings);
+        } catch (IOException var3) {
+            LOG.error("Failed to open a replication trace for '" + this.getClusterName() + "' with " + this.traceSettings, var3);
+            return null;
+        }
+
+        this.cacheReceiver.setTrace(trace);
+        LOG.info("Tracing the replication traffic of '{}' to {}", this.getClusterName(), trace.getFile());
+        return trace.getFile().getPath();
+    }
+
+    public synchronized void stopTrace() {
+        ReplicationTrace trace = this.getTrace();
+        if (trace != null) {
+            this.cacheReceiver.setTrace((ReplicationTrace)null);
+            trace.close();
+        }
+
+    }
+
+    public ReplicationTrace getTrace() {
+        JGroupsCacheReceiver receiver = this.cacheReceiver;
+        return receiver == null ? null : receiver.getTrace();
+    }
+
+    private void createCachePeer(String clusterName) {
+        ReplicationOutbox outbox = null;
+        if (this.outboxSettings.isEnabled()) {
+            try {
+                outbox = ReplicationOutbox.open(clusterName, this.outboxSettings);
+            } catch (IOException var4) {
+                LOG.error("Failed to open the replication outbox of '" + clusterName + "' with " + this.outboxSettings + ", events are dropped while the transport is disconnected", var4);
+            } catch (RuntimeException var5) {
+                LOG.error("Failed to recover the replication outbox of '" + clusterName + "' with " + this.outboxSettings + ", events are dropped while the transport is disconnected", var5);
+            }
+        }
+
+        this.cachePeer = new JGroupsCachePeer(this.transport, clusterName, this.asyncFlushSettings, outbox);
+        this.bootstrapManager = new JGroupsBootstrapManager(clusterName, this.cachePeer, this.cacheManager, this.bootstrapSettings, this.invalidationFence);
+        if (this.antiEntropySettings != null && this.antiEntropySettings.isEnabled()) {
+            this.antiEntropyManager = new JGroupsAntiEntropyManager(clusterName, this.cachePeer, this.cacheManager, this.antiEntropySettings, this.invalidationFence);
+        }
+
+        if (this.interestSettings != null && this.interestSettings.isEnabled()) {
+            this.interestManager = new JGroupsInterestManager(clusterName, this.cachePeer, this.cacheManager, this.interestSettings);
+        }
+
+        if (this.transport instanceof HybrisClusterTransport) {
+            // the platform cluster messaging drops datagrams without retransmitting them, a stream of unicasts is not reliable
+            LOG.warn("Bootstrap and peer lookups of '{}' are disabled, the platform cluster messaging does not deliver unicasts reliably", clusterName);
+            this.bootstrapManager.setUnavailable("the platform cluster messaging does not deliver unicasts reliably");
+        } else {
+            this.peerLookupManager = new JGroupsPeerLookupManager(this.cachePeer, this.cacheManager, this.peerLookupSettings);
+        }
+
+        this.tuningManager = new JGroupsTuningManager(this.cachePeer, this.cacheManager, this.bootstrapManager);
+        this.cacheReceiver = new JGroupsCacheReceiver(this.cacheManager, this.bootstrapManager);
+        this.cacheReceiver.setAntiEntropyManager(this.antiEntropyManager);
+        this.cacheReceiver.setInterestManager(this.interestManager);
+        this.cacheReceiver.setPeerLookupManager(this.peerLookupManager);
+        this.cacheReceiver.setInvalidationFence(this.invalidationFence);
+        this.cacheReceiver.setTuningManager(this.tuningManager);
     }
 
     public void register(MBeanServer mBeanServer) {
@@ -104,8 +239,14 @@ public class JGroupsCacheManagerPeerProvider implements ManagedCacheManagerPeerP
 
         try {
             String clusterName = this.getClusterName();
-            JmxConfigurator.registerChannel(this.channel, mBeanServer, "JGroupsReplication", clusterName, true);
-            LOG.debug("Registered JGroups channel with MBeanServer under domain {} with name {}", "JGroupsReplication", clusterName);
+            JChannel channel = this.getChannel();
+            if (channel != null) {
+                JmxConfigurator.registerChannel(channel, mBeanServer, "JGroupsReplication", clusterName, true);
+                LOG.debug("Registered JGroups channel with MBeanServer under domain {} with name {}", "JGroupsReplication", clusterName);
+            }
+
+            mBeanServer.registerMBean(new JGroupsReplicationMonitor(this.cacheManager, this), this.getMonitorObjectName(clusterName));
+            LOG.debug("Registered replication monitor with MBeanServer under domain {} with name {}", "JGroupsReplication", clusterName);
         } catch (Exception var3) {
             LOG.error("Error occured while registering MBeans. Management of JGroups will not be enabled.", var3);
         }
@@ -113,13 +254,30 @@ public class JGroupsCacheManagerPeerProvider implements ManagedCacheManagerPeerP
     }
 
     public void dispose() throws CacheException {
+        if (this.antiEntropyManager != null) {
+            this.antiEntropyManager.dispose();
+            this.antiEntropyManager = null;
+        }
+
+        if (this.interestManager != null) {
+            this.interestManager.dispose();
+            this.interestManager = null;
+        }
+
+        if (this.peerLookupManager != null) {
+            this.peerLookupManager.dispose();
+            this.peerLookupManager = null;
+        }
+
+        this.tuningManager = null;
         if (this.bootstrapManager != null) {
             this.bootstrapManager.dispose();
             this.bootstrapManager = null;
         }
 
+        this.stopTrace();
         this.shutdownCachePeer();
-        this.shutdownChannel();
+        this.shutdownTransport();
     }
 
     private void shutdownCachePeer() {
@@ -132,32 +290,48 @@ public class JGroupsCacheManagerPeerProvider implements ManagedCacheManagerPeerP
 
     }
 
-    private void shutdownChannel() {
-        if (this.channel != null) {
+    private void shutdownTransport() {
+        if (this.transport != null) {
             String clusterName = this.getClusterName();
             if (this.mBeanServer != null) {
                 try {
-                    JmxConfigurator.unregisterChannel(this.channel, this.mBeanServer, "JGroupsReplication", clusterName);
-                    LOG.debug("Unregistered JGroups channel with MBeanServer under domain {} with name {}", "JGroupsReplication", clusterName);
+                    JChannel channel = this.getChannel();
+                    if (channel != null) {
+                        JmxConfigurator.unregisterChannel(channel, this.mBeanServer, "JGroupsReplication", clusterName);
+                        LOG.debug("Unregistered JGroups channel with MBeanServer under domain {} with name {}", "JGroupsReplication", clusterName);
+                    }
+
+                    ObjectName monitorName = this.getMonitorObjectName(clusterName);
+                    if (this.mBeanServer.isRegistered(monitorName)) {
+                        this.mBeanServer.unregisterMBean(monitorName);
+                    }
+
                 } catch (Exception var4) {
                     LOG.error("Error unregistering JGroups channel with MBeanServer under domain JGroupsReplication with name " + clusterName, var4);
                 }
             }
 
-            if (this.channel.isConnected()) {
-                try {
-                    this.channel.close();
-                    LOG.debug("Closing JChannel for cluster {}", clusterName);
-                } catch (Exception var3) {
-                    LOG.error("Error closing JChannel for cluster " + clusterName, var3);
-                }
+            try {
+                this.transport.close();
+                LOG.debug("Closed {} for cluster {}", this.transport, clusterName);
+            } catch (Exception var3) {
+                LOG.error("Error closing the transport for cluster " + clusterName, var3);
             }
 
-            this.channel = null;
+            this.transport = null;
         }
 
     }
 
+    private JChannel getChannel() {
+        ReplicationTransport channelTransport = this.transport instanceof SiteBridgeTransport ? ((SiteBridgeTransport)this.transport).getLocal() : this.transport;
+        return channelTransport instanceof JGroupsTransport ? ((JGroupsTransport)channelTransport).getChannel() : null;
+    }
+
+    private ObjectName getMonitorObjectName(String clusterName) throws Exception {
+        return new ObjectName("JGroupsReplication:type=ReplicationMonitor,cluster=" + ObjectName.quote(clusterName));
+    }
+
     public long getTimeForClusterToForm() {
         return 0L;
     }
@@ -176,15 +350,43 @@ public class JGroupsCacheManagerPeerProvider implements ManagedCacheManagerPeerP
     public void unregisterPeer(String rmiUrl) {
     }
 
+    public InvalidationFence getInvalidationFence() {
+        return this.invalidationFence;
+    }
+
+    public JGroupsCachePeer getCachePeer() {
+        return this.cachePeer;
+    }
+
     public JGroupsBootstrapManager getBootstrapManager() {
         return this.bootstrapManager;
     }
 
+    public JGroupsAntiEntropyManager getAntiEntropyManager() {
+        return this.antiEntropyManager;
+    }
+
+    public JGroupsInterestManager getInterestManager() {
+        return this.interestManager;
+    }
+
+    public JGroupsPeerLookupManager getPeerLookupManager() {
+        return this.peerLookupManager;
+    }
+
+    public JGroupsTuningManager getTuningManager() {
+        return this.tuningManager;
+    }
+
+    public ReplicationTransport getTransport() {
+        return this.transport;
+    }
+
     public Status getStatus() {
-        if (this.channel == null) {
+        if (this.transport == null) {
             return Status.STATUS_UNINITIALISED;
         } else {
-            return !this.channel.isConnected() ? Status.STATUS_SHUTDOWN : Status.STATUS_ALIVE;
+            return !this.transport.isConnected() ? Status.STATUS_SHUTDOWN : Status.STATUS_ALIVE;
         }
     }
 
@@ -8,7 +8,6 @@ import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.distribution.CacheManagerPeerProvider;
 import net.sf.ehcache.distribution.CacheManagerPeerProviderFactory;
 import net.sf.ehcache.util.PropertyUtil;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import us.rubicon_consulting.constants.EhcachereplicationConstants;
@@ -18,6 +17,7 @@ public class JGroupsCacheManagerPeerProviderFactory extends CacheManagerPeerProv
     private static final String CHANNEL_NAME = "channelName";
     private static final String CONNECT = "connect";
     private static final String FILE = "file";
+    private static final String PROFILE = "profile";
 
     public JGroupsCacheManagerPeerProviderFactory() {
     }
@@ -27,13 +27,19 @@ public class JGroupsCacheManagerPeerProviderFactory extends CacheManagerPeerProv
         String connect = this.getProperty(CONNECT, properties);
         String file = this.getProperty(FILE, properties);
         String channelName = this.getProperty(CHANNEL_NAME, properties);
+        String profile = this.getProperty(PROFILE, properties);
 
-        System.setProperty("jgroups.udp.mcast_addr", Config.getString(EhcachereplicationConstants.EhcacheConfigConstants.JGROUPS_UDP_MCAST_ADDR, "224.0.0.2"));
-        System.setProperty("jgroups.udp.mcast_port", Config.getString(EhcachereplicationConstants.EhcacheConfigConstants.JGROUPS_UDP_MCAST_PORT, "45588"));
-        System.setProperty("jgroups.udp.ip_ttl", Config.getString(EhcachereplicationConstants.EhcacheConfigConstants.JGROUPS_UDP_IP_TTL, "1"));
-
+        String transport = Config.getString(EhcachereplicationConstants.EhcacheConfigConstants.TRANSPORT, "jgroups").trim();
         JGroupsCacheManagerPeerProvider peerProvider;
-        if (file != null) {
+        if ("hybris".equalsIgnoreCase(transport)) {
+            LOG.info("Creating CacheManagerPeerProvider for {} over the platform cluster messaging", cacheManager.getName());
+            peerProvider = new us.rubicon_consulting.ehcache.jgroups.JGroupsCacheManagerPeerProvider(cacheManager, new HybrisClusterTransport(
+                    Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.TRANSPORT_HYBRIS_KIND, HybrisClusterTransport.DEFAULT_MESSAGE_KIND),
+                    Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.TRANSPORT_HYBRIS_HEARTBEAT, 5000L)));
+        } else if ("memory".equalsIgnoreCase(transport)) {
+            LOG.info("Creating CacheManagerPeerProvider for {} over the in-memory transport", cacheManager.getName());
+            peerProvider = new us.rubicon_consulting.ehcache.jgroups.JGroupsCacheManagerPeerProvider(cacheManager, new InMemoryTransport());
+        } else if (file != null) {
             if (connect != null) {
                 LOG.warn("Both 'connect' and 'file' properties set. 'connect' will be ignored");
             }
@@ -43,14 +49,62 @@ public class JGroupsCacheManagerPeerProviderFactory extends CacheManagerPeerProv
             LOG.info("Creating JGroups CacheManagerPeerProvider for {} with configuration file: {}", cacheManager.getName(), configUrl);
             peerProvider = new us.rubicon_consulting.ehcache.jgroups.JGroupsCacheManagerPeerProvider(cacheManager, configUrl);
         } else {
+            if (connect == null) {
+                TransportSettings transportSettings = TransportSettings.fromConfig(this.getClusterName(cacheManager, channelName));
+                if (profile != null) {
+                    transportSettings = transportSettings.withProfile(TransportProfile.forName(profile));
+                }
+
+                LOG.info("Creating JGroups CacheManagerPeerProvider for {} with {}", cacheManager.getName(), transportSettings);
+                connect = transportSettings.getProperties();
+            } else if (profile != null) {
+                LOG.warn("Both 'connect' and 'profile' properties set. 'profile' will be ignored");
+            }
+
             LOG.info("Creating JGroups CacheManagerPeerProvider for {} with configuration:\n{}", cacheManager.getName(), connect);
             peerProvider = new us.rubicon_consulting.ehcache.jgroups.JGroupsCacheManagerPeerProvider(cacheManager, connect);
         }
 
         peerProvider.setChannelName(channelName);
+        if (Config.getBoolean(EhcachereplicationConstants.EhcacheConfigConstants.JGROUPS_SHARED, false)) {
+            peerProvider.setSharedChannelName(Config.getString(EhcachereplicationConstants.EhcacheConfigConstants.JGROUPS_SHARED_CLUSTER, "ehcachereplication"));
+        }
+
+        peerProvider.setAntiEntropySettings(AntiEntropySettings.fromConfig());
+        peerProvider.setAsyncFlushSettings(AsyncFlushSettings.fromConfig());
+        peerProvider.setBootstrapSettings(BootstrapSettings.fromConfig());
+        peerProvider.setInterestSettings(InterestSettings.fromConfig());
+        peerProvider.setPeerLookupSettings(PeerLookupSettings.fromConfig());
+        peerProvider.setInvalidationFence(InvalidationFence.fromConfig());
+        peerProvider.setOutboxSettings(OutboxSettings.fromConfig());
+        peerProvider.setTraceSettings(TraceSettings.fromConfig());
+        BridgeSettings bridgeSettings = BridgeSettings.fromConfig();
+        if (bridgeSettings.isEnabled()) {
+            LOG.info("Creating site bridge for {} with {}", cacheManager.getName(), bridgeSettings);
+            peerProvider.setSiteBridge(bridgeSettings, this.createBridgeLink(transport, bridgeSettings));
+        }
+
         return peerProvider;
     }
 
+    private ReplicationTransport createBridgeLink(String transport, BridgeSettings bridgeSettings) {
+        if ("memory".equalsIgnoreCase(transport)) {
+            return new InMemoryTransport("bridge");
+        } else {
+            // the sites are connected over TCP, ehcachereplication.jgroups.<bridge cluster>.tcp.* configures the link
+            TransportSettings linkSettings = TransportSettings.fromConfig(bridgeSettings.getCluster()).withProfile(TransportProfile.TCP);
+            return new JGroupsTransport(linkSettings.getProperties(), (URL)null, (String)null);
+        }
+    }
+
+    private String getClusterName(CacheManager cacheManager, String channelName) {
+        if (channelName != null) {
+            return channelName;
+        } else {
+            return cacheManager.isNamed() ? cacheManager.getName() : "EH_CACHE";
+        }
+    }
+
     private String getProperty(String name, Properties properties) {
         String property = PropertyUtil.extractAndLogProperty(name, properties);
         if (property != null) {
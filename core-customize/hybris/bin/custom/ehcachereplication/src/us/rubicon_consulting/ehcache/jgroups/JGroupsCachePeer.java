@@ -1,40 +1,56 @@
 package us.rubicon_consulting.ehcache.jgroups;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.distribution.CachePeer;
 import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
 import org.jgroups.Address;
-import org.jgroups.JChannel;
 import org.jgroups.Message;
-import org.jgroups.View;
-import org.jgroups.util.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class JGroupsCachePeer implements CachePeer {
     private static final Logger LOG = LoggerFactory.getLogger(JGroupsCachePeer.class.getName());
     private static final int CHUNK_SIZE = 100;
-    private final JChannel channel;
-    private final ConcurrentMap<Long, Queue<JGroupEventMessage>> asyncReplicationQueues = new ConcurrentHashMap();
-    private final Timer timer;
+    private static final int INVALIDATION_CHUNK_SIZE = 20;
+    private static final Message.Flag[] NO_FLAGS = new Message.Flag[0];
+    private static final long OUTBOX_RETRY_INTERVAL = 1000L;
+    private final ReplicationTransport transport;
+    private final ReplicationOutbox outbox;
+    private final ConcurrentMap<Long, AsyncFlushQueue> asyncReplicationQueues = new ConcurrentHashMap();
+    private volatile AsyncFlushSettings asyncFlushSettings;
+    private final Object flushLock = new Object();
+    private final Thread flushThread;
+    private boolean flushRequested;
     private volatile boolean alive;
+    private volatile JGroupsCachePeer.AsyncQueue lastAsyncQueue;
+    private volatile JGroupsCachePeer.Members members;
 
-    public JGroupsCachePeer(JChannel channel, String clusterName) {
-        this.channel = channel;
+    public JGroupsCachePeer(ReplicationTransport transport, String clusterName) {
+        this(transport, clusterName, AsyncFlushSettings.FIXED);
+    }
+
+    public JGroupsCachePeer(ReplicationTransport transport, String clusterName, AsyncFlushSettings asyncFlushSettings) {
+        this(transport, clusterName, asyncFlushSettings, (ReplicationOutbox)null);
+    }
+
+    public JGroupsCachePeer(ReplicationTransport transport, String clusterName, AsyncFlushSettings asyncFlushSettings, ReplicationOutbox outbox) {
+        this.transport = transport;
+        this.outbox = outbox;
+        this.asyncFlushSettings = this.capMaxBytes(asyncFlushSettings);
         this.alive = true;
-        this.timer = new Timer(clusterName + " Async Replication Thread", true);
+        this.flushThread = new Thread(new JGroupsCachePeer.AsyncFlusher(), clusterName + " Async Replication Thread");
+        this.flushThread.setDaemon(true);
+        this.flushThread.start();
     }
 
     public void send(List eventMessages) throws RemoteException {
@@ -42,81 +58,174 @@ public class JGroupsCachePeer implements CachePeer {
     }
 
     public List<Address> getGroupMembership() {
-        View view = this.channel.getView();
-        return view.getMembers();
+        return this.transport.getMembers();
     }
 
     public List<Address> getOtherGroupMembers() {
-        Address localAddress = this.getLocalAddress();
-        List<Address> members = this.getGroupMembership();
-        List<Address> addresses = new ArrayList(members.size() - 1);
-        Iterator i$ = members.iterator();
+        List<Address> view = this.transport.getMembers();
+        JGroupsCachePeer.Members current = this.members;
+        if (current == null || current.view != view) {
+            current = new JGroupsCachePeer.Members(view, this.getLocalAddress());
+            this.members = current;
+        }
+
+        return current.otherMembers;
+    }
+
+    public Address getLocalAddress() {
+        return this.transport.getLocalAddress();
+    }
+
+    public ReplicationTransport getTransport() {
+        return this.transport;
+    }
+
+    public ReplicationOutbox getOutbox() {
+        return this.outbox;
+    }
+
+    public AsyncFlushSettings getAsyncFlushSettings() {
+        return this.asyncFlushSettings;
+    }
+
+    public void setAsyncFlushSettings(AsyncFlushSettings asyncFlushSettings) {
+        asyncFlushSettings = this.capMaxBytes(asyncFlushSettings);
+        this.asyncFlushSettings = asyncFlushSettings;
+        Iterator i$ = this.asyncReplicationQueues.values().iterator();
 
         while(i$.hasNext()) {
-            Address member = (Address)i$.next();
-            if (!member.equals(localAddress)) {
-                addresses.add(member);
-            }
+            ((AsyncFlushQueue)i$.next()).setSettings(asyncFlushSettings);
         }
 
-        return addresses;
+        // queued events may be due under the new limits
+        this.requestFlush();
     }
 
-    public Address getLocalAddress() {
-        return this.channel.getAddress();
+    public Collection<AsyncFlushQueue> getAsyncFlushQueues() {
+        return Collections.unmodifiableCollection(this.asyncReplicationQueues.values());
     }
 
     public void dispose() {
         this.alive = false;
-        this.disposeTimer();
+        this.disposeFlushThread();
         this.flushAllQueues();
         this.asyncReplicationQueues.clear();
+        if (this.outbox != null) {
+            this.outbox.close();
+        }
+
     }
 
-    private void disposeTimer() {
-        if (this.timer != null) {
-            this.timer.cancel();
-            this.timer.purge();
+    private void disposeFlushThread() {
+        this.requestFlush();
+
+        try {
+            this.flushThread.join(5000L);
+        } catch (InterruptedException var2) {
+            Thread.currentThread().interrupt();
         }
 
     }
 
+    private AsyncFlushSettings capMaxBytes(AsyncFlushSettings asyncFlushSettings) {
+        // a flush larger than a message of the transport is split anyway, it does not save a send; only the adaptive
+        // flush counts bytes
+        int maxMessageSize = this.transport.getMaxMessageSize();
+        if (asyncFlushSettings.isAdaptive() && asyncFlushSettings.getMaxBytes() > (long)maxMessageSize) {
+            LOG.info("Capping the asynchronous flush of {} bytes at the {} bytes of a message of {}", new Object[]{asyncFlushSettings.getMaxBytes(), maxMessageSize, this.transport});
+            return asyncFlushSettings.withMaxBytes((long)maxMessageSize);
+        } else {
+            return asyncFlushSettings;
+        }
+    }
+
+    private void requestFlush() {
+        synchronized(this.flushLock) {
+            this.flushRequested = true;
+            this.flushLock.notifyAll();
+        }
+    }
+
     public void send(Address dest, List<JGroupEventMessage> eventMessages) {
         if (this.alive && eventMessages != null && !eventMessages.isEmpty()) {
-            LinkedList<JGroupEventMessage> synchronousEventMessages = new LinkedList();
-            Iterator i$ = eventMessages.iterator();
+            int size = eventMessages.size();
+            int synchronousCount = 0;
 
-            while(i$.hasNext()) {
-                JGroupEventMessage groupEventMessage = (JGroupEventMessage)i$.next();
+            for (int i = 0; i < size; ++i) {
+                JGroupEventMessage groupEventMessage = (JGroupEventMessage)eventMessages.get(i);
                 if (groupEventMessage.isAsync()) {
-                    long asyncTime = groupEventMessage.getAsyncTime();
-                    Queue<JGroupEventMessage> queue = this.getMessageQueue(asyncTime);
-                    queue.offer(groupEventMessage);
+                    AsyncFlushQueue queue = this.getMessageQueue(groupEventMessage.getAsyncTime());
+                    if (queue.offer(groupEventMessage)) {
+                        this.requestFlush();
+                    }
+
                     LOG.trace("Queued {} for asynchronous sending.", groupEventMessage);
                 } else {
-                    synchronousEventMessages.add(groupEventMessage);
+                    ++synchronousCount;
                     LOG.trace("Sending {} synchronously.", groupEventMessage);
                 }
             }
 
-            if (synchronousEventMessages.size() != 0) {
-                LOG.debug("Sending {} JGroupEventMessages synchronously.", synchronousEventMessages.size());
-                this.sendData(dest, synchronousEventMessages);
+            if (synchronousCount == size) {
+                LOG.debug("Sending {} JGroupEventMessages synchronously.", synchronousCount);
+                if (this.sendData(dest, eventMessages) >= 0) {
+                    sent(eventMessages);
+                }
+            } else if (synchronousCount != 0) {
+                List<JGroupEventMessage> synchronousEventMessages = new ArrayList(synchronousCount);
+
+                for (int i = 0; i < size; ++i) {
+                    JGroupEventMessage groupEventMessage = (JGroupEventMessage)eventMessages.get(i);
+                    if (!groupEventMessage.isAsync()) {
+                        synchronousEventMessages.add(groupEventMessage);
+                    }
+                }
+
+                LOG.debug("Sending {} JGroupEventMessages synchronously.", synchronousCount);
+                if (this.sendData(dest, synchronousEventMessages) >= 0) {
+                    sent(synchronousEventMessages);
+                }
             }
         } else {
             LOG.warn("Ignoring send request of {} messages. Replicator alive = {}", eventMessages == null ? null : eventMessages.size(), this.alive);
         }
     }
 
-    private Queue<JGroupEventMessage> getMessageQueue(long asyncTime) {
-        Queue<JGroupEventMessage> queue = (Queue)this.asyncReplicationQueues.get(asyncTime);
+    public int sendSynchronously(Address dest, List<JGroupEventMessage> eventMessages) {
+        if (this.alive && eventMessages != null && !eventMessages.isEmpty()) {
+            return this.sendData(dest, eventMessages);
+        } else {
+            return -1;
+        }
+    }
+
+    public int send(Address dest, JGroupEventMessage eventMessage, Message.Flag... flags) {
+        if (this.alive && eventMessage != null) {
+            LOG.trace("Sending {} immediately with flags {}.", eventMessage, flags);
+            return this.sendData(dest, Collections.singletonList(eventMessage), flags);
+        } else {
+            return -1;
+        }
+    }
+
+    private AsyncFlushQueue getMessageQueue(long asyncTime) {
+        JGroupsCachePeer.AsyncQueue lastQueue = this.lastAsyncQueue;
+        if (lastQueue != null && lastQueue.asyncTime == asyncTime) {
+            return lastQueue.queue;
+        }
+
+        AsyncFlushQueue queue = this.lookupMessageQueue(asyncTime);
+        this.lastAsyncQueue = new JGroupsCachePeer.AsyncQueue(asyncTime, queue);
+        return queue;
+    }
+
+    private AsyncFlushQueue lookupMessageQueue(long asyncTime) {
+        AsyncFlushQueue queue = (AsyncFlushQueue)this.asyncReplicationQueues.get(asyncTime);
         if (queue == null) {
-            Queue<JGroupEventMessage> newQueue = new ConcurrentLinkedQueue();
-            queue = (Queue)this.asyncReplicationQueues.putIfAbsent(asyncTime, newQueue);
+            AsyncFlushQueue newQueue = new AsyncFlushQueue(asyncTime, this.asyncFlushSettings);
+            queue = (AsyncFlushQueue)this.asyncReplicationQueues.putIfAbsent(asyncTime, newQueue);
             if (queue == null) {
-                LOG.debug("Created asynchronous message queue for {}ms period", asyncTime);
-                JGroupsCachePeer.AsyncTimerTask task = new JGroupsCachePeer.AsyncTimerTask(newQueue);
-                this.timer.schedule(task, asyncTime, asyncTime);
+                LOG.debug("Created asynchronous message queue for at most {}ms linger with {}", asyncTime, this.asyncFlushSettings);
                 return newQueue;
             }
         }
@@ -124,7 +233,11 @@ public class JGroupsCachePeer implements CachePeer {
         return queue;
     }
 
-    private void sendData(Address dest, List<? extends Serializable> dataList) {
+    private int sendData(Address dest, List<? extends Serializable> dataList) {
+        return this.sendData(dest, dataList, NO_FLAGS);
+    }
+
+    private int sendData(Address dest, List<? extends Serializable> dataList, Message.Flag[] flags) {
         Serializable toSend;
         if (dataList.size() == 1) {
             toSend = (Serializable)dataList.get(0);
@@ -134,55 +247,240 @@ public class JGroupsCachePeer implements CachePeer {
 
         byte[] data;
         try {
-            data = Util.objectToByteBuffer(toSend);
-        } catch (Exception var9) {
-            LOG.error("Error serializing data, it will not be sent: " + toSend, var9);
-            return;
+            data = encode(toSend);
+        } catch (Exception var5) {
+            LOG.error("Error serializing data, it will not be sent: " + toSend, var5);
+            return -1;
+        }
+
+        if (data.length > this.transport.getMaxMessageSize() && dataList.size() > 1) {
+            // the transport does not fragment, the halves are sent one after the other to keep the order
+            int half = dataList.size() / 2;
+            int first = this.sendData(dest, new ArrayList(dataList.subList(0, half)), flags);
+            int second = this.sendData(dest, new ArrayList(dataList.subList(half, dataList.size())), flags);
+            return first >= 0 && second >= 0 ? first + second : -1;
+        }
+
+        if (dest == null && this.outbox != null && isReplicationEvents(dataList)) {
+            return this.transmitDurably(data, flags, toSend);
+        } else {
+            return this.transmit(dest, data, flags, toSend);
+        }
+    }
+
+    private static boolean isReplicationEvents(List<? extends Serializable> dataList) {
+        for (int i = 0; i < dataList.size(); ++i) {
+            Serializable data = (Serializable)dataList.get(i);
+            if (!(data instanceof JGroupEventMessage)) {
+                return false;
+            }
+
+            switch(((JGroupEventMessage)data).getEvent()) {
+                case 0:
+                case 1:
+                case 3:
+                case JGroupsInterestManager.INTEREST_INVALIDATION:
+                case JGroupsCacheReplicator.TOUCH:
+                case JGroupsCacheReplicator.REMOVE_ALL_EPOCH:
+                case JGroupsCacheReplicator.VALUE_DELTA:
+                    break;
+                default:
+                    return false;
+            }
         }
 
-        Message msg = new Message(dest, data);
+        return true;
+    }
 
+    private int transmitDurably(byte[] data, Message.Flag[] flags, Object description) {
+        // while events wait in the outbox new ones queue up behind them, they must not overtake the replay
+        if (!this.outbox.hasPending()) {
+            try {
+                this.transport.send((Address)null, data, flags);
+                return data.length;
+            } catch (Exception var5) {
+                LOG.warn("Failed to send message(s), keeping them in the outbox until the transport is connected again: " + description, var5);
+            }
+        }
+
+        this.outbox.append(data);
+        return -1;
+    }
+
+    private void replayOutbox() {
+        // the outbox stays pending until the replay is done, events sent meanwhile are appended behind it
+        List<JGroupEventMessage> events = this.outbox.drain();
+        LOG.info("Replaying {} replication events from the outbox", events.size());
+        int sent = 0;
+        int chunkSize = CHUNK_SIZE;
+
+        while(sent < events.size()) {
+            List<JGroupEventMessage> chunk = new ArrayList(events.subList(sent, Math.min(events.size(), sent + chunkSize)));
+            try {
+                byte[] data = encode(chunk);
+                if (data.length > this.transport.getMaxMessageSize() && chunk.size() > 1) {
+                    // halved until the chunk fits into a message of the transport
+                    chunkSize = chunk.size() / 2;
+                    continue;
+                }
+
+                this.transport.send((Address)null, data, NO_FLAGS);
+            } catch (IOException var5) {
+                LOG.error("Error serializing data, it will not be sent: " + chunk, var5);
+            } catch (Exception var6) {
+                LOG.warn("Failed to replay the replication outbox, keeping " + (events.size() - sent) + " events until the transport is connected again", var6);
+                break;
+            }
+
+            sent += chunk.size();
+        }
+
+        this.outbox.replayed(new ArrayList(events.subList(sent, events.size())));
+    }
+
+    private boolean isOutboxReplayable() {
+        return this.outbox != null && this.outbox.hasPending() && this.transport.isConnected() && !this.getOtherGroupMembers().isEmpty();
+    }
+
+    public int sendEncoded(Address dest, byte[] data) {
+        if (this.alive && data != null && data.length != 0) {
+            return this.transmit(dest, data, NO_FLAGS, "encoded payload of " + data.length + " bytes");
+        } else {
+            return -1;
+        }
+    }
+
+    public static byte[] encode(List<JGroupEventMessage> eventMessages) throws IOException {
+        if (eventMessages.size() == 1) {
+            return encode((Serializable)eventMessages.get(0));
+        } else {
+            return encode((Serializable)eventMessages);
+        }
+    }
+
+    private static byte[] encode(Serializable toSend) throws IOException {
+        // the encode buffer is pooled, the message gets an exact copy as JGroups keeps it for retransmission
+        MessageEncoder encoder = null;
+        try {
+            encoder = MessageEncoder.acquire();
+            encoder.encode(toSend);
+            byte[] data = encoder.toByteArray();
+            encoder.reset();
+            return data;
+        } finally {
+            MessageEncoder.release(encoder);
+        }
+    }
+
+    private int transmit(Address dest, byte[] data, Message.Flag[] flags, Object description) {
         try {
-            this.channel.send(msg);
-        } catch (IllegalStateException var7) {
-            LOG.error("Failed to send message(s) due to the channel being disconnected or closed: " + toSend, var7);
-        } catch (Exception var8) {
-            LOG.error("Failed to send message(s) : " + toSend, var8);
+            this.transport.send(dest, data, flags);
+            return data.length;
+        } catch (IllegalStateException var6) {
+            LOG.error("Failed to send message(s) due to the transport being disconnected or closed: " + description, var6);
+        } catch (Exception var7) {
+            LOG.error("Failed to send message(s) : " + description, var7);
         }
 
+        return -1;
     }
 
     private void flushAllQueues() {
+        ArrayList<JGroupEventMessage> events = new ArrayList(CHUNK_SIZE);
         Iterator i$ = this.asyncReplicationQueues.values().iterator();
 
         while(i$.hasNext()) {
-            Queue<JGroupEventMessage> queue = (Queue)i$.next();
-            this.flushQueue(queue);
+            AsyncFlushQueue queue = (AsyncFlushQueue)i$.next();
+            this.flushQueue(queue, events, Integer.MAX_VALUE, false);
         }
 
     }
 
-    private void flushQueue(Queue<JGroupEventMessage> queue) {
-        ArrayList events = new ArrayList(100);
+    public void flushAsyncQueue(long asyncTime) {
+        AsyncFlushQueue queue = (AsyncFlushQueue)this.asyncReplicationQueues.get(asyncTime);
+        if (queue != null) {
+            this.flushQueue(queue, new ArrayList(CHUNK_SIZE), Integer.MAX_VALUE, false);
+        }
 
-        while(!queue.isEmpty()) {
-            events.clear();
+    }
 
-            while(!queue.isEmpty() && events.size() < 100) {
-                JGroupEventMessage event = (JGroupEventMessage)queue.poll();
-                if (event == null) {
+    private void flushQueue(AsyncFlushQueue queue, ArrayList<JGroupEventMessage> events, int limit, boolean full) {
+        // the flush thread and a replicator changing its interval must not interleave their chunks
+        synchronized(queue) {
+            int flushed = 0;
+            long bytes = 0L;
+
+            while(flushed < limit && !queue.isEmpty()) {
+                events.clear();
+                int drained = queue.drainInvalidations(events, INVALIDATION_CHUNK_SIZE);
+                if (drained == 0) {
+                    drained = queue.drainData(events, CHUNK_SIZE);
+                }
+
+                if (drained == 0) {
                     break;
                 }
 
-                if (event.isValid()) {
-                    events.add(event);
-                } else {
-                    LOG.warn("Collected soft reference during asynchronous queue flush, this event will not be replicated: " + event);
+                flushed += drained;
+                this.removeCollected(events);
+                if (!events.isEmpty()) {
+                    LOG.debug("Sending {} JGroupEventMessages from the asynchronous queue.", events.size());
+                    bytes += this.sendQueued(events);
+                }
+            }
+
+            events.clear();
+            queue.flushed(flushed, bytes, System.currentTimeMillis(), full);
+        }
+    }
+
+    private long sendQueued(ArrayList<JGroupEventMessage> events) {
+        // events queued for a single member split the chunk, the order of the queue is kept
+        long bytes = 0L;
+        int start = 0;
+
+        for (int i = 0; i <= events.size(); ++i) {
+            JGroupEventMessage event = i < events.size() ? (JGroupEventMessage)events.get(i) : null;
+            if (event == null || event instanceof AddressedEventMessage) {
+                if (i > start) {
+                    List<JGroupEventMessage> broadcast = start == 0 && event == null ? events : new ArrayList(events.subList(start, i));
+                    int sentBytes = this.sendData((Address)null, broadcast);
+                    if (sentBytes >= 0) {
+                        sent(broadcast);
+                        bytes += (long)sentBytes;
+                    }
+                }
+
+                if (event != null) {
+                    AddressedEventMessage addressed = (AddressedEventMessage)event;
+                    bytes += (long)Math.max(0, this.sendData(addressed.getDest(), Collections.singletonList(addressed.toMessage())));
                 }
+
+                start = i + 1;
             }
+        }
+
+        return bytes;
+    }
 
-            LOG.debug("Sending {} JGroupEventMessages from the asynchronous queue.", events.size());
-            this.sendData((Address)null, events);
+    private static void sent(List<JGroupEventMessage> events) {
+        // a value is only known to the other members once the transport took it, a failed send is copied again
+        for (int i = 0; i < events.size(); ++i) {
+            JGroupEventMessage event = (JGroupEventMessage)events.get(i);
+            if (event instanceof FingerprintedEventMessage) {
+                ((FingerprintedEventMessage)event).sent();
+            }
+        }
+
+    }
+
+    private void removeCollected(ArrayList<JGroupEventMessage> events) {
+        for (int i = events.size() - 1; i >= 0; --i) {
+            JGroupEventMessage event = (JGroupEventMessage)events.get(i);
+            if (!event.isValid()) {
+                LOG.warn("Collected soft reference during asynchronous queue flush, this event will not be replicated: " + event);
+                events.remove(i);
+            }
         }
 
     }
@@ -225,23 +523,87 @@ public class JGroupsCachePeer implements CachePeer {
     public void removeAll() throws RemoteException, IllegalStateException {
     }
 
-    private final class AsyncTimerTask extends TimerTask {
-        private final Queue<JGroupEventMessage> queue;
+    private static final class Members {
+        private final List<Address> view;
+        private final List<Address> otherMembers;
+
+        private Members(List<Address> members, Address localAddress) {
+            List<Address> addresses = new ArrayList(Math.max(0, members.size() - 1));
+            Iterator i$ = members.iterator();
+
+            while(i$.hasNext()) {
+                Address member = (Address)i$.next();
+                if (!member.equals(localAddress)) {
+                    addresses.add(member);
+                }
+            }
+
+            this.view = members;
+            this.otherMembers = Collections.unmodifiableList(addresses);
+        }
+    }
+
+    private static final class AsyncQueue {
+        private final long asyncTime;
+        private final AsyncFlushQueue queue;
+
+        private AsyncQueue(long asyncTime, AsyncFlushQueue queue) {
+            this.asyncTime = asyncTime;
+            this.queue = queue;
+        }
+    }
+
+    private final class AsyncFlusher implements Runnable {
+        private final ArrayList<JGroupEventMessage> events = new ArrayList(CHUNK_SIZE);
 
-        private AsyncTimerTask(Queue<JGroupEventMessage> newQueue) {
-            this.queue = newQueue;
+        private AsyncFlusher() {
         }
 
         public void run() {
-            if (!JGroupsCachePeer.this.alive) {
-                this.cancel();
-            } else {
-                JGroupsCachePeer.this.flushQueue(this.queue);
-                if (!JGroupsCachePeer.this.alive) {
-                    this.cancel();
+            while(JGroupsCachePeer.this.alive) {
+                long deadline = Long.MAX_VALUE;
+
+                try {
+                    if (JGroupsCachePeer.this.isOutboxReplayable()) {
+                        JGroupsCachePeer.this.replayOutbox();
+                    }
+
+                    if (JGroupsCachePeer.this.outbox != null && JGroupsCachePeer.this.outbox.hasPending()) {
+                        deadline = System.currentTimeMillis() + OUTBOX_RETRY_INTERVAL;
+                    }
+
+                    long now = System.currentTimeMillis();
+                    Iterator i$ = JGroupsCachePeer.this.asyncReplicationQueues.values().iterator();
+
+                    while(i$.hasNext()) {
+                        AsyncFlushQueue queue = (AsyncFlushQueue)i$.next();
+                        if (queue.isDue(now)) {
+                            JGroupsCachePeer.this.flushQueue(queue, this.events, queue.size(), queue.isFull());
+                        }
+
+                        deadline = Math.min(deadline, queue.getDeadline());
+                    }
+                } catch (RuntimeException var10) {
+                    LOG.error("Failed to flush the asynchronous replication queues", var10);
                 }
 
+                synchronized(JGroupsCachePeer.this.flushLock) {
+                    if (!JGroupsCachePeer.this.flushRequested && JGroupsCachePeer.this.alive) {
+                        long wait = deadline == Long.MAX_VALUE ? 0L : deadline - System.currentTimeMillis();
+                        if (deadline == Long.MAX_VALUE || wait > 0L) {
+                            try {
+                                JGroupsCachePeer.this.flushLock.wait(wait);
+                            } catch (InterruptedException var8) {
+                                Thread.currentThread().interrupt();
+                                return;
+                            }
+                        }
+                    }
+
+                    JGroupsCachePeer.this.flushRequested = false;
+                }
             }
+
         }
     }
 }
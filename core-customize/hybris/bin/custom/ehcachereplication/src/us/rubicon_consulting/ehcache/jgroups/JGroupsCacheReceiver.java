@@ -1,66 +1,114 @@
 package us.rubicon_consulting.ehcache.jgroups;
 
-
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Iterator;
 import java.util.List;
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
 import net.sf.ehcache.util.CacheTransactionHelper;
 import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
 import org.jgroups.Address;
-import org.jgroups.Message;
-import org.jgroups.Receiver;
-import org.jgroups.View;
+import org.jgroups.util.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class JGroupsCacheReceiver implements Receiver {
+public class JGroupsCacheReceiver implements ReplicationTransport.Listener {
     private static final Logger LOG = LoggerFactory.getLogger(JGroupsCacheReceiver.class.getName());
     private final CacheManager cacheManager;
     private final JGroupsBootstrapManager bootstrapManager;
+    // the optional managers are set before the transport is connected
+    private JGroupsAntiEntropyManager antiEntropyManager;
+    private JGroupsInterestManager interestManager;
+    private JGroupsPeerLookupManager peerLookupManager;
+    private InvalidationFence invalidationFence = new InvalidationFence();
+    private JGroupsTuningManager tuningManager;
+    private volatile ReplicationTrace trace;
 
     public JGroupsCacheReceiver(CacheManager cacheManager, JGroupsBootstrapManager bootstrapManager) {
         this.cacheManager = cacheManager;
         this.bootstrapManager = bootstrapManager;
     }
 
-    public void receive(Message msg) {
-        if (msg != null && msg.getLength() != 0) {
-            Object object = msg.getObject();
-            if (object == null) {
-                LOG.warn("Recieved a Message with a null object: {}", msg);
-            } else {
-                if (object instanceof JGroupEventMessage) {
-                    this.safeHandleJGroupNotification((JGroupEventMessage)object);
-                } else if (object instanceof List) {
-                    List<?> messages = (List)object;
-                    LOG.trace("Recieved List of {} JGroupEventMessages", messages.size());
-                    Iterator i$ = messages.iterator();
-
-                    while(i$.hasNext()) {
-                        Object message = i$.next();
-                        if (message != null) {
-                            if (message instanceof JGroupEventMessage) {
-                                this.safeHandleJGroupNotification((JGroupEventMessage)message);
-                            } else {
-                                LOG.warn("Recieved message of type " + List.class + " but member was of type '" + message.getClass() + "' and not " + JGroupEventMessage.class + ". Member ignored: " + message);
-                            }
+    public void setAntiEntropyManager(JGroupsAntiEntropyManager antiEntropyManager) {
+        this.antiEntropyManager = antiEntropyManager;
+    }
+
+    public void setInterestManager(JGroupsInterestManager interestManager) {
+        this.interestManager = interestManager;
+    }
+
+    public void setPeerLookupManager(JGroupsPeerLookupManager peerLookupManager) {
+        this.peerLookupManager = peerLookupManager;
+    }
+
+    public void setInvalidationFence(InvalidationFence invalidationFence) {
+        this.invalidationFence = invalidationFence;
+    }
+
+    public void setTuningManager(JGroupsTuningManager tuningManager) {
+        this.tuningManager = tuningManager;
+    }
+
+    public void setTrace(ReplicationTrace trace) {
+        this.trace = trace;
+    }
+
+    public ReplicationTrace getTrace() {
+        return this.trace;
+    }
+
+    public void receive(Address src, byte[] data, int offset, int length) {
+        if (data != null && length != 0) {
+            Object object;
+            try {
+                object = Util.objectFromByteBuffer(data, offset, length);
+            } catch (Exception var10) {
+                LOG.warn("Failed to decode a message of " + length + " bytes from " + src, var10);
+                return;
+            }
+
+            this.receive(src, object, length);
+        } else {
+            LOG.warn("Recieved an empty or null Message from {}", src);
+        }
+    }
+
+    public void receive(Address src, Object object, int length) {
+        if (object == null) {
+            LOG.warn("Recieved a Message with a null object from {}", src);
+        } else {
+            ReplicationTrace currentTrace = this.trace;
+            if (currentTrace != null) {
+                currentTrace.record(src, object, length);
+            }
+
+            if (object instanceof JGroupEventMessage) {
+                this.safeHandleJGroupNotification(src, (JGroupEventMessage)object);
+            } else if (object instanceof List) {
+                List<?> messages = (List)object;
+                LOG.trace("Recieved List of {} JGroupEventMessages", messages.size());
+                Iterator i$ = messages.iterator();
+
+                while(i$.hasNext()) {
+                    Object message = i$.next();
+                    if (message != null) {
+                        if (message instanceof JGroupEventMessage) {
+                            this.safeHandleJGroupNotification(src, (JGroupEventMessage)message);
+                        } else {
+                            LOG.warn("Recieved message of type " + List.class + " but member was of type '" + message.getClass() + "' and not " + JGroupEventMessage.class + ". Member ignored: " + message);
                         }
                     }
-                } else {
-                    LOG.warn("Recieved message with payload of type " + object.getClass() + " and not " + JGroupEventMessage.class + " or List<" + JGroupEventMessage.class.getSimpleName() + ">. Message: " + msg + " payload " + object);
                 }
-
+            } else {
+                LOG.warn("Recieved message with payload of type " + object.getClass() + " and not " + JGroupEventMessage.class + " or List<" + JGroupEventMessage.class.getSimpleName() + ">. Source: " + src + " payload " + object);
             }
-        } else {
-            LOG.warn("Recieved an empty or null Message: {}", msg);
+
         }
     }
 
-    private void safeHandleJGroupNotification(JGroupEventMessage message) {
+    private void safeHandleJGroupNotification(Address src, JGroupEventMessage message) {
         String cacheName = message.getCacheName();
         Ehcache cache = this.cacheManager.getEhcache(cacheName);
         boolean started = cache != null && CacheTransactionHelper.isTransactionStarted(cache);
@@ -69,7 +117,7 @@ public class JGroupsCacheReceiver implements Receiver {
         }
 
         try {
-            this.handleJGroupNotification(message);
+            this.handleJGroupNotification(src, message);
         } catch (Exception var9) {
             LOG.error("Failed to handle message " + message, var9);
         } finally {
@@ -81,12 +129,12 @@ public class JGroupsCacheReceiver implements Receiver {
 
     }
 
-    private void handleJGroupNotification(JGroupEventMessage message) {
+    private void handleJGroupNotification(Address src, JGroupEventMessage message) {
         String cacheName = message.getCacheName();
         switch(message.getEvent()) {
             case 10:
-                LOG.debug("received bootstrap request:    from {} for cache={}", message.getSerializableKey(), cacheName);
-                this.bootstrapManager.sendBootstrapResponse(message);
+                LOG.debug("received bootstrap request:    from {} for cache={}", src, cacheName);
+                this.bootstrapManager.sendBootstrapResponse(src, message);
                 break;
             case 11:
                 Serializable serializableKey = message.getSerializableKey();
@@ -101,13 +149,84 @@ public class JGroupsCacheReceiver implements Receiver {
                 LOG.debug("received bootstrap incomplete: cache={}", cacheName);
                 this.bootstrapManager.handleBootstrapIncomplete(message);
                 break;
+            case JGroupsBootstrapManager.MEMBER_STATE_REQUEST:
+                LOG.debug("received member state request: from {}", src);
+                this.bootstrapManager.handleMemberStateRequest(src, message);
+                break;
+            case JGroupsBootstrapManager.MEMBER_STATE:
+                LOG.debug("received member state:     from {}, state={}", src, message.getSerializableKey());
+                this.bootstrapManager.handleMemberState(src, message);
+                break;
+            case JGroupsBootstrapManager.BOOTSTRAP_ESTIMATE:
+                LOG.debug("received bootstrap estimate:   cache={}, elements={}", cacheName, message.getSerializableKey());
+                this.bootstrapManager.handleBootstrapEstimate(message);
+                break;
+            case JGroupsAntiEntropyManager.ANTI_ENTROPY_DIGEST:
+            case JGroupsAntiEntropyManager.ANTI_ENTROPY_KEYS:
+            case JGroupsAntiEntropyManager.ANTI_ENTROPY_FETCH:
+            case JGroupsAntiEntropyManager.ANTI_ENTROPY_REPAIR:
+                this.handleAntiEntropyNotification(src, message, cacheName);
+                break;
+            case JGroupsInterestManager.INTEREST_SUMMARY:
+                if (this.interestManager == null) {
+                    LOG.trace("received interest summary: cache={} - Ignoring, interest based replication is disabled on this member.", cacheName);
+                } else {
+                    LOG.debug("received interest summary: from {} for cache={}", src, cacheName);
+                    this.interestManager.handleSummary(src, message);
+                }
+                break;
+            case JGroupsPeerLookupManager.PEER_LOOKUP_REQUEST:
+                if (this.peerLookupManager == null) {
+                    LOG.trace("received peer lookup:     cache={} - Ignoring, peer lookups are disabled on this member.", cacheName);
+                } else {
+                    LOG.debug("received peer lookup:     from {} for cache={}, {}", new Object[]{src, cacheName, message.getSerializableKey()});
+                    this.peerLookupManager.handleRequest(src, message);
+                }
+                break;
+            case JGroupsPeerLookupManager.PEER_LOOKUP_RESPONSE:
+                if (this.peerLookupManager != null) {
+                    LOG.debug("received peer lookup response: from {} for cache={}, {}", new Object[]{src, cacheName, message.getSerializableKey()});
+                    this.peerLookupManager.handleResponse(message);
+                }
+                break;
+            case JGroupsTuningManager.REPLICATION_TUNING:
+                if (this.tuningManager != null) {
+                    LOG.debug("received replication tuning: from {}, {}", src, message.getSerializableKey());
+                    this.tuningManager.handleTuning(src, message);
+                }
+                break;
             default:
-                this.handleEhcacheNotification(message, cacheName);
+                this.handleEhcacheNotification(src, message, cacheName);
         }
 
     }
 
-    private void handleEhcacheNotification(JGroupEventMessage message, String cacheName) {
+    private void handleAntiEntropyNotification(Address src, JGroupEventMessage message, String cacheName) {
+        if (this.antiEntropyManager == null) {
+            LOG.trace("received anti-entropy message: cache={} - Ignoring, anti-entropy is disabled on this member.", cacheName);
+            return;
+        }
+
+        switch(message.getEvent()) {
+            case JGroupsAntiEntropyManager.ANTI_ENTROPY_DIGEST:
+                LOG.debug("received anti-entropy digest: from {} for cache={}", src, cacheName);
+                this.antiEntropyManager.handleDigest(src, message);
+                break;
+            case JGroupsAntiEntropyManager.ANTI_ENTROPY_KEYS:
+                LOG.debug("received anti-entropy keys:   from {} for cache={}", src, cacheName);
+                this.antiEntropyManager.handleKeys(src, message);
+                break;
+            case JGroupsAntiEntropyManager.ANTI_ENTROPY_FETCH:
+                LOG.debug("received anti-entropy fetch:  from {} for cache={}", src, cacheName);
+                this.antiEntropyManager.handleFetch(src, message);
+                break;
+            default:
+                this.antiEntropyManager.handleRepair(message);
+        }
+
+    }
+
+    private void handleEhcacheNotification(Address src, JGroupEventMessage message, String cacheName) {
         Ehcache cache = this.cacheManager.getEhcache(cacheName);
         if (cache == null) {
             LOG.warn("Received message {} for cache that does not exist: {}", message, cacheName);
@@ -116,11 +235,23 @@ public class JGroupsCacheReceiver implements Receiver {
             switch(message.getEvent()) {
                 case 0:
                     serializableKey = message.getSerializableKey();
-                    LOG.debug("received put:             cache={}, key={}", cacheName, serializableKey);
-                    cache.put(message.getElement(), true);
+                    Element element = message.getElement();
+                    if (element != null && element.isExpired()) {
+                        LOG.trace("received put:             cache={}, key={} - Ignoring, element already expired.", cacheName, serializableKey);
+                    } else if (element != null && !this.invalidationFence.admit(cacheName, serializableKey, ElementVersions.timestampOf(element), element.getVersion())) {
+                        LOG.debug("received put:             cache={}, key={} - Ignoring, not newer than the last write or removal of the key.", cacheName, serializableKey);
+                    } else {
+                        LOG.debug("received put:             cache={}, key={}", cacheName, serializableKey);
+                        cache.put(this.receivedCopy(cache, serializableKey, element), true);
+                    }
                     break;
                 case 1:
                     serializableKey = message.getSerializableKey();
+                    // members before version-aware apply send removals without their time, they count as received now
+                    long removalTime = message.getElement() != null ? message.getElement().getCreationTime() : System.currentTimeMillis();
+                    forgetReplicatedValue(cache, serializableKey);
+                    // applied even when the fence saw a later write, clocks of the members may be skewed
+                    this.invalidationFence.record(cacheName, serializableKey, removalTime);
                     if (cache.getQuiet(serializableKey) != null) {
                         LOG.debug("received remove:          cache={}, key={}", cacheName, serializableKey);
                         cache.remove(serializableKey, true);
@@ -128,33 +259,164 @@ public class JGroupsCacheReceiver implements Receiver {
                         LOG.trace("received remove:          cache={}, key={} - Ignoring, key is not in the local cache.", cacheName, serializableKey);
                     }
                     break;
+                case JGroupsInterestManager.INTEREST_INVALIDATION:
+                    InterestInvalidation invalidation = (InterestInvalidation)message.getSerializableKey();
+                    serializableKey = invalidation.getKey();
+                    forgetReplicatedValue(cache, serializableKey);
+                    if (this.interestManager != null && this.interestManager.isCopiedHere(invalidation)) {
+                        LOG.trace("received invalidation:    cache={}, key={} - Ignoring, a copy was sent to this member.", cacheName, serializableKey);
+                    } else if (cache.getQuiet(serializableKey) != null) {
+                        LOG.debug("received invalidation:    cache={}, key={}", cacheName, serializableKey);
+                        cache.remove(serializableKey, true);
+                    } else if (LOG.isTraceEnabled()) {
+                        LOG.trace("received invalidation:    cache={}, key={} - Ignoring, key is not in the local cache.", cacheName, serializableKey);
+                    }
+                    break;
+                case JGroupsCacheReplicator.TOUCH:
+                    serializableKey = message.getSerializableKey();
+                    this.handleTouch(cache, cacheName, serializableKey, message.getElement());
+                    break;
+                case JGroupsCacheReplicator.VALUE_DELTA:
+                    serializableKey = message.getSerializableKey();
+                    this.handleValueDelta(src, cache, cacheName, serializableKey, message.getElement());
+                    break;
+                case JGroupsCacheReplicator.VALUE_DELTA_MISS:
+                    serializableKey = message.getSerializableKey();
+                    this.handleValueDeltaMiss(src, cache, cacheName, serializableKey);
+                    break;
+                case JGroupsCacheReplicator.REMOVE_ALL_EPOCH:
+                    this.invalidationFence.clear(cacheName);
+                    forgetReplicatedValue(cache, (Serializable)null);
+                    if (cache instanceof EpochCacheDecorator) {
+                        LOG.debug("received remove all epoch: cache={}, generation={}", cacheName, message.getSerializableKey());
+                        ((EpochCacheDecorator)cache).advanceEpoch((Long)message.getSerializableKey());
+                    } else {
+                        LOG.debug("received remove all epoch: cache={} - Cache has no epochs, removing all elements.", cacheName);
+                        cache.removeAll(true);
+                    }
+                    break;
                 case 2:
                 default:
                     LOG.warn("Unknown JGroupsEventMessage type recieved, ignoring message: " + message);
                     break;
                 case 3:
                     LOG.debug("received remove all:      cache={}", cacheName);
+                    this.invalidationFence.clear(cacheName);
+                    forgetReplicatedValue(cache, (Serializable)null);
                     cache.removeAll(true);
             }
 
         }
     }
 
-    public void getState(OutputStream output) {
+    private void handleTouch(Ehcache cache, String cacheName, Serializable serializableKey, Element touch) {
+        Element current = cache.getQuiet(serializableKey);
+        if (current != null && touch != null) {
+            LOG.debug("received touch:           cache={}, key={}", cacheName, serializableKey);
+            cache.put(new Element(current.getObjectKey(), current.getObjectValue(), touch.getVersion(), touch.getCreationTime(), current.getLastAccessTime(), current.getHitCount(), touch.usesCacheDefaultLifespan(), touch.getTimeToLive(), touch.getTimeToIdle(), touch.getLastUpdateTime()), true);
+        } else if (LOG.isTraceEnabled()) {
+            LOG.trace("received touch:           cache={}, key={} - Ignoring, key is not in the local cache.", cacheName, serializableKey);
+        }
+
     }
 
-    public void setState(InputStream input) {
+    private void handleValueDelta(Address src, Ehcache cache, String cacheName, Serializable serializableKey, Element delta) {
+        if (delta == null || !(delta.getObjectValue() instanceof ValueDelta)) {
+            LOG.warn("Received a delta without a value for cache {}, key {}", cacheName, serializableKey);
+            return;
+        }
+
+        if (delta.isExpired()) {
+            LOG.trace("received delta:           cache={}, key={} - Ignoring, element already expired.", cacheName, serializableKey);
+            return;
+        }
+
+        JGroupsCacheReplicator replicator = JGroupsReplicationMonitor.getCacheReplicator(cache);
+        ValueDeltas valueDeltas = replicator == null ? null : replicator.getValueDeltas();
+        byte[] value = valueDeltas == null ? null : valueDeltas.apply(serializableKey, (ValueDelta)delta.getObjectValue());
+        if (value == null) {
+            LOG.debug("received delta:           cache={}, key={} - Base missing, requesting a copy from {}.", new Object[]{cacheName, serializableKey, src});
+            // the local element is older than the write the delta stands for, it must not be read until the copy arrives
+            if (cache.getQuiet(serializableKey) != null) {
+                cache.remove(serializableKey, true);
+            }
+
+            JGroupsCacheManagerPeerProvider provider = JGroupsCacheManagerPeerProvider.getCachePeerProvider(cache);
+            JGroupsCachePeer cachePeer = provider == null ? null : provider.getCachePeer();
+            if (cachePeer != null && src != null) {
+                cachePeer.send(src, new JGroupEventMessage(JGroupsCacheReplicator.VALUE_DELTA_MISS, serializableKey, (Element)null, cacheName));
+            }
+        } else if (!this.invalidationFence.admit(cacheName, serializableKey, ElementVersions.timestampOf(delta), delta.getVersion())) {
+            LOG.debug("received delta:           cache={}, key={} - Ignoring, not newer than the last write or removal of the key.", cacheName, serializableKey);
+        } else {
+            LOG.debug("received delta:           cache={}, key={}", cacheName, serializableKey);
+            if (replicator.getValueFingerprints() != null) {
+                replicator.getValueFingerprints().remove(serializableKey);
+            }
+
+            valueDeltas.received(serializableKey, value);
+
+            Element element = SerializedValue.copy(delta, SerializedValue.fromBytes(value));
+            cache.put(replicator.isLazyValues() ? element : SerializedValue.unwrap(element), true);
+        }
+
     }
 
-    public void block() {
+    private void handleValueDeltaMiss(Address src, Ehcache cache, String cacheName, Serializable serializableKey) {
+        Element current = cache.getQuiet(serializableKey);
+        JGroupsCacheReplicator replicator = JGroupsReplicationMonitor.getCacheReplicator(cache);
+        if (current != null && replicator != null && src != null) {
+            LOG.debug("received delta miss:      from {} for cache={}, key={} - Sending a copy.", new Object[]{src, cacheName, serializableKey});
+            replicator.sendCopy(cache, src, current);
+        } else if (LOG.isTraceEnabled()) {
+            LOG.trace("received delta miss:      cache={}, key={} - Ignoring, key is not in the local cache.", cacheName, serializableKey);
+        }
+
     }
 
-    public void unblock() {
+    private Element receivedCopy(Ehcache cache, Serializable serializableKey, Element element) {
+        JGroupsCacheReplicator replicator = JGroupsReplicationMonitor.getCacheReplicator(cache);
+        if (element == null) {
+            return null;
+        }
+
+        forgetReplicatedValue(cache, serializableKey);
+        if (!(element.getObjectValue() instanceof SerializedValue)) {
+            return element;
+        }
+
+        ValueDeltas valueDeltas = replicator == null ? null : replicator.getValueDeltas();
+        if (valueDeltas != null) {
+            // the bytes as sent are the base of the next delta of the key
+            try {
+                valueDeltas.received(serializableKey, ((SerializedValue)element.getObjectValue()).bytes());
+            } catch (IOException var7) {
+                valueDeltas.remove(serializableKey);
+            }
+        }
+
+        // pre-serialized values stay serialized only in caches reading them through a decorator
+        return replicator != null && replicator.isLazyValues() ? element : SerializedValue.unwrap(element);
     }
 
-    public void suspect(Address suspectedMbr) {
+    private static void forgetReplicatedValue(Ehcache cache, Serializable serializableKey) {
+        JGroupsCacheReplicator replicator = JGroupsReplicationMonitor.getCacheReplicator(cache);
+        if (replicator != null) {
+            if (serializableKey == null) {
+                replicator.forgetReplicatedValues();
+            } else {
+                replicator.forgetReplicatedValue(serializableKey);
+            }
+        }
+
     }
 
-    public void viewAccepted(View newView) {
+    public void viewAccepted(List<Address> members) {
+        // a bootstrap waiting for the states of the members stops waiting for those that left
+        this.bootstrapManager.viewAccepted(members);
+        if (this.tuningManager != null) {
+            this.tuningManager.viewAccepted(members);
+        }
+
     }
 }
@@ -0,0 +1,475 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.Status;
+import net.sf.ehcache.distribution.CacheManagerPeerProvider;
+import net.sf.ehcache.distribution.CachePeer;
+import net.sf.ehcache.distribution.CacheReplicator;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class JGroupsCacheReplicator implements CacheReplicator {
+    public static final long DEFAULT_ASYNC_INTERVAL = 1000L;
+    public static final int TOUCH = 24;
+    public static final int REMOVE_ALL_EPOCH = 25;
+    public static final int VALUE_DELTA = 29;
+    public static final int VALUE_DELTA_MISS = 30;
+    private static final Logger LOG = LoggerFactory.getLogger(JGroupsCacheReplicator.class.getName());
+    // changed at runtime through the replication monitor
+    private volatile boolean replicatePuts;
+    private volatile boolean replicateUpdates;
+    private volatile boolean replicateUpdatesViaCopy;
+    private volatile boolean replicateRemovals;
+    private volatile boolean replicateAsync;
+    private volatile long asyncInterval;
+    private final ReplicationPolicy replicationPolicy;
+    private final ValueFingerprints valueFingerprints;
+    private final boolean lazyValues;
+    private final Message.Flag[] invalidationFlags;
+    private final boolean epochRemoveAll;
+    private final boolean replicateByInterest;
+    private final ValueDeltas valueDeltas;
+    private volatile Status status;
+    // events are created and sent under the read lock, a change of the interval takes the write lock
+    private final ReadWriteLock intervalLock = new ReentrantReadWriteLock();
+
+    public JGroupsCacheReplicator(boolean replicatePuts, boolean replicateUpdates, boolean replicateUpdatesViaCopy, boolean replicateRemovals, boolean replicateAsync, long asyncInterval, ReplicationPolicy replicationPolicy, ValueFingerprints valueFingerprints, boolean lazyValues, Message.Flag[] invalidationFlags, boolean epochRemoveAll, boolean replicateByInterest, ValueDeltas valueDeltas) {
+        this.replicatePuts = replicatePuts;
+        this.replicateUpdates = replicateUpdates;
+        this.replicateUpdatesViaCopy = replicateUpdatesViaCopy;
+        this.replicateRemovals = replicateRemovals;
+        this.replicateAsync = replicateAsync;
+        this.asyncInterval = asyncInterval;
+        this.replicationPolicy = replicationPolicy;
+        this.valueFingerprints = valueFingerprints;
+        this.lazyValues = lazyValues;
+        this.invalidationFlags = invalidationFlags;
+        this.epochRemoveAll = epochRemoveAll;
+        this.replicateByInterest = replicateByInterest;
+        this.valueDeltas = valueDeltas;
+        this.status = Status.STATUS_ALIVE;
+    }
+
+    public boolean isReplicateUpdatesViaCopy() {
+        return this.replicateUpdatesViaCopy;
+    }
+
+    public synchronized void setReplicationMode(String mode) {
+        if ("copy".equalsIgnoreCase(mode)) {
+            this.replicatePuts = true;
+            this.replicateUpdates = true;
+            this.replicateUpdatesViaCopy = true;
+            this.replicateRemovals = true;
+        } else if ("invalidate".equalsIgnoreCase(mode)) {
+            // other members only hold the keys they loaded themselves, a put of a new key does not concern them
+            this.replicatePuts = false;
+            this.replicateUpdates = true;
+            this.replicateUpdatesViaCopy = false;
+            this.replicateRemovals = true;
+        } else {
+            if (!"off".equalsIgnoreCase(mode)) {
+                throw new IllegalArgumentException("Unknown replication mode '" + mode + "', expected copy, invalidate or off");
+            }
+
+            this.replicatePuts = false;
+            this.replicateUpdates = false;
+            this.replicateRemovals = false;
+        }
+
+    }
+
+    public long getAsyncInterval() {
+        return this.replicateAsync ? this.asyncInterval : 0L;
+    }
+
+    public synchronized void setAsyncInterval(long asyncInterval, JGroupsCachePeer cachePeer) {
+        this.intervalLock.writeLock().lock();
+
+        try {
+            // events still queued with the old interval are sent before the first event of the new one
+            if (this.replicateAsync && cachePeer != null) {
+                cachePeer.flushAsyncQueue(this.asyncInterval);
+            }
+
+            // the asynchronous queue of the new interval is created by the cache peer on the first event
+            if (asyncInterval <= 0L) {
+                this.replicateAsync = false;
+            } else {
+                this.asyncInterval = Math.max(JGroupsCacheReplicatorFactory.MINIMUM_ASYNC_INTERVAL, asyncInterval);
+                this.replicateAsync = true;
+            }
+        } finally {
+            this.intervalLock.writeLock().unlock();
+        }
+
+    }
+
+    public ReplicationPolicy getReplicationPolicy() {
+        return this.replicationPolicy;
+    }
+
+    public ValueFingerprints getValueFingerprints() {
+        return this.valueFingerprints;
+    }
+
+    public boolean isLazyValues() {
+        return this.lazyValues;
+    }
+
+    public boolean isReplicateByInterest() {
+        return this.replicateByInterest;
+    }
+
+    public ValueDeltas getValueDeltas() {
+        return this.valueDeltas;
+    }
+
+    public boolean notAlive() {
+        return !this.alive();
+    }
+
+    public boolean alive() {
+        return this.status == Status.STATUS_ALIVE;
+    }
+
+    public void notifyElementPut(Ehcache cache, Element element) throws CacheException {
+        if (this.notAlive() || !this.replicatePuts) {
+            return;
+        }
+
+        this.intervalLock.readLock().lock();
+
+        try {
+            this.replicateElement(cache, element, false);
+        } finally {
+            this.intervalLock.readLock().unlock();
+        }
+
+    }
+
+    public void notifyElementUpdated(Ehcache cache, Element element) throws CacheException {
+        if (this.notAlive() || !this.replicateUpdates) {
+            return;
+        }
+
+        this.intervalLock.readLock().lock();
+
+        try {
+            if (this.replicateUpdatesViaCopy) {
+                this.replicateElement(cache, element, true);
+            } else {
+                this.replicateRemoval(cache, element.getObjectKey());
+            }
+        } finally {
+            this.intervalLock.readLock().unlock();
+        }
+
+    }
+
+    public void notifyElementRemoved(Ehcache cache, Element element) throws CacheException {
+        if (this.notAlive() || !this.replicateRemovals || isStale(cache, element)) {
+            return;
+        }
+
+        this.intervalLock.readLock().lock();
+
+        try {
+            this.replicateRemoval(cache, element.getObjectKey());
+        } finally {
+            this.intervalLock.readLock().unlock();
+        }
+
+    }
+
+    private static boolean isStale(Ehcache cache, Element element) {
+        // an element older than the epoch was removed by a replicated remove all already
+        Ehcache decorated = cache.getCacheManager() == null ? null : cache.getCacheManager().getEhcache(cache.getName());
+        return decorated instanceof EpochCacheDecorator && ((EpochCacheDecorator)decorated).isStale(element);
+    }
+
+    public void notifyRemoveAll(Ehcache cache) {
+        if (this.notAlive() || !this.replicateRemovals) {
+            return;
+        }
+
+        LOG.debug("Remove all elements called on {}", cache.getName());
+        this.forgetReplicatedValues();
+        this.intervalLock.readLock().lock();
+
+        try {
+            if (this.epochRemoveAll) {
+                Ehcache decorated = cache.getCacheManager().getEhcache(cache.getName());
+                long generation = decorated instanceof EpochCacheDecorator ? ((EpochCacheDecorator)decorated).nextGeneration() : 0L;
+                this.sendNotification(cache, this.createMessage(REMOVE_ALL_EPOCH, generation, (Element)null, cache.getName()));
+            } else {
+                this.sendNotification(cache, this.createMessage(3, (Serializable)null, (Element)null, cache.getName()));
+            }
+        } finally {
+            this.intervalLock.readLock().unlock();
+        }
+
+    }
+
+    public void notifyElementExpired(Ehcache cache, Element element) {
+    }
+
+    public void notifyElementEvicted(Ehcache cache, Element element) {
+    }
+
+    private void replicateElement(Ehcache cache, Element element, boolean update) {
+        if (!element.isSerializable()) {
+            LOG.warn("Object with key {} is not Serializable and cannot be replicated.", element.getObjectKey());
+            return;
+        }
+
+        InvalidationFence fence = getInvalidationFence(cache);
+        if (fence != null) {
+            // a replicated write of another member older than this one must not overwrite it later, anti-entropy compares
+            // the stamp of the write, not the times the caches of the other members give the copy
+            fence.stamp(cache.getName(), element.getObjectKey(), ElementVersions.timestampOf(element), element.getVersion());
+        }
+
+        // the value is serialized once, the copy size, fingerprints and deltas use the bytes that are sent
+        Element copy = this.isPreSerialized() ? this.wrapValue(element) : element;
+        switch(this.replicationPolicy.decide(copy)) {
+            case COPY:
+                this.replicateCopy(cache, element, copy);
+                break;
+            case INVALIDATE:
+                LOG.trace("Replicating {} of cache {} as invalidation, it exceeds {} bytes", new Object[]{element.getObjectKey(), cache.getName(), this.replicationPolicy.getMaxCopySize()});
+                this.replicateRemoval(cache, element.getObjectKey());
+                break;
+            default:
+                LOG.trace("Not replicating {} of cache {} due to {}", new Object[]{element.getObjectKey(), cache.getName(), this.replicationPolicy});
+                this.forgetReplicatedValue(element.getObjectKey());
+                if (update && !this.replicationPolicy.isExcluded(element.getObjectKey())) {
+                    this.replicateRemoval(cache, element.getObjectKey());
+                }
+        }
+    }
+
+    private void replicateCopy(Ehcache cache, Element element, Element copy) {
+        ValueFingerprints.Pending fingerprint = null;
+        if (this.valueFingerprints != null) {
+            fingerprint = this.compareFingerprint(copy);
+            switch(fingerprint.getResult()) {
+                case UNCHANGED:
+                    LOG.trace("Not replicating {} of cache {}, the value did not change", element.getObjectKey(), cache.getName());
+                    return;
+                case TOUCH:
+                    LOG.trace("Replicating {} of cache {} as touch, the value did not change", element.getObjectKey(), cache.getName());
+                    Element touch = new Element(element.getObjectKey(), (Object)null, element.getVersion(), element.getCreationTime(), element.getLastAccessTime(), 0L, element.usesCacheDefaultLifespan(), element.getTimeToLive(), element.getTimeToIdle(), element.getLastUpdateTime());
+                    this.sendNotification(cache, this.createMessage(TOUCH, element.getKey(), touch, cache.getName(), fingerprint));
+                    return;
+                default:
+                    break;
+            }
+        }
+
+        if (this.valueDeltas != null && !this.replicateByInterest && copy.getObjectValue() instanceof SerializedValue) {
+            JGroupEventMessage delta = this.createDelta(cache, copy, fingerprint);
+            if (delta != null) {
+                LOG.trace("Replicating {} of cache {} as delta {}", new Object[]{element.getObjectKey(), cache.getName(), delta.getElement().getObjectValue()});
+                this.sendNotification(cache, delta);
+                return;
+            }
+        }
+
+        JGroupEventMessage message = this.createMessage(0, element.getKey(), copy, cache.getName(), fingerprint);
+        if (this.replicateByInterest) {
+            JGroupsCacheManagerPeerProvider provider = JGroupsCacheManagerPeerProvider.getCachePeerProvider(cache);
+            JGroupsInterestManager interestManager = provider == null ? null : provider.getInterestManager();
+            if (interestManager != null && interestManager.replicate(cache.getName(), element.getKey(), copy, message)) {
+                // the copies go to single members, the value is not fingerprinted and the next write of it is copied again
+                return;
+            }
+        }
+
+        this.sendNotification(cache, message);
+    }
+
+    private ValueFingerprints.Pending compareFingerprint(Element copy) {
+        if (copy.getObjectValue() instanceof SerializedValue) {
+            try {
+                return this.valueFingerprints.compare(copy, ((SerializedValue)copy.getObjectValue()).bytes());
+            } catch (IOException var3) {
+                LOG.debug("Failed to fingerprint value of " + copy.getObjectKey() + ", it will be replicated", var3);
+            }
+        }
+
+        return this.valueFingerprints.compare(copy);
+    }
+
+    private JGroupEventMessage createDelta(Ehcache cache, Element copy, ValueFingerprints.Pending fingerprint) {
+        ValueDelta delta;
+        try {
+            delta = this.valueDeltas.encode(copy.getObjectKey(), ((SerializedValue)copy.getObjectValue()).bytes());
+        } catch (IOException var5) {
+            LOG.debug("Failed to encode a delta of " + copy.getObjectKey() + ", replicating a copy", var5);
+            this.valueDeltas.remove(copy.getObjectKey());
+            return null;
+        }
+
+        return delta == null ? null : this.createMessage(VALUE_DELTA, copy.getKey(), SerializedValue.copy(copy, delta), cache.getName(), fingerprint);
+    }
+
+    public void sendCopy(Ehcache cache, Address dest, Element element) {
+        // a member missing the base of a delta gets the current value directly, other members are not concerned
+        JGroupsCacheManagerPeerProvider provider = JGroupsCacheManagerPeerProvider.getCachePeerProvider(cache);
+        JGroupsCachePeer cachePeer = provider == null ? null : provider.getCachePeer();
+        if (cachePeer != null && element.isSerializable()) {
+            Element copy = this.isPreSerialized() ? this.wrapValue(element) : element;
+            cachePeer.send(dest, new JGroupEventMessage(0, copy.getKey(), copy, cache.getName()));
+        }
+
+    }
+
+    public void forgetReplicatedValue(Object key) {
+        // the key was written or removed elsewhere, the value this member replicated last is no longer the one of the cluster
+        if (this.valueFingerprints != null) {
+            this.valueFingerprints.remove(key);
+        }
+
+        if (this.valueDeltas != null) {
+            this.valueDeltas.remove(key);
+        }
+
+    }
+
+    public void forgetReplicatedValues() {
+        if (this.valueFingerprints != null) {
+            this.valueFingerprints.clear();
+        }
+
+        if (this.valueDeltas != null) {
+            this.valueDeltas.clear();
+        }
+
+    }
+
+    private boolean isPreSerialized() {
+        return this.lazyValues || this.valueDeltas != null || this.valueFingerprints != null || this.replicationPolicy.getMaxCopySize() > 0L;
+    }
+
+    private Element wrapValue(Element element) {
+        try {
+            return SerializedValue.wrap(element);
+        } catch (IOException var3) {
+            LOG.warn("Unable to pre-serialize the value of {}, replicating it eagerly", element.getObjectKey(), var3);
+            return element;
+        }
+    }
+
+    private void replicateRemoval(Ehcache cache, Object key) {
+        this.forgetReplicatedValue(key);
+
+        if (!(key instanceof Serializable)) {
+            LOG.warn("Key {} is not Serializable and cannot be replicated.", key);
+            return;
+        }
+
+        // the removal time lets receivers discard puts of the key it overtook
+        Element removal = new Element(key, (Object)null);
+        InvalidationFence fence = getInvalidationFence(cache);
+        if (fence != null) {
+            fence.record(cache.getName(), key, removal.getCreationTime());
+        }
+
+        if (this.invalidationFlags != null && this.invalidationFlags.length != 0) {
+            this.sendImmediately(cache, new JGroupEventMessage(1, (Serializable)key, removal, cache.getName()));
+        } else {
+            this.sendNotification(cache, this.createMessage(1, (Serializable)key, removal, cache.getName()));
+        }
+    }
+
+    private JGroupEventMessage createMessage(int event, Serializable key, Element element, String cacheName) {
+        return this.replicateAsync ? new JGroupEventMessage(event, key, element, cacheName, this.asyncInterval) : new JGroupEventMessage(event, key, element, cacheName);
+    }
+
+    private JGroupEventMessage createMessage(int event, Serializable key, Element element, String cacheName, ValueFingerprints.Pending fingerprint) {
+        if (fingerprint == null) {
+            return this.createMessage(event, key, element, cacheName);
+        } else {
+            return new FingerprintedEventMessage(event, key, element, cacheName, this.replicateAsync ? this.asyncInterval : -1L, fingerprint);
+        }
+    }
+
+    private void sendNotification(Ehcache cache, JGroupEventMessage message) {
+        List<CachePeer> peers = listRemoteCachePeers(cache);
+        Iterator i$ = peers.iterator();
+
+        while(i$.hasNext()) {
+            CachePeer cachePeer = (CachePeer)i$.next();
+
+            try {
+                cachePeer.send(Collections.singletonList(message));
+            } catch (Exception var7) {
+                LOG.error("Failed to send " + message + " to " + cachePeer, var7);
+            }
+        }
+
+    }
+
+    private void sendImmediately(Ehcache cache, JGroupEventMessage message) {
+        List<CachePeer> peers = listRemoteCachePeers(cache);
+        Iterator i$ = peers.iterator();
+
+        while(i$.hasNext()) {
+            CachePeer cachePeer = (CachePeer)i$.next();
+
+            try {
+                if (cachePeer instanceof JGroupsCachePeer) {
+                    ((JGroupsCachePeer)cachePeer).send((Address)null, message, this.invalidationFlags);
+                } else {
+                    cachePeer.send(Collections.singletonList(message));
+                }
+            } catch (Exception var7) {
+                LOG.error("Failed to send " + message + " to " + cachePeer, var7);
+            }
+        }
+
+    }
+
+    private static List<CachePeer> listRemoteCachePeers(Ehcache cache) {
+        CacheManagerPeerProvider provider = cache.getCacheManager().getCacheManagerPeerProvider(JGroupsCacheManagerPeerProvider.SCHEME_NAME);
+        if (provider == null) {
+            return Collections.emptyList();
+        } else {
+            return provider.listRemoteCachePeers(cache);
+        }
+    }
+
+    static JGroupEventMessage createRemoval(Serializable key, long removalTime, String cacheName) {
+        // receivers take the creation time of the element as the time of the removal
+        return new JGroupEventMessage(1, key, new Element(key, (Object)null, 1L, removalTime, 0L, 0L, true, 0, 0, 0L), cacheName);
+    }
+
+    private static InvalidationFence getInvalidationFence(Ehcache cache) {
+        CacheManagerPeerProvider provider = cache.getCacheManager().getCacheManagerPeerProvider(JGroupsCacheManagerPeerProvider.SCHEME_NAME);
+        return provider instanceof JGroupsCacheManagerPeerProvider ? ((JGroupsCacheManagerPeerProvider)provider).getInvalidationFence() : null;
+    }
+
+    public void dispose() {
+        this.status = Status.STATUS_SHUTDOWN;
+    }
+
+    public String toString() {
+        return "JGroupsCacheReplicator [replicatePuts=" + this.replicatePuts + ", replicateUpdates=" + this.replicateUpdates + ", replicateUpdatesViaCopy=" + this.replicateUpdatesViaCopy + ", replicateRemovals=" + this.replicateRemovals + ", replicateAsync=" + this.replicateAsync + ", asyncInterval=" + this.asyncInterval + "ms, " + this.replicationPolicy + "]";
+    }
+
+    public Object clone() throws CloneNotSupportedException {
+        return new JGroupsCacheReplicator(this.replicatePuts, this.replicateUpdates, this.replicateUpdatesViaCopy, this.replicateRemovals, this.replicateAsync, this.asyncInterval, this.replicationPolicy, this.valueFingerprints == null ? null : new ValueFingerprints(this.valueFingerprints.getMaxFingerprints()), this.lazyValues, this.invalidationFlags, this.epochRemoveAll, this.replicateByInterest, this.valueDeltas == null ? null : new ValueDeltas(this.valueDeltas.getMinSize(), this.valueDeltas.getMaxBases(), this.valueDeltas.getMaxBytes()));
+    }
+}
@@ -0,0 +1,153 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import net.sf.ehcache.event.CacheEventListener;
+import net.sf.ehcache.event.CacheEventListenerFactory;
+import net.sf.ehcache.util.PropertyUtil;
+import org.jgroups.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class JGroupsCacheReplicatorFactory extends CacheEventListenerFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(JGroupsCacheReplicatorFactory.class);
+    private static final String ASYNCHRONOUS_REPLICATION_INTERVAL_MILLIS = "asynchronousReplicationIntervalMillis";
+    private static final String REPLICATE_PUTS = "replicatePuts";
+    private static final String REPLICATE_UPDATES = "replicateUpdates";
+    private static final String REPLICATE_UPDATES_VIA_COPY = "replicateUpdatesViaCopy";
+    private static final String REPLICATE_REMOVALS = "replicateRemovals";
+    private static final String REPLICATE_ASYNCHRONOUSLY = "replicateAsynchronously";
+    private static final String SUPPRESS_UNCHANGED = "suppressUnchanged";
+    private static final String MAX_FINGERPRINTS = "maxFingerprints";
+    private static final String LAZY_VALUES = "lazyValues";
+    private static final String INVALIDATION_FLAGS = "invalidationFlags";
+    private static final String EPOCH_REMOVE_ALL = "epochRemoveAll";
+    private static final String REPLICATE_BY_INTEREST = "replicateByInterest";
+    private static final String REPLICATE_UPDATES_VIA_DELTA = "replicateUpdatesViaDelta";
+    private static final String DELTA_MIN_SIZE = "deltaMinSize";
+    private static final String MAX_DELTA_BASES = "maxDeltaBases";
+    private static final String MAX_DELTA_BASE_BYTES = "maxDeltaBaseBytes";
+    private static final int DEFAULT_MAX_FINGERPRINTS = 10000;
+    private static final int DEFAULT_DELTA_MIN_SIZE = 4096;
+    private static final int DEFAULT_MAX_DELTA_BASES = 1000;
+    private static final int DEFAULT_MAX_DELTA_BASE_BYTES = 67108864;
+    static final long MINIMUM_ASYNC_INTERVAL = 10L;
+
+    public JGroupsCacheReplicatorFactory() {
+    }
+
+    public CacheEventListener createCacheEventListener(Properties properties) {
+        LOG.debug("Creating JGroups CacheReplicator with properties:\n{}", properties);
+        boolean replicatePuts = this.extractBooleanProperty(properties, REPLICATE_PUTS, true);
+        boolean replicateUpdates = this.extractBooleanProperty(properties, REPLICATE_UPDATES, true);
+        boolean replicateUpdatesViaCopy = this.extractBooleanProperty(properties, REPLICATE_UPDATES_VIA_COPY, true);
+        boolean replicateRemovals = this.extractBooleanProperty(properties, REPLICATE_REMOVALS, true);
+        boolean replicateAsync = this.extractBooleanProperty(properties, REPLICATE_ASYNCHRONOUSLY, true);
+        long asyncInterval = this.extractAsynchronousReplicationIntervalMillis(properties);
+        ReplicationPolicy replicationPolicy = ReplicationPolicy.fromProperties(properties);
+        ValueFingerprints valueFingerprints = this.extractValueFingerprints(properties);
+        boolean lazyValues = this.extractBooleanProperty(properties, LAZY_VALUES, false);
+        Message.Flag[] invalidationFlags = this.extractInvalidationFlags(properties);
+        boolean epochRemoveAll = this.extractBooleanProperty(properties, EPOCH_REMOVE_ALL, false);
+        boolean replicateByInterest = this.extractBooleanProperty(properties, REPLICATE_BY_INTEREST, false);
+        ValueDeltas valueDeltas = this.extractValueDeltas(properties);
+        if (valueDeltas != null && replicateByInterest) {
+            LOG.warn("replicateUpdatesViaDelta has no effect together with replicateByInterest, members without a copy hold no base for a delta.");
+        }
+
+        return new JGroupsCacheReplicator(replicatePuts, replicateUpdates, replicateUpdatesViaCopy, replicateRemovals, replicateAsync, asyncInterval, replicationPolicy, valueFingerprints, lazyValues, invalidationFlags, epochRemoveAll, replicateByInterest, valueDeltas);
+    }
+
+    protected ValueDeltas extractValueDeltas(Properties properties) {
+        if (!this.extractBooleanProperty(properties, REPLICATE_UPDATES_VIA_DELTA, false)) {
+            return null;
+        }
+
+        int minSize = this.extractIntProperty(properties, DELTA_MIN_SIZE, DEFAULT_DELTA_MIN_SIZE);
+        int maxBases = this.extractIntProperty(properties, MAX_DELTA_BASES, DEFAULT_MAX_DELTA_BASES);
+        int maxBaseBytes = this.extractIntProperty(properties, MAX_DELTA_BASE_BYTES, DEFAULT_MAX_DELTA_BASE_BYTES);
+        return maxBases > 0 && maxBaseBytes > 0 ? new ValueDeltas(Math.max(BinaryDelta.BLOCK_SIZE, minSize), maxBases, (long)maxBaseBytes) : null;
+    }
+
+    protected int extractIntProperty(Properties properties, String propertyName, int defaultValue) {
+        String parsedString = PropertyUtil.extractAndLogProperty(propertyName, properties);
+        if (parsedString == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(parsedString.trim());
+        } catch (NumberFormatException var5) {
+            LOG.warn("Number format exception trying to set {}. Using the default instead. String value was: '{}'", propertyName, parsedString);
+            return defaultValue;
+        }
+    }
+
+    protected ValueFingerprints extractValueFingerprints(Properties properties) {
+        if (!this.extractBooleanProperty(properties, SUPPRESS_UNCHANGED, false)) {
+            return null;
+        }
+
+        int maxFingerprints = DEFAULT_MAX_FINGERPRINTS;
+        String parsedString = PropertyUtil.extractAndLogProperty(MAX_FINGERPRINTS, properties);
+        if (parsedString != null) {
+            try {
+                maxFingerprints = Integer.parseInt(parsedString.trim());
+            } catch (NumberFormatException var5) {
+                LOG.warn("Number format exception trying to set maxFingerprints. Using the default instead. String value was: '{}'", parsedString);
+            }
+        }
+
+        return maxFingerprints > 0 ? new ValueFingerprints(maxFingerprints) : null;
+    }
+
+    protected Message.Flag[] extractInvalidationFlags(Properties properties) {
+        String parsedString = PropertyUtil.extractAndLogProperty(INVALIDATION_FLAGS, properties);
+        if (parsedString == null) {
+            return null;
+        }
+
+        List<Message.Flag> flags = new ArrayList();
+        String[] arr$ = parsedString.trim().split("[|\\s]+");
+        int len$ = arr$.length;
+
+        for(int i$ = 0; i$ < len$; ++i$) {
+            String flag = arr$[i$];
+            if (flag.length() != 0) {
+                try {
+                    flags.add(Message.Flag.valueOf(flag.toUpperCase()));
+                } catch (IllegalArgumentException var9) {
+                    LOG.warn("Unknown JGroups message flag '{}' in invalidationFlags, it will be ignored. Supported are OOB, DONT_BUNDLE and NO_FC.", flag);
+                }
+            }
+        }
+
+        return (Message.Flag[])flags.toArray(new Message.Flag[flags.size()]);
+    }
+
+    protected long extractAsynchronousReplicationIntervalMillis(Properties properties) {
+        String parsedString = PropertyUtil.extractAndLogProperty(ASYNCHRONOUS_REPLICATION_INTERVAL_MILLIS, properties);
+        if (parsedString == null) {
+            return JGroupsCacheReplicator.DEFAULT_ASYNC_INTERVAL;
+        }
+
+        try {
+            long asyncInterval = Long.parseLong(parsedString.trim());
+            if (asyncInterval < MINIMUM_ASYNC_INTERVAL) {
+                LOG.warn("Trying to set the asynchronousReplicationIntervalMillis to an unsafe value of {}ms. Using the minimum of {}ms instead.", asyncInterval, MINIMUM_ASYNC_INTERVAL);
+                return MINIMUM_ASYNC_INTERVAL;
+            }
+
+            return asyncInterval;
+        } catch (NumberFormatException var5) {
+            LOG.warn("Number format exception trying to set asynchronousReplicationIntervalMillis. Using the default instead. String value was: '{}'", parsedString);
+            return JGroupsCacheReplicator.DEFAULT_ASYNC_INTERVAL;
+        }
+    }
+
+    protected boolean extractBooleanProperty(Properties properties, String propertyName, boolean defaultValue) {
+        String booleanCandidate = PropertyUtil.extractAndLogProperty(propertyName, properties);
+        return booleanCandidate != null ? PropertyUtil.parseBoolean(booleanCandidate.trim()) : defaultValue;
+    }
+}
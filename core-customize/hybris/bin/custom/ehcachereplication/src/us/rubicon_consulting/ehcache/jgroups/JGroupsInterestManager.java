@@ -0,0 +1,184 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+import net.sf.ehcache.event.CacheEventListener;
+import org.jgroups.Address;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class JGroupsInterestManager {
+    public static final int INTEREST_SUMMARY = 17;
+    public static final int INTEREST_INVALIDATION = 18;
+    private static final Logger LOG = LoggerFactory.getLogger(JGroupsInterestManager.class);
+    private final String clusterName;
+    private final JGroupsCachePeer cachePeer;
+    private final CacheManager cacheManager;
+    private final InterestSettings settings;
+    private final ConcurrentMap<String, InterestSketch> localSketches = new ConcurrentHashMap();
+    private final ConcurrentMap<String, ConcurrentMap<Address, InterestSummary>> memberSummaries = new ConcurrentHashMap();
+    private final Timer interestTimer;
+
+    public JGroupsInterestManager(String clusterName, JGroupsCachePeer cachePeer, CacheManager cacheManager, InterestSettings settings) {
+        this.clusterName = clusterName;
+        this.cachePeer = cachePeer;
+        this.cacheManager = cacheManager;
+        this.settings = settings;
+        this.interestTimer = new Timer(clusterName + " Interest Timer Thread", true);
+        this.interestTimer.schedule(new JGroupsInterestManager.PublishTimerTask(), settings.getInterval(), settings.getInterval());
+        LOG.info("Scheduled interest publication for '{}' with {}", clusterName, settings);
+    }
+
+    public void dispose() {
+        this.interestTimer.cancel();
+        this.interestTimer.purge();
+        this.localSketches.clear();
+        this.memberSummaries.clear();
+    }
+
+    public InterestSketch getSketch(String cacheName) {
+        InterestSketch sketch = (InterestSketch)this.localSketches.get(cacheName);
+        if (sketch == null) {
+            InterestSketch newSketch = new InterestSketch(this.settings.getBits(), this.settings.getHashes());
+            sketch = (InterestSketch)this.localSketches.putIfAbsent(cacheName, newSketch);
+            if (sketch == null) {
+                LOG.debug("Tracking read interest of cache {}", cacheName);
+                return newSketch;
+            }
+        }
+
+        return sketch;
+    }
+
+    public Map<Address, InterestSummary> getSummaries(String cacheName) {
+        Map<Address, InterestSummary> summaries = (Map)this.memberSummaries.get(cacheName);
+        return summaries == null ? Collections.<Address, InterestSummary>emptyMap() : Collections.unmodifiableMap(summaries);
+    }
+
+    public boolean replicate(String cacheName, Serializable key, Element element, JGroupEventMessage broadcast) {
+        Map<Address, InterestSummary> summaries = (Map)this.memberSummaries.get(cacheName);
+        if (summaries == null || summaries.isEmpty()) {
+            return false;
+        }
+
+        // members without a summary (older versions, just joined, not tracking reads) are always sent a copy
+        List<Address> copies = new ArrayList();
+        int invalidations = 0;
+        Iterator i$ = this.cachePeer.getOtherGroupMembers().iterator();
+
+        while(i$.hasNext()) {
+            Address member = (Address)i$.next();
+            InterestSummary summary = (InterestSummary)summaries.get(member);
+            if (summary == null || summary.mightContain(key)) {
+                copies.add(member);
+            } else {
+                ++invalidations;
+            }
+        }
+
+        if (invalidations == 0) {
+            return false;
+        }
+
+        LOG.trace("Replicating {} of cache {} as copy to {} and as invalidation to {} members", new Object[]{key, cacheName, copies, invalidations});
+        // asynchronous copies are queued with the other events of the cache and keep their order
+        Iterator c$ = copies.iterator();
+
+        while(c$.hasNext()) {
+            Address member = (Address)c$.next();
+            JGroupEventMessage copy = broadcast.isAsync() ? new AddressedEventMessage(member, 0, key, element, cacheName, broadcast.getAsyncTime()) : new JGroupEventMessage(0, key, element, cacheName);
+            this.cachePeer.send(member, Arrays.asList(copy));
+        }
+
+        JGroupEventMessage invalidation = broadcast.isAsync() ? new JGroupEventMessage(INTEREST_INVALIDATION, new InterestInvalidation(key, copies), (Element)null, cacheName, broadcast.getAsyncTime()) : new JGroupEventMessage(INTEREST_INVALIDATION, new InterestInvalidation(key, copies), (Element)null, cacheName);
+        this.cachePeer.send((Address)null, Arrays.asList(invalidation));
+        return true;
+    }
+
+    public void handleSummary(Address src, JGroupEventMessage message) {
+        if (src != null && message.getSerializableKey() instanceof InterestSummary) {
+            ConcurrentMap<Address, InterestSummary> summaries = (ConcurrentMap)this.memberSummaries.get(message.getCacheName());
+            if (summaries == null) {
+                ConcurrentMap<Address, InterestSummary> newSummaries = new ConcurrentHashMap();
+                summaries = (ConcurrentMap)this.memberSummaries.putIfAbsent(message.getCacheName(), newSummaries);
+                if (summaries == null) {
+                    summaries = newSummaries;
+                }
+            }
+
+            summaries.put(src, (InterestSummary)message.getSerializableKey());
+        } else {
+            LOG.warn("Ignoring invalid interest summary from {}: {}", src, message);
+        }
+
+    }
+
+    public boolean isCopiedHere(InterestInvalidation invalidation) {
+        return invalidation.isCopiedTo(this.cachePeer.getLocalAddress());
+    }
+
+    static boolean isReplicatedByInterest(Ehcache cache) {
+        Iterator i$ = cache.getCacheEventNotificationService().getCacheEventListeners().iterator();
+
+        while(i$.hasNext()) {
+            CacheEventListener listener = (CacheEventListener)i$.next();
+            if (listener instanceof JGroupsCacheReplicator && ((JGroupsCacheReplicator)listener).isReplicateByInterest()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void publish() {
+        List<Address> members = this.cachePeer.getOtherGroupMembers();
+        Iterator i$ = this.memberSummaries.values().iterator();
+
+        while(i$.hasNext()) {
+            ((Map)i$.next()).keySet().retainAll(members);
+        }
+
+        Iterator s$ = this.localSketches.entrySet().iterator();
+
+        while(s$.hasNext()) {
+            Entry<String, InterestSketch> entry = (Entry)s$.next();
+            Ehcache cache = this.cacheManager.getEhcache((String)entry.getKey());
+            if (cache == null) {
+                s$.remove();
+            } else {
+                InterestSummary summary = ((InterestSketch)entry.getValue()).rotate();
+                LOG.debug("Publishing read interest of cache {}: {}", entry.getKey(), summary);
+                this.cachePeer.send((Address)null, Arrays.asList(new JGroupEventMessage(INTEREST_SUMMARY, summary, (Element)null, (String)entry.getKey())));
+            }
+        }
+
+    }
+
+    private final class PublishTimerTask extends TimerTask {
+        private PublishTimerTask() {
+        }
+
+        public void run() {
+            try {
+                JGroupsInterestManager.this.publish();
+            } catch (Exception var2) {
+                LOG.error("Failed to publish the read interest of '" + JGroupsInterestManager.this.clusterName + "'", var2);
+            }
+
+        }
+    }
+}
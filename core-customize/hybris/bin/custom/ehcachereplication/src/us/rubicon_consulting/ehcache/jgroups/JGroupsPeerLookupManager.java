@@ -0,0 +1,244 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class JGroupsPeerLookupManager {
+    public static final int PEER_LOOKUP_REQUEST = 26;
+    public static final int PEER_LOOKUP_RESPONSE = 27;
+    private static final Logger LOG = LoggerFactory.getLogger(JGroupsPeerLookupManager.class);
+    private final JGroupsCachePeer cachePeer;
+    private final CacheManager cacheManager;
+    private final PeerLookupSettings settings;
+    private final ConcurrentMap<Long, JGroupsPeerLookupManager.PendingLookup> pendingLookups = new ConcurrentHashMap();
+    private final AtomicLong lookupIds = new AtomicLong();
+    private final AtomicInteger nextPeer = new AtomicInteger();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public JGroupsPeerLookupManager(JGroupsCachePeer cachePeer, CacheManager cacheManager, PeerLookupSettings settings) {
+        this.cachePeer = cachePeer;
+        this.cacheManager = cacheManager;
+        this.settings = settings;
+    }
+
+    public void dispose() {
+        Iterator i$ = this.pendingLookups.values().iterator();
+
+        while(i$.hasNext()) {
+            ((JGroupsPeerLookupManager.PendingLookup)i$.next()).cancel();
+        }
+
+        this.pendingLookups.clear();
+    }
+
+    public PeerLookupSettings getSettings() {
+        return this.settings;
+    }
+
+    public Element lookup(String cacheName, Serializable key) {
+        return (Element)this.lookupAll(cacheName, Collections.singletonList(key)).get(key);
+    }
+
+    public Map<Object, Element> lookupAll(String cacheName, Collection<?> keys) {
+        List<Address> peers = this.choosePeers();
+        if (peers.isEmpty() || keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        List<JGroupsPeerLookupManager.PendingLookup> batches = new ArrayList();
+        List<Serializable> batch = new ArrayList(Math.min(keys.size(), this.settings.getMaxKeys()));
+        Iterator i$ = keys.iterator();
+
+        while(i$.hasNext()) {
+            Object key = i$.next();
+            if (key instanceof Serializable) {
+                batch.add((Serializable)key);
+                if (batch.size() == this.settings.getMaxKeys()) {
+                    batches.add(this.request(cacheName, batch, peers));
+                    batch = new ArrayList(this.settings.getMaxKeys());
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            batches.add(this.request(cacheName, batch, peers));
+        }
+
+        // all batches are in flight before waiting, they share one deadline
+        long deadline = System.currentTimeMillis() + this.settings.getTimeout();
+        Map<Object, Element> found = new HashMap();
+        Iterator b$ = batches.iterator();
+
+        while(b$.hasNext()) {
+            JGroupsPeerLookupManager.PendingLookup pending = (JGroupsPeerLookupManager.PendingLookup)b$.next();
+
+            try {
+                if (!pending.await(deadline)) {
+                    this.timeouts.incrementAndGet();
+                    LOG.debug("Peer lookup {} of cache {} timed out after {}ms", new Object[]{pending.id, cacheName, this.settings.getTimeout()});
+                }
+            } catch (InterruptedException var12) {
+                Thread.currentThread().interrupt();
+            } finally {
+                this.pendingLookups.remove(pending.id);
+            }
+
+            found.putAll(pending.getFound());
+        }
+
+        this.lookups.addAndGet((long)keys.size());
+        this.hits.addAndGet((long)found.size());
+        LOG.trace("Peer lookup of {} keys of cache {} found {}", new Object[]{keys.size(), cacheName, found.size()});
+        return found;
+    }
+
+    private JGroupsPeerLookupManager.PendingLookup request(String cacheName, List<Serializable> keys, List<Address> peers) {
+        JGroupsPeerLookupManager.PendingLookup pending = new JGroupsPeerLookupManager.PendingLookup(this.lookupIds.incrementAndGet(), keys.size(), peers.size());
+        this.pendingLookups.put(pending.id, pending);
+        JGroupEventMessage message = new JGroupEventMessage(PEER_LOOKUP_REQUEST, new PeerLookup(pending.id, keys), (Element)null, cacheName);
+        Iterator i$ = peers.iterator();
+
+        while(i$.hasNext()) {
+            Address peer = (Address)i$.next();
+            if (this.cachePeer.send(peer, message, Message.Flag.OOB) < 0) {
+                pending.complete(Collections.<Element>emptyList());
+            }
+        }
+
+        return pending;
+    }
+
+    private List<Address> choosePeers() {
+        List<Address> members = this.cachePeer.getOtherGroupMembers();
+        int size = members.size();
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+
+        // peers are asked in rotation to spread the lookups over the cluster
+        int count = Math.min(size, this.settings.getPeers());
+        int start = (this.nextPeer.getAndIncrement() & Integer.MAX_VALUE) % size;
+        List<Address> peers = new ArrayList(count);
+
+        for(int i = 0; i < count; ++i) {
+            peers.add(members.get((start + i) % size));
+        }
+
+        return peers;
+    }
+
+    public void handleRequest(Address src, JGroupEventMessage message) {
+        PeerLookup lookup = (PeerLookup)message.getSerializableKey();
+        Ehcache cache = this.cacheManager.getEhcache(message.getCacheName());
+        List<Element> found = new ArrayList();
+        if (cache != null) {
+            Iterator i$ = lookup.getKeys().iterator();
+
+            while(i$.hasNext()) {
+                Element element = cache.getQuiet((Serializable)i$.next());
+                if (element != null && !element.isExpired() && element.isSerializable()) {
+                    found.add(element);
+                }
+            }
+        }
+
+        // empty responses are sent too, the requester then stops waiting for this member
+        this.cachePeer.send(src, new JGroupEventMessage(PEER_LOOKUP_RESPONSE, lookup.respond(found), (Element)null, message.getCacheName()), Message.Flag.OOB);
+    }
+
+    public void handleResponse(JGroupEventMessage message) {
+        PeerLookup lookup = (PeerLookup)message.getSerializableKey();
+        JGroupsPeerLookupManager.PendingLookup pending = (JGroupsPeerLookupManager.PendingLookup)this.pendingLookups.get(lookup.getId());
+        if (pending == null) {
+            LOG.trace("Ignoring late peer lookup response {} of cache {}", lookup, message.getCacheName());
+        } else {
+            pending.complete(lookup.getElements());
+        }
+
+    }
+
+    public long getLookups() {
+        return this.lookups.get();
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getTimeouts() {
+        return this.timeouts.get();
+    }
+
+    public String toString() {
+        return "JGroupsPeerLookupManager [lookups=" + this.lookups.get() + ", hits=" + this.hits.get() + ", timeouts=" + this.timeouts.get() + ", " + this.settings + "]";
+    }
+
+    private static final class PendingLookup {
+        private final long id;
+        private final int keys;
+        private final Map<Object, Element> found = new HashMap();
+        private int responses;
+
+        private PendingLookup(long id, int keys, int responses) {
+            this.id = id;
+            this.keys = keys;
+            this.responses = responses;
+        }
+
+        private synchronized void complete(List<Element> elements) {
+            Iterator i$ = elements.iterator();
+
+            while(i$.hasNext()) {
+                Element element = (Element)i$.next();
+                if (!this.found.containsKey(element.getObjectKey())) {
+                    this.found.put(element.getObjectKey(), element);
+                }
+            }
+
+            --this.responses;
+            this.notifyAll();
+        }
+
+        private synchronized void cancel() {
+            this.responses = 0;
+            this.notifyAll();
+        }
+
+        private synchronized boolean await(long deadline) throws InterruptedException {
+            while(this.found.size() < this.keys && this.responses > 0) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0L) {
+                    return false;
+                }
+
+                this.wait(wait);
+            }
+
+            return true;
+        }
+
+        private synchronized Map<Object, Element> getFound() {
+            return new HashMap(this.found);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.event.CacheEventListener;
+
+public class JGroupsReplicationMonitor implements JGroupsReplicationMonitorMBean {
+    private final CacheManager cacheManager;
+    private final JGroupsCacheManagerPeerProvider peerProvider;
+
+    public JGroupsReplicationMonitor(CacheManager cacheManager) {
+        this(cacheManager, (JGroupsCacheManagerPeerProvider)null);
+    }
+
+    public JGroupsReplicationMonitor(CacheManager cacheManager, JGroupsCacheManagerPeerProvider peerProvider) {
+        this.cacheManager = cacheManager;
+        this.peerProvider = peerProvider;
+    }
+
+    public String[] getValueFingerprintStatistics() {
+        List<String> statistics = new ArrayList();
+        String[] cacheNames = this.cacheManager.getCacheNames();
+
+        for (int i = 0; i < cacheNames.length; ++i) {
+            ValueFingerprints valueFingerprints = this.getValueFingerprints(cacheNames[i]);
+            if (valueFingerprints != null) {
+                statistics.add(cacheNames[i] + ": " + valueFingerprints);
+            }
+        }
+
+        return (String[])statistics.toArray(new String[statistics.size()]);
+    }
+
+    public double getValueFingerprintHitRate(String cacheName) {
+        ValueFingerprints valueFingerprints = this.getValueFingerprints(cacheName);
+        return valueFingerprints == null ? 0.0D : valueFingerprints.getHitRate();
+    }
+
+    public long getSuppressedBytes(String cacheName) {
+        ValueFingerprints valueFingerprints = this.getValueFingerprints(cacheName);
+        return valueFingerprints == null ? 0L : valueFingerprints.getSuppressedBytes();
+    }
+
+    public String[] getValueDeltaStatistics() {
+        List<String> statistics = new ArrayList();
+        String[] cacheNames = this.cacheManager.getCacheNames();
+
+        for (int i = 0; i < cacheNames.length; ++i) {
+            JGroupsCacheReplicator replicator = getCacheReplicator(this.cacheManager.getEhcache(cacheNames[i]));
+            if (replicator != null && replicator.getValueDeltas() != null) {
+                statistics.add(cacheNames[i] + ": " + replicator.getValueDeltas());
+            }
+        }
+
+        return (String[])statistics.toArray(new String[statistics.size()]);
+    }
+
+    public String[] getAsyncQueueStatistics() {
+        List<String> statistics = new ArrayList();
+        JGroupsCachePeer cachePeer = this.peerProvider == null ? null : this.peerProvider.getCachePeer();
+        if (cachePeer != null) {
+            Iterator i$ = cachePeer.getAsyncFlushQueues().iterator();
+
+            while(i$.hasNext()) {
+                AsyncFlushQueue queue = (AsyncFlushQueue)i$.next();
+                statistics.add(queue + " flushes=" + queue.getFlushes() + ", sizeFlushes=" + queue.getSizeFlushes() + ", flushedEvents=" + queue.getFlushedEvents());
+            }
+        }
+
+        return (String[])statistics.toArray(new String[statistics.size()]);
+    }
+
+    public boolean isBootstrapReady() {
+        return BootstrapReadiness.forCacheManager(this.cacheManager, ReadinessSettings.fromConfig()).isReady(System.currentTimeMillis());
+    }
+
+    public String[] getBootstrapProgress() {
+        List<String> statistics = new ArrayList();
+        long now = System.currentTimeMillis();
+        BootstrapReadiness readiness = BootstrapReadiness.forCacheManager(this.cacheManager, ReadinessSettings.fromConfig());
+        Iterator i$ = readiness.getProgress().iterator();
+
+        while(i$.hasNext()) {
+            BootstrapProgress progress = (BootstrapProgress)i$.next();
+            statistics.add(progress + " ready=" + readiness.isReady(progress, now));
+        }
+
+        return (String[])statistics.toArray(new String[statistics.size()]);
+    }
+
+    public String getPeerLookupStatistics() {
+        JGroupsPeerLookupManager peerLookupManager = this.peerProvider == null ? null : this.peerProvider.getPeerLookupManager();
+        return peerLookupManager == null ? null : peerLookupManager.toString();
+    }
+
+    public long getSkippedWrites() {
+        return this.peerProvider == null ? 0L : this.peerProvider.getInvalidationFence().getSkipped();
+    }
+
+    public String getOutboxStatistics() {
+        JGroupsCachePeer cachePeer = this.peerProvider == null ? null : this.peerProvider.getCachePeer();
+        ReplicationOutbox outbox = cachePeer == null ? null : cachePeer.getOutbox();
+        return outbox == null ? null : outbox.toString();
+    }
+
+    public String getSiteBridgeStatistics() {
+        ReplicationTransport transport = this.peerProvider == null ? null : this.peerProvider.getTransport();
+        return transport instanceof SiteBridgeTransport ? transport.toString() : null;
+    }
+
+    public String startTrace() {
+        return this.peerProvider == null ? null : this.peerProvider.startTrace();
+    }
+
+    public void stopTrace() {
+        if (this.peerProvider != null) {
+            this.peerProvider.stopTrace();
+        }
+
+    }
+
+    public String getTraceStatistics() {
+        ReplicationTrace trace = this.peerProvider == null ? null : this.peerProvider.getTrace();
+        return trace == null ? null : trace.toString();
+    }
+
+    public String[] getReplicationSettings() {
+        List<String> settings = new ArrayList();
+        JGroupsCachePeer cachePeer = this.peerProvider == null ? null : this.peerProvider.getCachePeer();
+        if (cachePeer != null) {
+            settings.add(cachePeer.getAsyncFlushSettings().toString());
+        }
+
+        String[] cacheNames = this.cacheManager.getCacheNames();
+
+        for (int i = 0; i < cacheNames.length; ++i) {
+            JGroupsCacheReplicator replicator = getCacheReplicator(this.cacheManager.getEhcache(cacheNames[i]));
+            if (replicator != null) {
+                settings.add(cacheNames[i] + ": " + replicator);
+            }
+        }
+
+        return (String[])settings.toArray(new String[settings.size()]);
+    }
+
+    public String setReplicationMode(String cacheName, String mode, boolean allMembers) {
+        return this.tune(allMembers, new ReplicationTuning(cacheName, ReplicationTuning.MODE, mode));
+    }
+
+    public String setAsyncInterval(String cacheName, long asyncInterval, boolean allMembers) {
+        return this.tune(allMembers, new ReplicationTuning(cacheName, ReplicationTuning.ASYNC_INTERVAL, String.valueOf(asyncInterval)));
+    }
+
+    public String setAsyncFlushLimits(boolean adaptive, int maxEvents, long maxBytes, long minLinger, boolean allMembers) {
+        return this.tune(allMembers, new ReplicationTuning((String)null, ReplicationTuning.ASYNC_ADAPTIVE, String.valueOf(adaptive)), new ReplicationTuning((String)null, ReplicationTuning.ASYNC_MAX_EVENTS, String.valueOf(maxEvents)), new ReplicationTuning((String)null, ReplicationTuning.ASYNC_MAX_BYTES, String.valueOf(maxBytes)), new ReplicationTuning((String)null, ReplicationTuning.ASYNC_MIN_LINGER, String.valueOf(minLinger)));
+    }
+
+    public int getBootstrapThreads() {
+        JGroupsBootstrapManager bootstrapManager = this.peerProvider == null ? null : this.peerProvider.getBootstrapManager();
+        return bootstrapManager == null ? 0 : bootstrapManager.getBootstrapThreads();
+    }
+
+    public String setBootstrapThreads(int bootstrapThreads, boolean allMembers) {
+        return this.tune(allMembers, new ReplicationTuning((String)null, ReplicationTuning.BOOTSTRAP_THREADS, String.valueOf(bootstrapThreads)));
+    }
+
+    private String tune(boolean allMembers, ReplicationTuning... tunings) {
+        JGroupsTuningManager tuningManager = this.peerProvider == null ? null : this.peerProvider.getTuningManager();
+        if (tuningManager == null) {
+            throw new IllegalStateException("Replication of " + this.cacheManager.getName() + " is not running");
+        } else if (allMembers) {
+            return tuningManager.push(Arrays.asList(tunings));
+        } else {
+            List<String> results = new ArrayList(tunings.length);
+
+            for (int i = 0; i < tunings.length; ++i) {
+                results.add(tuningManager.apply(tunings[i]));
+            }
+
+            return results.toString();
+        }
+    }
+
+    private ValueFingerprints getValueFingerprints(String cacheName) {
+        JGroupsCacheReplicator replicator = getCacheReplicator(this.cacheManager.getEhcache(cacheName));
+        return replicator == null ? null : replicator.getValueFingerprints();
+    }
+
+    static JGroupsCacheReplicator getCacheReplicator(Ehcache cache) {
+        if (cache == null) {
+            return null;
+        }
+
+        Iterator i$ = cache.getCacheEventNotificationService().getCacheEventListeners().iterator();
+
+        while(i$.hasNext()) {
+            CacheEventListener listener = (CacheEventListener)i$.next();
+            if (listener instanceof JGroupsCacheReplicator) {
+                return (JGroupsCacheReplicator)listener;
+            }
+        }
+
+        return null;
+    }
+}
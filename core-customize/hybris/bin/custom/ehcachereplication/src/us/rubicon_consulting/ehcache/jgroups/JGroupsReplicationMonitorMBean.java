@@ -0,0 +1,45 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+public interface JGroupsReplicationMonitorMBean {
+    String[] getValueFingerprintStatistics();
+
+    double getValueFingerprintHitRate(String cacheName);
+
+    long getSuppressedBytes(String cacheName);
+
+    String[] getValueDeltaStatistics();
+
+    String[] getAsyncQueueStatistics();
+
+    boolean isBootstrapReady();
+
+    String[] getBootstrapProgress();
+
+    String getPeerLookupStatistics();
+
+    long getSkippedWrites();
+
+    String getOutboxStatistics();
+
+    String getSiteBridgeStatistics();
+
+    String startTrace();
+
+    void stopTrace();
+
+    String getTraceStatistics();
+
+    String[] getReplicationSettings();
+
+    // allMembers pushes the setting to the cluster, members joining later get the latest pushes from the others; the pushes
+    // are ordered by the clocks of the members pushing them and a restart of the whole cluster returns to the configuration
+    String setReplicationMode(String cacheName, String mode, boolean allMembers);
+
+    String setAsyncInterval(String cacheName, long asyncInterval, boolean allMembers);
+
+    String setAsyncFlushLimits(boolean adaptive, int maxEvents, long maxBytes, long minLinger, boolean allMembers);
+
+    int getBootstrapThreads();
+
+    String setBootstrapThreads(int bootstrapThreads, boolean allMembers);
+}
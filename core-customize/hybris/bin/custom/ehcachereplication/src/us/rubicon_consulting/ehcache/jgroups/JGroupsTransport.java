@@ -0,0 +1,162 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.Receiver;
+import org.jgroups.View;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class JGroupsTransport implements ReplicationTransport, Receiver {
+    private static final Logger LOG = LoggerFactory.getLogger(JGroupsTransport.class);
+    private final String groupProperties;
+    private final URL groupUrl;
+    private final String sharedClusterName;
+    private JChannel channel;
+    private SharedChannel sharedChannel;
+    private String fork;
+    private volatile ReplicationTransport.Listener listener;
+    private volatile List<Address> members;
+
+    public JGroupsTransport(String groupProperties, URL groupUrl, String sharedClusterName) {
+        this.groupProperties = groupProperties;
+        this.groupUrl = groupUrl;
+        this.sharedClusterName = sharedClusterName;
+    }
+
+    public void connect(String clusterName, ReplicationTransport.Listener listener) throws Exception {
+        this.listener = listener;
+        if (this.sharedClusterName != null) {
+            this.sharedChannel = SharedChannel.acquire(this.sharedClusterName, this.groupProperties, this.groupUrl);
+            this.channel = this.sharedChannel.getChannel();
+            this.fork = clusterName;
+
+            try {
+                this.sharedChannel.register(clusterName, this);
+            } catch (IllegalStateException var4) {
+                this.sharedChannel.release(clusterName, (Receiver)null);
+                this.sharedChannel = null;
+                throw var4;
+            }
+
+            if (this.members == null) {
+                // the shared channel delivers the other members once they announced the fork
+                this.members = Collections.singletonList(this.channel.getAddress());
+            }
+
+            LOG.info("Joined '{}' on shared JGroups channel '{}'", clusterName, this.sharedClusterName);
+        } else {
+            if (this.groupProperties != null) {
+                this.channel = new JChannel(this.groupProperties);
+            } else if (this.groupUrl != null) {
+                this.channel = new JChannel(this.groupUrl);
+            } else {
+                this.channel = new JChannel();
+            }
+
+            this.channel.setReceiver(this);
+            this.channel.setDiscardOwnMessages(true);
+            this.channel.connect(clusterName);
+        }
+
+    }
+
+    public void send(Address dest, byte[] data, Message.Flag... flags) throws Exception {
+        Message msg = new Message(dest, data);
+        if (flags.length != 0) {
+            msg.setFlag(flags);
+        }
+
+        if (this.fork != null) {
+            msg.putHeader(SharedChannel.HEADER_ID, new SharedChannel.ForkHeader(this.fork));
+        }
+
+        this.channel.send(msg);
+    }
+
+    public List<Address> getMembers() {
+        List<Address> current = this.members;
+        if (current == null) {
+            View view = this.channel == null ? null : this.channel.getView();
+            return view == null ? Collections.<Address>emptyList() : view.getMembers();
+        } else {
+            return current;
+        }
+    }
+
+    public Address getLocalAddress() {
+        return this.channel == null ? null : this.channel.getAddress();
+    }
+
+    public boolean isConnected() {
+        return this.channel != null && this.channel.isConnected();
+    }
+
+    public int getMaxMessageSize() {
+        // FRAG2 fragments messages larger than the datagrams of the transport
+        return Integer.MAX_VALUE;
+    }
+
+    public JChannel getChannel() {
+        return this.channel;
+    }
+
+    public void close() {
+        if (this.sharedChannel != null) {
+            this.sharedChannel.release(this.fork, this);
+            this.sharedChannel = null;
+        } else if (this.channel != null && this.channel.isConnected()) {
+            try {
+                this.channel.close();
+            } catch (Exception var2) {
+                LOG.error("Error closing JChannel " + this.channel.getClusterName(), var2);
+            }
+        }
+
+        this.channel = null;
+    }
+
+    public void receive(Message msg) {
+        ReplicationTransport.Listener current = this.listener;
+        if (current != null) {
+            current.receive(msg.getSrc(), msg.getRawBuffer(), msg.getOffset(), msg.getLength());
+        }
+
+    }
+
+    public void viewAccepted(View view) {
+        // the member list of a view is kept, so that members derived from it can be cached by identity
+        List<Address> current = view.getMembers();
+        this.members = current;
+        ReplicationTransport.Listener listener = this.listener;
+        if (listener != null) {
+            listener.viewAccepted(current);
+        }
+
+    }
+
+    public void suspect(Address address) {
+    }
+
+    public void getState(OutputStream output) throws Exception {
+    }
+
+    public void setState(InputStream input) throws Exception {
+    }
+
+    public void block() {
+    }
+
+    public void unblock() {
+    }
+
+    public String toString() {
+        return this.channel == null ? "JGroupsTransport [not connected]" : "JGroupsTransport [" + (this.fork == null ? "" : "fork=" + this.fork + ", ") + this.channel.toString(true) + "]";
+    }
+}
@@ -0,0 +1,217 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+import org.jgroups.Address;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class JGroupsTuningManager {
+    public static final int REPLICATION_TUNING = 28;
+    private static final Logger LOG = LoggerFactory.getLogger(JGroupsTuningManager.class.getName());
+    private final JGroupsCachePeer cachePeer;
+    private final CacheManager cacheManager;
+    private final JGroupsBootstrapManager bootstrapManager;
+    private final Map<String, Long> appliedTimes = new ConcurrentHashMap();
+    // the latest push of every setting, members joining later get them from the oldest member
+    private final Map<String, ReplicationTuning> clusterTunings = new ConcurrentHashMap();
+    private List<Address> members = Collections.emptyList();
+
+    public JGroupsTuningManager(JGroupsCachePeer cachePeer, CacheManager cacheManager, JGroupsBootstrapManager bootstrapManager) {
+        this.cachePeer = cachePeer;
+        this.cacheManager = cacheManager;
+        this.bootstrapManager = bootstrapManager;
+    }
+
+    public String push(List<ReplicationTuning> tunings) {
+        List<String> results = new ArrayList(tunings.size());
+        Iterator i$ = tunings.iterator();
+
+        // applied here first, an invalid value is rejected before any other member sees it
+        while(i$.hasNext()) {
+            ReplicationTuning tuning = (ReplicationTuning)i$.next();
+            results.add(this.apply(tuning));
+            this.remember(tuning);
+        }
+
+        List<JGroupEventMessage> messages = createMessages(tunings);
+
+        int members = this.cachePeer.getOtherGroupMembers().size();
+        if (members != 0) {
+            this.cachePeer.sendSynchronously((Address)null, messages);
+        }
+
+        return results + ", pushed to " + members + " other members";
+    }
+
+    public synchronized String apply(ReplicationTuning tuning) {
+        // a member may receive two pushes of the same setting in any order, the latest one wins; latest by the clock of the
+        // member that pushed it, with skewed clocks a push from a member whose clock runs ahead wins over a later one
+        Long applied = (Long)this.appliedTimes.get(tuning.getKey());
+        if (applied != null && applied > tuning.getTime()) {
+            LOG.info("Ignoring {}, a later change of the setting was already applied", tuning);
+            return "ignored " + tuning + ", superseded";
+        }
+
+        String result = this.applyNow(tuning);
+        this.appliedTimes.put(tuning.getKey(), tuning.getTime());
+        LOG.info("Applied {}: {}", tuning, result);
+        return result;
+    }
+
+    public void handleTuning(Address src, JGroupEventMessage message) {
+        Serializable tuning = message.getSerializableKey();
+        if (!(tuning instanceof ReplicationTuning)) {
+            LOG.warn("Received a replication tuning without settings from {}", src);
+            return;
+        }
+
+        try {
+            this.apply((ReplicationTuning)tuning);
+            this.remember((ReplicationTuning)tuning);
+        } catch (IllegalArgumentException var5) {
+            LOG.warn("Failed to apply " + tuning + " pushed by " + src, var5);
+        }
+
+    }
+
+    private synchronized void remember(ReplicationTuning tuning) {
+        ReplicationTuning previous = (ReplicationTuning)this.clusterTunings.get(tuning.getKey());
+        if (previous == null || previous.getTime() <= tuning.getTime()) {
+            this.clusterTunings.put(tuning.getKey(), tuning);
+        }
+
+    }
+
+    public Collection<ReplicationTuning> getClusterTunings() {
+        return Collections.unmodifiableCollection(this.clusterTunings.values());
+    }
+
+    public void viewAccepted(List<Address> view) {
+        // the pushes only reach the members of the view at the time, the oldest remaining member hands the latest ones to
+        // the members joining since; member states are only requested by caches bootstrapping, not by every member joining
+        List<Address> joined;
+        boolean oldest;
+        synchronized(this) {
+            List<Address> previous = this.members;
+            this.members = new ArrayList(view);
+            if (previous.isEmpty()) {
+                return;
+            }
+
+            joined = new ArrayList(view);
+            joined.removeAll(previous);
+            List<Address> remaining = new ArrayList(view);
+            remaining.retainAll(previous);
+            oldest = !remaining.isEmpty() && ((Address)remaining.get(0)).equals(this.cachePeer.getLocalAddress());
+        }
+
+        if (!oldest || joined.isEmpty() || this.clusterTunings.isEmpty()) {
+            return;
+        }
+
+        List<JGroupEventMessage> messages = createMessages(this.clusterTunings.values());
+        Iterator i$ = joined.iterator();
+
+        while(i$.hasNext()) {
+            Address member = (Address)i$.next();
+            LOG.info("Sending {} replication tunings to {}, it joined after they were pushed", messages.size(), member);
+            this.cachePeer.sendSynchronously(member, messages);
+        }
+
+    }
+
+    private static List<JGroupEventMessage> createMessages(Collection<ReplicationTuning> tunings) {
+        List<JGroupEventMessage> messages = new ArrayList(tunings.size());
+        Iterator i$ = tunings.iterator();
+
+        while(i$.hasNext()) {
+            ReplicationTuning tuning = (ReplicationTuning)i$.next();
+            messages.add(new JGroupEventMessage(REPLICATION_TUNING, tuning, (Element)null, tuning.getCacheName() == null ? "" : tuning.getCacheName()));
+        }
+
+        return messages;
+    }
+
+    private String applyNow(ReplicationTuning tuning) {
+        String setting = tuning.getSetting();
+        String value = tuning.getValue() == null ? "" : tuning.getValue().trim();
+        if (ReplicationTuning.MODE.equals(setting) || ReplicationTuning.ASYNC_INTERVAL.equals(setting)) {
+            List<String> results = new ArrayList();
+            Iterator i$ = this.getCacheReplicators(tuning.getCacheName()).iterator();
+
+            while(i$.hasNext()) {
+                JGroupsCacheReplicator replicator = (JGroupsCacheReplicator)i$.next();
+                if (ReplicationTuning.MODE.equals(setting)) {
+                    replicator.setReplicationMode(value);
+                } else {
+                    replicator.setAsyncInterval(parseLong(setting, value), this.cachePeer);
+                }
+
+                results.add(replicator.toString());
+            }
+
+            return results.toString();
+        } else if (ReplicationTuning.BOOTSTRAP_THREADS.equals(setting)) {
+            this.bootstrapManager.setBootstrapThreads((int)parseLong(setting, value));
+            return "bootstrapThreads=" + this.bootstrapManager.getBootstrapThreads();
+        } else {
+            AsyncFlushSettings settings = this.cachePeer.getAsyncFlushSettings();
+            if (ReplicationTuning.ASYNC_ADAPTIVE.equals(setting)) {
+                settings = settings.withAdaptive(Boolean.parseBoolean(value));
+            } else if (ReplicationTuning.ASYNC_MAX_EVENTS.equals(setting)) {
+                settings = settings.withMaxEvents((int)parseLong(setting, value));
+            } else if (ReplicationTuning.ASYNC_MAX_BYTES.equals(setting)) {
+                settings = settings.withMaxBytes(parseLong(setting, value));
+            } else {
+                if (!ReplicationTuning.ASYNC_MIN_LINGER.equals(setting)) {
+                    throw new IllegalArgumentException("Unknown replication setting '" + setting + "'");
+                }
+
+                settings = settings.withMinLinger(parseLong(setting, value));
+            }
+
+            this.cachePeer.setAsyncFlushSettings(settings);
+            return settings.toString();
+        }
+    }
+
+    private List<JGroupsCacheReplicator> getCacheReplicators(String cacheName) {
+        if (cacheName == null) {
+            throw new IllegalArgumentException("A cache name or " + ReplicationTuning.ALL_CACHES + " is required");
+        }
+
+        String[] cacheNames = ReplicationTuning.ALL_CACHES.equals(cacheName) ? this.cacheManager.getCacheNames() : new String[]{cacheName};
+        List<JGroupsCacheReplicator> replicators = new ArrayList(cacheNames.length);
+
+        for(int i = 0; i < cacheNames.length; ++i) {
+            JGroupsCacheReplicator replicator = JGroupsReplicationMonitor.getCacheReplicator(this.cacheManager.getEhcache(cacheNames[i]));
+            if (replicator != null) {
+                replicators.add(replicator);
+            }
+        }
+
+        if (replicators.isEmpty() && !ReplicationTuning.ALL_CACHES.equals(cacheName)) {
+            throw new IllegalArgumentException("Cache '" + cacheName + "' does not exist or is not replicated");
+        }
+
+        return replicators;
+    }
+
+    private static long parseLong(String setting, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException var3) {
+            throw new IllegalArgumentException("Setting '" + setting + "' requires a number, not '" + value + "'");
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.constructs.EhcacheDecoratorAdapter;
+import net.sf.ehcache.loader.CacheLoader;
+
+public class LazyValueCacheDecorator extends EhcacheDecoratorAdapter {
+    private volatile boolean interestResolved;
+    private volatile InterestSketch interestSketch;
+    private final boolean peerReadThrough;
+    private volatile JGroupsPeerLookupManager peerLookupManager;
+
+    public LazyValueCacheDecorator(Ehcache underlyingCache) {
+        this(underlyingCache, false);
+    }
+
+    public LazyValueCacheDecorator(Ehcache underlyingCache, boolean peerReadThrough) {
+        super(underlyingCache);
+        this.peerReadThrough = peerReadThrough;
+    }
+
+    public boolean isPeerReadThrough() {
+        return this.peerReadThrough;
+    }
+
+    public Element get(Object key) {
+        this.recordInterest(key);
+        return this.read(this.readThrough(key, this.underlyingCache.get(key)));
+    }
+
+    public Element get(Serializable key) {
+        this.recordInterest(key);
+        return this.read(this.readThrough(key, this.underlyingCache.get(key)));
+    }
+
+    public Map<Object, Element> getAll(Collection<?> keys) {
+        Map<Object, Element> elements = this.underlyingCache.getAll(keys);
+        Iterator k$ = keys.iterator();
+
+        while(k$.hasNext()) {
+            this.recordInterest(k$.next());
+        }
+
+        if (this.peerReadThrough) {
+            this.readThroughAll(elements);
+        }
+
+        Iterator i$ = elements.entrySet().iterator();
+
+        while(i$.hasNext()) {
+            Entry<Object, Element> entry = (Entry)i$.next();
+            entry.setValue(this.read((Element)entry.getValue()));
+        }
+
+        return elements;
+    }
+
+    public Element getWithLoader(Object key, CacheLoader loader, Object loaderArgument) {
+        this.recordInterest(key);
+        Element element = this.peerReadThrough ? this.readThrough(key, this.underlyingCache.get(key)) : null;
+        return this.read(element != null ? element : this.underlyingCache.getWithLoader(key, loader, loaderArgument));
+    }
+
+    public Element putIfAbsent(Element element) {
+        return this.read(this.underlyingCache.putIfAbsent(element));
+    }
+
+    public Element putIfAbsent(Element element, boolean doNotNotifyCacheReplicators) {
+        return this.read(this.underlyingCache.putIfAbsent(element, doNotNotifyCacheReplicators));
+    }
+
+    public Element replace(Element element) {
+        return this.read(this.underlyingCache.replace(element));
+    }
+
+    public boolean replace(Element old, Element element) {
+        return this.underlyingCache.replace(this.resolveCurrent(old), element);
+    }
+
+    public boolean removeElement(Element element) {
+        return this.underlyingCache.removeElement(this.resolveCurrent(element));
+    }
+
+    private Element resolveCurrent(Element element) {
+        // the cache compares with the serialized value it holds, the caller compares with the value it read
+        Element current = this.underlyingCache.getQuiet(element.getObjectKey());
+        if (current != null && current.getObjectValue() instanceof SerializedValue) {
+            Object value = this.read(current).getObjectValue();
+            Object expected = element.getObjectValue();
+            if (value == null ? expected == null : value.equals(expected)) {
+                return current;
+            }
+        }
+
+        return element;
+    }
+
+    protected Element read(Element element) {
+        return SerializedValue.unwrap(element);
+    }
+
+    protected Element readThrough(Object key, Element element) {
+        if (element != null || !this.peerReadThrough || !(key instanceof Serializable)) {
+            return element;
+        }
+
+        JGroupsPeerLookupManager lookupManager = this.getPeerLookupManager();
+        Element found = lookupManager == null ? null : lookupManager.lookup(this.getName(), (Serializable)key);
+        return found != null && this.store(found) ? found : null;
+    }
+
+    private boolean store(Element found) {
+        // a copy older than a removal or write replicated meanwhile is stale, the key is loaded from its source instead
+        JGroupsCacheManagerPeerProvider provider = JGroupsCacheManagerPeerProvider.getCachePeerProvider(this.underlyingCache);
+        InvalidationFence fence = provider == null ? null : provider.getInvalidationFence();
+        if (fence != null && !fence.admit(this.getName(), found.getObjectKey(), ElementVersions.timestampOf(found), found.getVersion())) {
+            return false;
+        }
+
+        // the copy is only stored locally, all peers have it already
+        this.underlyingCache.put(found, true);
+        return true;
+    }
+
+    private void readThroughAll(Map<Object, Element> elements) {
+        List<Object> missing = new ArrayList();
+        Iterator i$ = elements.entrySet().iterator();
+
+        while(i$.hasNext()) {
+            Entry<Object, Element> entry = (Entry)i$.next();
+            if (entry.getValue() == null) {
+                missing.add(entry.getKey());
+            }
+        }
+
+        JGroupsPeerLookupManager lookupManager = missing.isEmpty() ? null : this.getPeerLookupManager();
+        if (lookupManager != null) {
+            Iterator f$ = lookupManager.lookupAll(this.getName(), missing).values().iterator();
+
+            while(f$.hasNext()) {
+                Element found = (Element)f$.next();
+                if (this.store(found)) {
+                    elements.put(found.getObjectKey(), found);
+                }
+            }
+        }
+
+    }
+
+    private JGroupsPeerLookupManager getPeerLookupManager() {
+        JGroupsPeerLookupManager lookupManager = this.peerLookupManager;
+        if (lookupManager == null && this.underlyingCache.getCacheManager() != null) {
+            JGroupsCacheManagerPeerProvider provider = JGroupsCacheManagerPeerProvider.getCachePeerProvider(this.underlyingCache);
+            lookupManager = provider == null ? null : provider.getPeerLookupManager();
+            this.peerLookupManager = lookupManager;
+        }
+
+        return lookupManager;
+    }
+
+    protected void recordInterest(Object key) {
+        // misses are recorded too, the member wants a copy of a key it looked up even if it was not cached yet
+        InterestSketch sketch = this.interestSketch;
+        if (sketch == null) {
+            if (this.interestResolved) {
+                return;
+            }
+
+            sketch = this.resolveInterestSketch();
+            if (sketch == null) {
+                return;
+            }
+        }
+
+        sketch.record(key);
+    }
+
+    private synchronized InterestSketch resolveInterestSketch() {
+        if (!this.interestResolved && this.underlyingCache.getCacheManager() != null) {
+            JGroupsCacheManagerPeerProvider provider = JGroupsCacheManagerPeerProvider.getCachePeerProvider(this.underlyingCache);
+            if (provider != null && provider.getCachePeer() == null) {
+                // the provider did not start yet
+                return null;
+            }
+
+            JGroupsInterestManager interestManager = provider == null ? null : provider.getInterestManager();
+            if (interestManager != null && JGroupsInterestManager.isReplicatedByInterest(this.underlyingCache)) {
+                this.interestSketch = interestManager.getSketch(this.getName());
+            }
+
+            this.interestResolved = true;
+        }
+
+        return this.interestSketch;
+    }
+}
@@ -0,0 +1,26 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.Properties;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.constructs.CacheDecoratorFactory;
+import net.sf.ehcache.util.PropertyUtil;
+
+public class LazyValueCacheDecoratorFactory extends CacheDecoratorFactory {
+    private static final String PEER_READ_THROUGH = "peerReadThrough";
+
+    public LazyValueCacheDecoratorFactory() {
+    }
+
+    public Ehcache createDecoratedEhcache(Ehcache cache, Properties properties) {
+        return new LazyValueCacheDecorator(cache, isPeerReadThrough(properties));
+    }
+
+    public Ehcache createDefaultDecoratedEhcache(Ehcache cache, Properties properties) {
+        return new LazyValueCacheDecorator(cache, isPeerReadThrough(properties));
+    }
+
+    static boolean isPeerReadThrough(Properties properties) {
+        String peerReadThrough = properties == null ? null : PropertyUtil.extractAndLogProperty(PEER_READ_THROUGH, properties);
+        return peerReadThrough != null && PropertyUtil.parseBoolean(peerReadThrough.trim());
+    }
+}
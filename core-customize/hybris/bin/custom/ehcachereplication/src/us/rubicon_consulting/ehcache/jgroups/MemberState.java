@@ -0,0 +1,58 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public final class MemberState implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final HashMap<String, Integer> cacheSizes;
+    private final HashSet<String> bootstrappingCaches;
+    private final int activeResponses;
+    private final double loadAverage;
+    private final long timestamp;
+
+    public MemberState(Map<String, Integer> cacheSizes, Set<String> bootstrappingCaches, int activeResponses, double loadAverage, long timestamp) {
+        this.cacheSizes = new HashMap(cacheSizes);
+        this.bootstrappingCaches = new HashSet(bootstrappingCaches);
+        this.activeResponses = activeResponses;
+        this.loadAverage = loadAverage;
+        this.timestamp = timestamp;
+    }
+
+    public boolean isWarm(String cacheName) {
+        return this.cacheSizes.containsKey(cacheName) && !this.bootstrappingCaches.contains(cacheName);
+    }
+
+    public int getCacheSize(String cacheName) {
+        Integer size = (Integer)this.cacheSizes.get(cacheName);
+        return size == null ? 0 : size.intValue();
+    }
+
+    public Map<String, Integer> getCacheSizes() {
+        return Collections.unmodifiableMap(this.cacheSizes);
+    }
+
+    public Set<String> getBootstrappingCaches() {
+        return Collections.unmodifiableSet(this.bootstrappingCaches);
+    }
+
+    public int getActiveResponses() {
+        return this.activeResponses;
+    }
+
+    public double getLoadAverage() {
+        return this.loadAverage;
+    }
+
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    public String toString() {
+        return "MemberState [caches=" + this.cacheSizes.size() + ", bootstrapping=" + this.bootstrappingCaches + ", activeResponses=" + this.activeResponses + ", loadAverage=" + this.loadAverage + "]";
+    }
+}
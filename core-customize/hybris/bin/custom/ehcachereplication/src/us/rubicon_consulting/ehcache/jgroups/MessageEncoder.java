@@ -0,0 +1,117 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jgroups.util.Util;
+
+class MessageEncoder {
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1048576;
+    private static final int MAX_POOLED_ENCODERS = 16;
+    private static final byte TYPE_SERIALIZABLE = serializableType();
+    private static final ConcurrentLinkedQueue<MessageEncoder> POOL = new ConcurrentLinkedQueue();
+    private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+    private final MessageEncoder.ReusableByteArrayOutputStream buffer = new MessageEncoder.ReusableByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+    private final ObjectOutputStream objectStream;
+    private final int headerLength;
+    private boolean broken;
+
+    private MessageEncoder() throws IOException {
+        this.buffer.write(TYPE_SERIALIZABLE);
+        this.objectStream = new ObjectOutputStream(this.buffer);
+        this.objectStream.flush();
+        this.headerLength = this.buffer.size();
+    }
+
+    public static MessageEncoder acquire() throws IOException {
+        MessageEncoder encoder = (MessageEncoder)POOL.poll();
+        if (encoder == null) {
+            return new MessageEncoder();
+        } else {
+            POOL_SIZE.decrementAndGet();
+            return encoder;
+        }
+    }
+
+    public static void release(MessageEncoder encoder) {
+        if (encoder != null && !encoder.broken && encoder.buffer.capacity() <= MAX_RETAINED_BUFFER_SIZE) {
+            if (POOL_SIZE.incrementAndGet() <= MAX_POOLED_ENCODERS) {
+                POOL.offer(encoder);
+            } else {
+                POOL_SIZE.decrementAndGet();
+            }
+        }
+    }
+
+    public int encode(Serializable object) throws IOException {
+        try {
+            this.objectStream.writeObject(object);
+            this.objectStream.flush();
+            return this.buffer.size();
+        } catch (IOException var3) {
+            this.broken = true;
+            throw var3;
+        } catch (RuntimeException var4) {
+            this.broken = true;
+            throw var4;
+        }
+    }
+
+    public byte[] getBuffer() {
+        return this.buffer.buffer();
+    }
+
+    public byte[] toByteArray() {
+        return this.buffer.toByteArray();
+    }
+
+    public int getLength() {
+        return this.buffer.size();
+    }
+
+    public void reset() {
+        try {
+            this.objectStream.reset();
+            this.objectStream.flush();
+        } catch (IOException var2) {
+            this.broken = true;
+        }
+
+        this.buffer.truncate(this.headerLength);
+    }
+
+    private static byte serializableType() {
+        try {
+            return Util.objectToByteBuffer(new Serializable[0])[0];
+        } catch (Exception var1) {
+            throw new IllegalStateException("Unable to determine the JGroups serialization type marker", var1);
+        }
+    }
+
+    private static final class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+        private ReusableByteArrayOutputStream(int size) {
+            super(size);
+        }
+
+        public byte[] buffer() {
+            return this.buf;
+        }
+
+        public int capacity() {
+            return this.buf.length;
+        }
+
+        public void truncate(int length) {
+            this.count = length;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(this.buf, this.count);
+        }
+    }
+}
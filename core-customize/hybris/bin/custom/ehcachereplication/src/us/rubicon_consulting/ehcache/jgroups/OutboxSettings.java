@@ -0,0 +1,52 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import de.hybris.platform.util.Config;
+import java.io.File;
+import us.rubicon_consulting.constants.EhcachereplicationConstants;
+
+public class OutboxSettings {
+    public static final OutboxSettings DISABLED = new OutboxSettings(false, new File(System.getProperty("java.io.tmpdir")), 16777216, 60000L);
+    private final boolean enabled;
+    private final File directory;
+    private final int size;
+    private final long maxAge;
+
+    public OutboxSettings(boolean enabled, File directory, int size, long maxAge) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.size = Math.max(65536, size);
+        this.maxAge = Math.max(0L, maxAge);
+    }
+
+    public static OutboxSettings fromConfig() {
+        return new OutboxSettings(
+                Config.getBoolean(EhcachereplicationConstants.EhcacheConfigConstants.OUTBOX_ENABLED, false),
+                new File(Config.getString(EhcachereplicationConstants.EhcacheConfigConstants.OUTBOX_DIR, System.getProperty("java.io.tmpdir"))),
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.OUTBOX_SIZE, 16777216),
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.OUTBOX_MAX_AGE, 60000L));
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    public File getFile(String clusterName) {
+        return new File(this.directory, clusterName.replaceAll("[^A-Za-z0-9._-]", "_") + ".outbox");
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    public long getMaxAge() {
+        return this.maxAge;
+    }
+
+    public String toString() {
+        return "OutboxSettings [enabled=" + this.enabled + ", directory=" + this.directory + ", size=" + this.size + ", maxAge=" + this.maxAge + "ms]";
+    }
+}
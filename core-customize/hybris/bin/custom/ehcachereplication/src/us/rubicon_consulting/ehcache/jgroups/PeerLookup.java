@@ -0,0 +1,43 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import net.sf.ehcache.Element;
+
+public final class PeerLookup implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final long id;
+    private final ArrayList<Serializable> keys;
+    private final ArrayList<Element> elements;
+
+    public PeerLookup(long id, List<Serializable> keys) {
+        this(id, new ArrayList(keys), (ArrayList)null);
+    }
+
+    private PeerLookup(long id, ArrayList<Serializable> keys, ArrayList<Element> elements) {
+        this.id = id;
+        this.keys = keys;
+        this.elements = elements;
+    }
+
+    public PeerLookup respond(List<Element> found) {
+        return new PeerLookup(this.id, (ArrayList)null, new ArrayList(found));
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    public List<Serializable> getKeys() {
+        return this.keys;
+    }
+
+    public List<Element> getElements() {
+        return this.elements;
+    }
+
+    public String toString() {
+        return "PeerLookup [id=" + this.id + (this.keys == null ? "" : ", keys=" + this.keys.size()) + (this.elements == null ? "" : ", elements=" + this.elements.size()) + "]";
+    }
+}
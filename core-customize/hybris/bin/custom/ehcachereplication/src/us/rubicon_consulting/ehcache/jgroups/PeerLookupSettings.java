@@ -0,0 +1,40 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import de.hybris.platform.util.Config;
+import us.rubicon_consulting.constants.EhcachereplicationConstants;
+
+public class PeerLookupSettings {
+    public static final PeerLookupSettings DEFAULT = new PeerLookupSettings(200L, 1, 100);
+    private final long timeout;
+    private final int peers;
+    private final int maxKeys;
+
+    public PeerLookupSettings(long timeout, int peers, int maxKeys) {
+        this.timeout = Math.max(1L, timeout);
+        this.peers = Math.max(1, peers);
+        this.maxKeys = Math.max(1, maxKeys);
+    }
+
+    public static PeerLookupSettings fromConfig() {
+        return new PeerLookupSettings(
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.PEER_LOOKUP_TIMEOUT, 200L),
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.PEER_LOOKUP_PEERS, 1),
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.PEER_LOOKUP_MAX_KEYS, 100));
+    }
+
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    public int getPeers() {
+        return this.peers;
+    }
+
+    public int getMaxKeys() {
+        return this.maxKeys;
+    }
+
+    public String toString() {
+        return "PeerLookupSettings [timeout=" + this.timeout + "ms, peers=" + this.peers + ", maxKeys=" + this.maxKeys + "]";
+    }
+}
@@ -0,0 +1,54 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import de.hybris.platform.util.Config;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+import us.rubicon_consulting.constants.EhcachereplicationConstants;
+
+public class ReadinessSettings {
+    private final int minProgress;
+    private final long maxWait;
+    private final Set<String> requiredCaches;
+
+    public ReadinessSettings(int minProgress, long maxWait, Set<String> requiredCaches) {
+        this.minProgress = Math.min(100, Math.max(0, minProgress));
+        this.maxWait = maxWait;
+        this.requiredCaches = requiredCaches == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(new HashSet(requiredCaches));
+    }
+
+    public static ReadinessSettings fromConfig() {
+        Set<String> requiredCaches = new HashSet();
+        String caches = Config.getString(EhcachereplicationConstants.EhcacheConfigConstants.READINESS_CACHES, "");
+        String[] names = StringUtils.split(caches, ", ");
+        if (names != null) {
+            Collections.addAll(requiredCaches, names);
+        }
+
+        return new ReadinessSettings(
+                Config.getInt(EhcachereplicationConstants.EhcacheConfigConstants.READINESS_MIN_PROGRESS, 90),
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.READINESS_MAX_WAIT, 300000L),
+                requiredCaches);
+    }
+
+    public int getMinProgress() {
+        return this.minProgress;
+    }
+
+    public long getMaxWait() {
+        return this.maxWait;
+    }
+
+    public Set<String> getRequiredCaches() {
+        return this.requiredCaches;
+    }
+
+    public boolean isRequired(String cacheName) {
+        return this.requiredCaches.isEmpty() || this.requiredCaches.contains(cacheName);
+    }
+
+    public String toString() {
+        return "ReadinessSettings [minProgress=" + this.minProgress + "%, maxWait=" + this.maxWait + "ms, requiredCaches=" + (this.requiredCaches.isEmpty() ? "all" : this.requiredCaches.toString()) + "]";
+    }
+}
@@ -0,0 +1,411 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+import org.jgroups.util.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ReplicationOutbox {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicationOutbox.class);
+    private static final int MAGIC = 0x45484f42;
+    // magic and the end of the last complete record
+    private static final int HEADER_SIZE = 8;
+    // length and append time of a record
+    private static final int RECORD_HEADER_SIZE = 12;
+    private final File file;
+    private final int size;
+    private final long maxAge;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    private int end;
+    private volatile int pending;
+    // end and number of the records drained for a replay, they stay pending until the replay reports them sent
+    private int replayEnd;
+    private int replayRecords;
+    private int replayMessages;
+    private long appended;
+    private long replayed;
+    private long coalesced;
+    private long resynced;
+    private long dropped;
+
+    public ReplicationOutbox(File file, int size, long maxAge) throws IOException {
+        this.file = file;
+        this.size = size;
+        this.maxAge = maxAge;
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the directory of the replication outbox " + file);
+        }
+
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+
+        try {
+            this.buffer = this.randomAccessFile.getChannel().map(MapMode.READ_WRITE, 0L, (long)size);
+        } catch (IOException var6) {
+            this.randomAccessFile.close();
+            throw var6;
+        }
+
+        this.recover();
+    }
+
+    public static ReplicationOutbox open(String clusterName, OutboxSettings settings) throws IOException {
+        return new ReplicationOutbox(settings.getFile(clusterName), settings.getSize(), settings.getMaxAge());
+    }
+
+    private void recover() {
+        int recovered = this.buffer.getInt(0) == MAGIC ? this.buffer.getInt(4) : HEADER_SIZE;
+        if (recovered < HEADER_SIZE || recovered > this.size) {
+            // the outbox was written with a larger size or the header is corrupt
+            LOG.warn("The replication outbox {} ends at {} outside of its {} bytes, recovering the records that fit", new Object[]{this.file, recovered, this.size});
+            recovered = Math.max(HEADER_SIZE, Math.min(recovered, this.size));
+        }
+
+        int records = 0;
+        int position = HEADER_SIZE;
+
+        // a record is only committed once the header points behind it, a torn record of a crash is not replayed
+        while(position + RECORD_HEADER_SIZE <= recovered) {
+            int length = this.buffer.getInt(position);
+            if (length <= 0 || length > recovered - position - RECORD_HEADER_SIZE) {
+                if (position != recovered) {
+                    LOG.warn("Dropping an invalid record of {} bytes at {} and all records behind it from the replication outbox {}", new Object[]{length, position, this.file});
+                }
+
+                break;
+            }
+
+            position += RECORD_HEADER_SIZE + length;
+            ++records;
+        }
+
+        this.end = position;
+        this.pending = records;
+        this.buffer.putInt(0, MAGIC);
+        this.buffer.putInt(4, position);
+        if (records != 0) {
+            LOG.info("Recovered {} undelivered replication event records from {}", records, this.file);
+        }
+
+    }
+
+    public boolean hasPending() {
+        return this.pending != 0;
+    }
+
+    public int getPending() {
+        return this.pending;
+    }
+
+    public boolean append(byte[] data) {
+        return this.append(data, System.currentTimeMillis());
+    }
+
+    synchronized boolean append(byte[] data, long time) {
+        if (!this.fits(data.length)) {
+            this.compact();
+            if (!this.fits(data.length)) {
+                ++this.dropped;
+                LOG.error("The replication outbox {} is full, dropping {} bytes of replication events. The members will only see these changes after a bootstrap.", this.file, data.length);
+                return false;
+            }
+        }
+
+        this.write(data, time);
+        this.buffer.putInt(4, this.end);
+        ++this.appended;
+        return true;
+    }
+
+    private void write(byte[] data, long time) {
+        this.buffer.putInt(this.end, data.length);
+        this.buffer.putLong(this.end + 4, time);
+        this.buffer.position(this.end + RECORD_HEADER_SIZE);
+        this.buffer.put(data);
+        this.end += RECORD_HEADER_SIZE + data.length;
+        ++this.pending;
+    }
+
+    private boolean fits(int length) {
+        return (long)this.end + (long)RECORD_HEADER_SIZE + (long)length <= (long)this.size;
+    }
+
+    public synchronized List<JGroupEventMessage> drain() {
+        return this.drain(System.currentTimeMillis());
+    }
+
+    synchronized List<JGroupEventMessage> drain(long now) {
+        if (this.pending == 0 || this.replayEnd != 0) {
+            return Collections.emptyList();
+        }
+
+        List<ReplicationOutbox.Pending> events = this.coalesce(this.read(HEADER_SIZE));
+        // events appended during the replay go behind the drained records and are replayed after them
+        this.replayEnd = this.end;
+        this.replayRecords = this.pending;
+        List<JGroupEventMessage> messages = new ArrayList(events.size());
+        long notBefore = now - this.maxAge;
+        Iterator i$ = events.iterator();
+
+        while(i$.hasNext()) {
+            ReplicationOutbox.Pending event = (ReplicationOutbox.Pending)i$.next();
+            if (event.time >= notBefore) {
+                messages.add(event.message);
+            } else {
+                JGroupEventMessage resync = resyncOf(event.message);
+                if (resync != null) {
+                    messages.add(resync);
+                }
+
+                ++this.resynced;
+            }
+        }
+
+        this.replayMessages = messages.size();
+        return messages;
+    }
+
+    public void replayed(List<JGroupEventMessage> unsent) {
+        this.replayed(unsent, System.currentTimeMillis());
+    }
+
+    synchronized void replayed(List<JGroupEventMessage> unsent, long now) {
+        if (this.replayEnd == 0) {
+            return;
+        }
+
+        byte[] appended = new byte[this.end - this.replayEnd];
+        int appendedRecords = this.pending - this.replayRecords;
+        this.buffer.position(this.replayEnd);
+        this.buffer.get(appended);
+        this.replayed += (long)(this.replayMessages - unsent.size());
+        this.replayEnd = 0;
+        this.replayRecords = 0;
+        this.replayMessages = 0;
+        this.reset();
+        // the events a failed replay did not send stay in front of those appended while it ran
+        Iterator i$ = unsent.iterator();
+
+        while(i$.hasNext()) {
+            this.rewrite((JGroupEventMessage)i$.next(), now);
+        }
+
+        if ((long)this.end + (long)appended.length <= (long)this.size) {
+            this.buffer.position(this.end);
+            this.buffer.put(appended);
+            this.end += appended.length;
+            this.pending += appendedRecords;
+        } else {
+            this.dropped += (long)appendedRecords;
+            LOG.error("The replication outbox {} is full, dropping {} records appended during the replay. The members will only see these changes after a bootstrap.", this.file, appendedRecords);
+        }
+
+        this.buffer.putInt(4, this.end);
+    }
+
+    private void rewrite(JGroupEventMessage message, long time) {
+        try {
+            byte[] data = JGroupsCachePeer.encode(Collections.singletonList(message));
+            if (this.fits(data.length)) {
+                this.write(data, time);
+            } else {
+                ++this.dropped;
+            }
+        } catch (IOException var5) {
+            ++this.dropped;
+            LOG.warn("Unable to encode {} while rewriting the replication outbox {}", new Object[]{message, this.file, var5});
+        }
+
+    }
+
+    private void compact() {
+        // records drained for a running replay are left alone, only those appended since are compacted
+        int start = this.replayEnd == 0 ? HEADER_SIZE : this.replayEnd;
+        if (this.pending == this.replayRecords) {
+            return;
+        }
+
+        List<ReplicationOutbox.Pending> events = this.coalesce(this.read(start));
+        this.end = start;
+        this.pending = this.replayRecords;
+        Iterator i$ = events.iterator();
+
+        while(i$.hasNext()) {
+            ReplicationOutbox.Pending event = (ReplicationOutbox.Pending)i$.next();
+            this.rewrite(event.message, event.time);
+        }
+
+        this.buffer.putInt(4, this.end);
+        LOG.debug("Compacted the replication outbox {} to {} events", this.file, this.pending);
+    }
+
+    private List<ReplicationOutbox.Pending> read(int start) {
+        List<ReplicationOutbox.Pending> events = new ArrayList(this.pending);
+        int position = start;
+
+        while(position < this.end) {
+            int length = this.buffer.getInt(position);
+            long time = this.buffer.getLong(position + 4);
+            byte[] data = new byte[length];
+            this.buffer.position(position + RECORD_HEADER_SIZE);
+            this.buffer.get(data);
+            position += RECORD_HEADER_SIZE + length;
+
+            try {
+                Object object = Util.objectFromByteBuffer(data);
+                if (object instanceof List) {
+                    Iterator i$ = ((List)object).iterator();
+
+                    while(i$.hasNext()) {
+                        events.add(new ReplicationOutbox.Pending(time, (JGroupEventMessage)i$.next()));
+                    }
+                } else if (object instanceof JGroupEventMessage) {
+                    events.add(new ReplicationOutbox.Pending(time, (JGroupEventMessage)object));
+                }
+            } catch (Exception var9) {
+                ++this.dropped;
+                LOG.warn("Dropping an unreadable record of " + length + " bytes from the replication outbox " + this.file, var9);
+            }
+        }
+
+        return events;
+    }
+
+    private List<ReplicationOutbox.Pending> coalesce(List<ReplicationOutbox.Pending> events) {
+        // the last event of a key wins and takes its place in the order, a remove all drops all earlier events of its cache
+        Map<Object, ReplicationOutbox.Pending> latest = new LinkedHashMap();
+        Iterator i$ = events.iterator();
+
+        while(i$.hasNext()) {
+            ReplicationOutbox.Pending event = (ReplicationOutbox.Pending)i$.next();
+            JGroupEventMessage message = event.message;
+            Object lane;
+            if (AsyncFlushQueue.isRemoveAll(message)) {
+                Iterator l$ = latest.values().iterator();
+
+                while(l$.hasNext()) {
+                    if (sameCache(((ReplicationOutbox.Pending)l$.next()).message, message)) {
+                        l$.remove();
+                        ++this.coalesced;
+                    }
+                }
+
+                lane = new Object();
+            } else if (isKeyEvent(message)) {
+                lane = Arrays.asList(message.getCacheName(), message.getSerializableKey());
+                ReplicationOutbox.Pending previous = (ReplicationOutbox.Pending)latest.remove(lane);
+                if (previous != null) {
+                    ++this.coalesced;
+                    if (message.getEvent() == JGroupsCacheReplicator.TOUCH && isValueEvent(previous.message)) {
+                        // a touch carries no value, the value it refreshes is kept
+                        event = previous;
+                    } else if (message.getEvent() == JGroupsCacheReplicator.VALUE_DELTA && isValueEvent(previous.message)) {
+                        // the members never see the value the delta applies to
+                        event = new ReplicationOutbox.Pending(event.time, collapse(previous.message, message));
+                    }
+                }
+            } else {
+                lane = new Object();
+            }
+
+            latest.put(lane, event);
+        }
+
+        return new ArrayList(latest.values());
+    }
+
+    private static boolean isKeyEvent(JGroupEventMessage message) {
+        int event = message.getEvent();
+        return message.getSerializableKey() != null && (event == 0 || event == 1 || event == JGroupsCacheReplicator.TOUCH || event == JGroupsCacheReplicator.VALUE_DELTA);
+    }
+
+    private static boolean isValueEvent(JGroupEventMessage message) {
+        return message.getEvent() == 0 || message.getEvent() == JGroupsCacheReplicator.VALUE_DELTA;
+    }
+
+    static JGroupEventMessage collapse(JGroupEventMessage previous, JGroupEventMessage delta) {
+        Element element = delta.getElement();
+        Element base = previous.getElement();
+        if (previous.getEvent() == 0 && element != null && element.getObjectValue() instanceof ValueDelta && base != null && base.getObjectValue() instanceof SerializedValue) {
+            ValueDelta valueDelta = (ValueDelta)element.getObjectValue();
+
+            try {
+                byte[] bytes = ((SerializedValue)base.getObjectValue()).bytes();
+                if (ValueFingerprints.fingerprint(bytes) == valueDelta.getBaseFingerprint()) {
+                    byte[] value = BinaryDelta.apply(bytes, valueDelta.getDelta());
+                    return new JGroupEventMessage(0, delta.getSerializableKey(), SerializedValue.copy(element, SerializedValue.fromBytes(value)), delta.getCacheName());
+                }
+            } catch (IOException var7) {
+                LOG.debug("Unable to rebuild the value of {} from its delta, replaying a removal", delta.getSerializableKey(), var7);
+            } catch (IllegalArgumentException var8) {
+                LOG.debug("Unable to rebuild the value of {} from its delta, replaying a removal", delta.getSerializableKey(), var8);
+            }
+        }
+
+        // members drop the key and load it again instead
+        return JGroupsCacheReplicator.createRemoval(delta.getSerializableKey(), element == null ? System.currentTimeMillis() : ElementVersions.timestampOf(element), delta.getCacheName());
+    }
+
+    private static boolean sameCache(JGroupEventMessage message, JGroupEventMessage other) {
+        return message.getCacheName() == null ? other.getCacheName() == null : message.getCacheName().equals(other.getCacheName());
+    }
+
+    static JGroupEventMessage resyncOf(JGroupEventMessage message) {
+        switch(message.getEvent()) {
+            case 0:
+            case JGroupsCacheReplicator.VALUE_DELTA:
+                // members may have newer values by now, they drop the key and load it again instead
+                Element element = message.getElement();
+                return JGroupsCacheReplicator.createRemoval(message.getSerializableKey(), element == null ? System.currentTimeMillis() : ElementVersions.timestampOf(element), message.getCacheName());
+            case JGroupsCacheReplicator.TOUCH:
+                return null;
+            default:
+                return message;
+        }
+    }
+
+    private void reset() {
+        this.end = HEADER_SIZE;
+        this.pending = 0;
+        this.buffer.putInt(4, HEADER_SIZE);
+    }
+
+    public synchronized void close() {
+        this.buffer.force();
+
+        try {
+            this.randomAccessFile.close();
+        } catch (IOException var2) {
+            LOG.warn("Failed to close the replication outbox " + this.file, var2);
+        }
+
+    }
+
+    public synchronized String toString() {
+        return "ReplicationOutbox [file=" + this.file + ", pending=" + this.pending + ", bytes=" + this.end + "/" + this.size + ", appended=" + this.appended + ", replayed=" + this.replayed + ", coalesced=" + this.coalesced + ", resynced=" + this.resynced + ", dropped=" + this.dropped + "]";
+    }
+
+    private static final class Pending {
+        private final long time;
+        private final JGroupEventMessage message;
+
+        private Pending(long time, JGroupEventMessage message) {
+            this.time = time;
+            this.message = message;
+        }
+    }
+}
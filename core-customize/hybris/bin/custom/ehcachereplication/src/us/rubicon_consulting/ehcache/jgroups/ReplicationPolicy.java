@@ -0,0 +1,96 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.Properties;
+import java.util.regex.Pattern;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.util.PropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ReplicationPolicy {
+    public static final ReplicationPolicy REPLICATE_ALL = new ReplicationPolicy(0L, 0L, (Pattern)null);
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicationPolicy.class.getName());
+    private static final String MAX_COPY_SIZE = "maxCopySize";
+    private static final String REPLICATION_LAG = "replicationLag";
+    private static final String EXCLUDE_KEYS = "excludeKeys";
+    private final long maxCopySize;
+    private final long replicationLag;
+    private final Pattern excludeKeys;
+
+    public ReplicationPolicy(long maxCopySize, long replicationLag, Pattern excludeKeys) {
+        this.maxCopySize = maxCopySize;
+        this.replicationLag = replicationLag;
+        this.excludeKeys = excludeKeys;
+    }
+
+    public static ReplicationPolicy fromProperties(Properties properties) {
+        long maxCopySize = parseLong(MAX_COPY_SIZE, PropertyUtil.extractAndLogProperty(MAX_COPY_SIZE, properties));
+        long replicationLag = parseLong(REPLICATION_LAG, PropertyUtil.extractAndLogProperty(REPLICATION_LAG, properties));
+        String excludeKeys = PropertyUtil.extractAndLogProperty(EXCLUDE_KEYS, properties);
+        Pattern pattern = null;
+        if (excludeKeys != null && excludeKeys.trim().length() > 0) {
+            pattern = Pattern.compile(excludeKeys.trim());
+        }
+
+        return maxCopySize <= 0L && replicationLag <= 0L && pattern == null ? REPLICATE_ALL : new ReplicationPolicy(maxCopySize, replicationLag, pattern);
+    }
+
+    private static long parseLong(String name, String value) {
+        if (value != null && value.trim().length() > 0) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException var3) {
+                LOG.warn("Number format exception trying to set {}. Using the default instead. String value was: '{}'", name, value);
+            }
+        }
+
+        return 0L;
+    }
+
+    public ReplicationPolicy.Decision decide(Element element) {
+        if (this == REPLICATE_ALL) {
+            return ReplicationPolicy.Decision.COPY;
+        } else if (this.isExcluded(element.getObjectKey())) {
+            return ReplicationPolicy.Decision.SKIP;
+        } else if (this.replicationLag > 0L && !element.isEternal() && element.getExpirationTime() - System.currentTimeMillis() < this.replicationLag) {
+            return ReplicationPolicy.Decision.SKIP;
+        } else {
+            return this.maxCopySize > 0L && sizeOf(element) > this.maxCopySize ? ReplicationPolicy.Decision.INVALIDATE : ReplicationPolicy.Decision.COPY;
+        }
+    }
+
+    private static long sizeOf(Element element) {
+        // a pre-serialized value is measured by the bytes that are sent instead of serializing it again
+        Object value = element.getObjectValue();
+        if (value instanceof SerializedValue) {
+            int length = ((SerializedValue)value).getSerializedLength();
+            if (length >= 0) {
+                return (long)length;
+            }
+        }
+
+        return element.getSerializedSize();
+    }
+
+    public boolean isExcluded(Object key) {
+        return this.excludeKeys != null && this.excludeKeys.matcher(String.valueOf(key)).matches();
+    }
+
+    public long getMaxCopySize() {
+        return this.maxCopySize;
+    }
+
+    public long getReplicationLag() {
+        return this.replicationLag;
+    }
+
+    public String toString() {
+        return "ReplicationPolicy [maxCopySize=" + this.maxCopySize + ", replicationLag=" + this.replicationLag + ", excludeKeys=" + this.excludeKeys + "]";
+    }
+
+    public static enum Decision {
+        COPY,
+        INVALIDATE,
+        SKIP;
+    }
+}
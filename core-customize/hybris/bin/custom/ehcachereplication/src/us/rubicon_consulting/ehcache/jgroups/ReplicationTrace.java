@@ -0,0 +1,398 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+import org.jgroups.Address;
+import org.jgroups.util.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ReplicationTrace {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicationTrace.class);
+    private static final int MAGIC = 0x45485452;
+    private static final byte VERSION = 1;
+    // a cache name is written once and referenced by its index afterwards
+    private static final byte CACHE_RECORD = 1;
+    private static final byte BATCH_RECORD = 2;
+    private static final int BUFFER_SIZE = 65536;
+    // batches beyond the queue are dropped rather than slowing down the receiving thread
+    private static final int QUEUE_SIZE = 4096;
+    private static final long POLL_INTERVAL = 100L;
+    private final File file;
+    private final boolean payloads;
+    private final long maxSize;
+    private final long startTime;
+    private final DataOutputStream out;
+    private final Map<String, Integer> cacheIndexes = new HashMap();
+    private final BlockingQueue<ReplicationTrace.Batch> queue = new ArrayBlockingQueue(QUEUE_SIZE);
+    private final Thread writer;
+    private volatile boolean closed;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public ReplicationTrace(File file, boolean payloads, long maxSize) throws IOException {
+        this.file = file;
+        this.payloads = payloads;
+        this.maxSize = Math.min((long)Integer.MAX_VALUE, maxSize);
+        this.startTime = System.currentTimeMillis();
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the directory of the replication trace " + file);
+        }
+
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        this.out.writeBoolean(payloads);
+        this.out.writeLong(this.startTime);
+        this.writer = new Thread(new Runnable() {
+            public void run() {
+                ReplicationTrace.this.write();
+            }
+        }, "Replication Trace " + file.getName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public static ReplicationTrace open(String clusterName, TraceSettings settings) throws IOException {
+        return new ReplicationTrace(settings.getFile(clusterName, System.currentTimeMillis()), settings.isPayloads(), settings.getMaxSize());
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    public void record(Address src, Object object, int length) {
+        List<JGroupEventMessage> messages;
+        if (object instanceof JGroupEventMessage) {
+            messages = Collections.singletonList((JGroupEventMessage)object);
+        } else {
+            if (!(object instanceof List)) {
+                return;
+            }
+
+            messages = new ArrayList(((List)object).size());
+            Iterator i$ = ((List)object).iterator();
+
+            while(i$.hasNext()) {
+                Object message = i$.next();
+                if (message instanceof JGroupEventMessage) {
+                    messages.add((JGroupEventMessage)message);
+                }
+            }
+        }
+
+        this.record(System.currentTimeMillis(), src == null ? 0 : src.hashCode(), messages, length);
+    }
+
+    void record(long time, int srcHash, List<JGroupEventMessage> messages, int length) {
+        if (this.closed || messages.isEmpty()) {
+            return;
+        }
+
+        if (!this.queue.offer(new ReplicationTrace.Batch(time, srcHash, messages, length))) {
+            this.dropped.incrementAndGet();
+        }
+
+    }
+
+    private void write() {
+        try {
+            while(true) {
+                ReplicationTrace.Batch batch = (ReplicationTrace.Batch)this.queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (batch != null) {
+                    this.write(batch);
+                    if ((long)this.out.size() >= this.maxSize) {
+                        LOG.info("The replication trace {} reached {} bytes, capture stopped", this.file, this.maxSize);
+                        this.closed = true;
+                        break;
+                    }
+                } else if (this.closed) {
+                    break;
+                }
+            }
+        } catch (InterruptedException var3) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.queue.clear();
+
+        try {
+            this.out.close();
+        } catch (IOException var2) {
+            LOG.warn("Failed to close the replication trace " + this.file, var2);
+        }
+
+        LOG.info("Closed {}", this);
+    }
+
+    private void write(ReplicationTrace.Batch batch) {
+        List<JGroupEventMessage> messages = batch.messages;
+
+        try {
+            // serialized before anything is written, a failing event must not leave a torn batch behind
+            byte[][] encoded = new byte[messages.size()][];
+            if (this.payloads) {
+                for(int i = 0; i < encoded.length; ++i) {
+                    encoded[i] = Util.objectToByteBuffer(messages.get(i));
+                }
+            }
+
+            int[] sizes = sizesOf(messages, batch.length);
+            int[] indexes = new int[messages.size()];
+
+            for(int i = 0; i < indexes.length; ++i) {
+                indexes[i] = this.getCacheIndex(((JGroupEventMessage)messages.get(i)).getCacheName());
+            }
+
+            this.out.writeByte(BATCH_RECORD);
+            this.out.writeInt((int)(batch.time - this.startTime));
+            this.out.writeInt(batch.srcHash);
+            this.out.writeInt(indexes.length);
+
+            for(int i = 0; i < indexes.length; ++i) {
+                JGroupEventMessage message = (JGroupEventMessage)messages.get(i);
+                Serializable key = message.getSerializableKey();
+                this.out.writeShort(indexes[i]);
+                this.out.writeByte(message.getEvent());
+                this.out.writeInt(key == null ? 0 : key.hashCode());
+                if (this.payloads) {
+                    this.out.writeInt(encoded[i].length);
+                    this.out.write(encoded[i]);
+                } else {
+                    this.out.writeInt(sizes[i]);
+                }
+            }
+
+            this.batches.incrementAndGet();
+            this.events.addAndGet((long)indexes.length);
+        } catch (Exception var8) {
+            this.failed.incrementAndGet();
+            LOG.debug("Failed to trace a batch of " + messages.size() + " replication events", var8);
+        }
+
+    }
+
+    static int[] sizesOf(List<JGroupEventMessage> messages, int length) {
+        // an event is as large as the value it carries serialized plus its share of the rest of the received buffer
+        int[] sizes = new int[messages.size()];
+        int remaining = length;
+
+        for(int i = 0; i < sizes.length; ++i) {
+            Element element = ((JGroupEventMessage)messages.get(i)).getElement();
+            if (element != null && element.getObjectValue() instanceof SerializedValue) {
+                sizes[i] = Math.max(0, ((SerializedValue)element.getObjectValue()).getSerializedLength());
+                remaining -= sizes[i];
+            }
+        }
+
+        remaining = Math.max(0, remaining);
+
+        for(int i = 0; i < sizes.length; ++i) {
+            sizes[i] += remaining / sizes.length + (i < remaining % sizes.length ? 1 : 0);
+        }
+
+        return sizes;
+    }
+
+    private int getCacheIndex(String cacheName) throws IOException {
+        if (cacheName == null) {
+            return -1;
+        }
+
+        Integer index = (Integer)this.cacheIndexes.get(cacheName);
+        if (index == null) {
+            index = this.cacheIndexes.size();
+            this.cacheIndexes.put(cacheName, index);
+            this.out.writeByte(CACHE_RECORD);
+            this.out.writeShort(index);
+            this.out.writeUTF(cacheName);
+        }
+
+        return index;
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    public void close() {
+        // the batches queued so far are written before the file is closed
+        this.closed = true;
+        if (Thread.currentThread() != this.writer) {
+            try {
+                this.writer.join();
+            } catch (InterruptedException var2) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+    public String toString() {
+        return "ReplicationTrace [file=" + this.file + ", payloads=" + this.payloads + ", closed=" + this.closed + ", batches=" + this.batches + ", events=" + this.events + ", bytes=" + this.out.size() + "/" + this.maxSize + ", queued=" + this.queue.size() + ", dropped=" + this.dropped + ", failed=" + this.failed + "]";
+    }
+
+    private static final class Batch {
+        private final long time;
+        private final int srcHash;
+        private final List<JGroupEventMessage> messages;
+        private final int length;
+
+        private Batch(long time, int srcHash, List<JGroupEventMessage> messages, int length) {
+            this.time = time;
+            this.srcHash = srcHash;
+            this.messages = messages;
+            this.length = length;
+        }
+    }
+
+    public static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final boolean payloads;
+        private final long startTime;
+        private final Map<Integer, String> cacheNames = new HashMap();
+        private long batchTime;
+        private int batchSrcHash;
+        private int remaining;
+
+        public Reader(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+
+            try {
+                if (this.in.readInt() != MAGIC || this.in.readByte() != VERSION) {
+                    throw new IOException(file + " is not a replication trace of version " + VERSION);
+                }
+
+                this.payloads = this.in.readBoolean();
+                this.startTime = this.in.readLong();
+            } catch (IOException var3) {
+                this.in.close();
+                throw var3;
+            }
+        }
+
+        public boolean isPayloads() {
+            return this.payloads;
+        }
+
+        public long getStartTime() {
+            return this.startTime;
+        }
+
+        public ReplicationTrace.Event next() throws IOException {
+            try {
+                while(this.remaining == 0) {
+                    byte type = this.in.readByte();
+                    if (type == CACHE_RECORD) {
+                        int index = this.in.readShort();
+                        this.cacheNames.put(index, this.in.readUTF());
+                    } else {
+                        if (type != BATCH_RECORD) {
+                            throw new IOException("Unknown record type " + type + " in the replication trace");
+                        }
+
+                        this.batchTime = this.startTime + (long)this.in.readInt();
+                        this.batchSrcHash = this.in.readInt();
+                        this.remaining = this.in.readInt();
+                    }
+                }
+
+                int cacheIndex = this.in.readShort();
+                int event = this.in.readByte();
+                int keyHash = this.in.readInt();
+                int size = this.in.readInt();
+                byte[] payload = null;
+                if (this.payloads) {
+                    payload = new byte[size];
+                    this.in.readFully(payload);
+                }
+
+                --this.remaining;
+                return new ReplicationTrace.Event(this.batchTime, this.batchSrcHash, (String)this.cacheNames.get(cacheIndex), event, keyHash, size, payload);
+            } catch (EOFException var7) {
+                // the end of the trace or a batch torn by a capture that is still running
+                return null;
+            }
+        }
+
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    public static final class Event {
+        private final long time;
+        private final int srcHash;
+        private final String cacheName;
+        private final int event;
+        private final int keyHash;
+        private final int size;
+        private final byte[] payload;
+
+        private Event(long time, int srcHash, String cacheName, int event, int keyHash, int size, byte[] payload) {
+            this.time = time;
+            this.srcHash = srcHash;
+            this.cacheName = cacheName;
+            this.event = event;
+            this.keyHash = keyHash;
+            this.size = size;
+            this.payload = payload;
+        }
+
+        public long getTime() {
+            return this.time;
+        }
+
+        public int getSrcHash() {
+            return this.srcHash;
+        }
+
+        public String getCacheName() {
+            return this.cacheName;
+        }
+
+        public int getEvent() {
+            return this.event;
+        }
+
+        public int getKeyHash() {
+            return this.keyHash;
+        }
+
+        public int getSize() {
+            return this.size;
+        }
+
+        public byte[] getPayload() {
+            return this.payload;
+        }
+
+        public String toString() {
+            return "Event [time=" + this.time + ", cache=" + this.cacheName + ", event=" + this.event + ", keyHash=" + this.keyHash + ", size=" + this.size + "]";
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.ConfigurationFactory;
+import net.sf.ehcache.config.FactoryConfiguration;
+import net.sf.ehcache.distribution.CacheManagerPeerProvider;
+import net.sf.ehcache.distribution.CacheManagerPeerProviderFactory;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+import org.jgroups.util.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ReplicationTraceReplay {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicationTraceReplay.class);
+    private static final String CLUSTER = "replay";
+    // the cache configuration the storefront runs with, see ehcachereplication-spring.xml
+    private static final String PRODUCTION_CONFIG = "ehcachereplication/cache-config/2211-ehcache.xml";
+    private final File traceFile;
+    private final int nodes;
+    private final double speed;
+    private final URL configUrl;
+    private final List<CacheManager> cacheManagers = new ArrayList();
+    private long replayed;
+    private long skipped;
+    private long maxLag;
+
+    public ReplicationTraceReplay(File traceFile, int nodes, double speed) {
+        this(traceFile, nodes, speed, ReplicationTraceReplay.class.getClassLoader().getResource(PRODUCTION_CONFIG));
+    }
+
+    public ReplicationTraceReplay(File traceFile, int nodes, double speed, URL configUrl) {
+        this.traceFile = traceFile;
+        this.nodes = Math.max(1, nodes);
+        // 0 replays as fast as possible
+        this.speed = speed;
+        this.configUrl = configUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: ReplicationTraceReplay <trace file> [nodes, default 4] [speed, default 1.0, 0 for as fast as possible] [ehcache.xml, default " + PRODUCTION_CONFIG + "]"); //NOPMD
+            System.exit(1);
+        }
+
+        File traceFile = new File(args[0]);
+        int nodes = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1.0D;
+        ReplicationTraceReplay replay = args.length > 3 ? new ReplicationTraceReplay(traceFile, nodes, speed, new File(args[3]).toURI().toURL()) : new ReplicationTraceReplay(traceFile, nodes, speed);
+        System.out.println(replay.run()); //NOPMD
+        System.exit(0);
+    }
+
+    public String run() throws Exception {
+        Set<String> cacheNames = this.readCacheNames();
+
+        for(int i = 0; i < this.nodes; ++i) {
+            this.cacheManagers.add(this.createNode(i, cacheNames));
+        }
+
+        long start = System.currentTimeMillis();
+
+        try {
+            this.replay();
+        } finally {
+            Iterator i$ = this.cacheManagers.iterator();
+
+            while(i$.hasNext()) {
+                ((CacheManager)i$.next()).shutdown();
+            }
+
+        }
+
+        return "Replayed " + this.replayed + " events of " + this.traceFile + " into " + this.nodes + " nodes in " + (System.currentTimeMillis() - start) + "ms (speed " + this.speed + "), skipped " + this.skipped + " protocol events, max lag " + this.maxLag + "ms";
+    }
+
+    private Set<String> readCacheNames() throws IOException {
+        Set<String> cacheNames = new LinkedHashSet();
+        ReplicationTrace.Reader reader = new ReplicationTrace.Reader(this.traceFile);
+
+        try {
+            ReplicationTrace.Event event;
+            while((event = reader.next()) != null) {
+                if (event.getCacheName() != null) {
+                    cacheNames.add(event.getCacheName());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return cacheNames;
+    }
+
+    private CacheManager createNode(int index, Set<String> cacheNames) {
+        if (this.configUrl == null) {
+            throw new IllegalStateException("The cache configuration " + PRODUCTION_CONFIG + " is not on the classpath");
+        }
+
+        // the caches replicate with the policies, lifespans and decorators of production, only the transport is replaced
+        Configuration configuration = ConfigurationFactory.parseConfiguration(this.configUrl).name("replay-" + index);
+        configuration.getCacheManagerPeerProviderFactoryConfiguration().clear();
+        configuration.addCacheManagerPeerProviderFactory((new FactoryConfiguration()).className(ReplicationTraceReplay.PeerProviderFactory.class.getName()).properties("network=" + this.traceFile.getName()));
+        Iterator i$ = cacheNames.iterator();
+
+        while(i$.hasNext()) {
+            String cacheName = (String)i$.next();
+            if (!configuration.getCacheConfigurations().containsKey(cacheName)) {
+                // caches created at runtime get the default cache configuration like in production
+                LOG.debug("Replaying cache {} with the default cache configuration of {}", cacheName, this.configUrl);
+                configuration.addCache(configuration.getDefaultCacheConfiguration().clone().name(cacheName));
+            }
+        }
+
+        return new CacheManager(configuration);
+    }
+
+    private void replay() throws Exception {
+        ReplicationTrace.Reader reader = new ReplicationTrace.Reader(this.traceFile);
+
+        try {
+            long start = System.currentTimeMillis();
+
+            ReplicationTrace.Event event;
+            while((event = reader.next()) != null) {
+                if (this.speed > 0.0D) {
+                    // the events of the trace are played at their original offsets divided by the speed
+                    long due = start + (long)((double)(event.getTime() - reader.getStartTime()) / this.speed);
+                    long wait = due - System.currentTimeMillis();
+                    if (wait > 0L) {
+                        Thread.sleep(wait);
+                    } else {
+                        this.maxLag = Math.max(this.maxLag, -wait);
+                    }
+                }
+
+                if (this.apply(event)) {
+                    ++this.replayed;
+                } else {
+                    ++this.skipped;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+    }
+
+    private boolean apply(ReplicationTrace.Event event) throws Exception {
+        if (event.getCacheName() == null) {
+            return false;
+        }
+
+        // the node sending an event stands in for the member that sent it in production
+        CacheManager cacheManager = (CacheManager)this.cacheManagers.get((event.getSrcHash() & Integer.MAX_VALUE) % this.nodes);
+        Ehcache cache = cacheManager.getEhcache(event.getCacheName());
+        JGroupEventMessage message = event.getPayload() == null ? null : (JGroupEventMessage)Util.objectFromByteBuffer(event.getPayload());
+        // without payloads a key of the same hash keeps the distribution of the keys over the stores and interest sketches
+        Serializable key = message == null ? Integer.valueOf(event.getKeyHash()) : message.getSerializableKey();
+        switch(event.getEvent()) {
+            case 0:
+            case JGroupsCacheReplicator.VALUE_DELTA:
+                // a delta is replayed as a put of its size, the replaying nodes encode their own deltas
+                Element element = message == null || event.getEvent() != 0 ? null : message.getElement();
+                cache.put(element == null ? new Element(key, new byte[event.getSize()]) : new Element(key, element.getObjectValue()));
+                return true;
+            case 1:
+                cache.remove(key);
+                return true;
+            case 3:
+            case JGroupsCacheReplicator.REMOVE_ALL_EPOCH:
+                cache.removeAll();
+                return true;
+            case JGroupsCacheReplicator.TOUCH:
+                // a touch extends the lifespan of an unchanged value, it is neither a read nor a new value of the key
+                Element current = cache.getQuiet(key);
+                if (current != null) {
+                    Element touch = message == null ? null : message.getElement();
+                    cache.put(touch == null ? new Element(key, current.getObjectValue()) : new Element(key, current.getObjectValue(), touch.getVersion(), touch.getCreationTime(), current.getLastAccessTime(), current.getHitCount(), touch.usesCacheDefaultLifespan(), touch.getTimeToLive(), touch.getTimeToIdle(), touch.getLastUpdateTime()));
+                }
+
+                return true;
+            default:
+                // bootstrap, anti-entropy, interest and lookup traffic is generated by the replaying nodes themselves
+                return false;
+        }
+    }
+
+    public static class PeerProviderFactory extends CacheManagerPeerProviderFactory {
+        public PeerProviderFactory() {
+        }
+
+        public CacheManagerPeerProvider createCachePeerProvider(CacheManager cacheManager, Properties properties) {
+            LOG.debug("Creating replay CacheManagerPeerProvider for {}", cacheManager.getName());
+            JGroupsCacheManagerPeerProvider peerProvider = new JGroupsCacheManagerPeerProvider(cacheManager, new InMemoryTransport(properties.getProperty("network")));
+            peerProvider.setChannelName(CLUSTER);
+            return peerProvider;
+        }
+    }
+}
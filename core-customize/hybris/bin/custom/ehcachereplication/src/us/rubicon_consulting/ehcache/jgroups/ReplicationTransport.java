@@ -0,0 +1,27 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.List;
+import org.jgroups.Address;
+import org.jgroups.Message;
+
+public interface ReplicationTransport {
+    void connect(String clusterName, ReplicationTransport.Listener listener) throws Exception;
+
+    void send(Address dest, byte[] data, Message.Flag... flags) throws Exception;
+
+    List<Address> getMembers();
+
+    Address getLocalAddress();
+
+    boolean isConnected();
+
+    int getMaxMessageSize();
+
+    void close();
+
+    public interface Listener {
+        void receive(Address src, byte[] data, int offset, int length);
+
+        void viewAccepted(List<Address> members);
+    }
+}
@@ -0,0 +1,56 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+
+public final class ReplicationTuning implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final String ALL_CACHES = "*";
+    public static final String MODE = "mode";
+    public static final String ASYNC_INTERVAL = "asyncinterval";
+    public static final String ASYNC_ADAPTIVE = "async.adaptive";
+    public static final String ASYNC_MAX_EVENTS = "async.maxevents";
+    public static final String ASYNC_MAX_BYTES = "async.maxbytes";
+    public static final String ASYNC_MIN_LINGER = "async.minlinger";
+    public static final String BOOTSTRAP_THREADS = "bootstrap.threads";
+    // null for the settings of the cache manager, * for all replicated caches
+    private final String cacheName;
+    private final String setting;
+    private final String value;
+    // the clock of the member pushing the setting, it orders the pushes of all members
+    private final long time;
+
+    public ReplicationTuning(String cacheName, String setting, String value) {
+        this(cacheName, setting, value, System.currentTimeMillis());
+    }
+
+    public ReplicationTuning(String cacheName, String setting, String value, long time) {
+        this.cacheName = cacheName;
+        this.setting = setting;
+        this.value = value;
+        this.time = time;
+    }
+
+    public String getCacheName() {
+        return this.cacheName;
+    }
+
+    public String getSetting() {
+        return this.setting;
+    }
+
+    public String getValue() {
+        return this.value;
+    }
+
+    public long getTime() {
+        return this.time;
+    }
+
+    public String getKey() {
+        return this.cacheName == null ? this.setting : this.cacheName + ":" + this.setting;
+    }
+
+    public String toString() {
+        return "ReplicationTuning [" + this.getKey() + "=" + this.value + ", time=" + this.time + "]";
+    }
+}
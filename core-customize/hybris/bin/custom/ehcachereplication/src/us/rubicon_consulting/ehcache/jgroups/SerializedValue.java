@@ -0,0 +1,137 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Element;
+
+public final class SerializedValue implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private transient byte[] bytes;
+    private transient Object value;
+    private transient boolean resolved;
+    private transient Element resolvedFrom;
+    private transient Element resolvedElement;
+
+    private SerializedValue(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public static SerializedValue of(Object value) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+        ObjectOutputStream out = new ObjectOutputStream(buffer);
+        out.writeObject(value);
+        out.close();
+        return new SerializedValue(buffer.toByteArray());
+    }
+
+    static SerializedValue fromBytes(byte[] bytes) {
+        return new SerializedValue(bytes);
+    }
+
+    public static Element wrap(Element element) throws IOException {
+        Object value = element.getObjectValue();
+        if (value == null || value instanceof SerializedValue) {
+            return element;
+        } else {
+            return copy(element, of(value));
+        }
+    }
+
+    public static Element unwrap(Element element) {
+        if (element != null && element.getObjectValue() instanceof SerializedValue) {
+            return ((SerializedValue)element.getObjectValue()).resolve(element);
+        } else {
+            return element;
+        }
+    }
+
+    static Element copy(Element element, Object value) {
+        return new Element(element.getObjectKey(), value, element.getVersion(), element.getCreationTime(), element.getLastAccessTime(), element.getHitCount(), element.usesCacheDefaultLifespan(), element.getTimeToLive(), element.getTimeToIdle(), element.getLastUpdateTime());
+    }
+
+    public synchronized boolean isResolved() {
+        return this.resolved;
+    }
+
+    public synchronized int getSerializedLength() {
+        return this.bytes == null ? -1 : this.bytes.length;
+    }
+
+    public synchronized Object resolve() throws CacheException {
+        if (!this.resolved) {
+            try {
+                ObjectInputStream in = new SerializedValue.ContextClassLoaderObjectInputStream(new ByteArrayInputStream(this.bytes));
+                this.value = in.readObject();
+                in.close();
+            } catch (Exception var2) {
+                throw new CacheException("Failed to deserialize replicated value", var2);
+            }
+
+            this.resolved = true;
+            this.bytes = null;
+        }
+
+        return this.value;
+    }
+
+    synchronized Element resolve(Element element) throws CacheException {
+        // the copy is built once per cached element, later reads return it instead of copying again
+        if (this.resolvedFrom != element) {
+            this.resolvedElement = copy(element, this.resolve());
+            this.resolvedFrom = element;
+        }
+
+        return this.resolvedElement;
+    }
+
+    synchronized byte[] bytes() throws IOException {
+        if (this.bytes == null) {
+            return of(this.value).bytes;
+        } else {
+            return this.bytes;
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        byte[] data = this.bytes();
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.bytes = new byte[in.readInt()];
+        in.readFully(this.bytes);
+    }
+
+    public String toString() {
+        return "SerializedValue [resolved=" + this.isResolved() + ", length=" + this.getSerializedLength() + "]";
+    }
+
+    private static final class ContextClassLoaderObjectInputStream extends ObjectInputStream {
+        private ContextClassLoaderObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            if (classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException var4) {
+                    // fall back to the class loader of the stream
+                }
+            }
+
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.jgroups.Address;
+import org.jgroups.Header;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.Receiver;
+import org.jgroups.View;
+import org.jgroups.conf.ClassConfigurator;
+import org.jgroups.util.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SharedChannel implements Receiver {
+    public static final short HEADER_ID = 4711;
+    private static final Logger LOG = LoggerFactory.getLogger(SharedChannel.class);
+    // the reserved fork of the messages announcing the forks a member runs
+    private static final String MEMBERSHIP = "";
+    private static final Map<String, SharedChannel> CHANNELS = new HashMap();
+    private final String key;
+    private final JChannel channel;
+    private final ConcurrentMap<String, Receiver> forks = new ConcurrentHashMap();
+    private final Map<Address, Set<String>> memberForks = new HashMap();
+    private final Map<String, List<Address>> forkMembers = new HashMap();
+    private View view;
+
+    static {
+        try {
+            ClassConfigurator.add(HEADER_ID, SharedChannel.ForkHeader.class);
+        } catch (Exception var1) {
+            throw new IllegalStateException("Unable to register the JGroups fork header", var1);
+        }
+    }
+
+    SharedChannel(String key, JChannel channel) {
+        this.key = key;
+        this.channel = channel;
+    }
+
+    public static SharedChannel acquire(String sharedClusterName, String properties, URL configUrl) throws Exception {
+        String key = sharedClusterName + "|" + (properties != null ? properties : (configUrl != null ? configUrl.toString() : ""));
+        synchronized(CHANNELS) {
+            SharedChannel shared = (SharedChannel)CHANNELS.get(key);
+            if (shared == null) {
+                JChannel channel;
+                if (properties != null) {
+                    channel = new JChannel(properties);
+                } else if (configUrl != null) {
+                    channel = new JChannel(configUrl);
+                } else {
+                    channel = new JChannel();
+                }
+
+                shared = new SharedChannel(key, channel);
+                channel.setReceiver(shared);
+                channel.setDiscardOwnMessages(true);
+
+                try {
+                    channel.connect(sharedClusterName);
+                } catch (Exception var12) {
+                    channel.close();
+                    throw var12;
+                }
+
+                CHANNELS.put(key, shared);
+                LOG.info("Opened shared JGroups channel for cluster '{}'", sharedClusterName);
+            }
+
+            return shared;
+        }
+    }
+
+    public void register(String fork, Receiver receiver) {
+        synchronized(CHANNELS) {
+            if (this.forks.putIfAbsent(fork, receiver) != null) {
+                throw new IllegalStateException("Fork '" + fork + "' is already registered on shared channel '" + this.channel.getClusterName() + "'");
+            }
+
+            LOG.info("Registered fork '{}' on shared JGroups channel '{}', {} fork(s) in total", new Object[]{fork, this.channel.getClusterName(), this.forks.size()});
+        }
+
+        this.announceForks();
+        this.deliverViews();
+    }
+
+    public void release(String fork, Receiver receiver) {
+        synchronized(CHANNELS) {
+            if (receiver != null && this.forks.remove(fork, receiver)) {
+                synchronized(this.memberForks) {
+                    this.forkMembers.remove(fork);
+                }
+            }
+
+            LOG.info("Unregistered fork '{}' from shared JGroups channel '{}', {} fork(s) remaining", new Object[]{fork, this.channel.getClusterName(), this.forks.size()});
+            if (this.forks.isEmpty()) {
+                CHANNELS.remove(this.key);
+                LOG.info("Closing shared JGroups channel for cluster '{}'", this.channel.getClusterName());
+                this.channel.close();
+                return;
+            }
+        }
+
+        this.announceForks();
+    }
+
+    public JChannel getChannel() {
+        return this.channel;
+    }
+
+    public void receive(Message msg) {
+        SharedChannel.ForkHeader header = (SharedChannel.ForkHeader)msg.getHeader(HEADER_ID);
+        if (header != null && MEMBERSHIP.equals(header.getFork())) {
+            this.receiveForks(msg);
+            return;
+        }
+
+        Receiver receiver = header == null ? null : (Receiver)this.forks.get(header.getFork());
+        if (receiver != null) {
+            receiver.receive(msg);
+        } else {
+            LOG.trace("Dropping message without a registered fork, header: {}", header);
+        }
+
+    }
+
+    public void viewAccepted(View view) {
+        synchronized(this.memberForks) {
+            this.view = view;
+            this.memberForks.keySet().retainAll(view.getMembers());
+        }
+
+        // the members joining learn the forks of this one, the other members announced theirs before
+        this.announceForks();
+        this.deliverViews();
+    }
+
+    private void announceForks() {
+        try {
+            Message msg = new Message((Address)null, Util.objectToByteBuffer(this.forks.keySet().toArray(new String[0])));
+            msg.putHeader(HEADER_ID, new SharedChannel.ForkHeader(MEMBERSHIP));
+            this.channel.send(msg);
+        } catch (Exception var2) {
+            LOG.warn("Unable to announce the forks of shared JGroups channel '{}'", this.channel.getClusterName(), var2);
+        }
+
+    }
+
+    private void receiveForks(Message msg) {
+        try {
+            Set<String> announced = new HashSet(Arrays.asList((String[])Util.objectFromByteBuffer(msg.getRawBuffer(), msg.getOffset(), msg.getLength())));
+            synchronized(this.memberForks) {
+                this.memberForks.put(msg.getSrc(), announced);
+            }
+        } catch (Exception var6) {
+            LOG.warn("Ignoring invalid fork announcement of {}", msg.getSrc(), var6);
+            return;
+        }
+
+        this.deliverViews();
+    }
+
+    private void deliverViews() {
+        // a fork only sees the members running it, the others drop its messages and never answer
+        synchronized(this.memberForks) {
+            if (this.view == null) {
+                return;
+            }
+
+            Address localAddress = this.channel.getAddress();
+            Iterator i$ = this.forks.entrySet().iterator();
+
+            while(i$.hasNext()) {
+                Entry<String, Receiver> fork = (Entry)i$.next();
+                List<Address> members = new ArrayList();
+                Iterator m$ = this.view.getMembers().iterator();
+
+                while(m$.hasNext()) {
+                    Address member = (Address)m$.next();
+                    Set<String> running = (Set)this.memberForks.get(member);
+                    if (member.equals(localAddress) || running != null && running.contains(fork.getKey())) {
+                        members.add(member);
+                    }
+                }
+
+                if (!members.equals(this.forkMembers.get(fork.getKey()))) {
+                    this.forkMembers.put(fork.getKey(), members);
+                    LOG.debug("Members of fork '{}' on shared JGroups channel '{}': {}", new Object[]{fork.getKey(), this.channel.getClusterName(), members});
+                    ((Receiver)fork.getValue()).viewAccepted(new View(this.view.getViewId(), members));
+                }
+            }
+
+        }
+    }
+
+    public void suspect(Address address) {
+        Iterator i$ = this.forks.values().iterator();
+
+        while(i$.hasNext()) {
+            Receiver receiver = (Receiver)i$.next();
+            receiver.suspect(address);
+        }
+
+    }
+
+    public void getState(OutputStream output) throws Exception {
+    }
+
+    public void setState(InputStream input) throws Exception {
+    }
+
+    public void block() {
+    }
+
+    public void unblock() {
+    }
+
+    public static class ForkHeader extends Header {
+        private String fork;
+
+        public ForkHeader() {
+        }
+
+        public ForkHeader(String fork) {
+            this.fork = fork;
+        }
+
+        public String getFork() {
+            return this.fork;
+        }
+
+        public int size() {
+            return 2 + this.fork.length() * 3;
+        }
+
+        public void writeTo(DataOutput out) throws Exception {
+            out.writeUTF(this.fork);
+        }
+
+        public void readFrom(DataInput in) throws Exception {
+            this.fork = in.readUTF();
+        }
+
+        public String toString() {
+            return "fork=" + this.fork;
+        }
+    }
+}
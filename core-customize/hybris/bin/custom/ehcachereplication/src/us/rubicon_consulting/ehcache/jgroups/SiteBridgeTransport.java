@@ -0,0 +1,422 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.jgroups.util.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SiteBridgeTransport implements ReplicationTransport, ReplicationTransport.Listener {
+    private static final Logger LOG = LoggerFactory.getLogger(SiteBridgeTransport.class);
+    private static final byte PLAIN = 0;
+    private static final byte DEFLATED = 1;
+    private final ReplicationTransport local;
+    private final ReplicationTransport link;
+    private final BridgeSettings settings;
+    private final SiteBridgeTransport.LinkListener linkListener = new SiteBridgeTransport.LinkListener();
+    private final Object batchLock = new Object();
+    private Map<Object, JGroupEventMessage> batch = new LinkedHashMap();
+    private final AtomicLong relayed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong encodedBytes = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private volatile ReplicationTransport.Listener listener;
+    private volatile boolean linkConnected;
+    private Timer bridgeTimer;
+
+    public SiteBridgeTransport(ReplicationTransport local, ReplicationTransport link, BridgeSettings settings) {
+        this.local = local;
+        this.link = link;
+        this.settings = settings;
+    }
+
+    public void connect(String clusterName, ReplicationTransport.Listener listener) throws Exception {
+        this.listener = listener;
+        this.local.connect(clusterName, this);
+        this.bridgeTimer = new Timer(clusterName + " Site Bridge Thread", true);
+        this.bridgeTimer.schedule(new SiteBridgeTransport.BridgeTimerTask(), this.settings.getLinger(), this.settings.getLinger());
+        LOG.info("Bridging '{}' of site {} with {}", new Object[]{clusterName, this.settings.getSite(), this.settings});
+    }
+
+    public void send(Address dest, byte[] data, Message.Flag... flags) throws Exception {
+        this.local.send(dest, data, flags);
+        if (dest == null) {
+            this.relay(data, 0, data.length);
+        }
+
+    }
+
+    public List<Address> getMembers() {
+        return this.local.getMembers();
+    }
+
+    public Address getLocalAddress() {
+        return this.local.getLocalAddress();
+    }
+
+    public boolean isConnected() {
+        return this.local.isConnected();
+    }
+
+    public int getMaxMessageSize() {
+        return this.local.getMaxMessageSize();
+    }
+
+    public ReplicationTransport getLocal() {
+        return this.local;
+    }
+
+    public boolean isSiteMaster() {
+        // the oldest member of the site relays, like the coordinator of a JGroups view
+        List<Address> members = this.local.getMembers();
+        return !members.isEmpty() && members.get(0).equals(this.local.getLocalAddress());
+    }
+
+    public void close() {
+        if (this.bridgeTimer != null) {
+            this.bridgeTimer.cancel();
+        }
+
+        if (this.linkConnected) {
+            this.flush();
+            this.link.close();
+            this.linkConnected = false;
+        }
+
+        this.local.close();
+    }
+
+    public void receive(Address src, byte[] data, int offset, int length) {
+        ReplicationTransport.Listener current = this.listener;
+        if (current instanceof JGroupsCacheReceiver && length != 0 && this.isSiteMaster()) {
+            // the site master decodes a message once for the receiver and the relay
+            Object object;
+            try {
+                object = Util.objectFromByteBuffer(data, offset, length);
+            } catch (Exception var8) {
+                LOG.warn("Failed to decode a message of " + length + " bytes from " + src, var8);
+                return;
+            }
+
+            ((JGroupsCacheReceiver)current).receive(src, object, length);
+            this.relay(object);
+        } else {
+            if (current != null) {
+                current.receive(src, data, offset, length);
+            }
+
+            this.relay(data, offset, length);
+        }
+
+    }
+
+    public void viewAccepted(List<Address> members) {
+        ReplicationTransport.Listener current = this.listener;
+        if (current != null) {
+            current.viewAccepted(members);
+        }
+
+    }
+
+    private void relay(byte[] data, int offset, int length) {
+        if (!this.isSiteMaster()) {
+            return;
+        }
+
+        Object object;
+        try {
+            object = Util.objectFromByteBuffer(data, offset, length);
+        } catch (Exception var7) {
+            LOG.debug("Unable to decode a message of {} bytes for the site bridge", length, var7);
+            return;
+        }
+
+        this.relay(object);
+    }
+
+    private void relay(Object object) {
+        boolean full = false;
+        if (object instanceof JGroupEventMessage) {
+            full = this.relay((JGroupEventMessage)object);
+        } else if (object instanceof List) {
+            Iterator i$ = ((List)object).iterator();
+
+            while(i$.hasNext()) {
+                Object message = i$.next();
+                if (message instanceof JGroupEventMessage) {
+                    full |= this.relay((JGroupEventMessage)message);
+                }
+            }
+        }
+
+        if (full) {
+            this.flush();
+        }
+
+    }
+
+    private boolean relay(JGroupEventMessage message) {
+        if (!this.settings.isBridged(message.getCacheName())) {
+            return false;
+        }
+
+        JGroupEventMessage invalidation = invalidationOf(message);
+        if (invalidation == null) {
+            return false;
+        }
+
+        this.relayed.incrementAndGet();
+        synchronized(this.batchLock) {
+            return this.batch(invalidation);
+        }
+    }
+
+    private boolean batch(JGroupEventMessage invalidation) {
+        // the last invalidation of a key wins, a remove all drops the batched invalidations of its cache
+        Object lane;
+        if (invalidation.getEvent() == 3) {
+            Iterator i$ = this.batch.values().iterator();
+
+            while(i$.hasNext()) {
+                if (invalidation.getCacheName().equals(((JGroupEventMessage)i$.next()).getCacheName())) {
+                    i$.remove();
+                    this.coalesced.incrementAndGet();
+                }
+            }
+
+            lane = new Object();
+        } else {
+            lane = Arrays.asList(invalidation.getCacheName(), invalidation.getSerializableKey());
+            if (this.batch.remove(lane) != null) {
+                this.coalesced.incrementAndGet();
+            }
+        }
+
+        this.batch.put(lane, invalidation);
+        if (this.batch.size() >= this.settings.getMaxEvents() && !this.linkConnected) {
+            this.collapse();
+        }
+
+        return this.batch.size() >= this.settings.getMaxEvents();
+    }
+
+    private void collapse() {
+        // the batch waiting for the link is bounded by replacing the invalidations of each cache with a remove all
+        Map<Object, JGroupEventMessage> removeAlls = new LinkedHashMap();
+        Iterator i$ = this.batch.values().iterator();
+
+        while(i$.hasNext()) {
+            JGroupEventMessage invalidation = (JGroupEventMessage)i$.next();
+            if (!removeAlls.containsKey(invalidation.getCacheName())) {
+                removeAlls.put(invalidation.getCacheName(), new JGroupEventMessage(3, (Serializable)null, (Element)null, invalidation.getCacheName()));
+            }
+        }
+
+        this.coalesced.addAndGet((long)(this.batch.size() - removeAlls.size()));
+        this.batch = new LinkedHashMap();
+        Iterator r$ = removeAlls.values().iterator();
+
+        while(r$.hasNext()) {
+            this.batch.put(new Object(), (JGroupEventMessage)r$.next());
+        }
+
+        LOG.warn("The site bridge is not connected, the other sites will drop all entries of {}", removeAlls.keySet());
+    }
+
+    static JGroupEventMessage invalidationOf(JGroupEventMessage message) {
+        // the other site only drops its copies, values and epochs of one site mean nothing to the other
+        switch(message.getEvent()) {
+            case 0:
+            case JGroupsCacheReplicator.VALUE_DELTA:
+                Element element = message.getElement();
+                if (message.getSerializableKey() == null) {
+                    return null;
+                }
+
+                return JGroupsCacheReplicator.createRemoval(message.getSerializableKey(), element == null ? System.currentTimeMillis() : ElementVersions.timestampOf(element), message.getCacheName());
+            case 1:
+                return message.getSerializableKey() == null ? null : message;
+            case 3:
+                return message;
+            case JGroupsInterestManager.INTEREST_INVALIDATION:
+                Serializable key = ((InterestInvalidation)message.getSerializableKey()).getKey();
+                return JGroupsCacheReplicator.createRemoval(key, System.currentTimeMillis(), message.getCacheName());
+            case JGroupsCacheReplicator.REMOVE_ALL_EPOCH:
+                return new JGroupEventMessage(3, (Serializable)null, (Element)null, message.getCacheName());
+            default:
+                return null;
+        }
+    }
+
+    public void flush() {
+        List<JGroupEventMessage> events;
+        synchronized(this.batchLock) {
+            // the batch waits until the link is up, a new site master connects it after a failover
+            if (this.batch.isEmpty() || !this.linkConnected) {
+                return;
+            }
+
+            events = new ArrayList(this.batch.values());
+            this.batch = new LinkedHashMap();
+        }
+
+        try {
+            byte[] data = JGroupsCachePeer.encode(events);
+            byte[] payload = this.settings.isCompress() ? deflate(data) : prefix(PLAIN, data);
+            this.link.send((Address)null, payload);
+            this.batches.incrementAndGet();
+            this.encodedBytes.addAndGet((long)data.length);
+            this.sentBytes.addAndGet((long)payload.length);
+            LOG.debug("Relayed {} invalidations in {} bytes ({} encoded) to the other sites", new Object[]{events.size(), payload.length, data.length});
+        } catch (Exception var5) {
+            LOG.error("Failed to relay " + events.size() + " invalidations to the other sites, keeping them for the next batch", var5);
+            this.requeue(events);
+        }
+
+    }
+
+    private void requeue(List<JGroupEventMessage> events) {
+        synchronized(this.batchLock) {
+            // the failed invalidations go in front of those batched meanwhile
+            Map<Object, JGroupEventMessage> batched = this.batch;
+            this.batch = new LinkedHashMap();
+            Iterator i$ = events.iterator();
+
+            while(i$.hasNext()) {
+                this.batch((JGroupEventMessage)i$.next());
+            }
+
+            Iterator b$ = batched.values().iterator();
+
+            while(b$.hasNext()) {
+                this.batch((JGroupEventMessage)b$.next());
+            }
+        }
+
+    }
+
+    private static byte[] prefix(byte type, byte[] data) {
+        byte[] payload = new byte[data.length + 1];
+        payload[0] = type;
+        System.arraycopy(data, 0, payload, 1, data.length);
+        return payload;
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length / 4 + 16);
+        buffer.write(DEFLATED);
+        DeflaterOutputStream out = new DeflaterOutputStream(buffer);
+        out.write(data);
+        out.close();
+        return buffer.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data, int offset, int length) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(length * 4);
+        InputStream in = new InflaterInputStream(new ByteArrayInputStream(data, offset, length));
+        byte[] chunk = new byte[8192];
+
+        int read;
+        while((read = in.read(chunk)) > 0) {
+            buffer.write(chunk, 0, read);
+        }
+
+        in.close();
+        return buffer.toByteArray();
+    }
+
+    private void apply(Address src, byte[] data, int offset, int length) {
+        if (length == 0 || !this.isSiteMaster()) {
+            return;
+        }
+
+        byte[] events;
+        try {
+            events = data[offset] == DEFLATED ? inflate(data, offset + 1, length - 1) : Arrays.copyOfRange(data, offset + 1, offset + length);
+        } catch (IOException var9) {
+            LOG.warn("Failed to inflate a batch of " + length + " bytes from the site bridge member " + src, var9);
+            return;
+        }
+
+        this.received.incrementAndGet();
+
+        // sent to the members of this site and applied here without passing the bridge again
+        try {
+            this.local.send((Address)null, events);
+        } catch (Exception var8) {
+            LOG.error("Failed to forward a batch of invalidations from the site bridge member " + src + " to the members of this site", var8);
+        }
+
+        ReplicationTransport.Listener current = this.listener;
+        if (current != null) {
+            current.receive(src, events, 0, events.length);
+        }
+
+    }
+
+    private void checkLink() {
+        boolean master = this.isSiteMaster();
+        if (master && !this.linkConnected) {
+            try {
+                this.link.connect(this.settings.getCluster(), this.linkListener);
+                this.linkConnected = true;
+                LOG.info("Site {} joined the site bridge '{}' as site master", this.settings.getSite(), this.settings.getCluster());
+            } catch (Exception var3) {
+                LOG.warn("Failed to join the site bridge '" + this.settings.getCluster() + "', retrying in " + this.settings.getLinger() + "ms", var3);
+            }
+        }
+
+    }
+
+    public String toString() {
+        return "SiteBridgeTransport [site=" + this.settings.getSite() + ", master=" + this.isSiteMaster() + ", linkConnected=" + this.linkConnected + ", relayed=" + this.relayed.get() + ", coalesced=" + this.coalesced.get() + ", batches=" + this.batches.get() + ", encodedBytes=" + this.encodedBytes.get() + ", sentBytes=" + this.sentBytes.get() + ", received=" + this.received.get() + ", local=" + this.local + "]";
+    }
+
+    private final class LinkListener implements ReplicationTransport.Listener {
+        private LinkListener() {
+        }
+
+        public void receive(Address src, byte[] data, int offset, int length) {
+            SiteBridgeTransport.this.apply(src, data, offset, length);
+        }
+
+        public void viewAccepted(List<Address> members) {
+            LOG.info("Site masters on the site bridge '{}': {}", SiteBridgeTransport.this.settings.getCluster(), members);
+        }
+    }
+
+    private final class BridgeTimerTask extends TimerTask {
+        private BridgeTimerTask() {
+        }
+
+        public void run() {
+            try {
+                SiteBridgeTransport.this.checkLink();
+                SiteBridgeTransport.this.flush();
+            } catch (RuntimeException var2) {
+                LOG.error("Failed to flush the site bridge of site " + SiteBridgeTransport.this.settings.getSite(), var2);
+            }
+
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import de.hybris.platform.util.Config;
+import java.io.File;
+import us.rubicon_consulting.constants.EhcachereplicationConstants;
+
+public class TraceSettings {
+    public static final TraceSettings DISABLED = new TraceSettings(false, new File(System.getProperty("java.io.tmpdir")), false, 268435456L);
+    private final boolean enabled;
+    private final File directory;
+    private final boolean payloads;
+    private final long maxSize;
+
+    public TraceSettings(boolean enabled, File directory, boolean payloads, long maxSize) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.payloads = payloads;
+        this.maxSize = Math.max(65536L, maxSize);
+    }
+
+    public static TraceSettings fromConfig() {
+        return new TraceSettings(
+                Config.getBoolean(EhcachereplicationConstants.EhcacheConfigConstants.TRACE_ENABLED, false),
+                new File(Config.getString(EhcachereplicationConstants.EhcacheConfigConstants.TRACE_DIR, System.getProperty("java.io.tmpdir"))),
+                Config.getBoolean(EhcachereplicationConstants.EhcacheConfigConstants.TRACE_PAYLOADS, false),
+                Config.getLong(EhcachereplicationConstants.EhcacheConfigConstants.TRACE_MAX_SIZE, 268435456L));
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    public File getFile(String clusterName, long startTime) {
+        return new File(this.directory, clusterName.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + startTime + ".trace");
+    }
+
+    public boolean isPayloads() {
+        return this.payloads;
+    }
+
+    public long getMaxSize() {
+        return this.maxSize;
+    }
+
+    public String toString() {
+        return "TraceSettings [enabled=" + this.enabled + ", directory=" + this.directory + ", payloads=" + this.payloads + ", maxSize=" + this.maxSize + "]";
+    }
+}
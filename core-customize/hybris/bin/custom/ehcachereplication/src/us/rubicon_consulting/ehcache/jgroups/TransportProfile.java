@@ -0,0 +1,111 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+public enum TransportProfile {
+    UDP("udp", "UDP",
+            "tos=8;ucast_recv_buf_size=20000000;ucast_send_buf_size=640000;mcast_recv_buf_size=25000000;mcast_send_buf_size=640000",
+            "enable_bundling=true;max_bundle_size=64000;max_bundle_timeout=30;"
+                    + "thread_pool.enabled=true;thread_pool.min_threads=2;thread_pool.max_threads=8;thread_pool.keep_alive_time=5000;thread_pool.queue_enabled=true;thread_pool.queue_max_size=10000;thread_pool.rejection_policy=discard;"
+                    + "oob_thread_pool.enabled=true;oob_thread_pool.min_threads=1;oob_thread_pool.max_threads=8;oob_thread_pool.keep_alive_time=5000;oob_thread_pool.queue_enabled=false;oob_thread_pool.rejection_policy=run",
+            "pbcast.NAKACK2(xmit_interval=1000;xmit_table_num_rows=100;xmit_table_msgs_per_row=10000;xmit_table_max_compaction_time=10000;max_msg_batch_size=100)",
+            "UFC(max_credits=2000000;min_threshold=0.4):MFC(max_credits=2000000;min_threshold=0.4)",
+            "pbcast.STABLE(stability_delay=1000;desired_avg_gossip=50000;max_bytes=4000000)"),
+    UDP_LOW_LATENCY("udp-low-latency", "UDP",
+            "tos=16;ucast_recv_buf_size=20000000;ucast_send_buf_size=640000;mcast_recv_buf_size=25000000;mcast_send_buf_size=640000",
+            "enable_bundling=true;max_bundle_size=16000;max_bundle_timeout=2;"
+                    + "thread_pool.enabled=true;thread_pool.min_threads=4;thread_pool.max_threads=16;thread_pool.keep_alive_time=30000;thread_pool.queue_enabled=false;thread_pool.rejection_policy=run;"
+                    + "oob_thread_pool.enabled=true;oob_thread_pool.min_threads=4;oob_thread_pool.max_threads=16;oob_thread_pool.keep_alive_time=30000;oob_thread_pool.queue_enabled=false;oob_thread_pool.rejection_policy=run",
+            "pbcast.NAKACK2(xmit_interval=250;xmit_table_num_rows=100;xmit_table_msgs_per_row=10000;xmit_table_max_compaction_time=10000;max_msg_batch_size=50)",
+            "UFC(max_credits=4000000;min_threshold=0.2):MFC(max_credits=4000000;min_threshold=0.2)",
+            "pbcast.STABLE(stability_delay=500;desired_avg_gossip=20000;max_bytes=2000000)"),
+    UDP_HIGH_THROUGHPUT("udp-high-throughput", "UDP",
+            "tos=8;ucast_recv_buf_size=25000000;ucast_send_buf_size=1000000;mcast_recv_buf_size=25000000;mcast_send_buf_size=1000000",
+            "enable_bundling=true;max_bundle_size=64000;max_bundle_timeout=50;"
+                    + "thread_pool.enabled=true;thread_pool.min_threads=4;thread_pool.max_threads=16;thread_pool.keep_alive_time=5000;thread_pool.queue_enabled=true;thread_pool.queue_max_size=50000;thread_pool.rejection_policy=discard;"
+                    + "oob_thread_pool.enabled=true;oob_thread_pool.min_threads=2;oob_thread_pool.max_threads=8;oob_thread_pool.keep_alive_time=5000;oob_thread_pool.queue_enabled=true;oob_thread_pool.queue_max_size=1000;oob_thread_pool.rejection_policy=run",
+            "pbcast.NAKACK2(xmit_interval=1000;xmit_table_num_rows=400;xmit_table_msgs_per_row=10000;xmit_table_max_compaction_time=30000;max_msg_batch_size=500)",
+            "UFC(max_credits=8000000;min_threshold=0.4):MFC(max_credits=8000000;min_threshold=0.4)",
+            "pbcast.STABLE(stability_delay=1000;desired_avg_gossip=50000;max_bytes=16000000)"),
+    TCP("tcp", "TCP",
+            "recv_buf_size=5000000;send_buf_size=640000;sock_conn_timeout=300;use_send_queues=true;send_queue_size=10000",
+            "enable_bundling=true;max_bundle_size=64000;max_bundle_timeout=30;"
+                    + "thread_pool.enabled=true;thread_pool.min_threads=2;thread_pool.max_threads=8;thread_pool.keep_alive_time=5000;thread_pool.queue_enabled=true;thread_pool.queue_max_size=10000;thread_pool.rejection_policy=discard;"
+                    + "oob_thread_pool.enabled=true;oob_thread_pool.min_threads=1;oob_thread_pool.max_threads=8;oob_thread_pool.keep_alive_time=5000;oob_thread_pool.queue_enabled=false;oob_thread_pool.rejection_policy=run",
+            "pbcast.NAKACK2(use_mcast_xmit=false;discard_delivered_msgs=true;xmit_interval=1000;xmit_table_num_rows=100;xmit_table_msgs_per_row=10000;xmit_table_max_compaction_time=10000;max_msg_batch_size=100)",
+            "MFC(max_credits=2000000;min_threshold=0.4)",
+            "pbcast.STABLE(stability_delay=1000;desired_avg_gossip=50000;max_bytes=4000000)");
+
+    public static final String LOOPBACK_TRANSPORT = "SHARED_LOOPBACK";
+    private final String name;
+    private final String transport;
+    private final String socketTuning;
+    private final String transportTuning;
+    private final String retransmission;
+    private final String flowControl;
+    private final String stability;
+
+    private TransportProfile(String name, String transport, String socketTuning, String transportTuning, String retransmission, String flowControl, String stability) {
+        this.name = name;
+        this.transport = transport;
+        this.socketTuning = socketTuning;
+        this.transportTuning = transportTuning;
+        this.retransmission = retransmission;
+        this.flowControl = flowControl;
+        this.stability = stability;
+    }
+
+    public static TransportProfile forName(String name) {
+        TransportProfile[] arr$ = values();
+        int len$ = arr$.length;
+
+        for(int i$ = 0; i$ < len$; ++i$) {
+            TransportProfile profile = arr$[i$];
+            if (profile.name.equalsIgnoreCase(name) || profile.name().equalsIgnoreCase(name)) {
+                return profile;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown JGroups transport profile '" + name + "'");
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getProperties(TransportSettings settings) {
+        String discovery;
+        String transportAttributes;
+        if ("TCP".equals(this.transport)) {
+            transportAttributes = "bind_port=" + settings.getBindPort() + ";port_range=" + settings.getPortRange() + ";loopback=false";
+            discovery = "TCPPING(timeout=3000;num_initial_members=3;port_range=" + settings.getPortRange() + ";initial_hosts=" + settings.getInitialHosts() + ")";
+        } else {
+            transportAttributes = "mcast_addr=" + settings.getMulticastAddress() + ";mcast_port=" + settings.getMulticastPort() + ";ip_ttl=" + settings.getIpTtl() + ";loopback=true;discard_incompatible_packets=true";
+            discovery = "PING(timeout=2000;num_initial_members=3)";
+        }
+
+        if (settings.getBindAddress() != null) {
+            transportAttributes = "bind_addr=" + settings.getBindAddress() + ";" + transportAttributes;
+        }
+
+        return this.transport + "(" + transportAttributes + ";" + this.socketTuning + ";" + this.transportTuning + "):" + discovery + ":" + this.getUpperProtocols(true);
+    }
+
+    public String getLoopbackProperties() {
+        return LOOPBACK_TRANSPORT + "(" + this.transportTuning + "):PING(timeout=1000;num_initial_members=2):" + this.getUpperProtocols(false);
+    }
+
+    private String getUpperProtocols(boolean failureDetection) {
+        return "MERGE2(min_interval=10000;max_interval=30000):"
+                + (failureDetection ? "FD_SOCK:FD_ALL(timeout=20000;interval=3000):VERIFY_SUSPECT(timeout=1500):" : "")
+                + "BARRIER:"
+                + this.retransmission + ":"
+                + "UNICAST2(stable_interval=5000;xmit_interval=500;max_bytes=1000000;xmit_table_num_rows=20;xmit_table_msgs_per_row=10000;xmit_table_max_compaction_time=10000;max_msg_batch_size=100;conn_expiry_timeout=0):"
+                + this.stability + ":"
+                + "pbcast.GMS(print_local_addr=false;join_timeout=3000;view_bundling=true):"
+                + this.flowControl + ":"
+                + "FRAG2(frag_size=60000)";
+    }
+
+    public String toString() {
+        return this.name;
+    }
+}
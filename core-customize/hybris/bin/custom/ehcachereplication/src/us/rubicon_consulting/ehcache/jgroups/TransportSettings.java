@@ -0,0 +1,110 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import de.hybris.platform.util.Config;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import us.rubicon_consulting.constants.EhcachereplicationConstants;
+
+public class TransportSettings {
+    private static final Logger LOG = LoggerFactory.getLogger(TransportSettings.class);
+    private final TransportProfile profile;
+    private final String bindAddress;
+    private final String multicastAddress;
+    private final int multicastPort;
+    private final int ipTtl;
+    private final int bindPort;
+    private final String initialHosts;
+    private final int portRange;
+
+    public TransportSettings(TransportProfile profile, String bindAddress, String multicastAddress, int multicastPort, int ipTtl, int bindPort, String initialHosts, int portRange) {
+        this.profile = profile;
+        this.bindAddress = StringUtils.trimToNull(bindAddress);
+        this.multicastAddress = multicastAddress;
+        this.multicastPort = multicastPort;
+        this.ipTtl = ipTtl;
+        this.bindPort = bindPort;
+        this.initialHosts = StringUtils.deleteWhitespace(initialHosts);
+        this.portRange = Math.max(0, portRange);
+    }
+
+    public static TransportSettings fromConfig(String clusterName) {
+        return new TransportSettings(
+                TransportProfile.forName(getString(clusterName, EhcachereplicationConstants.EhcacheConfigConstants.JGROUPS_PROFILE, TransportProfile.UDP.getName())),
+                getString(clusterName, EhcachereplicationConstants.EhcacheConfigConstants.JGROUPS_BIND_ADDR, null),
+                getString(clusterName, EhcachereplicationConstants.EhcacheConfigConstants.JGROUPS_UDP_MCAST_ADDR, "224.0.0.2"),
+                getInt(clusterName, EhcachereplicationConstants.EhcacheConfigConstants.JGROUPS_UDP_MCAST_PORT, 45588),
+                getInt(clusterName, EhcachereplicationConstants.EhcacheConfigConstants.JGROUPS_UDP_IP_TTL, 1),
+                getInt(clusterName, EhcachereplicationConstants.EhcacheConfigConstants.JGROUPS_TCP_BIND_PORT, 7800),
+                getString(clusterName, EhcachereplicationConstants.EhcacheConfigConstants.JGROUPS_TCP_INITIAL_HOSTS, "localhost[7800]"),
+                getInt(clusterName, EhcachereplicationConstants.EhcacheConfigConstants.JGROUPS_TCP_PORT_RANGE, 1));
+    }
+
+    private static String getString(String clusterName, String key, String defaultValue) {
+        String clusterKey = key.replace("ehcachereplication.jgroups.", "ehcachereplication.jgroups." + clusterName + ".");
+        String value = StringUtils.trimToNull(Config.getString(clusterKey, (String)null));
+        if (value == null) {
+            value = StringUtils.trimToNull(Config.getString(key, (String)null));
+        }
+
+        return value != null ? value : defaultValue;
+    }
+
+    private static int getInt(String clusterName, String key, int defaultValue) {
+        String value = getString(clusterName, key, (String)null);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException var5) {
+            LOG.warn("Ignoring the invalid value '{}' of {} for cluster '{}', using {}", new Object[]{value, key, clusterName, defaultValue});
+            return defaultValue;
+        }
+    }
+
+    public TransportSettings withProfile(TransportProfile profile) {
+        return new TransportSettings(profile, this.bindAddress, this.multicastAddress, this.multicastPort, this.ipTtl, this.bindPort, this.initialHosts, this.portRange);
+    }
+
+    public String getProperties() {
+        return this.profile.getProperties(this);
+    }
+
+    public TransportProfile getProfile() {
+        return this.profile;
+    }
+
+    public String getBindAddress() {
+        return this.bindAddress;
+    }
+
+    public String getMulticastAddress() {
+        return this.multicastAddress;
+    }
+
+    public int getMulticastPort() {
+        return this.multicastPort;
+    }
+
+    public int getIpTtl() {
+        return this.ipTtl;
+    }
+
+    public int getBindPort() {
+        return this.bindPort;
+    }
+
+    public String getInitialHosts() {
+        return this.initialHosts;
+    }
+
+    public int getPortRange() {
+        return this.portRange;
+    }
+
+    public String toString() {
+        return "TransportSettings [profile=" + this.profile.getName() + ", bindAddress=" + this.bindAddress + ", multicastAddress=" + this.multicastAddress + ", multicastPort=" + this.multicastPort + ", ipTtl=" + this.ipTtl + ", bindPort=" + this.bindPort + ", initialHosts=" + this.initialHosts + ", portRange=" + this.portRange + "]";
+    }
+}
@@ -0,0 +1,33 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.io.Serializable;
+
+public final class ValueDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // fingerprints of the serialized value the delta applies to and of the value it results in
+    private final long baseFingerprint;
+    private final long fingerprint;
+    private final byte[] delta;
+
+    public ValueDelta(long baseFingerprint, long fingerprint, byte[] delta) {
+        this.baseFingerprint = baseFingerprint;
+        this.fingerprint = fingerprint;
+        this.delta = delta;
+    }
+
+    public long getBaseFingerprint() {
+        return this.baseFingerprint;
+    }
+
+    public long getFingerprint() {
+        return this.fingerprint;
+    }
+
+    public byte[] getDelta() {
+        return this.delta;
+    }
+
+    public String toString() {
+        return "ValueDelta [base=" + Long.toHexString(this.baseFingerprint) + ", fingerprint=" + Long.toHexString(this.fingerprint) + ", length=" + this.delta.length + "]";
+    }
+}
@@ -0,0 +1,182 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ValueDeltas {
+    private static final Logger LOG = LoggerFactory.getLogger(ValueDeltas.class.getName());
+    // a delta that does not save at least half of the value is not worth the risk of a miss
+    private static final double MAX_DELTA_RATIO = 0.5D;
+    private final int minSize;
+    private final int maxBases;
+    private final long maxBytes;
+    private final Map<Object, ValueDeltas.Base> bases;
+    private long bytes;
+    private final AtomicLong deltas = new AtomicLong();
+    private final AtomicLong copies = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    public ValueDeltas(int minSize, int maxBases, long maxBytes) {
+        this.minSize = minSize;
+        this.maxBases = maxBases;
+        this.maxBytes = maxBytes;
+        this.bases = new LinkedHashMap(Math.min(maxBases, 1024), 0.75F, true);
+    }
+
+    public ValueDelta encode(Object key, byte[] value) {
+        ValueDeltas.Base base;
+        ValueDeltas.Base next = this.baseOf(value);
+        synchronized(this.bases) {
+            // the value replicated now is the base of the next delta of the key on every member receiving it
+            base = this.store(key, next);
+        }
+
+        if (base != null && next != null) {
+            byte[] delta = BinaryDelta.encode(base.bytes, value);
+            if ((double)delta.length <= (double)value.length * MAX_DELTA_RATIO) {
+                this.deltas.incrementAndGet();
+                this.savedBytes.addAndGet((long)(value.length - delta.length));
+                return new ValueDelta(base.fingerprint, next.fingerprint, delta);
+            }
+        }
+
+        this.copies.incrementAndGet();
+        return null;
+    }
+
+    public byte[] apply(Object key, ValueDelta delta) {
+        ValueDeltas.Base base;
+        synchronized(this.bases) {
+            base = (ValueDeltas.Base)this.bases.get(key);
+        }
+
+        if (base != null && base.fingerprint == delta.getBaseFingerprint()) {
+            try {
+                byte[] value = BinaryDelta.apply(base.bytes, delta.getDelta());
+                // the value only becomes the base of the next delta once the receiver stored it
+                if (ValueFingerprints.fingerprint(value) == delta.getFingerprint()) {
+                    this.applied.incrementAndGet();
+                    return value;
+                }
+
+                LOG.debug("The delta of {} did not rebuild the replicated value", key);
+            } catch (IllegalArgumentException var6) {
+                LOG.debug("Failed to apply the delta of " + key, var6);
+            }
+        }
+
+        this.remove(key);
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    public void received(Object key, byte[] value) {
+        ValueDeltas.Base next = this.baseOf(value);
+        synchronized(this.bases) {
+            this.store(key, next);
+        }
+
+    }
+
+    private ValueDeltas.Base baseOf(byte[] value) {
+        // a value larger than all bases may take is copied every time
+        return value.length < this.minSize || (long)value.length > this.maxBytes ? null : new ValueDeltas.Base(value, ValueFingerprints.fingerprint(value));
+    }
+
+    private ValueDeltas.Base store(Object key, ValueDeltas.Base next) {
+        ValueDeltas.Base previous = next == null ? (ValueDeltas.Base)this.bases.remove(key) : (ValueDeltas.Base)this.bases.put(key, next);
+        if (previous != null) {
+            this.bytes -= (long)previous.bytes.length;
+        }
+
+        if (next != null) {
+            this.bytes += (long)next.bytes.length;
+            Iterator i$ = this.bases.values().iterator();
+
+            // the least recently replicated bases go first, both by count and by their bytes
+            while(i$.hasNext() && (this.bases.size() > this.maxBases || this.bytes > this.maxBytes)) {
+                this.bytes -= (long)((ValueDeltas.Base)i$.next()).bytes.length;
+                i$.remove();
+            }
+        }
+
+        return previous;
+    }
+
+    public void remove(Object key) {
+        synchronized(this.bases) {
+            this.store(key, (ValueDeltas.Base)null);
+        }
+    }
+
+    public void clear() {
+        synchronized(this.bases) {
+            this.bases.clear();
+            this.bytes = 0L;
+        }
+    }
+
+    public int size() {
+        synchronized(this.bases) {
+            return this.bases.size();
+        }
+    }
+
+    public int getMinSize() {
+        return this.minSize;
+    }
+
+    public int getMaxBases() {
+        return this.maxBases;
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    public long getBytes() {
+        synchronized(this.bases) {
+            return this.bytes;
+        }
+    }
+
+    public long getDeltas() {
+        return this.deltas.get();
+    }
+
+    public long getCopies() {
+        return this.copies.get();
+    }
+
+    public long getApplied() {
+        return this.applied.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getSavedBytes() {
+        return this.savedBytes.get();
+    }
+
+    public String toString() {
+        return "ValueDeltas [bases=" + this.size() + "/" + this.maxBases + ", bytes=" + this.getBytes() + "/" + this.maxBytes + ", minSize=" + this.minSize + ", deltas=" + this.deltas + ", copies=" + this.copies + ", savedBytes=" + this.savedBytes + ", applied=" + this.applied + ", misses=" + this.misses + "]";
+    }
+
+    private static final class Base {
+        private final byte[] bytes;
+        private final long fingerprint;
+
+        private Base(byte[] bytes, long fingerprint) {
+            this.bytes = bytes;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
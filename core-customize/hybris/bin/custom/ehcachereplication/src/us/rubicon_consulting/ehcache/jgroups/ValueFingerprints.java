@@ -0,0 +1,199 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import net.sf.ehcache.Element;
+import org.jgroups.util.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ValueFingerprints {
+    private static final Logger LOG = LoggerFactory.getLogger(ValueFingerprints.class.getName());
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long TOUCH_TOLERANCE = 1000L;
+    private final int maxFingerprints;
+    private final Map<Object, long[]> fingerprints;
+    private final AtomicLong copies = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong touches = new AtomicLong();
+    private final AtomicLong suppressedBytes = new AtomicLong();
+
+    public ValueFingerprints(final int maxFingerprints) {
+        this.maxFingerprints = maxFingerprints;
+        this.fingerprints = new LinkedHashMap<Object, long[]>(Math.min(maxFingerprints, 1024), 0.75F, true) {
+            protected boolean removeEldestEntry(Entry<Object, long[]> eldest) {
+                return this.size() > maxFingerprints;
+            }
+        };
+    }
+
+    public ValueFingerprints.Result check(Element element) {
+        ValueFingerprints.Pending pending = this.compare(element);
+        pending.sent();
+        return pending.getResult();
+    }
+
+    public ValueFingerprints.Result check(Element element, byte[] value) {
+        ValueFingerprints.Pending pending = this.compare(element, value);
+        pending.sent();
+        return pending.getResult();
+    }
+
+    public ValueFingerprints.Pending compare(Element element) {
+        byte[] value;
+        try {
+            value = Util.objectToByteBuffer(element.getObjectValue());
+        } catch (Exception var9) {
+            LOG.debug("Failed to fingerprint value of " + element.getObjectKey() + ", it will be replicated", var9);
+            return new ValueFingerprints.Pending((Object)null, 0L, 0L, 0, ValueFingerprints.Result.CHANGED);
+        }
+
+        return this.compare(element, value);
+    }
+
+    public ValueFingerprints.Pending compare(Element element, byte[] value) {
+        // nothing is recorded yet, a value that never reached the other members must not suppress the next copy of it
+        long fingerprint = fingerprint(value);
+        long expirationTime = element.isEternal() ? Long.MAX_VALUE : element.getExpirationTime();
+        long now = System.currentTimeMillis();
+        ValueFingerprints.Result result;
+        synchronized(this.fingerprints) {
+            long[] previous = this.fingerprints.get(element.getObjectKey());
+            if (previous == null || previous[0] != fingerprint || previous[1] <= now) {
+                result = ValueFingerprints.Result.CHANGED;
+            } else if (expirationTime - previous[1] > TOUCH_TOLERANCE) {
+                result = ValueFingerprints.Result.TOUCH;
+            } else {
+                result = ValueFingerprints.Result.UNCHANGED;
+            }
+        }
+
+        if (result == ValueFingerprints.Result.UNCHANGED) {
+            this.suppressedBytes.addAndGet((long)value.length);
+            this.suppressed.incrementAndGet();
+        }
+
+        return new ValueFingerprints.Pending(element.getObjectKey(), fingerprint, expirationTime, value.length, result);
+    }
+
+    private void record(ValueFingerprints.Pending pending) {
+        if (pending.key == null) {
+            // the value could not be fingerprinted, it is sent every time
+            this.copies.incrementAndGet();
+            return;
+        }
+
+        synchronized(this.fingerprints) {
+            if (pending.result == ValueFingerprints.Result.TOUCH) {
+                long[] previous = this.fingerprints.get(pending.key);
+                if (previous != null && previous[0] == pending.fingerprint) {
+                    previous[1] = Math.max(previous[1], pending.expirationTime);
+                }
+            } else {
+                this.fingerprints.put(pending.key, new long[]{pending.fingerprint, pending.expirationTime});
+            }
+        }
+
+        if (pending.result == ValueFingerprints.Result.TOUCH) {
+            this.suppressedBytes.addAndGet((long)pending.length);
+            this.touches.incrementAndGet();
+        } else {
+            this.copies.incrementAndGet();
+        }
+
+    }
+
+    public void remove(Object key) {
+        synchronized(this.fingerprints) {
+            this.fingerprints.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized(this.fingerprints) {
+            this.fingerprints.clear();
+        }
+    }
+
+    public int size() {
+        synchronized(this.fingerprints) {
+            return this.fingerprints.size();
+        }
+    }
+
+    public int getMaxFingerprints() {
+        return this.maxFingerprints;
+    }
+
+    public long getCopies() {
+        return this.copies.get();
+    }
+
+    public long getSuppressed() {
+        return this.suppressed.get();
+    }
+
+    public long getTouches() {
+        return this.touches.get();
+    }
+
+    public long getSuppressedBytes() {
+        return this.suppressedBytes.get();
+    }
+
+    public double getHitRate() {
+        long hits = this.suppressed.get() + this.touches.get();
+        long total = hits + this.copies.get();
+        return total == 0L ? 0.0D : (double)hits / (double)total;
+    }
+
+    static long fingerprint(byte[] data) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < data.length; ++i) {
+            hash ^= (long)(data[i] & 255);
+            hash *= FNV_PRIME;
+        }
+
+        return hash;
+    }
+
+    public String toString() {
+        return "ValueFingerprints [size=" + this.size() + "/" + this.maxFingerprints + ", copies=" + this.copies + ", suppressed=" + this.suppressed + ", touches=" + this.touches + ", suppressedBytes=" + this.suppressedBytes + ", hitRate=" + String.format("%.3f", this.getHitRate()) + "]";
+    }
+
+    public final class Pending {
+        private final Object key;
+        private final long fingerprint;
+        private final long expirationTime;
+        private final int length;
+        private final ValueFingerprints.Result result;
+
+        private Pending(Object key, long fingerprint, long expirationTime, int length, ValueFingerprints.Result result) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.expirationTime = expirationTime;
+            this.length = length;
+            this.result = result;
+        }
+
+        public ValueFingerprints.Result getResult() {
+            return this.result;
+        }
+
+        public void sent() {
+            if (this.result != ValueFingerprints.Result.UNCHANGED) {
+                ValueFingerprints.this.record(this);
+            }
+
+        }
+    }
+
+    public static enum Result {
+        CHANGED,
+        UNCHANGED,
+        TOUCH;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the adaptive flush policy of the {@link AsyncFlushQueue}.
+ */
+@UnitTest
+public class AsyncFlushQueueTest
+{
+	private static final long MAX_LINGER = 1000L;
+
+	@Test
+	public void shouldBeDueWhenTheEventThresholdIsReached()
+	{
+		final AsyncFlushQueue queue = new AsyncFlushQueue(MAX_LINGER, new AsyncFlushSettings(true, 3, Long.MAX_VALUE, 5L));
+		final long now = System.currentTimeMillis();
+
+		assertThat(queue.offer(event("a"))).isTrue();
+		assertThat(queue.offer(event("b"))).isFalse();
+		assertThat(queue.isDue(now)).isFalse();
+		assertThat(queue.offer(event("c"))).isTrue();
+		assertThat(queue.isDue(now)).isTrue();
+	}
+
+	@Test
+	public void shouldShortenTheLingerUnderLightLoad()
+	{
+		final AsyncFlushQueue queue = new AsyncFlushQueue(MAX_LINGER, new AsyncFlushSettings(true, 500, 262144L, 5L));
+		final long start = System.currentTimeMillis();
+
+		queue.flushed(1, 200L, start + 10000L, false);
+
+		assertThat(queue.getLinger()).isEqualTo(5L);
+		assertThat(queue.getDeadline()).isEqualTo(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void shouldKeepTheLingerWithinTheConfiguredInterval()
+	{
+		final AsyncFlushQueue queue = new AsyncFlushQueue(MAX_LINGER, new AsyncFlushSettings(true, 500, 262144L, 5L));
+		final long start = System.currentTimeMillis();
+
+		queue.flushed(50, 10000L, start + 1000L, false);
+		assertThat(queue.getLinger()).isEqualTo(MAX_LINGER);
+
+		queue.flushed(500, 100000L, start + 1010L, true);
+		assertThat(queue.getLinger()).isBetween(5L, MAX_LINGER - 1L);
+	}
+
+	@Test
+	public void shouldNotAdaptWithFixedSettings()
+	{
+		final AsyncFlushQueue queue = new AsyncFlushQueue(MAX_LINGER, AsyncFlushSettings.FIXED);
+
+		queue.flushed(1, 200L, System.currentTimeMillis() + 10000L, false);
+
+		assertThat(queue.getLinger()).isEqualTo(MAX_LINGER);
+	}
+
+	@Test
+	public void shouldApplyChangedSettings()
+	{
+		final AsyncFlushQueue queue = new AsyncFlushQueue(MAX_LINGER, new AsyncFlushSettings(true, 500, 262144L, 5L));
+		final long now = System.currentTimeMillis();
+		queue.flushed(1, 200L, now + 10000L, false);
+		assertThat(queue.getLinger()).isEqualTo(5L);
+
+		queue.setSettings(AsyncFlushSettings.FIXED);
+		assertThat(queue.getLinger()).isEqualTo(MAX_LINGER);
+
+		queue.setSettings(new AsyncFlushSettings(true, 500, 262144L, 5L).withMaxEvents(2));
+		assertThat(queue.offer(event("a"))).isTrue();
+		assertThat(queue.isDue(now)).isFalse();
+		assertThat(queue.offer(event("b"))).isTrue();
+		assertThat(queue.isDue(now)).isTrue();
+	}
+
+	@Test
+	public void shouldDrainInvalidationsBeforeOlderPuts()
+	{
+		final AsyncFlushQueue queue = new AsyncFlushQueue(MAX_LINGER, new AsyncFlushSettings(true, 500, 262144L, 5L));
+		final JGroupEventMessage stalePut = event("a");
+		final JGroupEventMessage removal = new JGroupEventMessage(1, "a", null, "cache", MAX_LINGER);
+		final JGroupEventMessage otherPut = event("b");
+		final JGroupEventMessage newPut = event("a");
+		queue.offer(stalePut);
+		queue.offer(removal);
+		queue.offer(otherPut);
+		queue.offer(newPut);
+
+		final List<JGroupEventMessage> events = new ArrayList<>();
+		assertThat(queue.drainInvalidations(events, 20)).isEqualTo(1);
+		assertThat(queue.drainData(events, 100)).isEqualTo(3);
+
+		assertThat(events).containsExactly(removal, otherPut, newPut);
+		assertThat(queue.getSuperseded()).isEqualTo(1L);
+		assertThat(queue.isEmpty()).isTrue();
+	}
+
+	@Test
+	public void shouldDropPutsOverlappedByRemoveAll()
+	{
+		final AsyncFlushQueue queue = new AsyncFlushQueue(MAX_LINGER, new AsyncFlushSettings(true, 500, 262144L, 5L));
+		final JGroupEventMessage removeAll = new JGroupEventMessage(3, null, null, "cache", MAX_LINGER);
+		final JGroupEventMessage newPut = event("b");
+		queue.offer(event("a"));
+		queue.offer(removeAll);
+		queue.offer(newPut);
+
+		final List<JGroupEventMessage> events = new ArrayList<>();
+		queue.drainInvalidations(events, 20);
+		queue.drainData(events, 100);
+
+		assertThat(events).containsExactly(removeAll, newPut);
+	}
+
+	private static JGroupEventMessage event(final String key)
+	{
+		return new JGroupEventMessage(0, key, new Element(key, "value"), "cache", MAX_LINGER);
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link BootstrapPeerSelector} choosing the members asked for a bootstrap.
+ */
+@UnitTest
+public class BootstrapPeerSelectorTest
+{
+	private static final String CACHE = "productCache";
+
+	@Test
+	public void shouldNeverAskMembersStillBootstrapping()
+	{
+		final Map<String, MemberState> states = new HashMap<>();
+		states.put("warming", state(5000, true, 0));
+		states.put("warm", state(1000, false, 3));
+
+		final List<String> selected = BootstrapPeerSelector.select(CACHE, Arrays.asList("warming", "warm"), states, new Random(1));
+
+		assertThat(selected).containsExactly("warm");
+	}
+
+	@Test
+	public void shouldPreferLeastLoadedOfTheWarmestMembers()
+	{
+		final Map<String, MemberState> states = new HashMap<>();
+		states.put("busy", state(1000, false, 2));
+		states.put("idle", state(950, false, 0));
+		states.put("small", state(100, false, 0));
+
+		final List<String> selected = BootstrapPeerSelector.select(CACHE, Arrays.asList("small", "busy", "idle"), states,
+				new Random(1));
+
+		assertThat(selected).containsExactly("idle", "busy", "small");
+	}
+
+	@Test
+	public void shouldAskMembersWithoutStateLast()
+	{
+		final Map<String, MemberState> states = Collections.singletonMap("warm", state(10, false, 5));
+
+		final List<String> selected = BootstrapPeerSelector.select(CACHE, Arrays.asList("unknown", "warm"), states, new Random(1));
+
+		assertThat(selected).containsExactly("warm", "unknown");
+	}
+
+	private static MemberState state(final int size, final boolean bootstrapping, final int activeResponses)
+	{
+		return new MemberState(Collections.singletonMap(CACHE, Integer.valueOf(size)),
+				bootstrapping ? Collections.singleton(CACHE) : Collections.<String> emptySet(), activeResponses, 0.5D, 0L);
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import net.sf.ehcache.Element;
+
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link BootstrapRanking} ordering bootstrap responses hot entries first.
+ */
+@UnitTest
+public class BootstrapRankingTest
+{
+	private static final long NOW = 1700000000000L;
+	private static final long CREATED = NOW - 3600000L;
+
+	@Test
+	public void shouldRankFrequentlyReadEntriesFirst()
+	{
+		final Element hot = createElement("hot", NOW, 50, 0);
+		final Element cold = createElement("cold", NOW, 0, 0);
+
+		assertThat(BootstrapRanking.score(hot, NOW)).isGreaterThan(BootstrapRanking.score(cold, NOW));
+	}
+
+	@Test
+	public void shouldRankRecentlyReadEntriesFirst()
+	{
+		final Element recent = createElement("recent", NOW, 5, 0);
+		final Element idle = createElement("idle", NOW - 600000L, 5, 0);
+
+		assertThat(BootstrapRanking.score(recent, NOW)).isGreaterThan(BootstrapRanking.score(idle, NOW));
+	}
+
+	@Test
+	public void shouldRankNeverReadEntriesByTheirCreation()
+	{
+		final Element read = createElement("read", NOW - 600000L, 5, 0);
+		final Element neverRead = new Element("never read", "value", 1L, NOW - 600000L, 0L, 5, false, 0, 0, 0L);
+
+		assertThat(BootstrapRanking.score(neverRead, NOW)).isEqualTo(BootstrapRanking.score(read, NOW));
+	}
+
+	@Test
+	public void shouldRankEntriesCloseToExpiryLast()
+	{
+		final Element lasting = createElement("lasting", NOW, 5, 0);
+		final Element expiring = createElement("expiring", NOW, 5, 30);
+
+		assertThat(BootstrapRanking.score(lasting, NOW)).isGreaterThan(BootstrapRanking.score(expiring, NOW));
+	}
+
+	@Test
+	public void shouldTreatZeroBudgetAsUnlimited()
+	{
+		final BootstrapBudget budget = new BootstrapBudget(0L, 1000L);
+
+		assertThat(budget.allowsEntries(Long.MAX_VALUE)).isTrue();
+		assertThat(budget.allowsBytes(1000L)).isTrue();
+		assertThat(budget.allowsBytes(1001L)).isFalse();
+	}
+
+	private static Element createElement(final String key, final long lastAccessTime, final long hitCount, final int timeToLive)
+	{
+		return new Element(key, "value", 1L, CREATED, lastAccessTime, hitCount, false, timeToLive, 0, CREATED);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link BootstrapReadiness} reported to load balancers while caches warm up.
+ */
+@UnitTest
+public class BootstrapReadinessTest
+{
+	private static final long START = 1000000L;
+	private static final ReadinessSettings SETTINGS = new ReadinessSettings(90, 60000L, Collections.<String> emptySet());
+
+	@Test
+	public void shouldNotBeReadyWhileProgressIsBelowThreshold()
+	{
+		final BootstrapProgress progress = receive(new BootstrapProgress("productCache", START), 1000, 500);
+
+		final BootstrapReadiness readiness = new BootstrapReadiness(SETTINGS, Collections.singletonList(progress));
+
+		assertThat(progress.getProgress()).isEqualTo(0.5D);
+		assertThat(progress.getRate(START + 1000L)).isEqualTo(500.0D);
+		assertThat(readiness.isReady(START + 1000L)).isFalse();
+	}
+
+	@Test
+	public void shouldBeReadyAtThresholdOrWhenDone()
+	{
+		final BootstrapProgress warm = receive(new BootstrapProgress("productCache", START), 1000, 900);
+		final BootstrapProgress done = receive(new BootstrapProgress("categoryCache", START), 1000, 10);
+		done.finished(false, START + 100L);
+
+		final BootstrapReadiness readiness = new BootstrapReadiness(SETTINGS, Arrays.asList(warm, done));
+
+		assertThat(done.getState()).isEqualTo(BootstrapProgress.State.INCOMPLETE);
+		assertThat(readiness.isReady(START + 1000L)).isTrue();
+	}
+
+	@Test
+	public void shouldNotWaitLongerThanMaxWait()
+	{
+		final BootstrapProgress unknown = new BootstrapProgress("productCache", START);
+
+		final BootstrapReadiness readiness = new BootstrapReadiness(SETTINGS, Collections.singletonList(unknown));
+
+		assertThat(unknown.getProgress()).isEqualTo(-1.0D);
+		assertThat(readiness.isReady(START + 59999L)).isFalse();
+		assertThat(readiness.isReady(START + 60000L)).isTrue();
+	}
+
+	@Test
+	public void shouldOnlyWaitForRequiredCaches()
+	{
+		final BootstrapProgress cold = new BootstrapProgress("productCache", START);
+		final BootstrapProgress done = new BootstrapProgress("categoryCache", START);
+		done.finished(true, START);
+		final ReadinessSettings settings = new ReadinessSettings(90, 60000L, Collections.singleton("categoryCache"));
+
+		final BootstrapReadiness readiness = new BootstrapReadiness(settings, Arrays.asList(cold, done));
+
+		assertThat(readiness.isReady(START)).isTrue();
+	}
+
+	@Test
+	public void shouldBeReadyWithoutCachesToBootstrap()
+	{
+		assertThat(new BootstrapReadiness(SETTINGS, Collections.<BootstrapProgress> emptyList(), START).isReady(START)).isTrue();
+		assertThat(new BootstrapReadiness(SETTINGS, Collections.<BootstrapProgress> emptyList()).isReady(START)).isTrue();
+	}
+
+	@Test
+	public void shouldNotWaitForARequiredCacheThatDoesNotBootstrap()
+	{
+		final BootstrapProgress done = new BootstrapProgress("productCache", START);
+		done.finished(true, START);
+		final ReadinessSettings settings = new ReadinessSettings(90, 60000L, Collections.singleton("categoryCache"));
+
+		assertThat(new BootstrapReadiness(settings, Collections.singletonList(done), START).isReady(START)).isTrue();
+	}
+
+	@Test
+	public void shouldCountMaxWaitFromTheStartOfTheMember()
+	{
+		// a cache that has not started to bootstrap waits from the start of the member, so does one that started late
+		final BootstrapProgress pending = new BootstrapProgress("productCache", START);
+		final BootstrapProgress late = new BootstrapProgress("categoryCache", START + 30000L);
+
+		final BootstrapReadiness readiness = new BootstrapReadiness(SETTINGS, Arrays.asList(pending, late), START);
+
+		assertThat(readiness.isReady(START + 59999L)).isFalse();
+		assertThat(readiness.isReady(pending, START + 60000L)).isTrue();
+		assertThat(readiness.isReady(late, START + 60000L)).isTrue();
+		assertThat(readiness.isReady(START + 60000L)).isTrue();
+		assertThat(new BootstrapReadiness(SETTINGS, Collections.singletonList(late)).isReady(START + 60000L)).isFalse();
+	}
+
+	@Test
+	public void shouldKeepElementsOfEarlierPeerInEstimate()
+	{
+		final BootstrapProgress progress = receive(new BootstrapProgress("productCache", START), 1000, 400);
+
+		progress.estimate(1000L);
+
+		assertThat(progress.getEstimatedTotal()).isEqualTo(1400L);
+	}
+
+	private static BootstrapProgress receive(final BootstrapProgress progress, final long estimate, final int elements)
+	{
+		progress.estimate(estimate);
+		for (int i = 0; i < elements; i++)
+		{
+			progress.countReceived();
+		}
+		return progress;
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link BootstrapSettings} bounding the parallel encoding of bootstrap responses.
+ */
+@UnitTest
+public class BootstrapSettingsTest
+{
+	private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+	@Test
+	public void shouldNeverUseAllCores()
+	{
+		final BootstrapSettings settings = new BootstrapSettings(CORES * 2, 4);
+
+		assertThat(settings.getParallelism()).isEqualTo(Math.max(1, CORES - 1));
+	}
+
+	@Test
+	public void shouldUseAtLeastOneEncoderAndSegment()
+	{
+		final BootstrapSettings settings = new BootstrapSettings(0, 0);
+
+		assertThat(settings.getParallelism()).isEqualTo(1);
+		assertThat(settings.getSegmentsAhead()).isEqualTo(1);
+	}
+
+	@Test
+	public void shouldDefaultToHalfTheCores()
+	{
+		assertThat(BootstrapSettings.DEFAULT.getParallelism()).isEqualTo(Math.max(1, Math.min(4, Math.min(CORES / 2, CORES - 1))));
+	}
+}
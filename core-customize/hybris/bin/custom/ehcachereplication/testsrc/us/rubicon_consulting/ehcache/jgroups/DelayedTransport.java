@@ -0,0 +1,80 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class DelayedTransport implements ReplicationTransport {
+    private static final Logger LOG = LoggerFactory.getLogger(DelayedTransport.class);
+    private final ReplicationTransport delegate;
+    private final long delay;
+    private final ScheduledExecutorService scheduler;
+
+    public DelayedTransport(ReplicationTransport delegate, long delay) {
+        this.delegate = delegate;
+        this.delay = Math.max(0L, delay);
+        // a single thread keeps the order of the messages like a real link
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Delayed Link " + DelayedTransport.this.delegate.getLocalAddress());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void connect(String clusterName, ReplicationTransport.Listener listener) throws Exception {
+        this.delegate.connect(clusterName, listener);
+    }
+
+    public void send(final Address dest, final byte[] data, final Message.Flag... flags) {
+        this.scheduler.schedule(new Runnable() {
+            public void run() {
+                try {
+                    DelayedTransport.this.delegate.send(dest, data, flags);
+                } catch (Exception var2) {
+                    LOG.debug("Delayed message of {} bytes to {} was lost", new Object[]{data.length, dest, var2});
+                }
+
+            }
+        }, this.delay, TimeUnit.MILLISECONDS);
+    }
+
+    public List<Address> getMembers() {
+        return this.delegate.getMembers();
+    }
+
+    public Address getLocalAddress() {
+        return this.delegate.getLocalAddress();
+    }
+
+    public boolean isConnected() {
+        return this.delegate.isConnected();
+    }
+
+    public int getMaxMessageSize() {
+        return this.delegate.getMaxMessageSize();
+    }
+
+    public void close() {
+        this.scheduler.shutdown();
+
+        try {
+            this.scheduler.awaitTermination(this.delay + 1000L, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException var2) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.delegate.close();
+    }
+
+    public String toString() {
+        return "DelayedTransport [delay=" + this.delay + "ms, " + this.delegate + "]";
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link EpochCacheDecorator} evicting the elements written before a replicated remove all.
+ */
+@UnitTest
+public class EpochCacheDecoratorTest
+{
+	private CacheManager cacheManager;
+	private Ehcache cache;
+	private EpochCacheDecorator decorator;
+
+	@Before
+	public void setUp()
+	{
+		final Configuration configuration = new Configuration().name("EpochCacheDecoratorTest");
+		configuration.addCache(new CacheConfiguration("product", 100));
+		cacheManager = new CacheManager(configuration);
+		cache = cacheManager.getEhcache("product");
+		decorator = new EpochCacheDecorator(cache);
+	}
+
+	@After
+	public void tearDown()
+	{
+		cacheManager.shutdown();
+	}
+
+	@Test
+	public void shouldEvictElementsWrittenBeforeTheEpoch()
+	{
+		decorator.put(new Element("key", "value"));
+
+		decorator.advanceEpoch(1L);
+
+		assertThat(decorator.get("key")).isNull();
+		assertThat(cache.getQuiet("key")).isNull();
+		assertThat(decorator.getStaleEvictions()).isEqualTo(1L);
+	}
+
+	@Test
+	public void shouldKeepElementsWrittenRightAfterTheEpoch()
+	{
+		decorator.advanceEpoch(1L);
+		decorator.put(new Element("key", "value"));
+
+		assertThat(decorator.get("key").getObjectValue()).isEqualTo("value");
+		assertThat(decorator.getStaleEvictions()).isZero();
+	}
+
+	@Test
+	public void shouldNotEvictAnElementWrittenAfterTheStaleOneWasRead()
+	{
+		decorator.put(new Element("key", "old"));
+		decorator.advanceEpoch(1L);
+		final Element stale = cache.getQuiet("key");
+		decorator.put(new Element("key", "new"));
+
+		assertThat(decorator.read(stale)).isNull();
+
+		assertThat(cache.getQuiet("key").getObjectValue()).isEqualTo("new");
+		assertThat(decorator.getStaleEvictions()).isZero();
+	}
+}
@@ -0,0 +1,150 @@
+package us.rubicon_consulting.ehcache.jgroups;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class FaultInjectingTransport implements ReplicationTransport {
+    private static final Logger LOG = LoggerFactory.getLogger(FaultInjectingTransport.class);
+    // a reordered message is held back by up to this many ms on top of the delay
+    private static final long REORDER_WINDOW = 20L;
+    private final ReplicationTransport delegate;
+    private final double loss;
+    private final long delay;
+    private final double reorder;
+    private final long seed;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong reordered = new AtomicLong();
+
+    public FaultInjectingTransport(ReplicationTransport delegate, double loss, long delay, double reorder, long seed) {
+        this.delegate = delegate;
+        this.loss = loss;
+        this.delay = Math.max(0L, delay);
+        this.reorder = reorder;
+        this.seed = seed;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Fault Injection " + FaultInjectingTransport.this.delegate.getLocalAddress());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void connect(String clusterName, ReplicationTransport.Listener listener) throws Exception {
+        this.delegate.connect(clusterName, listener);
+    }
+
+    public void send(Address dest, byte[] data, Message.Flag... flags) throws Exception {
+        if (dest != null) {
+            // unicasts are delayed but neither lost nor reordered, the bootstrap relies on UNICAST2 like over JGroups
+            this.sent.incrementAndGet();
+            this.deliver(dest, data, flags, this.delay);
+            return;
+        }
+
+        // a broadcast reaches some members and misses others, the fault of the n-th broadcast to the m-th member of the
+        // view only depends on the seed, so the same sequence of broadcasts meets the same faults in every run, a
+        // broadcast whose sending depends on when earlier ones arrived shifts the faults of the following ones
+        long sequence = this.broadcasts.getAndIncrement();
+        List<Address> members = this.delegate.getMembers();
+        Address localAddress = this.delegate.getLocalAddress();
+
+        for (int m = 0; m < members.size(); ++m) {
+            Address member = (Address)members.get(m);
+            if (!member.equals(localAddress)) {
+                this.sent.incrementAndGet();
+                if (this.draw(sequence, m, 0) < this.loss) {
+                    this.discarded.incrementAndGet();
+                    LOG.trace("Discarded broadcast {} of {} bytes to {}", new Object[]{sequence, data.length, member});
+                } else if (this.draw(sequence, m, 1) < this.reorder) {
+                    this.reordered.incrementAndGet();
+                    this.deliver(member, data, flags, this.delay + 1L + (long)(this.draw(sequence, m, 2) * (double)REORDER_WINDOW));
+                } else {
+                    this.deliver(member, data, flags, this.delay);
+                }
+            }
+        }
+
+    }
+
+    public List<Address> getMembers() {
+        return this.delegate.getMembers();
+    }
+
+    public Address getLocalAddress() {
+        return this.delegate.getLocalAddress();
+    }
+
+    public boolean isConnected() {
+        return this.delegate.isConnected();
+    }
+
+    public int getMaxMessageSize() {
+        return this.delegate.getMaxMessageSize();
+    }
+
+    public long getSent() {
+        return this.sent.get();
+    }
+
+    public long getDiscarded() {
+        return this.discarded.get();
+    }
+
+    public long getReordered() {
+        return this.reordered.get();
+    }
+
+    public void close() {
+        this.scheduler.shutdownNow();
+        this.delegate.close();
+    }
+
+    private void deliver(final Address dest, final byte[] data, final Message.Flag[] flags, long messageDelay) throws Exception {
+        if (messageDelay == 0L) {
+            this.delegate.send(dest, data, flags);
+            return;
+        }
+
+        try {
+            // a single thread with the same delay keeps the order of the messages
+            this.scheduler.schedule(new Runnable() {
+                public void run() {
+                    try {
+                        FaultInjectingTransport.this.delegate.send(dest, data, flags);
+                    } catch (Exception var2) {
+                        LOG.trace("Dropping a delayed message to {}", dest, var2);
+                    }
+
+                }
+            }, messageDelay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException var7) {
+            LOG.trace("Dropping a delayed message of the closed transport {}", this.delegate);
+        }
+
+    }
+
+    private double draw(long sequence, int member, int draw) {
+        // SplitMix64 of the seed and the position, uniform in [0, 1)
+        long z = this.seed * -7046029254386353131L + sequence * -4658895280553007687L + (long)member * -7723592293110705685L + (long)draw;
+        z = (z ^ z >>> 30) * -4658895280553007687L;
+        z = (z ^ z >>> 27) * -7723592293110705685L;
+        z ^= z >>> 31;
+        return (double)(z >>> 11) * 1.1102230246251565E-16D;
+    }
+
+    public String toString() {
+        return "FaultInjectingTransport [loss=" + this.loss + ", delay=" + this.delay + "ms, reorder=" + this.reorder + ", seed=" + this.seed + ", sent=" + this.sent.get() + ", discarded=" + this.discarded.get() + ", reordered=" + this.reordered.get() + ", " + this.delegate + "]";
+    }
+}
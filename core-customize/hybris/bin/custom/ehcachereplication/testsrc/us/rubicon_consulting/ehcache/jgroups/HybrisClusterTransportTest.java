@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.cluster.BroadcastMessageListener;
+import de.hybris.platform.cluster.BroadcastService;
+import de.hybris.platform.cluster.RawMessage;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+
+import org.jgroups.Address;
+import org.jgroups.util.Util;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link HybrisClusterTransport} sending batches larger than a platform cluster message between
+ * two members of a loopback broadcast service.
+ */
+@UnitTest
+public class HybrisClusterTransportTest
+{
+	private static final int EVENTS = 100;
+	private static final long ASYNC_TIME = 1000L;
+
+	private final LoopbackBroadcastService network = new LoopbackBroadcastService();
+	private final HybrisClusterTransport transportA = new HybrisClusterTransport(HybrisClusterTransport.DEFAULT_MESSAGE_KIND,
+			60000L, network.createService());
+	private final HybrisClusterTransport transportB = new HybrisClusterTransport(HybrisClusterTransport.DEFAULT_MESSAGE_KIND,
+			60000L, network.createService());
+	private final CollectingListener listenerB = new CollectingListener();
+	private JGroupsCachePeer cachePeer;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		transportA.connect("cluster", new CollectingListener());
+		transportB.connect("cluster", listenerB);
+		cachePeer = new JGroupsCachePeer(transportA, "cluster", new AsyncFlushSettings(true, EVENTS * 10, 262144L, 5L));
+	}
+
+	@After
+	public void tearDown()
+	{
+		cachePeer.dispose();
+		transportA.close();
+		transportB.close();
+	}
+
+	@Test
+	public void shouldSplitABatchLargerThanAMessage() throws Exception
+	{
+		final List<JGroupEventMessage> events = puts(-1L);
+		assertThat(JGroupsCachePeer.encode(events).length).isGreaterThan(HybrisClusterTransport.MAX_DATA_SIZE);
+
+		cachePeer.send((Address) null, events);
+
+		assertThat(listenerB.getKeys()).isEqualTo(keys());
+		assertThat(network.getRejected()).isZero();
+		assertThat(network.getLargest()).isLessThanOrEqualTo(HybrisClusterTransport.MAX_DATA_SIZE + 100);
+	}
+
+	@Test
+	public void shouldSplitAnAsynchronousBatchLargerThanAMessage() throws Exception
+	{
+		cachePeer.send((Address) null, puts(ASYNC_TIME));
+		cachePeer.flushAsyncQueue(ASYNC_TIME);
+
+		assertThat(listenerB.getKeys()).isEqualTo(keys());
+		assertThat(network.getRejected()).isZero();
+	}
+
+	@Test
+	public void shouldCapTheAsynchronousFlushAtTheMessageSize()
+	{
+		assertThat(cachePeer.getAsyncFlushSettings().getMaxBytes()).isEqualTo((long) HybrisClusterTransport.MAX_DATA_SIZE);
+
+		cachePeer.setAsyncFlushSettings(cachePeer.getAsyncFlushSettings().withMaxBytes(1000000L));
+
+		assertThat(cachePeer.getAsyncFlushSettings().getMaxBytes()).isEqualTo((long) HybrisClusterTransport.MAX_DATA_SIZE);
+	}
+
+	private static List<JGroupEventMessage> puts(final long asyncTime)
+	{
+		final char[] value = new char[1000];
+		Arrays.fill(value, 'v');
+		final List<JGroupEventMessage> events = new ArrayList<>(EVENTS);
+		for (int i = 0; i < EVENTS; i++)
+		{
+			final String key = "key" + i;
+			events.add(new JGroupEventMessage(0, key, new Element(key, new String(value)), "product", asyncTime));
+		}
+		return events;
+	}
+
+	private static List<Object> keys()
+	{
+		final List<Object> keys = new ArrayList<>(EVENTS);
+		for (int i = 0; i < EVENTS; i++)
+		{
+			keys.add("key" + i);
+		}
+		return keys;
+	}
+
+	/**
+	 * Delivers every message to all registered listeners right away and rejects datagrams larger than the platform
+	 * sends, like the cluster messaging of a single node.
+	 */
+	private static class LoopbackBroadcastService
+	{
+		private final List<BroadcastMessageListener> listeners = new CopyOnWriteArrayList<>();
+		private final AtomicInteger rejected = new AtomicInteger();
+		private final AtomicInteger largest = new AtomicInteger();
+
+		private BroadcastService createService()
+		{
+			return (BroadcastService) Proxy.newProxyInstance(BroadcastService.class.getClassLoader(),
+					new Class[] { BroadcastService.class }, new InvocationHandler()
+					{
+						@Override
+						public Object invoke(final Object proxy, final Method method, final Object[] args)
+						{
+							if ("send".equals(method.getName()))
+							{
+								send((RawMessage) args[0]);
+							}
+							else if ("registerMessageListener".equals(method.getName()))
+							{
+								listeners.add((BroadcastMessageListener) args[0]);
+							}
+							else if ("unregisterMessageListener".equals(method.getName()))
+							{
+								listeners.remove(args[0]);
+							}
+							return method.getReturnType() == boolean.class ? Boolean.TRUE : null;
+						}
+					});
+		}
+
+		private void send(final RawMessage message)
+		{
+			final int size = message.getData().length;
+			if (size > HybrisClusterTransport.MAX_DATA_SIZE + 100)
+			{
+				rejected.incrementAndGet();
+				throw new IllegalArgumentException("Datagram of " + size + " bytes");
+			}
+			largest.set(Math.max(largest.get(), size));
+			for (final BroadcastMessageListener listener : listeners)
+			{
+				listener.processMessage(message);
+			}
+		}
+
+		private int getRejected()
+		{
+			return rejected.get();
+		}
+
+		private int getLargest()
+		{
+			return largest.get();
+		}
+	}
+
+	private static class CollectingListener implements ReplicationTransport.Listener
+	{
+		private final List<Object> keys = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void receive(final Address src, final byte[] data, final int offset, final int length)
+		{
+			try
+			{
+				final Object object = Util.objectFromByteBuffer(data, offset, length);
+				final List<JGroupEventMessage> events = object instanceof List ? (List<JGroupEventMessage>) object
+						: Arrays.asList((JGroupEventMessage) object);
+				for (final JGroupEventMessage event : events)
+				{
+					keys.add(event.getSerializableKey());
+				}
+			}
+			catch (final Exception e)
+			{
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public void viewAccepted(final List<Address> members)
+		{
+			// the members are not checked
+		}
+
+		private List<Object> getKeys()
+		{
+			return new ArrayList<>(keys);
+		}
+	}
+}
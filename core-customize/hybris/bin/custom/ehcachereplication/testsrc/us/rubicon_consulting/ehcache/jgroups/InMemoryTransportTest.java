@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.junit.After;
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link InMemoryTransport} connecting the cache managers of one JVM.
+ */
+@UnitTest
+public class InMemoryTransportTest
+{
+	private static final String NETWORK = "InMemoryTransportTest";
+
+	private final InMemoryTransport first = new InMemoryTransport(NETWORK);
+	private final InMemoryTransport second = new InMemoryTransport(NETWORK);
+	private final InMemoryTransport third = new InMemoryTransport(NETWORK);
+	private final CollectingListener firstListener = new CollectingListener();
+	private final CollectingListener secondListener = new CollectingListener();
+	private final CollectingListener thirdListener = new CollectingListener();
+
+	@After
+	public void tearDown()
+	{
+		first.close();
+		second.close();
+		third.close();
+	}
+
+	@Test
+	public void shouldBroadcastToAllOtherMembers() throws Exception
+	{
+		connectAll();
+
+		first.send(null, new byte[]
+		{ 1 });
+
+		assertThat(secondListener.poll()).isEqualTo(first.getLocalAddress());
+		assertThat(thirdListener.poll()).isEqualTo(first.getLocalAddress());
+		assertThat(firstListener.poll(100)).isNull();
+	}
+
+	@Test
+	public void shouldSendToOneMember() throws Exception
+	{
+		connectAll();
+
+		first.send(third.getLocalAddress(), new byte[]
+		{ 1 }, Message.Flag.OOB);
+
+		assertThat(thirdListener.poll()).isEqualTo(first.getLocalAddress());
+		assertThat(secondListener.poll(100)).isNull();
+	}
+
+	@Test
+	public void shouldUpdateTheMembersOnJoinAndLeave() throws Exception
+	{
+		connectAll();
+		assertThat(first.getMembers()).containsExactly(first.getLocalAddress(), second.getLocalAddress(), third.getLocalAddress());
+
+		second.close();
+
+		assertThat(first.getMembers()).containsExactly(first.getLocalAddress(), third.getLocalAddress());
+		assertThat(third.getMembers()).containsExactly(first.getLocalAddress(), third.getLocalAddress());
+	}
+
+	@Test
+	public void shouldSeparateClusters() throws Exception
+	{
+		first.connect("productCluster", firstListener);
+		second.connect("categoryCluster", secondListener);
+
+		first.send(null, new byte[]
+		{ 1 });
+
+		assertThat(first.getMembers()).hasSize(1);
+		assertThat(secondListener.poll(100)).isNull();
+	}
+
+	private void connectAll()
+	{
+		first.connect("cluster", firstListener);
+		second.connect("cluster", secondListener);
+		third.connect("cluster", thirdListener);
+	}
+
+	private static class CollectingListener implements ReplicationTransport.Listener
+	{
+		private final BlockingQueue<Address> sources = new LinkedBlockingQueue<>();
+
+		@Override
+		public void receive(final Address src, final byte[] data, final int offset, final int length)
+		{
+			sources.add(src);
+		}
+
+		@Override
+		public void viewAccepted(final List<Address> members)
+		{
+			// views are checked through getMembers()
+		}
+
+		private Address poll() throws InterruptedException
+		{
+			return poll(5000);
+		}
+
+		private Address poll(final long timeout) throws InterruptedException
+		{
+			return sources.poll(timeout, TimeUnit.MILLISECONDS);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link InterestSketch} recording the keys read by a member.
+ */
+@UnitTest
+public class InterestSketchTest
+{
+	@Test
+	public void shouldContainRecordedKeys()
+	{
+		final InterestSketch sketch = new InterestSketch(4096, 3);
+		for (int i = 0; i < 100; i++)
+		{
+			sketch.record("product-" + i);
+		}
+
+		final InterestSummary summary = sketch.rotate();
+		for (int i = 0; i < 100; i++)
+		{
+			assertThat(summary.mightContain("product-" + i)).isTrue();
+		}
+	}
+
+	@Test
+	public void shouldRarelyContainKeysNotRecorded()
+	{
+		final InterestSketch sketch = new InterestSketch(4096, 3);
+		for (int i = 0; i < 100; i++)
+		{
+			sketch.record("product-" + i);
+		}
+
+		final InterestSummary summary = sketch.rotate();
+		int falsePositives = 0;
+		for (int i = 0; i < 1000; i++)
+		{
+			if (summary.mightContain("category-" + i))
+			{
+				falsePositives++;
+			}
+		}
+		assertThat(falsePositives).isLessThan(50);
+	}
+
+	@Test
+	public void shouldForgetKeysNotReadForTwoIntervals()
+	{
+		final InterestSketch sketch = new InterestSketch(4096, 3);
+		sketch.record("product-1");
+
+		assertThat(sketch.rotate().mightContain("product-1")).isTrue();
+		assertThat(sketch.rotate().mightContain("product-1")).isTrue();
+		assertThat(sketch.rotate().mightContain("product-1")).isFalse();
+	}
+
+	@Test
+	public void shouldKeepKeysReadAgain()
+	{
+		final InterestSketch sketch = new InterestSketch(4096, 3);
+		sketch.record("product-1");
+		sketch.rotate();
+		sketch.rotate();
+		sketch.record("product-1");
+
+		assertThat(sketch.rotate().mightContain("product-1")).isTrue();
+	}
+}
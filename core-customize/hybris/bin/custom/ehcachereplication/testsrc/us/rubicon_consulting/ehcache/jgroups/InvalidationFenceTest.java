@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link InvalidationFence} protecting the key order of out-of-band removals.
+ */
+@UnitTest
+public class InvalidationFenceTest
+{
+	@Test
+	public void shouldFencePutsOlderThanTheRemoval()
+	{
+		final InvalidationFence fence = new InvalidationFence(10, 60000L);
+
+		fence.record("cache", "key", 1000L);
+
+		assertThat(fence.isFenced("cache", "key", 999L)).isTrue();
+		assertThat(fence.isFenced("cache", "key", 1000L)).isTrue();
+		assertThat(fence.isFenced("cache", "key", 1001L)).isFalse();
+		assertThat(fence.isFenced("cache", "other", 999L)).isFalse();
+		assertThat(fence.isFenced("other", "key", 999L)).isFalse();
+	}
+
+	@Test
+	public void shouldSkipStaleAndDuplicateWrites()
+	{
+		final InvalidationFence fence = new InvalidationFence(10, 60000L);
+
+		assertThat(fence.admit("cache", "key", 1000L, 1L)).isTrue();
+		assertThat(fence.admit("cache", "key", 1000L, 1L)).isFalse();
+		assertThat(fence.admit("cache", "key", 999L, 5L)).isFalse();
+		assertThat(fence.admit("cache", "key", 1000L, 2L)).isTrue();
+		assertThat(fence.admit("cache", "key", 1001L, 1L)).isTrue();
+		assertThat(fence.admit("cache", "other", 999L, 1L)).isTrue();
+		assertThat(fence.getSkipped()).isEqualTo(2L);
+	}
+
+	@Test
+	public void shouldKeepTombstonesOfRemovals()
+	{
+		final InvalidationFence fence = new InvalidationFence(10, 60000L);
+
+		assertThat(fence.admit("cache", "key", 1000L, 1L)).isTrue();
+		fence.record("cache", "key", 999L);
+		fence.record("cache", "key", 990L);
+
+		assertThat(fence.getRemovalTime("cache", "key")).isEqualTo(999L);
+		assertThat(fence.getRemovalTime("cache", "other")).isEqualTo(Long.MIN_VALUE);
+		assertThat(fence.admit("cache", "key", 999L, 2L)).isFalse();
+		assertThat(fence.isFenced("cache", "key", 999L)).isTrue();
+		assertThat(fence.admit("cache", "key", 1000L, 1L)).isTrue();
+		assertThat(fence.isFenced("cache", "key", 1000L)).isFalse();
+	}
+
+	@Test
+	public void shouldNotEvictTombstonesByWrites()
+	{
+		final InvalidationFence fence = new InvalidationFence(10, 60000L);
+		fence.record("cache", "removed", 1000L);
+
+		for (int i = 0; i < 100; i++)
+		{
+			assertThat(fence.admit("cache", "key" + i, 2000L, 1L)).isTrue();
+			assertThat(fence.isAdmissible("cache", "entry" + i, 2000L, 1L)).isTrue();
+		}
+
+		assertThat(fence.isAdmissible("cache", "removed", 999L, 1L)).isFalse();
+		assertThat(fence.isAdmissible("cache", "key99", 2000L, 1L)).isFalse();
+		assertThat(fence.isAdmissible("cache", "key99", 2000L, 2L)).isTrue();
+	}
+
+	@Test
+	public void shouldForgetRemovalsAfterTheRetention()
+	{
+		final InvalidationFence fence = new InvalidationFence(10, -1L);
+
+		fence.record("cache", "key", 1000L);
+
+		assertThat(fence.isFenced("cache", "key", 999L)).isFalse();
+	}
+
+	@Test
+	public void shouldForgetClearedCaches()
+	{
+		final InvalidationFence fence = new InvalidationFence(10, 60000L);
+
+		fence.record("cache", "key", 1000L);
+		fence.clear("cache");
+
+		assertThat(fence.isFenced("cache", "key", 999L)).isFalse();
+	}
+
+	@Test
+	public void shouldKeepTheStampsOfCachedKeys()
+	{
+		final InvalidationFence fence = new InvalidationFence(10, 60000L);
+		assertThat(fence.admit("cache", "key", 1000L, 1L)).isTrue();
+		assertThat(fence.getStamp("cache", "key")).isNull();
+
+		fence.setStamping(true);
+		assertThat(fence.admit("cache", "key", 2000L, 1L)).isTrue();
+		assertThat(fence.admit("cache", "key", 1500L, 1L)).isFalse();
+		assertThat(fence.getStamp("cache", "key")).containsExactly(2000L, 1L);
+
+		// a local write is in the cache even if it is older
+		fence.stamp("cache", "key", 1500L, 1L);
+		assertThat(fence.getStamp("cache", "key")).containsExactly(1500L, 1L);
+		fence.stamp("cache", "other", 3000L, 1L);
+		fence.stamp("cache", "evicted", 3000L, 1L);
+
+		fence.record("cache", "key", 2500L);
+		fence.retainStamps("cache", Arrays.asList("key", "other"));
+
+		assertThat(fence.getStamp("cache", "key")).isNull();
+		assertThat(fence.getStamp("cache", "evicted")).isNull();
+		assertThat(fence.getStamp("cache", "other")).containsExactly(3000L, 1L);
+	}
+}
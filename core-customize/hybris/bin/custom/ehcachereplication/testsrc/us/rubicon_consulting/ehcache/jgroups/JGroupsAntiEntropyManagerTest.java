@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.FactoryConfiguration;
+import net.sf.ehcache.distribution.CacheManagerPeerProvider;
+import net.sf.ehcache.distribution.CacheManagerPeerProviderFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link JGroupsAntiEntropyManager} comparing and repairing the caches of two in-process members
+ * connected by an {@link InMemoryTransport}.
+ */
+@UnitTest
+public class JGroupsAntiEntropyManagerTest
+{
+	private static final String CACHE = "product";
+	private static final AtomicInteger NETWORKS = new AtomicInteger();
+	private static final int MAX_KEYS = 10;
+
+	private CacheManager memberA;
+	private CacheManager memberB;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		final String network = "JGroupsAntiEntropyManagerTest-" + NETWORKS.incrementAndGet();
+		memberA = createMember(network, "a");
+		memberB = createMember(network, "b");
+		final long start = System.currentTimeMillis();
+		while ((provider(memberA).getCachePeer().getOtherGroupMembers().isEmpty()
+				|| provider(memberB).getCachePeer().getOtherGroupMembers().isEmpty()) && System.currentTimeMillis() - start < 5000L)
+		{
+			Thread.sleep(10L);
+		}
+	}
+
+	@After
+	public void tearDown()
+	{
+		memberA.shutdown();
+		memberB.shutdown();
+	}
+
+	@Test
+	public void shouldFindNoMismatchesInIdenticalCaches() throws Exception
+	{
+		for (int i = 0; i < 100; i++)
+		{
+			cache(memberA).put(new Element("key" + i, "value" + i));
+		}
+		// the replication is delivered in order, the other keys arrived before the last one
+		awaitValue(memberB, "key99", "value99");
+
+		assertThat(countMismatches(memberA, memberB)).isZero();
+	}
+
+	@Test
+	public void shouldRepairADivergedKeyOnce() throws Exception
+	{
+		cache(memberA).put(new Element("key", "old"));
+		awaitValue(memberB, "key", "old");
+		Thread.sleep(5L);
+		writeUnreplicated(memberB, "key", "new");
+		Thread.sleep(10L);
+		assertThat(countMismatches(memberA, memberB)).isEqualTo(1);
+
+		antiEntropy(memberA).runAntiEntropyRound();
+
+		awaitValue(memberA, "key", "new");
+		assertThat(cache(memberB).getQuiet("key").getObjectValue()).isEqualTo("new");
+		assertThat(countMismatches(memberA, memberB)).isZero();
+		assertRoundSendsOnlyDigests();
+	}
+
+	@Test
+	public void shouldRepairMoreKeysThanARoundCompares() throws Exception
+	{
+		for (int i = 0; i < 100; i++)
+		{
+			cache(memberA).put(new Element("key" + i, "old"));
+		}
+		awaitValue(memberB, "key99", "old");
+		Thread.sleep(5L);
+		for (int i = 0; i < 100; i++)
+		{
+			writeUnreplicated(memberB, "key" + i, "new");
+		}
+
+		// each round compares at most MAX_KEYS keys, the buckets are compared in turn
+		for (int round = 0; round < 50 && countMismatches(memberA, memberB) != 0; round++)
+		{
+			antiEntropy(memberA).runAntiEntropyRound();
+			Thread.sleep(50L);
+		}
+
+		assertThat(countMismatches(memberA, memberB)).isZero();
+		for (int i = 0; i < 100; i++)
+		{
+			assertThat(cache(memberA).getQuiet("key" + i).getObjectValue()).isEqualTo("new");
+		}
+	}
+
+	@Test
+	public void shouldPushANewerLocalValue() throws Exception
+	{
+		cache(memberA).put(new Element("key", "old"));
+		awaitValue(memberB, "key", "old");
+		Thread.sleep(5L);
+		writeUnreplicated(memberB, "key", "new");
+		Thread.sleep(10L);
+
+		antiEntropy(memberB).runAntiEntropyRound();
+
+		awaitValue(memberA, "key", "new");
+		assertThat(countMismatches(memberA, memberB)).isZero();
+		assertRoundSendsOnlyDigests();
+	}
+
+	@Test
+	public void shouldFetchAMissingKey() throws Exception
+	{
+		cache(memberA).put(new Element("key", "value"), true);
+		Thread.sleep(10L);
+		assertThat(cache(memberB).getQuiet("key")).isNull();
+
+		antiEntropy(memberB).runAntiEntropyRound();
+
+		awaitValue(memberB, "key", "value");
+		assertThat(countMismatches(memberA, memberB)).isZero();
+	}
+
+	@Test
+	public void shouldNotFetchARemovedKey() throws Exception
+	{
+		cache(memberA).put(new Element("key", "value"));
+		awaitValue(memberB, "key", "value");
+		Thread.sleep(5L);
+		provider(memberB).getInvalidationFence().record(CACHE, "key", System.currentTimeMillis());
+		cache(memberB).remove("key", true);
+		Thread.sleep(10L);
+
+		antiEntropy(memberB).runAntiEntropyRound();
+
+		final long start = System.currentTimeMillis();
+		while (cache(memberA).getQuiet("key") != null && System.currentTimeMillis() - start < 5000L)
+		{
+			Thread.sleep(10L);
+		}
+		assertThat(cache(memberA).getQuiet("key")).isNull();
+		assertThat(cache(memberB).getQuiet("key")).isNull();
+	}
+
+	@Test
+	public void shouldReconcileByStampAndValueHash()
+	{
+		final long none = Long.MIN_VALUE;
+
+		assertThat(JGroupsAntiEntropyManager.reconcile(new long[] { 1000L, 1L, 42L }, new long[] { 2000L, 1L, 42L }, none))
+				.isEqualTo(JGroupsAntiEntropyManager.Reconciliation.IN_SYNC);
+		assertThat(JGroupsAntiEntropyManager.reconcile(new long[] { 1000L, 1L, 42L }, new long[] { 2000L, 1L, 43L }, none))
+				.isEqualTo(JGroupsAntiEntropyManager.Reconciliation.FETCH);
+		assertThat(JGroupsAntiEntropyManager.reconcile(new long[] { 2000L, 1L, 42L }, new long[] { 1000L, 1L, 43L }, none))
+				.isEqualTo(JGroupsAntiEntropyManager.Reconciliation.PUSH);
+		assertThat(JGroupsAntiEntropyManager.reconcile(new long[] { 1000L, 1L, 42L }, new long[] { 2000L, 1L, 43L }, 2000L))
+				.isEqualTo(JGroupsAntiEntropyManager.Reconciliation.IN_SYNC);
+		assertThat(JGroupsAntiEntropyManager.reconcile(null, new long[] { 1000L, 1L, 42L }, none))
+				.isEqualTo(JGroupsAntiEntropyManager.Reconciliation.FETCH);
+		assertThat(JGroupsAntiEntropyManager.reconcile(null, new long[] { 1000L, 1L, 42L }, 1000L))
+				.isEqualTo(JGroupsAntiEntropyManager.Reconciliation.REMOVE);
+		assertThat(JGroupsAntiEntropyManager.reconcile(null, new long[] { 1000L, 1L, 42L }, 999L))
+				.isEqualTo(JGroupsAntiEntropyManager.Reconciliation.FETCH);
+
+		// without stamps both members pick the same value
+		assertThat(JGroupsAntiEntropyManager.reconcile(new long[] { none, none, 42L }, new long[] { none, none, 43L }, none))
+				.isEqualTo(JGroupsAntiEntropyManager.Reconciliation.FETCH);
+		assertThat(JGroupsAntiEntropyManager.reconcile(new long[] { none, none, 43L }, new long[] { none, none, 42L }, none))
+				.isEqualTo(JGroupsAntiEntropyManager.Reconciliation.PUSH);
+	}
+
+	private void writeUnreplicated(final CacheManager member, final String key, final String value)
+	{
+		// a write whose replication was lost
+		final Element element = new Element(key, value);
+		cache(member).put(element, true);
+		provider(member).getInvalidationFence().stamp(CACHE, key, ElementVersions.timestampOf(element), element.getVersion());
+	}
+
+	private void assertRoundSendsOnlyDigests() throws Exception
+	{
+		final InMemoryTransport transportA = (InMemoryTransport) provider(memberA).getCachePeer().getTransport();
+		final InMemoryTransport transportB = (InMemoryTransport) provider(memberB).getCachePeer().getTransport();
+		Thread.sleep(100L);
+		final long sentA = transportA.getSentMessages();
+		final long sentB = transportB.getSentMessages();
+
+		antiEntropy(memberA).runAntiEntropyRound();
+		antiEntropy(memberB).runAntiEntropyRound();
+		Thread.sleep(200L);
+
+		assertThat(transportA.getSentMessages() - sentA).isEqualTo(1L);
+		assertThat(transportB.getSentMessages() - sentB).isEqualTo(1L);
+	}
+
+	private static int countMismatches(final CacheManager member, final CacheManager other) throws InterruptedException
+	{
+		// keys written in the current millisecond are left out of the digests
+		Thread.sleep(5L);
+		final long[] digests = antiEntropy(member).calculateDigests(cache(member));
+		final long[] otherDigests = antiEntropy(other).calculateDigests(cache(other));
+		int mismatches = 0;
+		for (int i = 0; i < digests.length; i++)
+		{
+			if (digests[i] != otherDigests[i])
+			{
+				mismatches++;
+			}
+		}
+		return mismatches;
+	}
+
+	private static void awaitValue(final CacheManager member, final String key, final String value) throws InterruptedException
+	{
+		final long start = System.currentTimeMillis();
+		while (System.currentTimeMillis() - start < 5000L)
+		{
+			final Element element = cache(member).getQuiet(key);
+			if (element != null && value.equals(element.getObjectValue()))
+			{
+				return;
+			}
+			Thread.sleep(10L);
+		}
+		assertThat(cache(member).getQuiet(key)).isNotNull();
+		assertThat(cache(member).getQuiet(key).getObjectValue()).isEqualTo(value);
+	}
+
+	private static Ehcache cache(final CacheManager member)
+	{
+		return member.getEhcache(CACHE);
+	}
+
+	private static JGroupsCacheManagerPeerProvider provider(final CacheManager member)
+	{
+		return JGroupsCacheManagerPeerProvider.getCachePeerProvider(member);
+	}
+
+	private static JGroupsAntiEntropyManager antiEntropy(final CacheManager member)
+	{
+		return provider(member).getAntiEntropyManager();
+	}
+
+	private static CacheManager createMember(final String network, final String name)
+	{
+		final Configuration configuration = new Configuration().name(network + "-" + name);
+		configuration.addCacheManagerPeerProviderFactory(new FactoryConfiguration()
+				.className(InMemoryPeerProviderFactory.class.getName()).properties("network=" + network).propertySeparator(";"));
+
+		final CacheConfiguration cacheConfiguration = new CacheConfiguration(CACHE, 1000);
+		cacheConfiguration.addCacheEventListenerFactory(new CacheConfiguration.CacheEventListenerFactoryConfiguration()
+				.className(JGroupsCacheReplicatorFactory.class.getName()).properties("replicateAsynchronously=false"));
+		configuration.addCache(cacheConfiguration);
+		return new CacheManager(configuration);
+	}
+
+	/**
+	 * Connects the members over an {@link InMemoryTransport}, anti-entropy only runs when a test starts a round.
+	 */
+	public static class InMemoryPeerProviderFactory extends CacheManagerPeerProviderFactory
+	{
+		@Override
+		public CacheManagerPeerProvider createCachePeerProvider(final CacheManager cacheManager, final Properties properties)
+		{
+			final JGroupsCacheManagerPeerProvider peerProvider = new JGroupsCacheManagerPeerProvider(cacheManager,
+					new InMemoryTransport(properties.getProperty("network")));
+			peerProvider.setChannelName("anti-entropy");
+			peerProvider.setAntiEntropySettings(new AntiEntropySettings(true, 3600000L, 16, MAX_KEYS, 0L, 100, 0L));
+			return peerProvider;
+		}
+	}
+}
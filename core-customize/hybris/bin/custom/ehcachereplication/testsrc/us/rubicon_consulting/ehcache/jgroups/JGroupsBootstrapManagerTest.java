@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.FactoryConfiguration;
+import net.sf.ehcache.constructs.EhcacheDecoratorAdapter;
+import net.sf.ehcache.distribution.CacheManagerPeerProvider;
+import net.sf.ehcache.distribution.CacheManagerPeerProviderFactory;
+import net.sf.ehcache.distribution.jgroups.BootstrapRequest;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.jgroups.util.UUID;
+import org.jgroups.util.Util;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link JGroupsBootstrapManager} asking the members of an in-process cluster for their states
+ * before choosing the peers to bootstrap from, and encoding the bootstrap response in parallel.
+ */
+@UnitTest
+public class JGroupsBootstrapManagerTest
+{
+	private static final String CACHE = "product";
+	private static final String CLUSTER = "bootstrap";
+	private static final AtomicInteger NETWORKS = new AtomicInteger();
+	private static final long STATE_TIMEOUT = 5000L;
+	private static final int SEGMENTS_AHEAD = 2;
+	// a segment holds 8 chunks of 100 keys
+	private static final int SEGMENT_KEYS = 800;
+	private static final int KEYS = 8000;
+	private static final Map<String, RecordingTransport> TRANSPORTS = new ConcurrentHashMap<>();
+
+	private String network;
+	private CacheManager requester;
+	private CacheManager holder;
+	private InMemoryTransport silentMember;
+	private CountingCacheDecorator holderCache;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		network = "JGroupsBootstrapManagerTest-" + NETWORKS.incrementAndGet();
+		requester = createMember("requester");
+		holder = createMember("holder");
+		final Ehcache cache = holder.getEhcache(CACHE);
+		holderCache = new CountingCacheDecorator(cache);
+		holder.replaceCacheWithDecoratedCache(cache, holderCache);
+		awaitMembers(1);
+	}
+
+	@After
+	public void tearDown()
+	{
+		requester.shutdown();
+		holder.shutdown();
+		if (silentMember != null)
+		{
+			silentMember.close();
+		}		TRANSPORTS.clear();
+	}
+
+	@Test
+	public void shouldStopWaitingOnceEveryMemberAnswered()
+	{
+		final long start = System.currentTimeMillis();
+
+		final Map<Address, MemberState> states = bootstrapManager().requestMemberStates(CACHE, others());
+
+		assertThat(System.currentTimeMillis() - start).isLessThan(STATE_TIMEOUT / 2);
+		assertThat(states.keySet()).contains(address(holder));
+	}
+
+	@Test
+	public void shouldNotWaitForAMemberOutsideTheView()
+	{
+		final List<Address> members = others();
+		// a member of the channel without the replication, the view of the fork does not list it
+		members.add(UUID.randomUUID());
+		final long start = System.currentTimeMillis();
+
+		final Map<Address, MemberState> states = bootstrapManager().requestMemberStates(CACHE, members);
+
+		assertThat(System.currentTimeMillis() - start).isLessThan(STATE_TIMEOUT / 2);
+		assertThat(states.keySet()).containsExactly(address(holder));
+	}
+
+	@Test
+	public void shouldStopWaitingForAMemberLeavingTheView() throws Exception
+	{
+		silentMember = new InMemoryTransport(network);
+		silentMember.connect(CLUSTER, new SilentListener());
+		awaitMembers(2);
+		final Thread leaving = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Thread.sleep(200L);
+				}
+				catch (final InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				silentMember.close();
+			}
+		};
+		leaving.start();
+		final long start = System.currentTimeMillis();
+
+		final Map<Address, MemberState> states = bootstrapManager().requestMemberStates(CACHE, others());
+
+		assertThat(System.currentTimeMillis() - start).isLessThan(STATE_TIMEOUT / 2);
+		assertThat(states.keySet()).containsExactly(address(holder));
+		leaving.join();
+	}
+
+	@Test
+	public void shouldSendTheEncodedChunksInKeyOrder() throws Exception
+	{
+		fillHolder();
+		final List<Object> keys = new ArrayList<>(holderCache.getKeys());
+
+		assertThat(bootstrap()).isTrue();
+
+		assertThat(transport(requester).getBootstrappedKeys()).isEqualTo(keys);
+		assertThat(requester.getEhcache(CACHE).getSize()).isEqualTo(KEYS);
+	}
+
+	@Test
+	public void shouldEncodeAtMostSegmentsAheadOfTheSentSegment() throws Exception
+	{
+		fillHolder();
+		transport(holder).closeGate();
+		holderCache.resetReads();
+
+		final JGroupsBootstrapManager bootstrapManager = bootstrapManager();
+		bootstrapManager.handleBootstrapRequest(new BootstrapRequest(requester.getEhcache(CACHE), true, 5000000));
+		transport(holder).awaitBlockedSend();
+		Thread.sleep(500L);
+
+		// the first chunk waits to be sent, the segment it belongs to and the segments ahead of it are encoded
+		assertThat(holderCache.getReads()).isEqualTo((SEGMENTS_AHEAD + 1) * SEGMENT_KEYS);
+
+		transport(holder).openGate();
+		assertThat(awaitBootstrap(bootstrapManager)).isTrue();
+		assertThat(requester.getEhcache(CACHE).getSize()).isEqualTo(KEYS);
+	}
+
+	private void fillHolder()
+	{
+		for (int i = 0; i < KEYS; i++)
+		{
+			holderCache.put(new Element("key" + i, "value" + i), true);
+		}
+	}
+
+	private boolean bootstrap() throws InterruptedException
+	{
+		final JGroupsBootstrapManager bootstrapManager = bootstrapManager();
+		bootstrapManager.handleBootstrapRequest(new BootstrapRequest(requester.getEhcache(CACHE), true, 5000000));
+		return awaitBootstrap(bootstrapManager);
+	}
+
+	private static boolean awaitBootstrap(final JGroupsBootstrapManager bootstrapManager) throws InterruptedException
+	{
+		final long start = System.currentTimeMillis();
+		BootstrapProgress progress = bootstrapManager.getBootstrapProgress(CACHE);
+		while ((progress == null || !progress.isDone()) && System.currentTimeMillis() - start < 30000L)
+		{
+			Thread.sleep(10L);
+			progress = bootstrapManager.getBootstrapProgress(CACHE);
+		}
+		return progress != null && progress.getState() == BootstrapProgress.State.COMPLETE;
+	}
+
+	private static RecordingTransport transport(final CacheManager member)
+	{
+		return TRANSPORTS.get(member.getName());
+	}
+
+	private void awaitMembers(final int others) throws InterruptedException
+	{
+		final long start = System.currentTimeMillis();
+		while (others().size() < others && System.currentTimeMillis() - start < 5000L)
+		{
+			Thread.sleep(10L);
+		}
+		assertThat(others()).hasSize(others);
+	}
+
+	private List<Address> others()
+	{
+		return new ArrayList<>(provider(requester).getCachePeer().getOtherGroupMembers());
+	}
+
+	private JGroupsBootstrapManager bootstrapManager()
+	{
+		return provider(requester).getBootstrapManager();
+	}
+
+	private static Address address(final CacheManager member)
+	{
+		return provider(member).getCachePeer().getLocalAddress();
+	}
+
+	private static JGroupsCacheManagerPeerProvider provider(final CacheManager member)
+	{
+		return JGroupsCacheManagerPeerProvider.getCachePeerProvider(member);
+	}
+
+	private CacheManager createMember(final String name)
+	{
+		final Configuration configuration = new Configuration().name(network + "-" + name);
+		configuration.addCacheManagerPeerProviderFactory(new FactoryConfiguration()
+				.className(InMemoryPeerProviderFactory.class.getName()).properties("network=" + network).propertySeparator(";"));
+
+		final CacheConfiguration cacheConfiguration = new CacheConfiguration(CACHE, KEYS);
+		cacheConfiguration.addCacheEventListenerFactory(new CacheConfiguration.CacheEventListenerFactoryConfiguration()
+				.className(JGroupsCacheReplicatorFactory.class.getName()).properties("replicateAsynchronously=false"));
+		configuration.addCache(cacheConfiguration);
+		return new CacheManager(configuration);
+	}
+
+	/**
+	 * Connects the members over a {@link RecordingTransport} and waits up to {@link #STATE_TIMEOUT} for member states.
+	 */
+	public static class InMemoryPeerProviderFactory extends CacheManagerPeerProviderFactory
+	{
+		@Override
+		public CacheManagerPeerProvider createCachePeerProvider(final CacheManager cacheManager, final Properties properties)
+		{
+			final RecordingTransport transport = new RecordingTransport(new InMemoryTransport(properties.getProperty("network")));
+			TRANSPORTS.put(cacheManager.getName(), transport);
+			final JGroupsCacheManagerPeerProvider peerProvider = new JGroupsCacheManagerPeerProvider(cacheManager, transport);
+			peerProvider.setChannelName(CLUSTER);
+			// the keys are sent in the order of the cache, not ranked
+			peerProvider.setBootstrapSettings(new BootstrapSettings(4, SEGMENTS_AHEAD, false, 0L, STATE_TIMEOUT));
+			return peerProvider;
+		}
+	}
+
+	/**
+	 * A member of the view that never answers.
+	 */
+	private static class SilentListener implements ReplicationTransport.Listener
+	{
+		@Override
+		public void receive(final Address src, final byte[] data, final int offset, final int length)
+		{
+			// nothing is answered
+		}
+
+		@Override
+		public void viewAccepted(final List<Address> members)
+		{
+			// the members are not checked
+		}
+	}
+
+	/**
+	 * Records the keys of the bootstrap responses in the order they arrive, and holds back the chunks sent while the
+	 * gate is closed.
+	 */
+	private static class RecordingTransport implements ReplicationTransport
+	{
+		// the estimates, member states and completions are smaller, the chunks of 100 elements larger
+		private static final int CHUNK_BYTES = 1000;
+
+		private final InMemoryTransport delegate;
+		private final List<Object> bootstrappedKeys = new CopyOnWriteArrayList<>();
+		private final CountDownLatch blockedSend = new CountDownLatch(1);
+		private volatile CountDownLatch gate = new CountDownLatch(0);
+
+		private RecordingTransport(final InMemoryTransport delegate)
+		{
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void connect(final String clusterName, final Listener listener) throws Exception
+		{
+			delegate.connect(clusterName, new Listener()
+			{
+				@Override
+				public void receive(final Address src, final byte[] data, final int offset, final int length)
+				{
+					record(data, offset, length);
+					listener.receive(src, data, offset, length);
+				}
+
+				@Override
+				public void viewAccepted(final List<Address> members)
+				{
+					listener.viewAccepted(members);
+				}
+			});
+		}
+
+		@Override
+		public void send(final Address dest, final byte[] data, final Message.Flag... flags) throws Exception
+		{
+			if (dest != null && data.length > CHUNK_BYTES)
+			{
+				blockedSend.countDown();
+				gate.await();
+			}
+			delegate.send(dest, data, flags);
+		}
+
+		private void record(final byte[] data, final int offset, final int length)
+		{
+			try
+			{
+				final Object object = Util.objectFromByteBuffer(data, offset, length);
+				final List<JGroupEventMessage> events = object instanceof List ? (List<JGroupEventMessage>) object
+						: Arrays.asList((JGroupEventMessage) object);
+				for (final JGroupEventMessage event : events)
+				{
+					if (event.getEvent() == JGroupEventMessage.BOOTSTRAP_RESPONSE)
+					{
+						bootstrappedKeys.add(event.getSerializableKey());
+					}
+				}
+			}
+			catch (final Exception e)
+			{
+				// not a list of events
+			}
+		}
+
+		private void closeGate()
+		{
+			gate = new CountDownLatch(1);
+		}
+
+		private void openGate()
+		{
+			gate.countDown();
+		}
+
+		private void awaitBlockedSend() throws InterruptedException
+		{
+			assertThat(blockedSend.await(10L, TimeUnit.SECONDS)).isTrue();
+		}
+
+		private List<Object> getBootstrappedKeys()
+		{
+			return new ArrayList<>(bootstrappedKeys);
+		}
+
+		@Override
+		public List<Address> getMembers()
+		{
+			return delegate.getMembers();
+		}
+
+		@Override
+		public Address getLocalAddress()
+		{
+			return delegate.getLocalAddress();
+		}
+
+		@Override
+		public boolean isConnected()
+		{
+			return delegate.isConnected();
+		}
+
+		@Override
+		public int getMaxMessageSize()
+		{
+			return delegate.getMaxMessageSize();
+		}
+
+		@Override
+		public void close()
+		{
+			openGate();
+			delegate.close();
+		}
+	}
+
+	/**
+	 * Counts the elements the bootstrap response encodes.
+	 */
+	private static class CountingCacheDecorator extends EhcacheDecoratorAdapter
+	{
+		private final AtomicInteger reads = new AtomicInteger();
+
+		private CountingCacheDecorator(final Ehcache underlyingCache)
+		{
+			super(underlyingCache);
+		}
+
+		@Override
+		public Element getQuiet(final Object key)
+		{
+			reads.incrementAndGet();
+			return super.getQuiet(key);
+		}
+
+		private void resetReads()
+		{
+			reads.set(0);
+		}
+
+		private int getReads()
+		{
+			return reads.get();
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.FactoryConfiguration;
+import net.sf.ehcache.distribution.CacheManagerPeerProvider;
+import net.sf.ehcache.distribution.CacheManagerPeerProviderFactory;
+
+import org.jgroups.Address;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link JGroupsPeerLookupManager} looking up keys missing locally in the caches of in-process
+ * members connected by an {@link InMemoryTransport}.
+ */
+@UnitTest
+public class JGroupsPeerLookupManagerTest
+{
+	private static final String CACHE = "product";
+	private static final String CLUSTER = "lookup";
+	private static final AtomicInteger NETWORKS = new AtomicInteger();
+	private static final long TIMEOUT = 500L;
+	private static final int MAX_KEYS = 3;
+
+	private String network;
+	private CacheManager requester;
+	private CacheManager holder;
+	private InMemoryTransport silentMember;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		network = "JGroupsPeerLookupManagerTest-" + NETWORKS.incrementAndGet();
+		requester = createMember("requester");
+		holder = createMember("holder");
+		for (int i = 0; i < 5; i++)
+		{
+			holder.getEhcache(CACHE).put(new Element("key" + i, "value" + i), true);
+		}
+		awaitMembers(1);
+	}
+
+	@After
+	public void tearDown()
+	{
+		requester.shutdown();
+		holder.shutdown();
+		if (silentMember != null)
+		{
+			silentMember.close();
+		}
+	}
+
+	@Test
+	public void shouldLookUpKeysInBatches()
+	{
+		final long sent = transport(requester).getSentMessages();
+		final long start = System.currentTimeMillis();
+
+		final Map<Object, Element> found = lookupManager().lookupAll(CACHE, keys(5));
+
+		// every batch completes once the only peer answered, nothing waits for the timeout
+		assertThat(System.currentTimeMillis() - start).isLessThan(TIMEOUT);
+		assertThat(found).hasSize(5);
+		assertThat(found.get("key4").getObjectValue()).isEqualTo("value4");
+		assertThat(transport(requester).getSentMessages() - sent).isEqualTo(2L);
+		assertThat(lookupManager().getTimeouts()).isZero();
+	}
+
+	@Test
+	public void shouldMissWithoutWaitingWhenNoPeerHasTheKey()
+	{
+		final long start = System.currentTimeMillis();
+
+		assertThat(lookupManager().lookup(CACHE, "missing")).isNull();
+
+		assertThat(System.currentTimeMillis() - start).isLessThan(TIMEOUT);
+		assertThat(lookupManager().getLookups()).isEqualTo(1L);
+		assertThat(lookupManager().getHits()).isZero();
+		assertThat(lookupManager().getTimeouts()).isZero();
+	}
+
+	@Test
+	public void shouldAnswerPartiallyWhenAPeerDoesNotAnswerInTime() throws Exception
+	{
+		silentMember = new InMemoryTransport(network);
+		silentMember.connect(CLUSTER, new SilentListener());
+		awaitMembers(2);
+		final long start = System.currentTimeMillis();
+
+		final Map<Object, Element> found = lookupManager().lookupAll(CACHE, keys(10));
+
+		// the four batches share one deadline, the first one completes with the keys of the holder
+		final long elapsed = System.currentTimeMillis() - start;
+		assertThat(elapsed).isGreaterThanOrEqualTo(TIMEOUT);
+		assertThat(elapsed).isLessThan(2 * TIMEOUT);
+		assertThat(found).hasSize(5);
+		assertThat(lookupManager().getTimeouts()).isEqualTo(3L);
+	}
+
+	private void awaitMembers(final int others) throws InterruptedException
+	{
+		final long start = System.currentTimeMillis();
+		while (provider(requester).getCachePeer().getOtherGroupMembers().size() < others
+				&& System.currentTimeMillis() - start < 5000L)
+		{
+			Thread.sleep(10L);
+		}
+		assertThat(provider(requester).getCachePeer().getOtherGroupMembers()).hasSize(others);
+	}
+
+	private JGroupsPeerLookupManager lookupManager()
+	{
+		return provider(requester).getPeerLookupManager();
+	}
+
+	private static List<Object> keys(final int count)
+	{
+		final List<Object> keys = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			keys.add("key" + i);
+		}
+		return keys;
+	}
+
+	private static InMemoryTransport transport(final CacheManager member)
+	{
+		return (InMemoryTransport) provider(member).getCachePeer().getTransport();
+	}
+
+	private static JGroupsCacheManagerPeerProvider provider(final CacheManager member)
+	{
+		return JGroupsCacheManagerPeerProvider.getCachePeerProvider(member);
+	}
+
+	private CacheManager createMember(final String name)
+	{
+		final Configuration configuration = new Configuration().name(network + "-" + name);
+		configuration.addCacheManagerPeerProviderFactory(new FactoryConfiguration()
+				.className(InMemoryPeerProviderFactory.class.getName()).properties("network=" + network).propertySeparator(";"));
+
+		final CacheConfiguration cacheConfiguration = new CacheConfiguration(CACHE, 1000);
+		cacheConfiguration.addCacheEventListenerFactory(new CacheConfiguration.CacheEventListenerFactoryConfiguration()
+				.className(JGroupsCacheReplicatorFactory.class.getName()).properties("replicateAsynchronously=false"));
+		configuration.addCache(cacheConfiguration);
+		return new CacheManager(configuration);
+	}
+
+	/**
+	 * Connects the members over an {@link InMemoryTransport} and asks every other member for up to {@link #MAX_KEYS} keys
+	 * at a time.
+	 */
+	public static class InMemoryPeerProviderFactory extends CacheManagerPeerProviderFactory
+	{
+		@Override
+		public CacheManagerPeerProvider createCachePeerProvider(final CacheManager cacheManager, final Properties properties)
+		{
+			final JGroupsCacheManagerPeerProvider peerProvider = new JGroupsCacheManagerPeerProvider(cacheManager,
+					new InMemoryTransport(properties.getProperty("network")));
+			peerProvider.setChannelName(CLUSTER);
+			peerProvider.setPeerLookupSettings(new PeerLookupSettings(TIMEOUT, 2, MAX_KEYS));
+			return peerProvider;
+		}
+	}
+
+	/**
+	 * A member of the view that never answers, like one that stopped responding.
+	 */
+	private static class SilentListener implements ReplicationTransport.Listener
+	{
+		@Override
+		public void receive(final Address src, final byte[] data, final int offset, final int length)
+		{
+			// nothing is answered
+		}
+
+		@Override
+		public void viewAccepted(final List<Address> members)
+		{
+			// the members are not checked
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.FactoryConfiguration;
+import net.sf.ehcache.distribution.CacheManagerPeerProvider;
+import net.sf.ehcache.distribution.CacheManagerPeerProviderFactory;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+
+import org.jgroups.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link JGroupsTuningManager} handing the settings pushed to an in-process cluster to the members
+ * joining it later.
+ */
+@UnitTest
+public class JGroupsTuningManagerTest
+{
+	private static final String CACHE = "product";
+	private static final String CLUSTER = "tuning";
+	private static final AtomicInteger NETWORKS = new AtomicInteger();
+
+	private String network;
+	private final List<CacheManager> members = new ArrayList<>();
+
+	@Before
+	public void setUp() throws Exception
+	{
+		network = "JGroupsTuningManagerTest-" + NETWORKS.incrementAndGet();
+		createMember("a");
+		createMember("b");
+		awaitMembers(members.get(0), 1);
+	}
+
+	@After
+	public void tearDown()
+	{
+		for (final CacheManager member : members)
+		{
+			member.shutdown();
+		}
+	}
+
+	@Test
+	public void shouldHandPushedTuningsToAMemberJoiningLater() throws Exception
+	{
+		tuningManager(members.get(0)).push(Arrays.asList(new ReplicationTuning(null, ReplicationTuning.ASYNC_MAX_EVENTS, "123")));
+		assertThat(awaitMaxEvents(members.get(1), 123)).isTrue();
+
+		final CacheManager joining = createMember("c");
+
+		assertThat(awaitMaxEvents(joining, 123)).isTrue();
+		awaitClusterTunings(joining, 1);
+	}
+
+	@Test
+	public void shouldNotHandLocalTuningsToAMemberJoiningLater() throws Exception
+	{
+		tuningManager(members.get(0)).apply(new ReplicationTuning(null, ReplicationTuning.ASYNC_MAX_EVENTS, "77"));
+
+		final CacheManager joining = createMember("c");
+		awaitMembers(joining, 2);
+
+		assertThat(awaitMaxEvents(joining, 77)).isFalse();
+		assertThat(tuningManager(members.get(0)).getClusterTunings()).isEmpty();
+	}
+
+	@Test
+	public void shouldKeepTheLatestPushOfASetting()
+	{
+		final JGroupsTuningManager tuningManager = tuningManager(members.get(1));
+		final ReplicationTuning later = new ReplicationTuning(null, ReplicationTuning.ASYNC_MAX_EVENTS, "200", 2000L);
+		final ReplicationTuning earlier = new ReplicationTuning(null, ReplicationTuning.ASYNC_MAX_EVENTS, "100", 1000L);
+
+		tuningManager.handleTuning(UUID.randomUUID(), message(later));
+		tuningManager.handleTuning(UUID.randomUUID(), message(earlier));
+
+		assertThat(provider(members.get(1)).getCachePeer().getAsyncFlushSettings().getMaxEvents()).isEqualTo(200);
+		assertThat(tuningManager.getClusterTunings()).containsExactly(later);
+	}
+
+	private static JGroupEventMessage message(final ReplicationTuning tuning)
+	{
+		return new JGroupEventMessage(JGroupsTuningManager.REPLICATION_TUNING, tuning, (Element) null, "");
+	}
+
+	private static boolean awaitMaxEvents(final CacheManager member, final int maxEvents) throws InterruptedException
+	{
+		final long start = System.currentTimeMillis();
+		while (provider(member).getCachePeer().getAsyncFlushSettings().getMaxEvents() != maxEvents
+				&& System.currentTimeMillis() - start < 1000L)
+		{
+			Thread.sleep(10L);
+		}
+		return provider(member).getCachePeer().getAsyncFlushSettings().getMaxEvents() == maxEvents;
+	}
+
+	private static void awaitClusterTunings(final CacheManager member, final int tunings) throws InterruptedException
+	{
+		final long start = System.currentTimeMillis();
+		while (tuningManager(member).getClusterTunings().size() < tunings && System.currentTimeMillis() - start < 1000L)
+		{
+			Thread.sleep(10L);
+		}
+		assertThat(tuningManager(member).getClusterTunings()).hasSize(tunings);
+	}
+
+	private static void awaitMembers(final CacheManager member, final int others) throws InterruptedException
+	{
+		final long start = System.currentTimeMillis();
+		while (provider(member).getCachePeer().getOtherGroupMembers().size() < others
+				&& System.currentTimeMillis() - start < 5000L)
+		{
+			Thread.sleep(10L);
+		}
+		assertThat(provider(member).getCachePeer().getOtherGroupMembers()).hasSize(others);
+	}
+
+	private static JGroupsTuningManager tuningManager(final CacheManager member)
+	{
+		return provider(member).getTuningManager();
+	}
+
+	private static JGroupsCacheManagerPeerProvider provider(final CacheManager member)
+	{
+		return JGroupsCacheManagerPeerProvider.getCachePeerProvider(member);
+	}
+
+	private CacheManager createMember(final String name)
+	{
+		final Configuration configuration = new Configuration().name(network + "-" + name);
+		configuration.addCacheManagerPeerProviderFactory(new FactoryConfiguration()
+				.className(InMemoryPeerProviderFactory.class.getName()).properties("network=" + network).propertySeparator(";"));
+
+		final CacheConfiguration cacheConfiguration = new CacheConfiguration(CACHE, 1000);
+		cacheConfiguration.addCacheEventListenerFactory(new CacheConfiguration.CacheEventListenerFactoryConfiguration()
+				.className(JGroupsCacheReplicatorFactory.class.getName()).properties("replicateAsynchronously=false"));
+		configuration.addCache(cacheConfiguration);
+		final CacheManager member = new CacheManager(configuration);
+		members.add(member);
+		return member;
+	}
+
+	/**
+	 * Connects the members over an {@link InMemoryTransport}.
+	 */
+	public static class InMemoryPeerProviderFactory extends CacheManagerPeerProviderFactory
+	{
+		@Override
+		public CacheManagerPeerProvider createCachePeerProvider(final CacheManager cacheManager, final Properties properties)
+		{
+			final JGroupsCacheManagerPeerProvider peerProvider = new JGroupsCacheManagerPeerProvider(cacheManager,
+					new InMemoryTransport(properties.getProperty("network")));
+			peerProvider.setChannelName(CLUSTER);
+			return peerProvider;
+		}
+	}
+}
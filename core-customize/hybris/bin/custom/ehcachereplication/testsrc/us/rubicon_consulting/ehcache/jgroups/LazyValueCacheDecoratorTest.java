@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link LazyValueCacheDecorator} reading and comparing values received in serialized form.
+ */
+@UnitTest
+public class LazyValueCacheDecoratorTest
+{
+	private CacheManager cacheManager;
+	private Ehcache cache;
+	private LazyValueCacheDecorator decorator;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		final Configuration configuration = new Configuration().name("LazyValueCacheDecoratorTest");
+		configuration.addCache(new CacheConfiguration("product", 100));
+		cacheManager = new CacheManager(configuration);
+		cache = cacheManager.getEhcache("product");
+		decorator = new LazyValueCacheDecorator(cache);
+		// a value received from another member
+		cache.put(SerializedValue.wrap(new Element("key", "value")), true);
+	}
+
+	@After
+	public void tearDown()
+	{
+		cacheManager.shutdown();
+	}
+
+	@Test
+	public void shouldResolveTheValueOnceOnFirstRead()
+	{
+		final Element element = decorator.get("key");
+
+		assertThat(element.getObjectValue()).isEqualTo("value");
+		assertThat(decorator.get("key")).isSameAs(element);
+		assertThat(cache.getQuiet("key").getObjectValue()).isInstanceOf(SerializedValue.class);
+	}
+
+	@Test
+	public void shouldReplaceTheResolvedValue()
+	{
+		assertThat(decorator.replace(new Element("key", "other"), new Element("key", "new"))).isFalse();
+		assertThat(decorator.get("key").getObjectValue()).isEqualTo("value");
+
+		assertThat(decorator.replace(decorator.get("key"), new Element("key", "new"))).isTrue();
+		assertThat(decorator.get("key").getObjectValue()).isEqualTo("new");
+	}
+
+	@Test
+	public void shouldRemoveTheResolvedValue()
+	{
+		assertThat(decorator.removeElement(new Element("key", "other"))).isFalse();
+		assertThat(decorator.get("key")).isNotNull();
+
+		assertThat(decorator.removeElement(new Element("key", "value"))).isTrue();
+		assertThat(decorator.get("key")).isNull();
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.PerformanceTest;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+
+import org.jgroups.util.Util;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Compares the allocation of the pooled {@link MessageEncoder} with {@link Util#objectToByteBuffer(Object)} when
+ * encoding batches of replication events.
+ */
+@PerformanceTest
+public class MessageEncoderPerformanceTest
+{
+	private static final Logger LOG = LoggerFactory.getLogger(MessageEncoderPerformanceTest.class);
+	private static final int BATCH_SIZE = 100;
+	private static final int WARMUP_ROUNDS = 2000;
+	private static final int ROUNDS = 10000;
+	// the object stream still allocates its handles and strings per event, but nothing in proportion to the buffer
+	private static final long MAX_OVERHEAD_PER_EVENT = 256L;
+
+	@Test
+	public void pooledEncoderShouldAllocateOnlyThePayloadCopy() throws Exception
+	{
+		final ArrayList<JGroupEventMessage> batch = createBatch();
+
+		measureLegacy(batch, WARMUP_ROUNDS);
+		measurePooled(batch, WARMUP_ROUNDS);
+		final long[] legacy = measureLegacy(batch, ROUNDS);
+		final long[] pooled = measurePooled(batch, ROUNDS);
+
+		final long events = (long) ROUNDS * BATCH_SIZE;
+		final long legacyOverhead = (legacy[0] - legacy[1]) / events;
+		final long pooledOverhead = (pooled[0] - pooled[1]) / events;
+		LOG.info("objectToByteBuffer: {} bytes/event allocated, {} bytes/event besides the payload", legacy[0] / events, legacyOverhead);
+		LOG.info("MessageEncoder:     {} bytes/event allocated, {} bytes/event besides the payload", pooled[0] / events, pooledOverhead);
+
+		assertThat(pooled[0]).isLessThan(legacy[0]);
+		assertThat(pooledOverhead).isLessThan(legacyOverhead);
+		assertThat(pooledOverhead).isLessThanOrEqualTo(MAX_OVERHEAD_PER_EVENT);
+	}
+
+	private long[] measureLegacy(final ArrayList<JGroupEventMessage> batch, final int rounds) throws Exception
+	{
+		long payload = 0;
+		final long start = allocatedBytes();
+		for (int i = 0; i < rounds; i++)
+		{
+			payload += Util.objectToByteBuffer(batch).length;
+		}
+		return new long[]
+		{ allocatedBytes() - start, payload };
+	}
+
+	private long[] measurePooled(final ArrayList<JGroupEventMessage> batch, final int rounds) throws Exception
+	{
+		long payload = 0;
+		final long start = allocatedBytes();
+		for (int i = 0; i < rounds; i++)
+		{
+			final MessageEncoder encoder = MessageEncoder.acquire();
+			encoder.encode(batch);
+			payload += encoder.toByteArray().length;
+			encoder.reset();
+			MessageEncoder.release(encoder);
+		}
+		return new long[]
+		{ allocatedBytes() - start, payload };
+	}
+
+	private ArrayList<JGroupEventMessage> createBatch()
+	{
+		final ArrayList<JGroupEventMessage> batch = new ArrayList<>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++)
+		{
+			final String key = "product-" + i;
+			batch.add(new JGroupEventMessage(0, key, new Element(key, "value of " + key), "productCache", 1000L));
+		}
+		return batch;
+	}
+
+	private static long allocatedBytes()
+	{
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
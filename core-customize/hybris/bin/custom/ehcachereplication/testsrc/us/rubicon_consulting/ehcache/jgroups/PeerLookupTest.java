@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+
+import net.sf.ehcache.Element;
+
+import org.jgroups.util.Util;
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link PeerLookup} requests and responses exchanged on a local cache miss.
+ */
+@UnitTest
+public class PeerLookupTest
+{
+	@Test
+	public void shouldSendKeysWithTheRequest() throws Exception
+	{
+		final PeerLookup request = transfer(new PeerLookup(7L, Arrays.<Serializable> asList("product-1", "product-2")));
+
+		assertThat(request.getId()).isEqualTo(7L);
+		assertThat(request.getKeys()).containsExactly("product-1", "product-2");
+		assertThat(request.getElements()).isNull();
+	}
+
+	@Test
+	public void shouldAnswerWithTheIdOfTheRequest() throws Exception
+	{
+		final PeerLookup request = new PeerLookup(7L, Collections.<Serializable> singletonList("product-1"));
+
+		final PeerLookup response = transfer(request.respond(Collections.singletonList(new Element("product-1", "value"))));
+
+		assertThat(response.getId()).isEqualTo(7L);
+		assertThat(response.getKeys()).isNull();
+		assertThat(response.getElements()).hasSize(1);
+		assertThat(response.getElements().get(0).getObjectValue()).isEqualTo("value");
+	}
+
+	@Test
+	public void shouldAnswerEmptyWhenNothingWasFound() throws Exception
+	{
+		final PeerLookup request = new PeerLookup(7L, Collections.<Serializable> singletonList("product-1"));
+
+		assertThat(transfer(request.respond(Collections.<Element> emptyList())).getElements()).isEmpty();
+	}
+
+	private PeerLookup transfer(final PeerLookup lookup) throws Exception
+	{
+		return (PeerLookup) Util.objectFromByteBuffer(Util.objectToByteBuffer(lookup));
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.PerformanceTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.FactoryConfiguration;
+import net.sf.ehcache.distribution.CacheManagerPeerProvider;
+import net.sf.ehcache.distribution.CacheManagerPeerProviderFactory;
+import net.sf.ehcache.distribution.jgroups.BootstrapRequest;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Measures how the replicated caches of several in-process members converge when the {@link FaultInjectingTransport}
+ * discards, delays and reorders their broadcasts. The writes and faults are drawn from fixed seeds and the writes are
+ * replicated synchronously from one thread, so every run of a scenario loses and reorders the same events, only the
+ * few broadcasts whose sending depends on the timing of the deliveries shift the faults of the later ones, and runs
+ * before and after a change of the {@link JGroupsCachePeer}, {@link JGroupsCacheReceiver} and
+ * {@link JGroupsBootstrapManager} can be compared. The faults are injected above the JGroups protocols, a lost broadcast
+ * is not retransmitted by NAKACK2 but repaired by anti-entropy, like over the platform cluster messaging. A custom
+ * scenario is run with the system properties <code>benchmark.loss</code>, <code>benchmark.delay</code> and
+ * <code>benchmark.reorder</code>.
+ */
+@PerformanceTest
+public class ReplicationConvergencePerformanceTest
+{
+	private static final Logger LOG = LoggerFactory.getLogger(ReplicationConvergencePerformanceTest.class);
+	private static final String CLUSTER = "benchmark";
+	private static final String CACHE = "product";
+	private static final int MEMBERS = 4;
+	private static final int KEYS = 2000;
+	private static final int WRITES = 20000;
+	private static final int JOINS = 5;
+	private static final long SEED = 4711L;
+	private static final long CONVERGENCE_TIMEOUT = 30000L;
+	private static final long BOOTSTRAP_TIMEOUT = 10000L;
+	private static final long POLL_INTERVAL = 100L;
+
+	@Test
+	public void measureConvergence() throws Exception
+	{
+		final List<Scenario> scenarios = new ArrayList<>();
+		scenarios.add(new Scenario("reliable", 0.0, 0L, 0.0));
+		scenarios.add(new Scenario("discard", 0.05, 0L, 0.0));
+		scenarios.add(new Scenario("delay", 0.0, 20L, 0.0));
+		scenarios.add(new Scenario("reorder", 0.0, 5L, 0.2));
+		scenarios.add(new Scenario("lossy", 0.05, 10L, 0.1));
+		if (System.getProperty("benchmark.loss") != null || System.getProperty("benchmark.delay") != null
+				|| System.getProperty("benchmark.reorder") != null)
+		{
+			scenarios.add(new Scenario("custom", Double.parseDouble(System.getProperty("benchmark.loss", "0")),
+					Long.getLong("benchmark.delay", 0L).longValue(), Double.parseDouble(System.getProperty("benchmark.reorder", "0"))));
+		}
+
+		for (final Scenario scenario : scenarios)
+		{
+			final Result result = run(scenario);
+			LOG.info("{}: {} broadcasts discarded, {} reordered, converged={} in {}ms, {} of {} keys divergent, {} of {} bootstraps complete",
+					scenario, result.discarded, result.reordered, result.converged, result.convergenceTime, result.divergentKeys, KEYS,
+					result.bootstraps, JOINS);
+			assertThat(result.divergentKeys).as(scenario.name).isZero();
+			assertThat(result.bootstraps).as(scenario.name).isEqualTo(JOINS);
+		}
+	}
+
+	private Result run(final Scenario scenario) throws Exception
+	{
+		final Result result = new Result();
+		final List<CacheManager> members = new ArrayList<>();
+		try
+		{
+			for (int i = 0; i < MEMBERS; i++)
+			{
+				members.add(createMember(scenario, i));
+			}
+
+			write(members);
+			for (final CacheManager member : members)
+			{
+				final FaultInjectingTransport transport = (FaultInjectingTransport) JGroupsCacheManagerPeerProvider
+						.getCachePeerProvider(member).getCachePeer().getTransport();
+				result.discarded += transport.getDiscarded();
+				result.reordered += transport.getReordered();
+			}
+
+			final long start = System.currentTimeMillis();
+			result.divergentKeys = countDivergentKeys(members);
+			while (result.divergentKeys != 0 && System.currentTimeMillis() - start < CONVERGENCE_TIMEOUT)
+			{
+				Thread.sleep(POLL_INTERVAL);
+				result.divergentKeys = countDivergentKeys(members);
+			}
+			result.converged = result.divergentKeys == 0;
+			result.convergenceTime = System.currentTimeMillis() - start;
+
+			for (int i = 0; i < JOINS; i++)
+			{
+				final CacheManager joining = createMember(scenario, MEMBERS + i);
+				members.add(joining);
+				if (bootstrap(joining, members.get(0).getEhcache(CACHE).getSize()))
+				{
+					result.bootstraps++;
+				}
+			}
+		}
+		finally
+		{
+			for (final CacheManager member : members)
+			{
+				member.shutdown();
+			}
+		}
+		return result;
+	}
+
+	private CacheManager createMember(final Scenario scenario, final int index)
+	{
+		final Configuration configuration = new Configuration().name(scenario.name + "-" + index);
+		configuration.addCacheManagerPeerProviderFactory(new FactoryConfiguration()
+				.className(FaultInjectingPeerProviderFactory.class.getName())
+				.properties("network=ReplicationConvergencePerformanceTest-" + scenario.name + ";loss=" + scenario.loss + ";delay="
+						+ scenario.delay + ";reorder=" + scenario.reorder + ";seed=" + (SEED + index))
+				.propertySeparator(";"));
+
+		final CacheConfiguration cacheConfiguration = new CacheConfiguration(CACHE, KEYS);
+		cacheConfiguration.addCacheEventListenerFactory(new CacheConfiguration.CacheEventListenerFactoryConfiguration()
+				.className(JGroupsCacheReplicatorFactory.class.getName()).properties("replicateAsynchronously=false"));
+		configuration.addCache(cacheConfiguration);
+		return new CacheManager(configuration);
+	}
+
+	private void write(final List<CacheManager> members)
+	{
+		final Random random = new Random(SEED);
+		for (int i = 0; i < WRITES; i++)
+		{
+			final Ehcache cache = members.get(i % members.size()).getEhcache(CACHE);
+			final String key = "key" + random.nextInt(KEYS);
+			if (i % 10 == 9)
+			{
+				cache.remove(key);
+			}
+			else
+			{
+				cache.put(new Element(key, "value" + i));
+			}
+		}
+	}
+
+	private int countDivergentKeys(final List<CacheManager> members)
+	{
+		int divergent = 0;
+		for (int i = 0; i < KEYS; i++)
+		{
+			final String key = "key" + i;
+			final Object expected = valueOf(members.get(0).getEhcache(CACHE).getQuiet(key));
+			for (int m = 1; m < members.size(); m++)
+			{
+				final Object actual = valueOf(members.get(m).getEhcache(CACHE).getQuiet(key));
+				if (expected == null ? actual != null : !expected.equals(actual))
+				{
+					divergent++;
+					break;
+				}
+			}
+		}
+		return divergent;
+	}
+
+	private static Object valueOf(final Element element)
+	{
+		return element == null ? null : element.getObjectValue();
+	}
+
+	private boolean bootstrap(final CacheManager joining, final int expectedSize) throws InterruptedException
+	{
+		final Ehcache cache = joining.getEhcache(CACHE);
+		final JGroupsBootstrapManager bootstrapManager = JGroupsCacheManagerPeerProvider.getCachePeerProvider(joining)
+				.getBootstrapManager();
+		bootstrapManager.handleBootstrapRequest(new BootstrapRequest(cache, true, 5000000));
+
+		final long start = System.currentTimeMillis();
+		BootstrapProgress progress = bootstrapManager.getBootstrapProgress(CACHE);
+		while (!progress.isDone() && System.currentTimeMillis() - start < BOOTSTRAP_TIMEOUT)
+		{
+			Thread.sleep(POLL_INTERVAL);
+		}
+		LOG.debug("Bootstrap of {}: {} with {} of {} elements", joining.getName(), progress, cache.getSize(), expectedSize);
+		return progress.getState() == BootstrapProgress.State.COMPLETE && cache.getSize() == expectedSize;
+	}
+
+	private static class Scenario
+	{
+		private final String name;
+		private final double loss;
+		private final long delay;
+		private final double reorder;
+
+		private Scenario(final String name, final double loss, final long delay, final double reorder)
+		{
+			this.name = name;
+			this.loss = loss;
+			this.delay = delay;
+			this.reorder = reorder;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name + " [loss=" + loss + ", delay=" + delay + "ms, reorder=" + reorder + "]";
+		}
+	}
+
+	private static class Result
+	{
+		private boolean converged;
+		private long convergenceTime;
+		private int divergentKeys;
+		private int bootstraps;
+		private long discarded;
+		private long reordered;
+	}
+
+	/**
+	 * Connects the members over a {@link FaultInjectingTransport} and repairs lost events with anti-entropy, the way a
+	 * lossy production cluster should be configured.
+	 */
+	public static class FaultInjectingPeerProviderFactory extends CacheManagerPeerProviderFactory
+	{
+		@Override
+		public CacheManagerPeerProvider createCachePeerProvider(final CacheManager cacheManager, final Properties properties)
+		{
+			final FaultInjectingTransport transport = new FaultInjectingTransport(
+					new InMemoryTransport(properties.getProperty("network")), Double.parseDouble(properties.getProperty("loss")),
+					Long.parseLong(properties.getProperty("delay")), Double.parseDouble(properties.getProperty("reorder")),
+					Long.parseLong(properties.getProperty("seed")));
+			final JGroupsCacheManagerPeerProvider peerProvider = new JGroupsCacheManagerPeerProvider(cacheManager, transport);
+			peerProvider.setChannelName(CLUSTER);
+			peerProvider.setAntiEntropySettings(new AntiEntropySettings(true, 1000L, 64, 1000, 1000L, 50, 0L));
+			return peerProvider;
+		}
+	}
+}
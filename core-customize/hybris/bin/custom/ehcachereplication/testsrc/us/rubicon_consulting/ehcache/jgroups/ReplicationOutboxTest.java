@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link ReplicationOutbox} keeping replication events while the transport is disconnected.
+ */
+@UnitTest
+public class ReplicationOutboxTest
+{
+	private static final int SIZE = 65536;
+	private static final long MAX_AGE = 60000L;
+
+	private File file;
+	private ReplicationOutbox outbox;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		file = File.createTempFile("ReplicationOutboxTest", ".outbox");
+		outbox = new ReplicationOutbox(file, SIZE, MAX_AGE);
+	}
+
+	@After
+	public void tearDown()
+	{
+		outbox.close();
+		file.delete();
+	}
+
+	@Test
+	public void shouldReplayTheLastEventOfAKey() throws IOException
+	{
+		outbox.append(encode(put("a")));
+		outbox.append(encode(put("b")));
+		outbox.append(encode(remove("a")));
+
+		final List<JGroupEventMessage> events = outbox.drain();
+
+		assertThat(events).hasSize(2);
+		assertThat(events.get(0).getEvent()).isEqualTo(0);
+		assertThat(events.get(0).getSerializableKey()).isEqualTo("b");
+		assertThat(events.get(1).getEvent()).isEqualTo(1);
+		assertThat(events.get(1).getSerializableKey()).isEqualTo("a");
+		assertThat(outbox.hasPending()).isTrue();
+
+		outbox.replayed(Collections.<JGroupEventMessage> emptyList());
+		assertThat(outbox.hasPending()).isFalse();
+	}
+
+	@Test
+	public void shouldKeepEventsAppendedDuringTheReplayBehindTheUnsentOnes() throws IOException
+	{
+		outbox.append(encode(put("a")));
+		outbox.append(encode(put("b")));
+
+		final List<JGroupEventMessage> events = outbox.drain();
+		outbox.append(encode(remove("c")));
+		outbox.replayed(events.subList(1, 2));
+
+		final List<JGroupEventMessage> remaining = outbox.drain();
+		assertThat(remaining).hasSize(2);
+		assertThat(remaining.get(0).getSerializableKey()).isEqualTo("b");
+		assertThat(remaining.get(1).getSerializableKey()).isEqualTo("c");
+	}
+
+	@Test
+	public void shouldDropEventsOvertakenByARemoveAll() throws IOException
+	{
+		outbox.append(encode(put("a")));
+		outbox.append(encode(new JGroupEventMessage(3, null, null, "cache")));
+		outbox.append(encode(put("b")));
+
+		final List<JGroupEventMessage> events = outbox.drain();
+
+		assertThat(events).hasSize(2);
+		assertThat(events.get(0).getEvent()).isEqualTo(3);
+		assertThat(events.get(1).getSerializableKey()).isEqualTo("b");
+	}
+
+	@Test
+	public void shouldReplayAgedPutsAsRemovals() throws IOException
+	{
+		final long now = System.currentTimeMillis();
+		outbox.append(encode(put("a")), now - MAX_AGE - 1L);
+		outbox.append(encode(put("b")), now);
+
+		final List<JGroupEventMessage> events = outbox.drain(now);
+
+		assertThat(events).hasSize(2);
+		assertThat(events.get(0).getEvent()).isEqualTo(1);
+		assertThat(events.get(0).getSerializableKey()).isEqualTo("a");
+		assertThat(events.get(1).getEvent()).isEqualTo(0);
+	}
+
+	@Test
+	public void shouldReplayACoalescedDeltaAsACopy() throws IOException
+	{
+		final byte[] base = new byte[8192];
+		new Random(42L).nextBytes(base);
+		final byte[] update = base.clone();
+		update[100]++;
+		final ValueDeltas deltas = new ValueDeltas(1024, 10, SIZE);
+		deltas.encode("a", base);
+		final ValueDelta delta = deltas.encode("a", update);
+
+		outbox.append(encode(new JGroupEventMessage(0, "a", new Element("a", SerializedValue.fromBytes(base)), "cache")));
+		outbox.append(encode(new JGroupEventMessage(JGroupsCacheReplicator.VALUE_DELTA, "a", new Element("a", delta), "cache")));
+		outbox.append(encode(new JGroupEventMessage(JGroupsCacheReplicator.VALUE_DELTA, "b", new Element("b", delta), "cache")));
+		outbox.append(encode(new JGroupEventMessage(JGroupsCacheReplicator.VALUE_DELTA, "b", new Element("b", delta), "cache")));
+
+		final List<JGroupEventMessage> events = outbox.drain();
+
+		assertThat(events).hasSize(2);
+		assertThat(events.get(0).getEvent()).isEqualTo(0);
+		assertThat(((SerializedValue) events.get(0).getElement().getObjectValue()).bytes()).isEqualTo(update);
+		assertThat(events.get(1).getEvent()).isEqualTo(1);
+		assertThat(events.get(1).getSerializableKey()).isEqualTo("b");
+	}
+
+	@Test
+	public void shouldRecoverEventsAfterARestart() throws IOException
+	{
+		outbox.append(encode(put("a")));
+		outbox.close();
+
+		outbox = new ReplicationOutbox(file, SIZE, MAX_AGE);
+
+		assertThat(outbox.getPending()).isEqualTo(1);
+		assertThat(outbox.drain()).hasSize(1);
+	}
+
+	@Test
+	public void shouldRecoverTheRecordsThatFitIntoASmallerOutbox() throws IOException
+	{
+		final byte[] data = encode(put("a"));
+		outbox.append(data);
+		outbox.append(encode(put("b")));
+		outbox.close();
+
+		outbox = new ReplicationOutbox(file, 8 + 12 + data.length + 4, MAX_AGE);
+
+		assertThat(outbox.getPending()).isEqualTo(1);
+		assertThat(outbox.drain()).hasSize(1);
+	}
+
+	@Test
+	public void shouldCompactWhenFull() throws IOException
+	{
+		final byte[] data = encode(put("a"));
+		final int records = SIZE / data.length + 1;
+
+		for (int i = 0; i < records; i++)
+		{
+			assertThat(outbox.append(data)).isTrue();
+		}
+
+		assertThat(outbox.getPending()).isLessThan(records);
+		assertThat(outbox.drain()).hasSize(1);
+	}
+
+	private static JGroupEventMessage put(final String key)
+	{
+		return new JGroupEventMessage(0, key, new Element(key, "value"), "cache");
+	}
+
+	private static JGroupEventMessage remove(final String key)
+	{
+		return new JGroupEventMessage(1, key, null, "cache");
+	}
+
+	private static byte[] encode(final JGroupEventMessage event) throws IOException
+	{
+		return JGroupsCachePeer.encode(Collections.singletonList(event));
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.Properties;
+
+import net.sf.ehcache.Element;
+
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the per cache {@link ReplicationPolicy}.
+ */
+@UnitTest
+public class ReplicationPolicyTest
+{
+	@Test
+	public void shouldReplicateAllWithoutPolicyProperties()
+	{
+		final ReplicationPolicy policy = ReplicationPolicy.fromProperties(new Properties());
+
+		assertThat(policy).isSameAs(ReplicationPolicy.REPLICATE_ALL);
+		assertThat(policy.decide(new Element("key", "value"))).isEqualTo(ReplicationPolicy.Decision.COPY);
+	}
+
+	@Test
+	public void shouldSkipExcludedKeys()
+	{
+		final Properties properties = new Properties();
+		properties.setProperty("excludeKeys", "session-.*");
+		final ReplicationPolicy policy = ReplicationPolicy.fromProperties(properties);
+
+		assertThat(policy.decide(new Element("session-4711", "value"))).isEqualTo(ReplicationPolicy.Decision.SKIP);
+		assertThat(policy.decide(new Element("product-4711", "value"))).isEqualTo(ReplicationPolicy.Decision.COPY);
+	}
+
+	@Test
+	public void shouldSkipElementsExpiringWithinReplicationLag()
+	{
+		final Properties properties = new Properties();
+		properties.setProperty("replicationLag", "5000");
+		final ReplicationPolicy policy = ReplicationPolicy.fromProperties(properties);
+
+		assertThat(policy.decide(new Element("key", "value", Boolean.FALSE, Integer.valueOf(0), Integer.valueOf(2))))
+				.isEqualTo(ReplicationPolicy.Decision.SKIP);
+		assertThat(policy.decide(new Element("key", "value", Boolean.FALSE, Integer.valueOf(0), Integer.valueOf(60))))
+				.isEqualTo(ReplicationPolicy.Decision.COPY);
+	}
+
+	@Test
+	public void shouldInvalidateElementsExceedingMaxCopySize()
+	{
+		final Properties properties = new Properties();
+		properties.setProperty("maxCopySize", "1024");
+		final ReplicationPolicy policy = ReplicationPolicy.fromProperties(properties);
+
+		assertThat(policy.decide(new Element("key", new byte[4096]))).isEqualTo(ReplicationPolicy.Decision.INVALIDATE);
+		assertThat(policy.decide(new Element("key", "value"))).isEqualTo(ReplicationPolicy.Decision.COPY);
+	}
+
+	@Test
+	public void shouldMeasurePreSerializedValuesByTheirBytes() throws Exception
+	{
+		final Properties properties = new Properties();
+		properties.setProperty("maxCopySize", "1024");
+		final ReplicationPolicy policy = ReplicationPolicy.fromProperties(properties);
+
+		assertThat(policy.decide(SerializedValue.wrap(new Element("key", new byte[4096]))))
+				.isEqualTo(ReplicationPolicy.Decision.INVALIDATE);
+		assertThat(policy.decide(SerializedValue.wrap(new Element("key", new byte[512])))).isEqualTo(ReplicationPolicy.Decision.COPY);
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+
+import org.jgroups.util.Util;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link ReplicationTrace} capturing received replication traffic for a replay.
+ */
+@UnitTest
+public class ReplicationTraceTest
+{
+	private File file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		file = File.createTempFile("ReplicationTraceTest", ".trace");
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	@Test
+	public void shouldReadTheRecordedEvents() throws Exception
+	{
+		final ReplicationTrace trace = new ReplicationTrace(file, false, Long.MAX_VALUE);
+		final long time = System.currentTimeMillis();
+		final List<JGroupEventMessage> batch = Arrays.asList(put("product", "a"), remove("category", "b"));
+		final int length = JGroupsCachePeer.encode(batch).length;
+		trace.record(time, 42, batch, length);
+		trace.record(time + 10L, 43, Collections.singletonList(put("product", "c")), 100);
+		trace.close();
+
+		try (final ReplicationTrace.Reader reader = new ReplicationTrace.Reader(file))
+		{
+			final ReplicationTrace.Event first = reader.next();
+			assertThat(first.getCacheName()).isEqualTo("product");
+			assertThat(first.getEvent()).isEqualTo(0);
+			assertThat(first.getKeyHash()).isEqualTo("a".hashCode());
+			assertThat(first.getSrcHash()).isEqualTo(42);
+			assertThat(first.getPayload()).isNull();
+
+			final ReplicationTrace.Event second = reader.next();
+			assertThat(second.getCacheName()).isEqualTo("category");
+			assertThat(second.getEvent()).isEqualTo(1);
+			assertThat(second.getTime()).isEqualTo(first.getTime());
+			assertThat(first.getSize() + second.getSize()).isEqualTo(length);
+
+			final ReplicationTrace.Event third = reader.next();
+			assertThat(third.getCacheName()).isEqualTo("product");
+			assertThat(third.getTime() - first.getTime()).isEqualTo(10L);
+			assertThat(third.getSize()).isEqualTo(100);
+
+			assertThat(reader.next()).isNull();
+		}
+	}
+
+	@Test
+	public void shouldRecordPayloads() throws Exception
+	{
+		final ReplicationTrace trace = new ReplicationTrace(file, true, Long.MAX_VALUE);
+		trace.record(System.currentTimeMillis(), 42, Collections.singletonList(put("product", "a")), 100);
+		trace.close();
+
+		try (final ReplicationTrace.Reader reader = new ReplicationTrace.Reader(file))
+		{
+			assertThat(reader.isPayloads()).isTrue();
+			final JGroupEventMessage message = (JGroupEventMessage) Util.objectFromByteBuffer(reader.next().getPayload());
+			assertThat(message.getSerializableKey()).isEqualTo("a");
+			assertThat(message.getElement().getObjectValue()).isEqualTo("value");
+		}
+	}
+
+	@Test
+	public void shouldStopAtTheMaximumSize() throws Exception
+	{
+		final ReplicationTrace trace = new ReplicationTrace(file, true, 1024L);
+		for (int i = 0; i < 100; i++)
+		{
+			trace.record(System.currentTimeMillis(), 42, Collections.singletonList(put("product", "key" + i)), 100);
+		}
+		trace.close();
+
+		assertThat(trace.isClosed()).isTrue();
+		assertThat(file.length()).isLessThan(2048L);
+		try (final ReplicationTrace.Reader reader = new ReplicationTrace.Reader(file))
+		{
+			int events = 0;
+			while (reader.next() != null)
+			{
+				events++;
+			}
+			assertThat(events).isLessThan(100);
+		}
+	}
+
+	@Test
+	public void shouldSizeEventsFromTheReceivedBuffer() throws Exception
+	{
+		final SerializedValue value = SerializedValue.of(new byte[1000]);
+		final JGroupEventMessage copy = new JGroupEventMessage(0, "a", new Element("a", value), "product");
+		final int[] sizes = ReplicationTrace.sizesOf(Arrays.asList(copy, remove("product", "b")), 1200);
+
+		// the rest of the buffer is shared evenly, the first event gets the odd byte
+		final int remaining = 1200 - value.getSerializedLength();
+		assertThat(sizes[0]).isEqualTo(value.getSerializedLength() + remaining - remaining / 2);
+		assertThat(sizes[1]).isEqualTo(remaining / 2);
+		assertThat(sizes[0] + sizes[1]).isEqualTo(1200);
+	}
+
+	private static JGroupEventMessage put(final String cacheName, final String key)
+	{
+		return new JGroupEventMessage(0, key, new Element(key, "value"), cacheName);
+	}
+
+	private static JGroupEventMessage remove(final String cacheName, final String key)
+	{
+		return new JGroupEventMessage(1, key, null, cacheName);
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.ReceiverAdapter;
+import org.jgroups.View;
+import org.jgroups.ViewId;
+import org.jgroups.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link SharedChannel} showing each fork only the members of the shared channel running it.
+ */
+@UnitTest
+public class SharedChannelTest
+{
+	private final Map<Address, SharedChannel> network = new ConcurrentHashMap<>();
+	private SharedChannel channelA;
+	private SharedChannel channelB;
+	private SharedChannel channelC;
+	private Address addressA;
+	private Address addressB;
+	private Address addressC;
+	private long viewId;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		channelA = createChannel();
+		channelB = createChannel();
+		channelC = createChannel();
+		addressA = channelA.getChannel().getAddress();
+		addressB = channelB.getChannel().getAddress();
+		addressC = channelC.getChannel().getAddress();
+		installView(addressA, addressB, addressC);
+	}
+
+	@Test
+	public void shouldOnlyShowMembersRunningTheFork()
+	{
+		final CollectingReceiver productA = register(channelA, "product");
+		register(channelB, "product");
+		final CollectingReceiver otherC = register(channelC, "other");
+
+		assertThat(productA.getMembers()).containsExactly(addressA, addressB);
+		assertThat(otherC.getMembers()).containsExactly(addressC);
+	}
+
+	@Test
+	public void shouldAddAMemberStartingTheFork()
+	{
+		final CollectingReceiver productA = register(channelA, "product");
+		register(channelB, "product");
+
+		final CollectingReceiver productC = register(channelC, "product");
+
+		assertThat(productA.getMembers()).containsExactly(addressA, addressB, addressC);
+		assertThat(productC.getMembers()).containsExactly(addressA, addressB, addressC);
+	}
+
+	@Test
+	public void shouldRemoveAMemberStoppingTheForkOrLeaving()
+	{
+		final CollectingReceiver productA = register(channelA, "product");
+		final CollectingReceiver productB = register(channelB, "product");
+		register(channelB, "other");
+		register(channelC, "product");
+
+		channelB.release("product", productB);
+		assertThat(productA.getMembers()).containsExactly(addressA, addressC);
+
+		installView(addressA, addressB);
+		assertThat(productA.getMembers()).containsExactly(addressA);
+	}
+
+	@Test
+	public void shouldDeliverAViewOnlyWhenTheMembersOfTheForkChange()
+	{
+		final CollectingReceiver productA = register(channelA, "product");
+		register(channelB, "product");
+		final int views = productA.getViews();
+
+		register(channelC, "other");
+
+		assertThat(productA.getViews()).isEqualTo(views);
+	}
+
+	private CollectingReceiver register(final SharedChannel channel, final String fork)
+	{
+		final CollectingReceiver receiver = new CollectingReceiver();
+		channel.register(fork, receiver);
+		return receiver;
+	}
+
+	private void installView(final Address... members)
+	{
+		final View view = new View(new ViewId(members[0], ++viewId), new ArrayList<>(Arrays.asList(members)));
+		for (final Address member : members)
+		{
+			network.get(member).viewAccepted(view);
+		}
+	}
+
+	private SharedChannel createChannel() throws Exception
+	{
+		final LoopbackChannel channel = new LoopbackChannel();
+		final SharedChannel shared = new SharedChannel("shared", channel);
+		network.put(channel.getAddress(), shared);
+		return shared;
+	}
+
+	/**
+	 * Delivers the messages of a member right away to the other members of the test network.
+	 */
+	private class LoopbackChannel extends JChannel
+	{
+		private final Address address = UUID.randomUUID();
+
+		private LoopbackChannel() throws Exception
+		{
+			super(false);
+		}
+
+		@Override
+		public Address getAddress()
+		{
+			return address;
+		}
+
+		@Override
+		public String getClusterName()
+		{
+			return "shared";
+		}
+
+		@Override
+		public void send(final Message msg)
+		{
+			msg.setSrc(address);
+			for (final Map.Entry<Address, SharedChannel> member : network.entrySet())
+			{
+				if (!member.getKey().equals(address) && (msg.getDest() == null || msg.getDest().equals(member.getKey())))
+				{
+					member.getValue().receive(msg);
+				}
+			}
+		}
+	}
+
+	private static class CollectingReceiver extends ReceiverAdapter
+	{
+		private volatile List<Address> members = Collections.emptyList();
+		private volatile int views;
+
+		@Override
+		public void viewAccepted(final View view)
+		{
+			members = view.getMembers();
+			views++;
+		}
+
+		private List<Address> getMembers()
+		{
+			return members;
+		}
+
+		private int getViews()
+		{
+			return views;
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.jgroups.JGroupEventMessage;
+
+import org.jgroups.Address;
+import org.jgroups.util.Util;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link SiteBridgeTransport} relaying invalidations between two in-process sites joined by a
+ * {@link DelayedTransport} link.
+ */
+@UnitTest
+public class SiteBridgeTransportTest
+{
+	private static final long LINK_DELAY = 50L;
+	private static final long LINGER = 100L;
+
+	private final SiteBridgeTransport masterA = bridge("a");
+	private final InMemoryTransport memberA = new InMemoryTransport("SiteBridgeTransportTest-a");
+	private final SiteBridgeTransport masterB = bridge("b");
+	private final InMemoryTransport memberB = new InMemoryTransport("SiteBridgeTransportTest-b");
+	private final CollectingListener listenerB = new CollectingListener();
+
+	@Before
+	public void setUp() throws Exception
+	{
+		masterA.connect("cluster", new CollectingListener());
+		memberA.connect("cluster", new CollectingListener());
+		masterB.connect("cluster", new CollectingListener());
+		memberB.connect("cluster", listenerB);
+	}
+
+	@After
+	public void tearDown()
+	{
+		memberA.close();
+		masterA.close();
+		memberB.close();
+		masterB.close();
+	}
+
+	@Test
+	public void shouldInvalidatePutsOnTheOtherSite() throws Exception
+	{
+		final long start = System.currentTimeMillis();
+
+		memberA.send(null, JGroupsCachePeer.encode(Collections.singletonList(put("product", "p1"))));
+
+		final List<JGroupEventMessage> events = listenerB.poll(5000);
+		assertThat(events).hasSize(1);
+		assertThat(events.get(0).getEvent()).isEqualTo(1);
+		assertThat(events.get(0).getSerializableKey()).isEqualTo("p1");
+		assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(LINK_DELAY);
+	}
+
+	@Test
+	public void shouldCoalesceTheInvalidationsOfAKey() throws Exception
+	{
+		memberA.send(null, JGroupsCachePeer.encode(Arrays.asList(put("product", "p1"), put("product", "p2"), put("product", "p1"))));
+
+		final List<JGroupEventMessage> events = listenerB.poll(5000);
+		assertThat(events).hasSize(2);
+		assertThat(events.get(0).getSerializableKey()).isEqualTo("p2");
+		assertThat(events.get(1).getSerializableKey()).isEqualTo("p1");
+	}
+
+	@Test
+	public void shouldOnlyRelayBridgedCaches() throws Exception
+	{
+		memberA.send(null, JGroupsCachePeer.encode(Collections.singletonList(put("category", "c1"))));
+
+		assertThat(listenerB.poll(LINGER + LINK_DELAY + 500L)).isNull();
+	}
+
+	@Test
+	public void shouldNotRelayInvalidationsBackToTheirSite() throws Exception
+	{
+		assertThat(masterA.isSiteMaster()).isTrue();
+		assertThat(masterB.isSiteMaster()).isTrue();
+
+		memberB.send(null, JGroupsCachePeer.encode(Collections.singletonList(put("product", "p1"))));
+
+		// the site master of b relays to a, nothing comes back to b
+		assertThat(listenerB.poll(LINGER + 2 * LINK_DELAY + 500L)).isNull();
+	}
+
+	@Test
+	public void shouldKeepTheBatchUntilTheLinkIsUp() throws Exception
+	{
+		final AtomicInteger attempts = new AtomicInteger();
+		final BridgeSettings settings = new BridgeSettings(true, "c", "bridge", new HashSet<>(Collections.singletonList("product")),
+				LINGER, 1000, true);
+		final SiteBridgeTransport masterC = new SiteBridgeTransport(new InMemoryTransport("SiteBridgeTransportTest-c"),
+				new DelayedTransport(new InMemoryTransport("SiteBridgeTransportTest-link"), LINK_DELAY)
+				{
+					@Override
+					public void connect(final String clusterName, final ReplicationTransport.Listener listener) throws Exception
+					{
+						// the link only comes up on the third attempt
+						if (attempts.incrementAndGet() < 3)
+						{
+							throw new IllegalStateException("site bridge unreachable");
+						}
+						super.connect(clusterName, listener);
+					}
+				}, settings);
+		final InMemoryTransport memberC = new InMemoryTransport("SiteBridgeTransportTest-c");
+		try
+		{
+			masterC.connect("cluster", new CollectingListener());
+			memberC.connect("cluster", new CollectingListener());
+
+			memberC.send(null, JGroupsCachePeer.encode(Collections.singletonList(put("product", "p1"))));
+
+			final List<JGroupEventMessage> events = listenerB.poll(5000);
+			assertThat(events).hasSize(1);
+			assertThat(events.get(0).getSerializableKey()).isEqualTo("p1");
+			assertThat(attempts.get()).isEqualTo(3);
+		}
+		finally
+		{
+			memberC.close();
+			masterC.close();
+		}
+	}
+
+	private static SiteBridgeTransport bridge(final String site)
+	{
+		final BridgeSettings settings = new BridgeSettings(true, site, "bridge", new HashSet<>(Collections.singletonList("product")),
+				LINGER, 1000, true);
+		return new SiteBridgeTransport(new InMemoryTransport("SiteBridgeTransportTest-" + site),
+				new DelayedTransport(new InMemoryTransport("SiteBridgeTransportTest-link"), LINK_DELAY), settings);
+	}
+
+	private static JGroupEventMessage put(final String cacheName, final String key)
+	{
+		return new JGroupEventMessage(0, key, new Element(key, "value"), cacheName);
+	}
+
+	private static class CollectingListener implements ReplicationTransport.Listener
+	{
+		private final BlockingQueue<List<JGroupEventMessage>> batches = new LinkedBlockingQueue<>();
+
+		@Override
+		public void receive(final Address src, final byte[] data, final int offset, final int length)
+		{
+			try
+			{
+				final Object object = Util.objectFromByteBuffer(data, offset, length);
+				batches.add(object instanceof List ? new ArrayList<>((List<JGroupEventMessage>) object)
+						: Collections.singletonList((JGroupEventMessage) object));
+			}
+			catch (final Exception e)
+			{
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public void viewAccepted(final List<Address> members)
+		{
+			// the site master is checked through isSiteMaster()
+		}
+
+		private List<JGroupEventMessage> poll(final long timeout) throws InterruptedException
+		{
+			return batches.poll(timeout, TimeUnit.MILLISECONDS);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.PerformanceTest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.ReceiverAdapter;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Compares the {@link TransportProfile}s on the in-memory SHARED_LOOPBACK transport. Only the bundling, thread pool,
+ * retransmission and flow control tuning of a profile is measured, network and socket settings are not.
+ */
+@PerformanceTest
+public class TransportProfilePerformanceTest
+{
+	private static final Logger LOG = LoggerFactory.getLogger(TransportProfilePerformanceTest.class);
+	private static final int MESSAGES = 50000;
+	private static final int MESSAGE_SIZE = 1024;
+	private static final int ROUND_TRIPS = 2000;
+	// the loopback measurements are noisy, a tuned profile only fails when it is clearly worse than the default
+	private static final double TOLERANCE = 1.25;
+
+	@Test
+	public void compareProfiles() throws Exception
+	{
+		final Map<TransportProfile, Long> throughputs = new EnumMap<>(TransportProfile.class);
+		final Map<TransportProfile, Long> latencies = new EnumMap<>(TransportProfile.class);
+		for (final TransportProfile profile : TransportProfile.values())
+		{
+			final JChannel sender = new JChannel(profile.getLoopbackProperties());
+			final JChannel receiver = new JChannel(profile.getLoopbackProperties());
+			try
+			{
+				sender.connect("benchmark-" + profile.getName());
+				receiver.connect("benchmark-" + profile.getName());
+
+				final long throughput = measureThroughput(sender, receiver);
+				final long latency = measureRoundTrip(sender, receiver);
+				LOG.info("{}: {} messages/s, {} us per round trip", profile.getName(), throughput, latency);
+				assertThat(throughput).isGreaterThan(0L);
+				throughputs.put(profile, throughput);
+				latencies.put(profile, latency);
+			}
+			finally
+			{
+				receiver.close();
+				sender.close();
+			}
+		}
+
+		final long throughput = throughputs.get(TransportProfile.UDP);
+		final long latency = latencies.get(TransportProfile.UDP);
+		assertThat(throughputs.get(TransportProfile.UDP_HIGH_THROUGHPUT)).isGreaterThanOrEqualTo((long) (throughput / TOLERANCE));
+		assertThat(latencies.get(TransportProfile.UDP_LOW_LATENCY)).isLessThanOrEqualTo((long) (latency * TOLERANCE));
+	}
+
+	private long measureThroughput(final JChannel sender, final JChannel receiver) throws Exception
+	{
+		final CountDownLatch received = new CountDownLatch(MESSAGES);
+		receiver.setReceiver(new ReceiverAdapter()
+		{
+			@Override
+			public void receive(final Message msg)
+			{
+				received.countDown();
+			}
+		});
+
+		final byte[] payload = new byte[MESSAGE_SIZE];
+		final long start = System.nanoTime();
+		for (int i = 0; i < MESSAGES; i++)
+		{
+			sender.send(new Message(receiver.getAddress(), null, payload));
+		}
+		assertThat(received.await(60, TimeUnit.SECONDS)).isTrue();
+		return MESSAGES * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+	}
+
+	private long measureRoundTrip(final JChannel sender, final JChannel receiver) throws Exception
+	{
+		final Semaphore replies = new Semaphore(0);
+		receiver.setReceiver(new ReceiverAdapter()
+		{
+			@Override
+			public void receive(final Message msg)
+			{
+				try
+				{
+					receiver.send(new Message(msg.getSrc(), null, msg.getBuffer()));
+				}
+				catch (final Exception e)
+				{
+					LOG.error("Failed to echo message", e);
+				}
+			}
+		});
+		sender.setReceiver(new ReceiverAdapter()
+		{
+			@Override
+			public void receive(final Message msg)
+			{
+				replies.release();
+			}
+		});
+
+		final byte[] payload = new byte[64];
+		final long start = System.nanoTime();
+		for (int i = 0; i < ROUND_TRIPS; i++)
+		{
+			sender.send(new Message(receiver.getAddress(), null, payload));
+			assertThat(replies.tryAcquire(5, TimeUnit.SECONDS)).isTrue();
+		}
+		return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / ROUND_TRIPS;
+	}
+}
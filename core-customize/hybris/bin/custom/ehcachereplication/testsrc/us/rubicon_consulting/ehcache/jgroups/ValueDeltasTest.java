@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link ValueDeltas} replicating updates of large values as binary deltas.
+ */
+@UnitTest
+public class ValueDeltasTest
+{
+	private static final int MIN_SIZE = 1024;
+	private static final long MAX_BYTES = 65536L;
+
+	@Test
+	public void shouldRebuildTheValueFromADelta()
+	{
+		final ValueDeltas sender = new ValueDeltas(MIN_SIZE, 10, MAX_BYTES);
+		final ValueDeltas receiver = new ValueDeltas(MIN_SIZE, 10, MAX_BYTES);
+		final byte[] base = value(8192);
+		final byte[] update = change(base);
+
+		assertThat(sender.encode("key", base)).isNull();
+		receiver.received("key", base);
+		final ValueDelta delta = sender.encode("key", update);
+
+		assertThat(delta).isNotNull();
+		assertThat(delta.getDelta().length).isLessThan(update.length / 10);
+		assertThat(receiver.apply("key", delta)).isEqualTo(update);
+		assertThat(sender.getDeltas()).isEqualTo(1L);
+		assertThat(receiver.getApplied()).isEqualTo(1L);
+
+		receiver.received("key", update);
+		assertThat(receiver.apply("key", sender.encode("key", change(update)))).isEqualTo(change(update));
+	}
+
+	@Test
+	public void shouldKeepTheBasesWithinTheByteLimit()
+	{
+		final ValueDeltas deltas = new ValueDeltas(MIN_SIZE, 10, MAX_BYTES);
+
+		for (int i = 0; i < 5; i++)
+		{
+			deltas.received("key" + i, value(16384, i));
+		}
+
+		assertThat(deltas.size()).isEqualTo(4);
+		assertThat(deltas.getBytes()).isEqualTo(MAX_BYTES);
+
+		deltas.received("large", value((int) MAX_BYTES + 1));
+		assertThat(deltas.size()).isEqualTo(4);
+
+		deltas.remove("key4");
+		assertThat(deltas.getBytes()).isEqualTo(MAX_BYTES - 16384L);
+	}
+
+	@Test
+	public void shouldMissWithoutTheBase()
+	{
+		final ValueDeltas sender = new ValueDeltas(MIN_SIZE, 10, MAX_BYTES);
+		final ValueDeltas receiver = new ValueDeltas(MIN_SIZE, 10, MAX_BYTES);
+		final byte[] base = value(8192);
+		sender.encode("key", base);
+		final ValueDelta delta = sender.encode("key", change(base));
+
+		assertThat(receiver.apply("key", delta)).isNull();
+
+		receiver.received("key", change(change(base)));
+		assertThat(receiver.apply("key", delta)).isNull();
+		assertThat(receiver.getMisses()).isEqualTo(2L);
+		assertThat(receiver.size()).isZero();
+	}
+
+	@Test
+	public void shouldCopySmallAndRewrittenValues()
+	{
+		final ValueDeltas sender = new ValueDeltas(MIN_SIZE, 10, MAX_BYTES);
+
+		sender.encode("small", value(100));
+		assertThat(sender.encode("small", value(100))).isNull();
+
+		sender.encode("key", value(8192));
+		assertThat(sender.encode("key", value(8192, 7L))).isNull();
+		assertThat(sender.getDeltas()).isZero();
+		assertThat(sender.getCopies()).isEqualTo(4L);
+	}
+
+	@Test
+	public void shouldEncodeInsertionsAndRemovals()
+	{
+		final byte[] base = value(4096);
+		final byte[] update = new byte[base.length - 90];
+		System.arraycopy(base, 0, update, 0, 1000);
+		System.arraycopy(base, 1000, update, 1010, 2000);
+		System.arraycopy(base, 3100, update, 3010, base.length - 3100);
+
+		final byte[] delta = BinaryDelta.encode(base, update);
+
+		assertThat(BinaryDelta.apply(base, delta)).isEqualTo(update);
+		assertThat(delta.length).isLessThan(64);
+	}
+
+	private static byte[] value(final int size)
+	{
+		return value(size, 42L);
+	}
+
+	private static byte[] value(final int size, final long seed)
+	{
+		final byte[] value = new byte[size];
+		new Random(seed).nextBytes(value);
+		return value;
+	}
+
+	private static byte[] change(final byte[] value)
+	{
+		final byte[] changed = value.clone();
+		changed[changed.length / 3]++;
+		changed[changed.length / 2]++;
+		return changed;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.ehcache.jgroups;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+
+import net.sf.ehcache.Element;
+
+import org.junit.Test;
+
+
+/**
+ * JUnit Tests for the {@link ValueFingerprints} used to suppress replication of unchanged values.
+ */
+@UnitTest
+public class ValueFingerprintsTest
+{
+	@Test
+	public void shouldSuppressUnchangedValue()
+	{
+		final ValueFingerprints fingerprints = new ValueFingerprints(10);
+
+		assertThat(fingerprints.check(new Element("key", "value"))).isEqualTo(ValueFingerprints.Result.CHANGED);
+		assertThat(fingerprints.check(new Element("key", "value"))).isEqualTo(ValueFingerprints.Result.UNCHANGED);
+		assertThat(fingerprints.check(new Element("key", "other value"))).isEqualTo(ValueFingerprints.Result.CHANGED);
+		assertThat(fingerprints.getSuppressed()).isEqualTo(1L);
+		assertThat(fingerprints.getCopies()).isEqualTo(2L);
+	}
+
+	@Test
+	public void shouldTouchWhenTimeToLiveIsExtended()
+	{
+		final ValueFingerprints fingerprints = new ValueFingerprints(10);
+
+		fingerprints.check(new Element("key", "value", Boolean.FALSE, Integer.valueOf(0), Integer.valueOf(60)));
+
+		assertThat(fingerprints.check(new Element("key", "value", Boolean.FALSE, Integer.valueOf(0), Integer.valueOf(120))))
+				.isEqualTo(ValueFingerprints.Result.TOUCH);
+		assertThat(fingerprints.getTouches()).isEqualTo(1L);
+	}
+
+	@Test
+	public void shouldForgetRemovedAndEldestKeys()
+	{
+		final ValueFingerprints fingerprints = new ValueFingerprints(2);
+
+		fingerprints.check(new Element("a", "value"));
+		fingerprints.check(new Element("b", "value"));
+		fingerprints.check(new Element("c", "value"));
+		fingerprints.remove("b");
+
+		assertThat(fingerprints.size()).isEqualTo(1L);
+		assertThat(fingerprints.check(new Element("a", "value"))).isEqualTo(ValueFingerprints.Result.CHANGED);
+	}
+
+	@Test
+	public void shouldReplicateAValueAgainAfterARemoteWrite()
+	{
+		final ValueFingerprints fingerprints = new ValueFingerprints(10);
+		final byte[] value = "value".getBytes();
+
+		assertThat(fingerprints.check(new Element("key", "value"), value)).isEqualTo(ValueFingerprints.Result.CHANGED);
+		assertThat(fingerprints.check(new Element("key", "value"), value)).isEqualTo(ValueFingerprints.Result.UNCHANGED);
+
+		// another member put a different value, the receiver forgets the fingerprint
+		fingerprints.remove("key");
+
+		assertThat(fingerprints.check(new Element("key", "value"), value)).isEqualTo(ValueFingerprints.Result.CHANGED);
+	}
+
+	@Test
+	public void shouldOnlySuppressAValueOnceItWasSent()
+	{
+		final ValueFingerprints fingerprints = new ValueFingerprints(10);
+		final byte[] value = "value".getBytes();
+
+		// the send of the first copy failed, nothing was recorded
+		assertThat(fingerprints.compare(new Element("key", "value"), value).getResult()).isEqualTo(ValueFingerprints.Result.CHANGED);
+
+		final ValueFingerprints.Pending copy = fingerprints.compare(new Element("key", "value"), value);
+		assertThat(copy.getResult()).isEqualTo(ValueFingerprints.Result.CHANGED);
+		copy.sent();
+
+		assertThat(fingerprints.compare(new Element("key", "value"), value).getResult()).isEqualTo(ValueFingerprints.Result.UNCHANGED);
+		assertThat(fingerprints.getCopies()).isEqualTo(1L);
+		assertThat(fingerprints.getSuppressed()).isEqualTo(1L);
+	}
+}
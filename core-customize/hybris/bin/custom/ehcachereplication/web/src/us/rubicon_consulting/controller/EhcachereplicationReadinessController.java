@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2023 Rubicon Consulting LLS. All rights reserved.
+ */
+package us.rubicon_consulting.controller;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import us.rubicon_consulting.ehcache.jgroups.BootstrapProgress;
+import us.rubicon_consulting.ehcache.jgroups.BootstrapReadiness;
+import us.rubicon_consulting.ehcache.jgroups.ReadinessSettings;
+
+
+/**
+ * Readiness probe for load balancers and orchestration. Answers 200 once the replicated caches of all cache managers
+ * are warm according to the {@link ReadinessSettings}, 503 while they are still bootstrapping from the cluster.
+ */
+@Controller
+public class EhcachereplicationReadinessController
+{
+	@RequestMapping(value = "/readiness", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public ResponseEntity<Map<String, Object>> getReadiness()
+	{
+		final long now = System.currentTimeMillis();
+		final BootstrapReadiness readiness = BootstrapReadiness.forAllCacheManagers(ReadinessSettings.fromConfig());
+		final boolean ready = readiness.isReady(now);
+
+		final List<Map<String, Object>> caches = new ArrayList<>();
+		for (final BootstrapProgress progress : readiness.getProgress())
+		{
+			final Map<String, Object> cache = new LinkedHashMap<>();
+			cache.put("cache", progress.getCacheName());
+			cache.put("state", progress.getState().name());
+			cache.put("ready", Boolean.valueOf(readiness.isReady(progress, now)));
+			cache.put("received", Long.valueOf(progress.getReceived()));
+			cache.put("estimatedTotal", Long.valueOf(progress.getEstimatedTotal()));
+			cache.put("progress", Double.valueOf(progress.getProgress()));
+			cache.put("rate", Double.valueOf(progress.getRate(now)));
+			caches.add(cache);
+		}
+
+		final Map<String, Object> body = new LinkedHashMap<>();
+		body.put("ready", Boolean.valueOf(ready));
+		body.put("caches", caches);
+		return new ResponseEntity<>(body, ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE);
+	}
+}